@@ -0,0 +1,70 @@
+package smartthings.dropwizard.benchmark;
+
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.PublishResult;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.vavr.control.Try;
+import org.openjdk.jmh.annotations.*;
+import smartthings.dropwizard.sns.SnsModule;
+import smartthings.dropwizard.sns.internal.DefaultSnsService;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.resilience4j.circuitbreaker.CircuitBreaker.decorateCheckedSupplier;
+
+/**
+ * The cost of wrapping a call in a circuit breaker, as done for SQS receives and every SNS call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CircuitBreakerBenchmark {
+
+    private FixedLatencyAmazonSQS sqs;
+    private CircuitBreaker breaker;
+    private DefaultSnsService sns;
+    private FixedLatencyAmazonSNS snsClient;
+    private ReceiveMessageRequest receiveRequest;
+    private PublishRequest publishRequest;
+
+    @Setup
+    public void setup() {
+        sqs = new FixedLatencyAmazonSQS(0);
+        breaker = CircuitBreaker.ofDefaults("benchmark");
+        snsClient = new FixedLatencyAmazonSNS(0);
+        SnsModule.Config config = new SnsModule.Config();
+        config.setEnabled(true);
+        config.setEndpoints(Collections.singletonList(new SnsModule.EndpointConfig()));
+        sns = new DefaultSnsService(config, endpoint -> snsClient);
+        receiveRequest = new ReceiveMessageRequest(FixedLatencyAmazonSQS.QUEUE_URL);
+        publishRequest = new PublishRequest("arn:aws:sns:us-east-1:000000000000:benchmark", "benchmark");
+    }
+
+    @Benchmark
+    public ReceiveMessageResult receive() {
+        return sqs.receiveMessage(receiveRequest);
+    }
+
+    @Benchmark
+    public ReceiveMessageResult receiveDecorated() {
+        return Try.of(decorateCheckedSupplier(breaker, () -> sqs.receiveMessage(receiveRequest)))
+            .recover(t -> new ReceiveMessageResult())
+            .get();
+    }
+
+    @Benchmark
+    public PublishResult publish() {
+        return snsClient.publish(publishRequest);
+    }
+
+    @Benchmark
+    public PublishResult publishDecorated() {
+        return sns.publish(publishRequest);
+    }
+}
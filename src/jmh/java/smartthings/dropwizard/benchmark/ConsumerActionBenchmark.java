@@ -0,0 +1,136 @@
+package smartthings.dropwizard.benchmark;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import smartthings.dropwizard.sqs.BatchConsumer;
+import smartthings.dropwizard.sqs.Consumer;
+import smartthings.dropwizard.sqs.DefaultSqsService;
+import smartthings.dropwizard.sqs.SqsModule;
+import smartthings.dropwizard.sqs.SqsService;
+import smartthings.dropwizard.sqs.internal.consumer.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages per second through the polling loop: receive through the circuit breaker, dispatch, consume and
+ * batch delete.  Each invocation polls until {@link #MESSAGES} messages have been consumed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsumerActionBenchmark {
+
+    static final int MESSAGES = 1000;
+
+    @Param({"1", "10"})
+    int maxMessages;
+
+    @Param({"0"})
+    long latencyMicros;
+
+    private SqsService sqs;
+    private SqsModule.ConsumerConfig consumerConfig;
+    private SqsModule.EndpointConfig endpointConfig;
+    private ConsumerStats stats;
+    private MessageAcknowledger acknowledger;
+    private VisibilityHeartbeat heartbeat;
+    private QueueUrl queueUrl;
+    private CircuitBreaker breaker;
+
+    @Setup
+    public void setup() {
+        sqs = new DefaultSqsService(new FixedLatencyAmazonSQS(latencyMicros));
+        consumerConfig = new SqsModule.ConsumerConfig();
+        consumerConfig.setBatchSize(maxMessages);
+        endpointConfig = new SqsModule.EndpointConfig();
+        endpointConfig.setQueueName("benchmark");
+        stats = new ConsumerStats();
+        queueUrl = QueueUrl.of(FixedLatencyAmazonSQS.QUEUE_URL);
+        breaker = CircuitBreaker.ofDefaults("benchmark");
+        acknowledger = new MessageAcknowledger(sqs, endpointConfig, queueUrl, 10, stats, breaker);
+        heartbeat = new VisibilityHeartbeat(null, sqs, queueUrl);
+    }
+
+    @TearDown
+    public void tearDown() {
+        acknowledger.flush();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void consume(Blackhole blackhole) {
+        CountingConsumer consumer = new CountingConsumer(blackhole);
+        run(consumer);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void consumeBatch(Blackhole blackhole) {
+        CountingBatchConsumer consumer = new CountingBatchConsumer(blackhole);
+        run(consumer);
+    }
+
+    private void run(CountingConsumer consumer) {
+        ConsumerAction action = new ConsumerAction(
+            sqs, consumer, acknowledger, new InlineDispatcher(), null, stats, heartbeat,
+            breaker, consumerConfig, endpointConfig, queueUrl, null, null
+        );
+        consumer.action = action;
+        action.run();
+    }
+
+    private class CountingConsumer implements Consumer {
+        private final Blackhole blackhole;
+        private ConsumerAction action;
+        private int consumed;
+
+        CountingConsumer(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void consume(Message message) {
+            blackhole.consume(message.getBody());
+            count(1);
+        }
+
+        void count(int messages) {
+            consumed += messages;
+            if (consumed >= MESSAGES) {
+                action.shutdown();
+            }
+        }
+
+        @Override
+        public ReceiveMessageRequest getReceiveMessageRequest() {
+            return new ReceiveMessageRequest(FixedLatencyAmazonSQS.QUEUE_URL).withMaxNumberOfMessages(maxMessages);
+        }
+    }
+
+    private class CountingBatchConsumer extends CountingConsumer implements BatchConsumer {
+
+        CountingBatchConsumer(Blackhole blackhole) {
+            super(blackhole);
+        }
+
+        @Override
+        public List<Message> consumeBatch(List<Message> messages) {
+            messages.forEach(message -> super.blackhole.consume(message.getBody()));
+            count(messages.size());
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void consume(Message message) {
+            consumeBatch(Collections.singletonList(message));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package smartthings.dropwizard.benchmark;
+
+import com.amazonaws.services.sns.AbstractAmazonSNS;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.PublishResult;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An AmazonSNS stand-in that accepts every publish after an optional simulated latency.
+ */
+public class FixedLatencyAmazonSNS extends AbstractAmazonSNS {
+
+    private final long latencyNanos;
+
+    public FixedLatencyAmazonSNS(long latencyMicros) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    @Override
+    public PublishResult publish(PublishRequest request) {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        return new PublishResult().withMessageId("0");
+    }
+}
@@ -0,0 +1,81 @@
+package smartthings.dropwizard.benchmark;
+
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.amazonaws.services.sqs.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An AmazonSQS stand-in that answers every call from memory after an optional simulated latency.  Receives always
+ * return a full batch of identical messages, so the queue never runs dry.
+ */
+public class FixedLatencyAmazonSQS extends AbstractAmazonSQS {
+
+    static final String QUEUE_URL = "http://localhost/queue/benchmark";
+
+    private final long latencyNanos;
+
+    public FixedLatencyAmazonSQS(long latencyMicros) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    @Override
+    public GetQueueUrlResult getQueueUrl(GetQueueUrlRequest request) {
+        return new GetQueueUrlResult().withQueueUrl(QUEUE_URL);
+    }
+
+    @Override
+    public ReceiveMessageResult receiveMessage(ReceiveMessageRequest request) {
+        simulateLatency();
+        int max = request.getMaxNumberOfMessages() == null ? 1 : request.getMaxNumberOfMessages();
+        List<Message> messages = new ArrayList<>(max);
+        for (int i = 0; i < max; i++) {
+            messages.add(new Message()
+                .withMessageId(String.valueOf(i))
+                .withReceiptHandle(String.valueOf(i))
+                .withBody("benchmark"));
+        }
+        return new ReceiveMessageResult().withMessages(messages);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(SendMessageRequest request) {
+        simulateLatency();
+        return new SendMessageResult().withMessageId("0");
+    }
+
+    @Override
+    public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request) {
+        simulateLatency();
+        SendMessageBatchResult result = new SendMessageBatchResult();
+        request.getEntries().forEach(entry -> result.withSuccessful(
+            new SendMessageBatchResultEntry().withId(entry.getId()).withMessageId(entry.getId())
+        ));
+        return result;
+    }
+
+    @Override
+    public DeleteMessageResult deleteMessage(DeleteMessageRequest request) {
+        simulateLatency();
+        return new DeleteMessageResult();
+    }
+
+    @Override
+    public DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest request) {
+        simulateLatency();
+        DeleteMessageBatchResult result = new DeleteMessageBatchResult();
+        request.getEntries().forEach(entry -> result.withSuccessful(
+            new DeleteMessageBatchResultEntry().withId(entry.getId())
+        ));
+        return result;
+    }
+
+    private void simulateLatency() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package smartthings.dropwizard.benchmark;
+
+import com.amazonaws.services.sqs.model.*;
+import org.openjdk.jmh.annotations.*;
+import smartthings.dropwizard.sqs.internal.memory.InMemoryAmazonSQS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages per second through the in-memory SQS engine: a batch send, receive and batch delete of ten messages,
+ * run from several threads against the same queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class InMemoryEngineBenchmark {
+
+    static final int BATCH = 10;
+
+    private InMemoryAmazonSQS sqs;
+    private String queueUrl;
+    private SendMessageBatchRequest sendRequest;
+
+    @Setup
+    public void setup() {
+        sqs = new InMemoryAmazonSQS();
+        queueUrl = sqs.createQueue("benchmark").getQueueUrl();
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            entries.add(new SendMessageBatchRequestEntry(String.valueOf(i), "benchmark"));
+        }
+        sendRequest = new SendMessageBatchRequest(queueUrl, entries);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public DeleteMessageBatchResult sendReceiveDelete() {
+        sqs.sendMessageBatch(sendRequest);
+        List<Message> messages = sqs.receiveMessage(
+            new ReceiveMessageRequest(queueUrl).withMaxNumberOfMessages(BATCH)
+        ).getMessages();
+        if (messages.isEmpty()) {
+            return null;
+        }
+        List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            entries.add(new DeleteMessageBatchRequestEntry(String.valueOf(i), messages.get(i).getReceiptHandle()));
+        }
+        return sqs.deleteMessageBatch(new DeleteMessageBatchRequest(queueUrl, entries));
+    }
+}
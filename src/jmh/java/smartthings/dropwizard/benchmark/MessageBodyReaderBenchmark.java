@@ -0,0 +1,60 @@
+package smartthings.dropwizard.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import smartthings.dropwizard.sqs.internal.consumer.MessageBodyReader;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the body of an SNS notification delivered to SQS, unwrapped in one streaming pass versus the common
+ * approach of binding the envelope to a tree and parsing its message again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageBodyReaderBenchmark {
+
+    private ObjectMapper mapper;
+    private MessageBodyReader<Event> reader;
+    private String notification;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        reader = new MessageBodyReader<>(mapper, Event.class, true);
+        Map<String, Object> envelope = new HashMap<>();
+        envelope.put("Type", "Notification");
+        envelope.put("MessageId", "22b80b92-fdea-4c2c-8f9d-bdfb0c7bf324");
+        envelope.put("TopicArn", "arn:aws:sns:us-east-1:000000000000:benchmark");
+        envelope.put("Message", "{\"deviceId\":\"b4c2\",\"capability\":\"switch\",\"value\":\"on\",\"epoch\":1508198400}");
+        envelope.put("Timestamp", "2017-10-17T00:00:00.000Z");
+        notification = mapper.writeValueAsString(envelope);
+    }
+
+    @Benchmark
+    public Event streaming() throws IOException {
+        return reader.read(notification);
+    }
+
+    @Benchmark
+    public Event tree() throws IOException {
+        JsonNode envelope = mapper.readTree(notification);
+        return mapper.readValue(envelope.get("Message").asText(), Event.class);
+    }
+
+    public static class Event {
+        public String deviceId;
+        public String capability;
+        public String value;
+        public long epoch;
+    }
+}
@@ -0,0 +1,72 @@
+package smartthings.dropwizard.benchmark;
+
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import org.openjdk.jmh.annotations.*;
+import smartthings.dropwizard.sqs.DefaultSqsService;
+import smartthings.dropwizard.sqs.SqsModule;
+import smartthings.dropwizard.sqs.SqsService;
+import smartthings.dropwizard.sqs.internal.consumer.QueueUrl;
+import smartthings.dropwizard.sqs.internal.producer.BufferedQueueWriter;
+import smartthings.dropwizard.sqs.internal.producer.DefaultQueueWriter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages per second sent through a queue writer, one SendMessage call per message versus buffered
+ * SendMessageBatch calls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueueWriterBenchmark {
+
+    static final int BATCH = 10;
+
+    @Param({"0", "1000"})
+    long latencyMicros;
+
+    private ScheduledExecutorService scheduler;
+    private DefaultQueueWriter writer;
+    private BufferedQueueWriter bufferedWriter;
+
+    @Setup
+    public void setup() {
+        SqsService sqs = new DefaultSqsService(new FixedLatencyAmazonSQS(latencyMicros));
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        writer = new DefaultQueueWriter(FixedLatencyAmazonSQS.QUEUE_URL, sqs);
+        bufferedWriter = new BufferedQueueWriter(
+            QueueUrl.of(FixedLatencyAmazonSQS.QUEUE_URL), sqs, new SqsModule.BufferConfig(), scheduler
+        );
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public SendMessageResult send() {
+        SendMessageResult result = null;
+        for (int i = 0; i < BATCH; i++) {
+            result = writer.sendMessage("benchmark");
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public SendMessageResult sendBuffered() {
+        CompletableFuture<SendMessageResult> result = null;
+        for (int i = 0; i < BATCH; i++) {
+            result = bufferedWriter.sendMessageAsync("benchmark");
+        }
+        return result.join();
+    }
+}
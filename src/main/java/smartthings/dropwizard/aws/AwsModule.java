@@ -74,4 +74,48 @@ public class AwsModule extends AbstractDwModule {
             this.stsEndpoint = stsEndpoint;
         }
     }
+
+    /**
+     * Compression of message bodies, shared by the SQS and SNS modules.  Bodies over the threshold are compressed
+     * with the named codec, either built in (<code>gzip</code>, <code>deflate</code>) or bound by the application as
+     * a {@link PayloadCodec}, and are only sent compressed when that makes them smaller.
+     */
+    public static class CompressionConfig {
+        private String codec = "gzip";
+        private long thresholdBytes = 1024;
+        private long maxDecodedBytes = 16L << 20;
+
+        public String getCodec() {
+            return codec;
+        }
+
+        public void setCodec(String codec) {
+            this.codec = codec;
+        }
+
+        /**
+         * Bodies of this many UTF-8 bytes or fewer are sent as they are, since compressing them saves little.
+         */
+        public long getThresholdBytes() {
+            return thresholdBytes;
+        }
+
+        public void setThresholdBytes(long thresholdBytes) {
+            this.thresholdBytes = thresholdBytes;
+        }
+
+        /**
+         * The largest body, in UTF-8 bytes, that is sent compressed.  Consumers fail messages whose bodies decompress
+         * to more than this and writers refuse to send such bodies compressed, so both sides of an endpoint agree.
+         * Defaults to 16 MiB, well beyond what compresses under the SQS message size limit while still bounding what
+         * a consumer can be made to inflate.
+         */
+        public long getMaxDecodedBytes() {
+            return maxDecodedBytes;
+        }
+
+        public void setMaxDecodedBytes(long maxDecodedBytes) {
+            this.maxDecodedBytes = maxDecodedBytes;
+        }
+    }
 }
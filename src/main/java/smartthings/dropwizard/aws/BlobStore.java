@@ -0,0 +1,37 @@
+package smartthings.dropwizard.aws;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Storage for payloads too large to send through AWS messaging directly.  Payloads are streamed in and out so that
+ * neither side has to hold an extra copy in memory.
+ */
+public interface BlobStore {
+
+    /**
+     * Store a payload, reading the content to its end.
+     *
+     * @param key the key to store the payload under
+     * @param content the payload
+     * @throws IOException if the payload could not be stored
+     */
+    void put(String key, InputStream content) throws IOException;
+
+    /**
+     * Open a stored payload.  The caller closes the stream.
+     *
+     * @param key the key the payload was stored under
+     * @return the payload
+     * @throws IOException if the payload could not be read, including when nothing is stored under the key
+     */
+    InputStream get(String key) throws IOException;
+
+    /**
+     * Delete a stored payload.  Deleting a key that is not stored does nothing.
+     *
+     * @param key the key the payload was stored under
+     * @throws IOException if the payload could not be deleted
+     */
+    void delete(String key) throws IOException;
+}
@@ -0,0 +1,36 @@
+package smartthings.dropwizard.aws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compression format for message payloads.  gzip and deflate are built in; further codecs, e.g. zstd, are added
+ * by binding them with a Guice {@link com.google.inject.multibindings.Multibinder}.
+ */
+public interface PayloadCodec {
+
+    /**
+     * @return the name recorded on encoded messages, which is how receivers pick the codec to decode them with
+     */
+    String getName();
+
+    /**
+     * Wrap a stream so that what is written to it is compressed.  Closing the returned stream finishes the
+     * compressed data and closes the wrapped stream.
+     *
+     * @param out receives the compressed data
+     * @return the stream to write the payload to
+     * @throws IOException if the stream could not be created
+     */
+    OutputStream compress(OutputStream out) throws IOException;
+
+    /**
+     * Wrap a stream of compressed data so that reading it yields the payload.
+     *
+     * @param in the compressed data
+     * @return the payload
+     * @throws IOException if the data is not in this codec's format
+     */
+    InputStream decompress(InputStream in) throws IOException;
+}
@@ -0,0 +1,26 @@
+package smartthings.dropwizard.aws.internal.async;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bridges the AWS SDK callback style async API to a <code>CompletableFuture</code>.
+ *
+ * @param <REQUEST> the AWS request type
+ * @param <RESULT> the AWS result type
+ */
+public class AsyncHandlerFuture<REQUEST extends AmazonWebServiceRequest, RESULT>
+    extends CompletableFuture<RESULT> implements AsyncHandler<REQUEST, RESULT> {
+
+    @Override
+    public void onError(Exception exception) {
+        completeExceptionally(exception);
+    }
+
+    @Override
+    public void onSuccess(REQUEST request, RESULT result) {
+        complete(result);
+    }
+}
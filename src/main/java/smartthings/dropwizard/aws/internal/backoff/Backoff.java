@@ -0,0 +1,63 @@
+package smartthings.dropwizard.aws.internal.backoff;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe exponential backoff policy with jitter.  Each call to {@link #nextDelayMillis()} counts as a failed
+ * attempt; {@link #reset()} may be called from any thread once the dependency recovers.
+ */
+public class Backoff {
+
+    static final long DEFAULT_BASE_MILLIS = 1000;
+    static final long DEFAULT_MAX_MILLIS = 60000;
+
+    private final long baseMillis;
+    private final long maxMillis;
+    private final Jitter jitter;
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final AtomicLong previous;
+
+    public Backoff(long baseMillis, long maxMillis, Jitter jitter) {
+        this.baseMillis = Math.max(1, baseMillis);
+        this.maxMillis = Math.max(this.baseMillis, maxMillis);
+        this.jitter = jitter;
+        this.previous = new AtomicLong(this.baseMillis);
+    }
+
+    /**
+     * Decorrelated jitter between one second and one minute.
+     */
+    public static Backoff defaults() {
+        return new Backoff(DEFAULT_BASE_MILLIS, DEFAULT_MAX_MILLIS, Jitter.DECORRELATED);
+    }
+
+    /**
+     * Record a failed attempt and compute how long to wait before the next one.
+     *
+     * @return the delay in milliseconds
+     */
+    public long nextDelayMillis() {
+        int attempt = attempts.getAndIncrement();
+        long last;
+        long delay;
+        do {
+            last = previous.get();
+            delay = jitter.delay(baseMillis, maxMillis, attempt, last);
+        } while (!previous.compareAndSet(last, delay));
+        return delay;
+    }
+
+    public void reset() {
+        attempts.set(0);
+        previous.set(baseMillis);
+    }
+
+    public int getAttempts() {
+        return attempts.get();
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+}
@@ -0,0 +1,105 @@
+package smartthings.dropwizard.aws.internal.backoff;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Backs off a task through a timer instead of parking the thread that runs it.  The task gives up its thread and is
+ * handed back to its executor once the backoff delay has passed, or earlier if {@link #resume()} is called.  At most
+ * one task is suspended at a time.
+ */
+public class BackoffScheduler {
+
+    private final Backoff backoff;
+    private final ScheduledExecutorService timer;
+    private final AtomicReference<Suspension> suspended = new AtomicReference<>();
+
+    public BackoffScheduler(Backoff backoff, ScheduledExecutorService timer) {
+        this.backoff = backoff;
+        this.timer = timer;
+    }
+
+    /**
+     * Run the task on the executor after the next backoff delay.
+     *
+     * @param executor the executor to run the task on
+     * @param task the task
+     * @return the delay in milliseconds
+     * @throws RejectedExecutionException if the timer is shut down
+     */
+    public long schedule(Executor executor, Runnable task) {
+        long delay = backoff.nextDelayMillis();
+        Suspension suspension = new Suspension(executor, task);
+        suspended.set(suspension);
+        try {
+            suspension.future = timer.schedule(() -> {
+                if (suspended.compareAndSet(suspension, null)) {
+                    executor.execute(task);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            suspended.compareAndSet(suspension, null);
+            throw e;
+        }
+        return delay;
+    }
+
+    /**
+     * Run the suspended task now rather than waiting out its delay.
+     *
+     * @return true if a task was suspended
+     */
+    public boolean resume() {
+        Suspension suspension = suspended.getAndSet(null);
+        if (suspension == null) {
+            return false;
+        }
+        suspension.cancel();
+        suspension.executor.execute(suspension.task);
+        return true;
+    }
+
+    /**
+     * Drop the suspended task without running it.
+     *
+     * @return true if a task was dropped, in which case the caller is responsible for any cleanup it would have done
+     */
+    public boolean cancel() {
+        Suspension suspension = suspended.getAndSet(null);
+        if (suspension == null) {
+            return false;
+        }
+        suspension.cancel();
+        return true;
+    }
+
+    public boolean isSuspended() {
+        return suspended.get() != null;
+    }
+
+    public Backoff getBackoff() {
+        return backoff;
+    }
+
+    private static class Suspension {
+        private final Executor executor;
+        private final Runnable task;
+        private volatile ScheduledFuture<?> future;
+
+        Suspension(Executor executor, Runnable task) {
+            this.executor = executor;
+            this.task = task;
+        }
+
+        void cancel() {
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
@@ -3,17 +3,22 @@ package smartthings.dropwizard.aws.internal.backoff;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Provides a mechanism for exponential backoff.
+ *
+ * @deprecated blocks the calling thread and retries without jitter; use {@link BackoffScheduler} instead
  */
+@Deprecated
 public class ExponentialBackoff {
 
     private static final Logger log = LoggerFactory.getLogger(ExponentialBackoff.class);
     private static final long MAX_WAIT = 60000;
-    private int attempts = 0;
+    private final AtomicInteger attempts = new AtomicInteger();
 
     public void reset() {
-        attempts = 0;
+        attempts.set(0);
     }
 
     public void backoff() {
@@ -27,11 +32,11 @@ public class ExponentialBackoff {
     }
 
     private void mark() {
-        attempts++;
+        attempts.incrementAndGet();
     }
 
     private long waitTime() {
-        final long wait = Math.round(Math.pow(2, attempts)) * 1000;
+        final long wait = Math.round(Math.pow(2, attempts.get())) * 1000;
         return wait >= MAX_WAIT ? MAX_WAIT : wait;
     }
 }
@@ -0,0 +1,50 @@
+package smartthings.dropwizard.aws.internal.backoff;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a {@link Backoff} spreads its delays so that clients that failed together do not retry together.
+ */
+public enum Jitter {
+
+    /**
+     * Plain exponential growth, <code>base * 2^attempt</code>.
+     */
+    NONE {
+        @Override
+        long delay(long base, long max, int attempt, long previous) {
+            return exponential(base, max, attempt);
+        }
+    },
+
+    /**
+     * A random delay between zero and the exponential delay.
+     */
+    FULL {
+        @Override
+        long delay(long base, long max, int attempt, long previous) {
+            return ThreadLocalRandom.current().nextLong(exponential(base, max, attempt) + 1);
+        }
+    },
+
+    /**
+     * A random delay between the base and three times the previous delay.
+     */
+    DECORRELATED {
+        @Override
+        long delay(long base, long max, int attempt, long previous) {
+            long upper = Math.max(base, Math.min(max, previous * 3));
+            return upper == base ? base : ThreadLocalRandom.current().nextLong(base, upper + 1);
+        }
+    };
+
+    abstract long delay(long base, long max, int attempt, long previous);
+
+    static long exponential(long base, long max, int attempt) {
+        long delay = base;
+        for (int i = 0; i < attempt && delay < max; i++) {
+            delay <<= 1;
+        }
+        return Math.min(max, delay);
+    }
+}
@@ -0,0 +1,58 @@
+package smartthings.dropwizard.aws.internal.blob;
+
+import smartthings.dropwizard.aws.BlobStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
+/**
+ * Stores payloads as files in one directory, e.g. on a volume shared by writers and consumers.  Payloads are written
+ * to a temporary file first so that readers never see a partial payload.
+ */
+public class FileSystemBlobStore implements BlobStore {
+
+    private static final Pattern KEY = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]*");
+
+    private final Path directory;
+
+    public FileSystemBlobStore(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public void put(String key, InputStream content) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, ".", ".tmp");
+        try {
+            Files.copy(content, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    /**
+     * Keys arrive in message bodies, so anything that could name a file outside the directory is refused.
+     */
+    private Path resolve(String key) {
+        if (key == null || !KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid blob key: " + key);
+        }
+        return directory.resolve(key);
+    }
+}
@@ -0,0 +1,48 @@
+package smartthings.dropwizard.aws.internal.blob;
+
+import smartthings.dropwizard.aws.BlobStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps payloads on the heap.  Intended for tests and local development.
+ */
+public class InMemoryBlobStore implements BlobStore {
+
+    private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String key, InputStream content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        blobs.put(key, bytes.toByteArray());
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        byte[] blob = blobs.get(key);
+        if (blob == null) {
+            throw new NoSuchFileException(key);
+        }
+        return new ByteArrayInputStream(blob);
+    }
+
+    @Override
+    public void delete(String key) {
+        blobs.remove(key);
+    }
+
+    public int size() {
+        return blobs.size();
+    }
+}
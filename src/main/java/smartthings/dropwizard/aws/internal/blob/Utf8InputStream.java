@@ -0,0 +1,58 @@
+package smartthings.dropwizard.aws.internal.blob;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a string as UTF-8 a chunk at a time, so that a large payload can be streamed without first copying it into
+ * a byte array.
+ */
+public class Utf8InputStream extends InputStream {
+
+    private final CharBuffer chars;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes = ByteBuffer.allocate(8192);
+    private boolean flushed;
+
+    public Utf8InputStream(CharSequence content) {
+        this.chars = CharBuffer.wrap(content);
+        this.bytes.flip();
+    }
+
+    @Override
+    public int read() {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!bytes.hasRemaining() && !fill()) {
+            return -1;
+        }
+        int read = Math.min(length, bytes.remaining());
+        bytes.get(buffer, offset, read);
+        return read;
+    }
+
+    private boolean fill() {
+        bytes.clear();
+        if (chars.hasRemaining()) {
+            encoder.encode(chars, bytes, true);
+        } else if (!flushed) {
+            encoder.flush(bytes);
+            flushed = true;
+        }
+        bytes.flip();
+        return bytes.hasRemaining();
+    }
+}
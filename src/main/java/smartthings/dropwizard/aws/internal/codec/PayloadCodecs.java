@@ -0,0 +1,95 @@
+package smartthings.dropwizard.aws.internal.codec;
+
+import smartthings.dropwizard.aws.PayloadCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The built-in codecs and the lookup of codecs by name.
+ */
+public final class PayloadCodecs {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    public static final PayloadCodec GZIP = new PayloadCodec() {
+        @Override
+        public String getName() {
+            return "gzip";
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * zlib-wrapped deflate.  Each stream has its own deflater or inflater, and closing the stream frees its native
+     * zlib state right away rather than leaving it to the garbage collector.
+     */
+    public static final PayloadCodec DEFLATE = new PayloadCodec() {
+        @Override
+        public String getName() {
+            return "deflate";
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return new DeflaterOutputStream(out, new Deflater(), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        def.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+        }
+    };
+
+    private PayloadCodecs() {
+    }
+
+    /**
+     * @param additional codecs bound by the application, which replace built-in codecs of the same name
+     * @return the codecs by name
+     */
+    public static Map<String, PayloadCodec> byName(Collection<PayloadCodec> additional) {
+        Map<String, PayloadCodec> codecs = new HashMap<>();
+        codecs.put(GZIP.getName(), GZIP);
+        codecs.put(DEFLATE.getName(), DEFLATE);
+        additional.forEach(codec -> codecs.put(codec.getName(), codec));
+        return codecs;
+    }
+}
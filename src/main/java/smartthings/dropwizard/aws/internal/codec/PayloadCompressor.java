@@ -0,0 +1,161 @@
+package smartthings.dropwizard.aws.internal.codec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.aws.PayloadCodec;
+import smartthings.dropwizard.aws.internal.blob.Utf8InputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Compresses message bodies with a codec and frames the result as base64, since SQS and SNS bodies must be text.
+ * Senders record the codec's name in the {@link #ENCODING_ATTRIBUTE} message attribute of compressed messages, which
+ * is namespaced so that a body is never decoded on the strength of another library's attribute.
+ */
+public class PayloadCompressor {
+
+    public static final String ENCODING_ATTRIBUTE = "smartthings.ContentEncoding";
+
+    private static final Logger log = LoggerFactory.getLogger(PayloadCompressor.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final PayloadCodec codec;
+    private final long thresholdBytes;
+    private final long maxBytes;
+
+    /**
+     * @param codec the codec to compress with
+     * @param thresholdBytes bodies of this many UTF-8 bytes or fewer are sent as they are
+     * @param maxBytes the most UTF-8 bytes a compressed body may have, matching what receivers decode
+     */
+    public PayloadCompressor(PayloadCodec codec, long thresholdBytes, long maxBytes) {
+        this.codec = codec;
+        this.thresholdBytes = thresholdBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    public String getCodecName() {
+        return codec.getName();
+    }
+
+    /**
+     * @param body the body
+     * @return the compressed body, null to send the body as it is because it is under the threshold or does not
+     * get any smaller
+     * @throws IllegalArgumentException if the body would be compressed but is larger than receivers decode
+     */
+    public String compress(String body) {
+        // A char encodes to at most three UTF-8 bytes, which rules out most small bodies without counting.
+        if (body == null || body.length() * 3L <= thresholdBytes) {
+            return null;
+        }
+        AsciiOutputStream encoded = new AsciiOutputStream();
+        byte[] bytes = new byte[BUFFER_SIZE];
+        try {
+            long bodyBytes = 0;
+            try (
+                Utf8InputStream in = new Utf8InputStream(body);
+                OutputStream out = codec.compress(Base64.getEncoder().wrap(encoded))
+            ) {
+                int read;
+                while ((read = in.read(bytes, 0, bytes.length)) != -1) {
+                    out.write(bytes, 0, read);
+                    bodyBytes += read;
+                }
+            }
+            if (bodyBytes <= thresholdBytes || encoded.size() >= bodyBytes) {
+                return null;
+            }
+            if (bodyBytes > maxBytes) {
+                throw new IllegalArgumentException(String.format(
+                    "A body of %d bytes is larger than the %d bytes receivers decode.", bodyBytes, maxBytes
+                ));
+            }
+            return encoded.toAscii();
+        } catch (IOException e) {
+            log.warn("Failed to compress a message body with codec={}, sending it uncompressed.", codec.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * @param codec the codec named by the message's {@link #ENCODING_ATTRIBUTE}
+     * @param encoded the received body
+     * @param maxBytes the most UTF-8 bytes the original body may have
+     * @return the original body
+     * @throws IOException if the body is not valid for the codec or decodes to more than <code>maxBytes</code>
+     */
+    public static String decompress(PayloadCodec codec, String encoded, long maxBytes) throws IOException {
+        char[] chars = new char[BUFFER_SIZE];
+        // Bodies worth compressing shrink severalfold, so start with room for that much.
+        StringBuilder body = new StringBuilder((int) Math.min(encoded.length() * 4L, Math.min(maxBytes, 1 << 20)));
+        try (Reader reader = new InputStreamReader(new BoundedInputStream(
+            codec.decompress(Base64.getDecoder().wrap(new Utf8InputStream(encoded))), maxBytes
+        ), StandardCharsets.UTF_8)) {
+            int read;
+            while ((read = reader.read(chars)) != -1) {
+                body.append(chars, 0, read);
+            }
+        }
+        return body.toString();
+    }
+
+    /**
+     * Fails once more than a set number of bytes have been read, so that a small body cannot expand without bound.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+            this.remaining = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        private void count(int read) throws IOException {
+            remaining -= read;
+            if (remaining < 0) {
+                throw new IOException("Decompressed body exceeds the limit of " + maxBytes + " bytes");
+            }
+        }
+    }
+
+    private static class AsciiOutputStream extends ByteArrayOutputStream {
+
+        AsciiOutputStream() {
+            super(BUFFER_SIZE);
+        }
+
+        String toAscii() {
+            return new String(buf, 0, count, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package smartthings.dropwizard.aws.internal.codec;
+
+/**
+ * Sizes of strings as sent to AWS, which limits payloads by their UTF-8 encoding.
+ */
+public final class Utf8 {
+
+    private Utf8() {
+    }
+
+    /**
+     * @param value the string, may be null
+     * @return the length of the string's UTF-8 encoding, without encoding it
+     */
+    public static long length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,107 @@
+package smartthings.dropwizard.aws.internal.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread-safe token bucket.  Tokens accrue continuously at the configured rate up to the burst size, so short
+ * bursts are absorbed while the long term rate never exceeds the limit.
+ */
+public class TokenBucket {
+
+    private final double permitsPerNano;
+    private final double capacity;
+    private final LongSupplier clock;
+    private double tokens;
+    private long refilled;
+
+    /**
+     * @param permitsPerSecond the sustained rate
+     * @param burst the most permits that can be taken at once after an idle period, at least 1
+     */
+    public TokenBucket(double permitsPerSecond, double burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucket(double permitsPerSecond, double burst, LongSupplier clock) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("A rate limit must allow more than 0 permits per second.");
+        }
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, burst);
+        this.clock = clock;
+        this.tokens = capacity;
+        this.refilled = clock.getAsLong();
+    }
+
+    /**
+     * Take as many permits as are available right now, up to max.
+     *
+     * @param max the most permits wanted
+     * @return the permits taken, possibly 0
+     */
+    public synchronized int tryAcquireUpTo(int max) {
+        refill();
+        int permits = (int) Math.min(max, Math.floor(tokens));
+        if (permits <= 0) {
+            return 0;
+        }
+        tokens -= permits;
+        return permits;
+    }
+
+    /**
+     * Give back permits that were taken but not used.
+     *
+     * @param permits the unused permits
+     */
+    public synchronized void refund(int permits) {
+        if (permits > 0) {
+            refill();
+            tokens = Math.min(capacity, tokens + permits);
+        }
+    }
+
+    /**
+     * How long until the given number of permits will be available.
+     *
+     * @param permits the permits wanted
+     * @return the wait in nanoseconds, 0 if they are available now
+     */
+    public synchronized long nanosUntilAvailable(int permits) {
+        refill();
+        double missing = permits - tokens;
+        return missing <= 0 ? 0 : (long) Math.ceil(missing / permitsPerNano);
+    }
+
+    /**
+     * Take permits now, borrowing against the future if there are not enough.
+     *
+     * @param permits the permits wanted
+     * @return how long the caller must wait before using them, in nanoseconds
+     */
+    public synchronized long reserve(int permits) {
+        refill();
+        tokens -= permits;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / permitsPerNano);
+    }
+
+    /**
+     * Take permits, blocking until they may be used.
+     *
+     * @param permits the permits wanted
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(int permits) throws InterruptedException {
+        long nanos = reserve(permits);
+        if (nanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+
+    private void refill() {
+        long now = clock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - refilled) * permitsPerNano);
+        refilled = now;
+    }
+}
@@ -1,6 +1,9 @@
 package smartthings.dropwizard.sns;
 
+import com.google.inject.multibindings.Multibinder;
 import com.google.inject.multibindings.OptionalBinder;
+import smartthings.dropwizard.aws.AwsModule;
+import smartthings.dropwizard.aws.PayloadCodec;
 import smartthings.dropwizard.sns.internal.DefaultSnsService;
 import smartthings.dropwizard.sns.internal.providers.DefaultAmazonSNSProvider;
 import smartthings.dw.guice.AbstractDwModule;
@@ -20,11 +23,17 @@ public class SnsModule extends AbstractDwModule {
         OptionalBinder.newOptionalBinder(binder(), SnsService.class)
             .setDefault()
             .to(DefaultSnsService.class);
+
+        // Codecs beyond the built-in ones are added to this set by the application.
+        Multibinder.newSetBinder(binder(), PayloadCodec.class);
     }
 
     public static class Config {
         private boolean enabled;
         private List<EndpointConfig> endpoints = Collections.emptyList();
+        private AwsModule.CompressionConfig compression;
+        private BufferConfig buffer;
+        private LatencyConfig latency;
 
         public boolean isEnabled() {
             return enabled;
@@ -41,6 +50,55 @@ public class SnsModule extends AbstractDwModule {
         public void setEndpoints(List<EndpointConfig> endpoints) {
             this.endpoints = endpoints;
         }
+
+        /**
+         * Compression of large published messages.  Compressed messages carry their encoding as a message
+         * attribute, so only subscribers that receive attributes with the raw message, such as SQS queues with raw
+         * message delivery, can decode them.  Disabled when not configured.
+         */
+        public AwsModule.CompressionConfig getCompression() {
+            return compression;
+        }
+
+        public void setCompression(AwsModule.CompressionConfig compression) {
+            this.compression = compression;
+        }
+
+        public Optional<AwsModule.CompressionConfig> compression() {
+            return Optional.ofNullable(compression);
+        }
+
+        /**
+         * Client-side buffering of published messages.  Messages are published one call at a time when not
+         * configured.
+         */
+        public BufferConfig getBuffer() {
+            return buffer;
+        }
+
+        public void setBuffer(BufferConfig buffer) {
+            this.buffer = buffer;
+        }
+
+        public Optional<BufferConfig> buffer() {
+            return Optional.ofNullable(buffer);
+        }
+
+        /**
+         * Latency-aware selection between the endpoints.  When not configured, all calls go to the first endpoint
+         * and move to the next one each time the circuit breaker opens.
+         */
+        public LatencyConfig getLatency() {
+            return latency;
+        }
+
+        public void setLatency(LatencyConfig latency) {
+            this.latency = latency;
+        }
+
+        public Optional<LatencyConfig> latency() {
+            return Optional.ofNullable(latency);
+        }
     }
 
     public static class EndpointConfig {
@@ -67,4 +125,123 @@ public class SnsModule extends AbstractDwModule {
             return Optional.ofNullable(endpoint);
         }
     }
+
+    /**
+     * Publish buffering.  Messages for a topic are sent in one PublishBatch call once <code>maxBatchSize</code>
+     * messages or <code>maxBatchBytes</code> of payload are buffered, or once the first has waited
+     * <code>maxLingerMillis</code>.
+     */
+    public static class BufferConfig {
+        private int maxBatchSize = 10;
+        private long maxBatchBytes = 262144;
+        private long maxLingerMillis = 20;
+        private int senderThreads = 10;
+        private long drainTimeoutMillis = 20000;
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        public long getMaxBatchBytes() {
+            return maxBatchBytes;
+        }
+
+        public void setMaxBatchBytes(long maxBatchBytes) {
+            this.maxBatchBytes = maxBatchBytes;
+        }
+
+        public long getMaxLingerMillis() {
+            return maxLingerMillis;
+        }
+
+        public void setMaxLingerMillis(long maxLingerMillis) {
+            this.maxLingerMillis = maxLingerMillis;
+        }
+
+        /**
+         * Most batch calls in flight at once across all topics.
+         */
+        public int getSenderThreads() {
+            return senderThreads;
+        }
+
+        public void setSenderThreads(int senderThreads) {
+            this.senderThreads = senderThreads;
+        }
+
+        /**
+         * Longest to wait on stop for buffered messages to be published.
+         */
+        public long getDrainTimeoutMillis() {
+            return drainTimeoutMillis;
+        }
+
+        public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+            this.drainTimeoutMillis = drainTimeoutMillis;
+        }
+    }
+
+    /**
+     * Latency-aware endpoint selection.  Each call goes to the endpoint with the lowest moving latency estimate,
+     * and endpoints failing with service or network errors are left out until a probe call succeeds.
+     */
+    public static class LatencyConfig {
+        private long decayMillis = 10000;
+        private long errorPenaltyMillis = 5000;
+        private double hedgePercentile;
+        private long minHedgeDelayMillis = 5;
+
+        /**
+         * How quickly an endpoint's estimate forgets slow calls.
+         */
+        public long getDecayMillis() {
+            return decayMillis;
+        }
+
+        public void setDecayMillis(long decayMillis) {
+            this.decayMillis = decayMillis;
+        }
+
+        /**
+         * The latency a failed call counts as.
+         */
+        public long getErrorPenaltyMillis() {
+            return errorPenaltyMillis;
+        }
+
+        public void setErrorPenaltyMillis(long errorPenaltyMillis) {
+            this.errorPenaltyMillis = errorPenaltyMillis;
+        }
+
+        /**
+         * Calls running longer than this percentile of the endpoint's latency, e.g. 0.95, are also sent to the
+         * next best endpoint.  A hedged publish may be delivered twice.  Hedging is off when 0.
+         */
+        public double getHedgePercentile() {
+            return hedgePercentile;
+        }
+
+        public void setHedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = hedgePercentile;
+        }
+
+        /**
+         * The shortest a call runs before it is hedged.
+         */
+        public long getMinHedgeDelayMillis() {
+            return minHedgeDelayMillis;
+        }
+
+        public void setMinHedgeDelayMillis(long minHedgeDelayMillis) {
+            this.minHedgeDelayMillis = minHedgeDelayMillis;
+        }
+
+        public boolean hedging() {
+            return hedgePercentile > 0;
+        }
+    }
 }
@@ -5,6 +5,7 @@ import com.amazonaws.ResponseMetadata;
 import com.amazonaws.services.sns.model.*;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface SnsService {
 
@@ -162,6 +163,25 @@ public interface SnsService {
         String subject
     );
 
+    /**
+     * Publish without waiting on the call.  Services with a publish buffer configured send the message in a batch
+     * with others for the same topic; the default publishes it right away on the calling thread.
+     *
+     * @param publishRequest the message to publish
+     * @return completed with the result, or exceptionally with the failure
+     */
+    default CompletableFuture<PublishResult> publishAsync(
+        PublishRequest publishRequest
+    ) {
+        CompletableFuture<PublishResult> future = new CompletableFuture<>();
+        try {
+            future.complete(publish(publishRequest));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     RemovePermissionResult removePermission(
         RemovePermissionRequest removePermissionRequest
     );
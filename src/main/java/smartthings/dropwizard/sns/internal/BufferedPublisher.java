@@ -0,0 +1,304 @@
+package smartthings.dropwizard.sns.internal;
+
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.services.sns.model.AmazonSNSException;
+import com.amazonaws.services.sns.model.BatchResultErrorEntry;
+import com.amazonaws.services.sns.model.MessageAttributeValue;
+import com.amazonaws.services.sns.model.PublishBatchRequest;
+import com.amazonaws.services.sns.model.PublishBatchRequestEntry;
+import com.amazonaws.services.sns.model.PublishBatchResult;
+import com.amazonaws.services.sns.model.PublishBatchResultEntry;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.PublishResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.aws.internal.codec.Utf8;
+import smartthings.dropwizard.sns.SnsModule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Buffers published messages per topic and sends each batch in one PublishBatch call.  Callers enqueue without
+ * locking; a topic's batch is flushed once it is full, once its payload reaches the configured size or once its
+ * first message has waited for the configured linger time.
+ *
+ * <p>Batches of a FIFO topic are sent one after another so that the topic sees its messages in order.
+ */
+public class BufferedPublisher {
+
+    static final int MAX_BATCH_SIZE = 10;
+    static final long MAX_BATCH_BYTES = 262144;
+
+    private static final Logger log = LoggerFactory.getLogger(BufferedPublisher.class);
+
+    private final Function<PublishBatchRequest, PublishBatchResult> publisher;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService senders;
+    private final int maxBatchSize;
+    private final long maxBatchBytes;
+    private final long maxLingerMillis;
+    private final Map<String, TopicBuffer> topics = new ConcurrentHashMap<>();
+
+    /**
+     * @param publisher sends a batch to a topic
+     * @param config the buffer configuration
+     * @param scheduler runs linger and size flushes
+     * @param senders runs the batch calls
+     */
+    public BufferedPublisher(
+        Function<PublishBatchRequest, PublishBatchResult> publisher,
+        SnsModule.BufferConfig config,
+        ScheduledExecutorService scheduler,
+        ExecutorService senders
+    ) {
+        this.publisher = publisher;
+        this.scheduler = scheduler;
+        this.senders = senders;
+        this.maxBatchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, config.getMaxBatchSize()));
+        this.maxBatchBytes = Math.max(1, Math.min(MAX_BATCH_BYTES, config.getMaxBatchBytes()));
+        this.maxLingerMillis = Math.max(0, config.getMaxLingerMillis());
+    }
+
+    /**
+     * @param request the message to publish, which must name a topic
+     * @return completed with the message's result once its batch has been sent
+     */
+    public CompletableFuture<PublishResult> publish(PublishRequest request) {
+        if (request.getTopicArn() == null) {
+            throw new IllegalArgumentException("Only messages published to a topic can be batched.");
+        }
+        return topics.computeIfAbsent(request.getTopicArn(), TopicBuffer::new)
+            .enqueue(request, payloadSize(request));
+    }
+
+    /**
+     * Send every buffered message regardless of batch size or linger time.
+     */
+    public void flush() {
+        topics.values().forEach(TopicBuffer::flush);
+    }
+
+    /**
+     * Flush, then wait for the batch calls in flight to complete.
+     *
+     * @param timeout the longest to wait
+     * @param unit the unit of the timeout
+     * @return whether every batch completed in time
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        flush();
+        scheduler.shutdown();
+        try {
+            // FIFO batches are handed to the senders one at a time, so wait for them before refusing new work.
+            CompletableFuture<?>[] tails = topics.values().stream()
+                .map(topic -> topic.tail)
+                .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(tails).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            senders.shutdown();
+            return senders.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            senders.shutdown();
+            return false;
+        }
+    }
+
+    static PublishResult join(CompletableFuture<PublishResult> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    static long payloadSize(PublishRequest request) {
+        long size = Utf8.length(request.getMessage()) + Utf8.length(request.getSubject());
+        for (Map.Entry<String, MessageAttributeValue> attribute : request.getMessageAttributes().entrySet()) {
+            MessageAttributeValue value = attribute.getValue();
+            size += Utf8.length(attribute.getKey()) + Utf8.length(value.getDataType());
+            size += Utf8.length(value.getStringValue());
+            if (value.getBinaryValue() != null) {
+                size += value.getBinaryValue().remaining();
+            }
+        }
+        return size;
+    }
+
+    private void send(String topicArn, List<PendingPublish> batch) {
+        log.debug("Publishing SNS batch topic={} size={}", topicArn, batch.size());
+        List<PublishBatchRequestEntry> entries = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            PublishRequest request = batch.get(i).request;
+            entries.add(new PublishBatchRequestEntry()
+                .withId(String.valueOf(i))
+                .withMessage(request.getMessage())
+                .withSubject(request.getSubject())
+                .withMessageStructure(request.getMessageStructure())
+                .withMessageAttributes(request.getMessageAttributes())
+                .withMessageGroupId(request.getMessageGroupId())
+                .withMessageDeduplicationId(request.getMessageDeduplicationId()));
+        }
+
+        PublishBatchResult result;
+        try {
+            result = publisher.apply(new PublishBatchRequest()
+                .withTopicArn(topicArn)
+                .withPublishBatchRequestEntries(entries));
+        } catch (RuntimeException e) {
+            batch.forEach(pending -> pending.future.completeExceptionally(e));
+            return;
+        }
+
+        for (PublishBatchResultEntry entry : result.getSuccessful()) {
+            batch.get(Integer.parseInt(entry.getId())).future.complete(new PublishResult()
+                .withMessageId(entry.getMessageId())
+                .withSequenceNumber(entry.getSequenceNumber()));
+        }
+        for (BatchResultErrorEntry entry : result.getFailed()) {
+            batch.get(Integer.parseInt(entry.getId())).future.completeExceptionally(toException(entry));
+        }
+        // Only entries SNS left out of both lists are still pending.
+        batch.forEach(pending -> pending.future.completeExceptionally(
+            new IllegalStateException("SNS returned no result for a message of the batch.")
+        ));
+    }
+
+    private static AmazonSNSException toException(BatchResultErrorEntry entry) {
+        boolean senderFault = Boolean.TRUE.equals(entry.getSenderFault());
+        AmazonSNSException e = new AmazonSNSException(entry.getMessage());
+        e.setServiceName("AmazonSNS");
+        e.setErrorCode(entry.getCode());
+        e.setErrorType(senderFault ? ErrorType.Client : ErrorType.Service);
+        e.setStatusCode(senderFault ? 400 : 500);
+        return e;
+    }
+
+    private class TopicBuffer {
+        private final String topicArn;
+        private final boolean fifo;
+        private final Queue<PendingPublish> buffer = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger bufferedCount = new AtomicInteger();
+        private final AtomicLong bufferedBytes = new AtomicLong();
+        private final ReentrantLock drainLock = new ReentrantLock();
+        private volatile CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+        TopicBuffer(String topicArn) {
+            this.topicArn = topicArn;
+            this.fifo = topicArn.endsWith(".fifo");
+        }
+
+        CompletableFuture<PublishResult> enqueue(PublishRequest request, long size) {
+            PendingPublish pending = new PendingPublish(request, size);
+            buffer.add(pending);
+            int count = bufferedCount.incrementAndGet();
+            long bytes = bufferedBytes.addAndGet(size);
+
+            try {
+                if (count >= maxBatchSize || bytes >= maxBatchBytes) {
+                    scheduler.execute(this::flushFullBatches);
+                } else if (count == 1) {
+                    scheduler.schedule(this::flush, maxLingerMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (RejectedExecutionException e) {
+                // Shutting down, so send right away rather than leave the message behind.
+                flush();
+            }
+            return pending.future;
+        }
+
+        void flush() {
+            sendBatches(false);
+        }
+
+        private void flushFullBatches() {
+            sendBatches(true);
+            // Whatever is left over no longer has a linger flush pending.
+            if (bufferedCount.get() > 0) {
+                scheduler.schedule(this::flush, maxLingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void sendBatches(boolean fullOnly) {
+            drainLock.lock();
+            try {
+                List<PendingPublish> batch;
+                while (!(batch = drainBatch(fullOnly)).isEmpty()) {
+                    dispatch(batch);
+                }
+            } finally {
+                drainLock.unlock();
+            }
+        }
+
+        private void dispatch(List<PendingPublish> batch) {
+            Runnable call = () -> send(topicArn, batch);
+            if (fifo) {
+                tail = tail.thenRunAsync(call, senders).exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    batch.forEach(pending -> pending.future.completeExceptionally(cause));
+                    return null;
+                });
+                return;
+            }
+            try {
+                senders.execute(call);
+            } catch (RejectedExecutionException e) {
+                batch.forEach(pending -> pending.future.completeExceptionally(e));
+            }
+        }
+
+        private List<PendingPublish> drainBatch(boolean fullOnly) {
+            if (fullOnly && bufferedCount.get() < maxBatchSize && bufferedBytes.get() < maxBatchBytes) {
+                return new ArrayList<>(0);
+            }
+            List<PendingPublish> batch = new ArrayList<>(maxBatchSize);
+            long bytes = 0;
+            PendingPublish next;
+            while (batch.size() < maxBatchSize && (next = buffer.peek()) != null) {
+                if (!batch.isEmpty() && bytes + next.size > maxBatchBytes) {
+                    break;
+                }
+                buffer.poll();
+                bytes += next.size;
+                batch.add(next);
+            }
+            bufferedCount.addAndGet(-batch.size());
+            bufferedBytes.addAndGet(-bytes);
+            return batch;
+        }
+    }
+
+    private static class PendingPublish {
+        private final PublishRequest request;
+        private final long size;
+        private final CompletableFuture<PublishResult> future = new CompletableFuture<>();
+
+        PendingPublish(PublishRequest request, long size) {
+            this.request = request;
+            this.size = size;
+        }
+    }
+}
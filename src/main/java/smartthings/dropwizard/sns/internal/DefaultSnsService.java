@@ -11,17 +11,34 @@ import io.dropwizard.lifecycle.Managed;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnStateTransitionEvent;
+import io.vavr.control.Try;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.aws.PayloadCodec;
+import smartthings.dropwizard.aws.internal.backoff.Backoff;
+import smartthings.dropwizard.aws.internal.backoff.BackoffScheduler;
+import smartthings.dropwizard.aws.internal.codec.PayloadCodecs;
+import smartthings.dropwizard.aws.internal.codec.PayloadCompressor;
 import smartthings.dropwizard.sns.AmazonSNSProvider;
 import smartthings.dropwizard.sns.SnsModule;
 import smartthings.dropwizard.sns.SnsService;
 
+import java.time.Duration;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
-import java.util.function.Supplier;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static io.github.resilience4j.circuitbreaker.CircuitBreaker.decorateSupplier;
@@ -36,6 +53,13 @@ public class DefaultSnsService implements SnsService, Managed {
     private final AtomicReference<AmazonSNS> activeClient = new AtomicReference<>();
     private final CircuitBreaker breaker;
     private final LongAdder pos = new LongAdder();
+    private final Backoff backoff = Backoff.defaults();
+    private BackoffScheduler halfOpenScheduler;
+    private ScheduledExecutorService timer;
+    private PayloadCompressor compressor;
+    private BufferedPublisher buffered;
+    private LatencyAwareRouter router;
+    private ExecutorService hedgeExecutor;
 
     @Inject
     public DefaultSnsService(SnsModule.Config config, AmazonSNSProvider provider) {
@@ -51,7 +75,34 @@ public class DefaultSnsService implements SnsService, Managed {
                 throw new IllegalArgumentException("SNS must have at least 1 endpoint configured when enabled.");
             }
             this.activeClient.set(this.clients.get(0));
+            config.latency().ifPresent(latency -> {
+                if (latency.hedging()) {
+                    this.hedgeExecutor = Executors.newCachedThreadPool(daemon("sns-hedge"));
+                }
+                this.router = new LatencyAwareRouter(clients, latency, hedgeExecutor);
+            });
+            config.buffer().ifPresent(buffer -> this.buffered = new BufferedPublisher(
+                this::publishBatch,
+                buffer,
+                Executors.newSingleThreadScheduledExecutor(daemon("sns-buffer")),
+                Executors.newFixedThreadPool(Math.max(1, buffer.getSenderThreads()), daemon("sns-publisher"))
+            ));
         }
+        setPayloadCodecs(Collections.emptySet());
+    }
+
+    /**
+     * Make the application's codecs available for compression, alongside the built-in ones.
+     */
+    @Inject(optional = true)
+    public void setPayloadCodecs(Set<PayloadCodec> codecs) {
+        this.compressor = config.compression().map(compression -> {
+            PayloadCodec codec = PayloadCodecs.byName(codecs).get(compression.getCodec());
+            if (codec == null) {
+                throw new IllegalArgumentException("No SNS payload codec is bound for " + compression.getCodec());
+            }
+            return new PayloadCompressor(codec, compression.getThresholdBytes(), compression.getMaxDecodedBytes());
+        }).orElse(null);
     }
 
     @Override
@@ -68,30 +119,49 @@ public class DefaultSnsService implements SnsService, Managed {
     @Override
     public CreateTopicResult createTopic(CreateTopicRequest request) {
         LOG.trace("creating sns topic request={}", request);
-        return decorateAndGet(() -> sns().createTopic(request));
+        return decorateAndGet(client -> client.createTopic(request));
     }
 
     @Override
     public SubscribeResult subscribe(SubscribeRequest request) {
         LOG.trace("subscribing to sns topic request={}", request);
-        return decorateAndGet(() -> sns().subscribe(request));
+        return decorateAndGet(client -> client.subscribe(request));
     }
 
     @Override
     public PublishResult publish(PublishRequest request) {
         LOG.trace("publishing to sns topic request={}", request);
-        return decorateAndGet(() -> sns().publish(request));
+        PublishRequest compressed = compress(request);
+        if (buffered != null && compressed.getTopicArn() != null) {
+            return BufferedPublisher.join(buffered.publish(compressed));
+        }
+        return decorateAndGet(client -> client.publish(compressed));
+    }
+
+    @Override
+    public CompletableFuture<PublishResult> publishAsync(PublishRequest request) {
+        if (buffered == null || request.getTopicArn() == null) {
+            return SnsService.super.publishAsync(request);
+        }
+        LOG.trace("buffering publish to sns topic request={}", request);
+        try {
+            return buffered.publish(compress(request));
+        } catch (IllegalArgumentException e) {
+            CompletableFuture<PublishResult> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
     }
 
     @Override
     public DeleteTopicResult deleteTopic(DeleteTopicRequest request) {
         LOG.debug("deleting sns topic request={}", request);
-        return decorateAndGet(() -> sns().deleteTopic(request));
+        return decorateAndGet(client -> client.deleteTopic(request));
     }
 
     @Override
     public AddPermissionResult addPermission(AddPermissionRequest request) {
-        return decorateAndGet(() -> sns().addPermission(request));
+        return decorateAndGet(client -> client.addPermission(request));
     }
 
     @Override
@@ -101,19 +171,19 @@ public class DefaultSnsService implements SnsService, Managed {
         List<String> aWSAccountIds,
         List<String> actionNames
     ) {
-        return decorateAndGet(() -> sns().addPermission(topicArn, label, actionNames, actionNames));
+        return decorateAndGet(client -> client.addPermission(topicArn, label, actionNames, actionNames));
     }
 
     @Override
     public CheckIfPhoneNumberIsOptedOutResult checkIfPhoneNumberIsOptedOut(
         CheckIfPhoneNumberIsOptedOutRequest request
     ) {
-        return decorateAndGet(() -> sns().checkIfPhoneNumberIsOptedOut(request));
+        return decorateAndGet(client -> client.checkIfPhoneNumberIsOptedOut(request));
     }
 
     @Override
     public ConfirmSubscriptionResult confirmSubscription(ConfirmSubscriptionRequest request) {
-        return decorateAndGet(() -> sns().confirmSubscription(request));
+        return decorateAndGet(client -> client.confirmSubscription(request));
     }
 
     @Override
@@ -122,201 +192,207 @@ public class DefaultSnsService implements SnsService, Managed {
         String token,
         String authenticateOnUnsubscribe
     ) {
-        return decorateAndGet(() -> sns().confirmSubscription(topicArn, token, authenticateOnUnsubscribe));
+        return decorateAndGet(client -> client.confirmSubscription(topicArn, token, authenticateOnUnsubscribe));
     }
 
     @Override
     public ConfirmSubscriptionResult confirmSubscription(String topicArn, String token) {
-        return decorateAndGet(() -> sns().confirmSubscription(topicArn, token));
+        return decorateAndGet(client -> client.confirmSubscription(topicArn, token));
     }
 
     @Override
     public CreatePlatformApplicationResult createPlatformApplication(
         CreatePlatformApplicationRequest request
     ) {
-        return decorateAndGet(() -> sns().createPlatformApplication(request));
+        return decorateAndGet(client -> client.createPlatformApplication(request));
     }
 
     @Override
     public CreatePlatformEndpointResult createPlatformEndpoint(CreatePlatformEndpointRequest request) {
-        return decorateAndGet(() -> sns().createPlatformEndpoint(request));
+        return decorateAndGet(client -> client.createPlatformEndpoint(request));
     }
 
     @Override
     public CreateTopicResult createTopic(String name) {
-        return decorateAndGet(() -> sns().createTopic(name));
+        return decorateAndGet(client -> client.createTopic(name));
     }
 
     @Override
     public DeleteEndpointResult deleteEndpoint(DeleteEndpointRequest request) {
-        return decorateAndGet(() -> sns().deleteEndpoint(request));
+        return decorateAndGet(client -> client.deleteEndpoint(request));
     }
 
     @Override
     public DeletePlatformApplicationResult deletePlatformApplication(
         DeletePlatformApplicationRequest request
     ) {
-        return decorateAndGet(() -> sns().deletePlatformApplication(request));
+        return decorateAndGet(client -> client.deletePlatformApplication(request));
     }
 
     @Override
     public DeleteTopicResult deleteTopic(String topicArn) {
-        return decorateAndGet(() -> sns().deleteTopic(topicArn));
+        return decorateAndGet(client -> client.deleteTopic(topicArn));
     }
 
     @Override
     public GetEndpointAttributesResult getEndpointAttributes(GetEndpointAttributesRequest request) {
-        return decorateAndGet(() -> sns().getEndpointAttributes(request));
+        return decorateAndGet(client -> client.getEndpointAttributes(request));
     }
 
     @Override
     public GetPlatformApplicationAttributesResult getPlatformApplicationAttributes(
         GetPlatformApplicationAttributesRequest request
     ) {
-        return decorateAndGet(() -> sns().getPlatformApplicationAttributes(request));
+        return decorateAndGet(client -> client.getPlatformApplicationAttributes(request));
     }
 
     @Override
     public GetSMSAttributesResult getSMSAttributes(GetSMSAttributesRequest request) {
-        return decorateAndGet(() -> sns().getSMSAttributes(request));
+        return decorateAndGet(client -> client.getSMSAttributes(request));
     }
 
     @Override
     public GetSubscriptionAttributesResult getSubscriptionAttributes(
         GetSubscriptionAttributesRequest request
     ) {
-        return decorateAndGet(() -> sns().getSubscriptionAttributes(request));
+        return decorateAndGet(client -> client.getSubscriptionAttributes(request));
     }
 
     @Override
     public GetSubscriptionAttributesResult getSubscriptionAttributes(String subscriptionArn) {
-        return decorateAndGet(() -> sns().getSubscriptionAttributes(subscriptionArn));
+        return decorateAndGet(client -> client.getSubscriptionAttributes(subscriptionArn));
     }
 
     @Override
     public GetTopicAttributesResult getTopicAttributes(GetTopicAttributesRequest request) {
-        return decorateAndGet(() -> sns().getTopicAttributes(request));
+        return decorateAndGet(client -> client.getTopicAttributes(request));
     }
 
     @Override
     public GetTopicAttributesResult getTopicAttributes(String topicArn) {
-        return decorateAndGet(() -> sns().getTopicAttributes(topicArn));
+        return decorateAndGet(client -> client.getTopicAttributes(topicArn));
     }
 
     @Override
     public ListEndpointsByPlatformApplicationResult listEndpointsByPlatformApplication(
         ListEndpointsByPlatformApplicationRequest request
     ) {
-        return decorateAndGet(() -> sns().listEndpointsByPlatformApplication(request));
+        return decorateAndGet(client -> client.listEndpointsByPlatformApplication(request));
     }
 
     @Override
     public ListPhoneNumbersOptedOutResult listPhoneNumbersOptedOut(ListPhoneNumbersOptedOutRequest request) {
-        return decorateAndGet(() -> sns().listPhoneNumbersOptedOut(request));
+        return decorateAndGet(client -> client.listPhoneNumbersOptedOut(request));
     }
 
     @Override
     public ListPlatformApplicationsResult listPlatformApplications(ListPlatformApplicationsRequest request) {
-        return decorateAndGet(() -> sns().listPlatformApplications(request));
+        return decorateAndGet(client -> client.listPlatformApplications(request));
     }
 
     @Override
     public ListPlatformApplicationsResult listPlatformApplications() {
-        return decorateAndGet(() -> sns().listPlatformApplications());
+        return decorateAndGet(client -> client.listPlatformApplications());
     }
 
     @Override
     public ListSubscriptionsResult listSubscriptions(ListSubscriptionsRequest request) {
-        return decorateAndGet(() -> sns().listSubscriptions(request));
+        return decorateAndGet(client -> client.listSubscriptions(request));
     }
 
     @Override
     public ListSubscriptionsResult listSubscriptions() {
-        return decorateAndGet(() -> sns().listSubscriptions());
+        return decorateAndGet(client -> client.listSubscriptions());
     }
 
     @Override
     public ListSubscriptionsResult listSubscriptions(String nextToken) {
-        return decorateAndGet(() -> sns().listSubscriptions(nextToken));
+        return decorateAndGet(client -> client.listSubscriptions(nextToken));
     }
 
     @Override
     public ListSubscriptionsByTopicResult listSubscriptionsByTopic(ListSubscriptionsByTopicRequest request) {
-        return decorateAndGet(() -> sns().listSubscriptionsByTopic(request));
+        return decorateAndGet(client -> client.listSubscriptionsByTopic(request));
     }
 
     @Override
     public ListSubscriptionsByTopicResult listSubscriptionsByTopic(String topicArn) {
-        return decorateAndGet(() -> sns().listSubscriptionsByTopic(topicArn));
+        return decorateAndGet(client -> client.listSubscriptionsByTopic(topicArn));
     }
 
     @Override
     public ListSubscriptionsByTopicResult listSubscriptionsByTopic(String topicArn, String nextToken) {
-        return decorateAndGet(() -> sns().listSubscriptionsByTopic(topicArn, nextToken));
+        return decorateAndGet(client -> client.listSubscriptionsByTopic(topicArn, nextToken));
     }
 
     @Override
     public ListTopicsResult listTopics(ListTopicsRequest request) {
-        return decorateAndGet(() -> sns().listTopics(request));
+        return decorateAndGet(client -> client.listTopics(request));
     }
 
     @Override
     public ListTopicsResult listTopics() {
-        return decorateAndGet(() -> sns().listTopics());
+        return decorateAndGet(client -> client.listTopics());
     }
 
     @Override
     public ListTopicsResult listTopics(String nextToken) {
-        return decorateAndGet(() -> sns().listTopics(nextToken));
+        return decorateAndGet(client -> client.listTopics(nextToken));
     }
 
     @Override
     public OptInPhoneNumberResult optInPhoneNumber(OptInPhoneNumberRequest request) {
-        return decorateAndGet(() -> sns().optInPhoneNumber(request));
+        return decorateAndGet(client -> client.optInPhoneNumber(request));
     }
 
     @Override
     public PublishResult publish(String topicArn, String message) {
-        return decorateAndGet(() -> sns().publish(topicArn, message));
+        if (compressor != null || buffered != null) {
+            return publish(new PublishRequest(topicArn, message));
+        }
+        return decorateAndGet(client -> client.publish(topicArn, message));
     }
 
     @Override
     public PublishResult publish(String topicArn, String message, String subject) {
-        return decorateAndGet(() -> sns().publish(topicArn, message, subject));
+        if (compressor != null || buffered != null) {
+            return publish(new PublishRequest(topicArn, message, subject));
+        }
+        return decorateAndGet(client -> client.publish(topicArn, message, subject));
     }
 
     @Override
     public RemovePermissionResult removePermission(RemovePermissionRequest request) {
-        return decorateAndGet(() -> sns().removePermission(request));
+        return decorateAndGet(client -> client.removePermission(request));
     }
 
     @Override
     public RemovePermissionResult removePermission(String topicArn, String label) {
-        return decorateAndGet(() -> sns().removePermission(topicArn, label));
+        return decorateAndGet(client -> client.removePermission(topicArn, label));
     }
 
     @Override
     public SetEndpointAttributesResult setEndpointAttributes(SetEndpointAttributesRequest request) {
-        return decorateAndGet(() -> sns().setEndpointAttributes(request));
+        return decorateAndGet(client -> client.setEndpointAttributes(request));
     }
 
     @Override
     public SetPlatformApplicationAttributesResult setPlatformApplicationAttributes(
         SetPlatformApplicationAttributesRequest request
     ) {
-        return decorateAndGet(() -> sns().setPlatformApplicationAttributes(request));
+        return decorateAndGet(client -> client.setPlatformApplicationAttributes(request));
     }
 
     @Override
     public SetSMSAttributesResult setSMSAttributes(SetSMSAttributesRequest request) {
-        return decorateAndGet(() -> sns().setSMSAttributes(request));
+        return decorateAndGet(client -> client.setSMSAttributes(request));
     }
 
     @Override
     public SetSubscriptionAttributesResult setSubscriptionAttributes(
         SetSubscriptionAttributesRequest request
     ) {
-        return decorateAndGet(() -> sns().setSubscriptionAttributes(request));
+        return decorateAndGet(client -> client.setSubscriptionAttributes(request));
     }
 
     @Override
@@ -325,12 +401,14 @@ public class DefaultSnsService implements SnsService, Managed {
         String attributeName,
         String attributeValue
     ) {
-        return decorateAndGet(() -> sns().setSubscriptionAttributes(subscriptionArn, attributeName, attributeValue));
+        return decorateAndGet(client ->
+            client.setSubscriptionAttributes(subscriptionArn, attributeName, attributeValue)
+        );
     }
 
     @Override
     public SetTopicAttributesResult setTopicAttributes(SetTopicAttributesRequest request) {
-        return decorateAndGet(() -> sns().setTopicAttributes(request));
+        return decorateAndGet(client -> client.setTopicAttributes(request));
     }
 
     @Override
@@ -339,31 +417,39 @@ public class DefaultSnsService implements SnsService, Managed {
         String attributeName,
         String attributeValue
     ) {
-        return decorateAndGet(() -> sns().setTopicAttributes(topicArn, attributeName, attributeValue));
+        return decorateAndGet(client -> client.setTopicAttributes(topicArn, attributeName, attributeValue));
     }
 
     @Override
     public SubscribeResult subscribe(String topicArn, String protocol, String endpoint) {
-        return decorateAndGet(() -> sns().subscribe(topicArn, protocol, endpoint));
+        return decorateAndGet(client -> client.subscribe(topicArn, protocol, endpoint));
     }
 
     @Override
     public UnsubscribeResult unsubscribe(UnsubscribeRequest request) {
-        return decorateAndGet(() -> sns().unsubscribe(request));
+        return decorateAndGet(client -> client.unsubscribe(request));
     }
 
     @Override
     public UnsubscribeResult unsubscribe(String subscriptionArn) {
-        return decorateAndGet(() -> sns().unsubscribe(subscriptionArn));
+        return decorateAndGet(client -> client.unsubscribe(subscriptionArn));
     }
 
     @Override
     public ResponseMetadata getCachedResponseMetadata(AmazonWebServiceRequest request) {
-        return decorateAndGet(() -> sns().getCachedResponseMetadata(request));
+        return decorateAndGet(client -> client.getCachedResponseMetadata(request));
     }
 
+    /**
+     * Move calls off the current endpoint.  With latency-aware selection the preferred endpoint is taken out of
+     * rotation until a probe succeeds; otherwise the next endpoint in turn becomes active.
+     */
     @Override
     public void triggerFailover() {
+        if (router != null) {
+            router.failover();
+            return;
+        }
         int size = this.clients.size();
 
         if (size <= 1) {
@@ -384,7 +470,25 @@ public class DefaultSnsService implements SnsService, Managed {
 
     @Override
     public void shutdown() {
+        if (buffered != null) {
+            long timeout = config.getBuffer().getDrainTimeoutMillis();
+            if (!buffered.shutdown(timeout, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Buffered SNS messages were not published within {}ms.", timeout);
+            }
+        }
         this.clients.forEach(AmazonSNS::shutdown);
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+        synchronized (this) {
+            if (timer != null) {
+                timer.shutdownNow();
+            }
+        }
+    }
+
+    private PublishBatchResult publishBatch(PublishBatchRequest request) {
+        return decorateAndGet(client -> client.publishBatch(request));
     }
 
     private AmazonSNS sns() {
@@ -394,6 +498,27 @@ public class DefaultSnsService implements SnsService, Managed {
         return activeClient.get();
     }
 
+    /**
+     * @return a copy of the request with its message compressed, the request itself if it is not compressed.
+     * Messages with a per-protocol JSON structure are never compressed.
+     */
+    private PublishRequest compress(PublishRequest request) {
+        if (compressor == null || request.getMessageStructure() != null) {
+            return request;
+        }
+        String message = compressor.compress(request.getMessage());
+        if (message == null) {
+            return request;
+        }
+        Map<String, MessageAttributeValue> attributes = new HashMap<>(request.getMessageAttributes());
+        attributes.put(PayloadCompressor.ENCODING_ATTRIBUTE, new MessageAttributeValue()
+            .withDataType("String")
+            .withStringValue(compressor.getCodecName()));
+        return request.clone()
+            .withMessage(message)
+            .withMessageAttributes(attributes);
+    }
+
     private boolean isAwsServiceError(Throwable t) {
         if (t instanceof AmazonServiceException) {
             int status = ((AmazonServiceException) t).getStatusCode();
@@ -406,19 +531,63 @@ public class DefaultSnsService implements SnsService, Managed {
         if (event.getStateTransition() == CircuitBreaker.StateTransition.CLOSED_TO_OPEN) {
             triggerFailover();
         }
+        switch (event.getStateTransition().getToState()) {
+            case OPEN:
+                scheduleHalfOpen();
+                break;
+            case CLOSED:
+                backoff.reset();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Let trial calls through after a jittered backoff so that instances tripped by the same outage do not all
+     * probe the endpoint at the same moment.  The breaker's own, longer, open duration is only a fallback.
+     */
+    private void scheduleHalfOpen() {
+        try {
+            long delay = halfOpenScheduler().schedule(Runnable::run, () -> {
+                if (breaker.getState() == CircuitBreaker.State.OPEN) {
+                    Try.run(breaker::transitionToHalfOpenState);
+                }
+            });
+            LOG.debug("SNS circuit is OPEN.  Half opening in {}ms", delay);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("SNS backoff timer is shut down.");
+        }
+    }
+
+    private synchronized BackoffScheduler halfOpenScheduler() {
+        if (halfOpenScheduler == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(daemon("sns-backoff"));
+            halfOpenScheduler = new BackoffScheduler(backoff, timer);
+        }
+        return halfOpenScheduler;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     private CircuitBreaker buildCircuitBreaker() {
         CircuitBreaker breaker = CircuitBreaker.of("sns", () ->
             CircuitBreakerConfig.custom()
                 .recordFailure(this::isAwsServiceError)
+                .waitDurationInOpenState(Duration.ofMillis(backoff.getMaxMillis() * 2))
                 .build()
         );
         breaker.getEventPublisher().onStateTransition(this::onStateChange);
         return breaker;
     }
 
-    private <T> T decorateAndGet(Supplier<T> supplier) {
-        return decorateSupplier(breaker, supplier).get();
+    private <T> T decorateAndGet(Function<AmazonSNS, T> call) {
+        return decorateSupplier(breaker, () -> router == null ? call.apply(sns()) : router.call(call)).get();
     }
 }
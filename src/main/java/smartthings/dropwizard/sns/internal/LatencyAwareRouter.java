@@ -0,0 +1,272 @@
+package smartthings.dropwizard.sns.internal;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.sns.AmazonSNS;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.aws.internal.backoff.Backoff;
+import smartthings.dropwizard.sns.SnsModule;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Routes each call to the SNS endpoint with the lowest expected latency: its {@link PeakEwma} estimate scaled by the
+ * calls it has in flight.  An endpoint that fails with a service or network error is taken out of rotation for a
+ * backoff period, after which a single call is let through as a probe; it rejoins once a call succeeds.
+ *
+ * <p>When hedging is configured, a call still running after the chosen endpoint's configured latency percentile is
+ * also sent to the next best endpoint, and whichever succeeds first is returned.  A hedged publish may therefore be
+ * delivered twice, as SNS may do anyway.
+ */
+public class LatencyAwareRouter {
+
+    // Too few samples make for a meaningless percentile.
+    static final int MIN_HEDGE_SAMPLES = 20;
+
+    private static final Logger log = LoggerFactory.getLogger(LatencyAwareRouter.class);
+    private static final long HEDGE_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final List<Endpoint> endpoints;
+    private final SnsModule.LatencyConfig config;
+    private final ExecutorService hedgeExecutor;
+    private final LongSupplier clock;
+
+    /**
+     * @param clients the endpoints' clients
+     * @param config the latency configuration
+     * @param hedgeExecutor runs hedged calls, null when hedging is not configured
+     */
+    public LatencyAwareRouter(List<AmazonSNS> clients, SnsModule.LatencyConfig config, ExecutorService hedgeExecutor) {
+        this(clients, config, hedgeExecutor, System::nanoTime);
+    }
+
+    LatencyAwareRouter(
+        List<AmazonSNS> clients,
+        SnsModule.LatencyConfig config,
+        ExecutorService hedgeExecutor,
+        LongSupplier clock
+    ) {
+        this.config = config;
+        this.hedgeExecutor = hedgeExecutor;
+        this.clock = clock;
+        long now = clock.getAsLong();
+        this.endpoints = clients.stream().map(client -> new Endpoint(client, now)).collect(Collectors.toList());
+    }
+
+    /**
+     * Make a call against the best endpoint.
+     *
+     * @param call the call
+     * @return the call's result
+     */
+    public <T> T call(Function<AmazonSNS, T> call) {
+        Endpoint primary = select(null);
+        long hedgeDelay = hedgeExecutor == null ? 0 : primary.hedgeDelayNanos(clock.getAsLong());
+        if (hedgeDelay <= 0) {
+            return invoke(primary, call);
+        }
+        return hedged(primary, call, hedgeDelay);
+    }
+
+    /**
+     * Take the currently preferred endpoint out of rotation, as if it had failed.
+     */
+    public void failover() {
+        Endpoint preferred = select(null);
+        if (endpoints.size() > 1) {
+            preferred.failed(clock.getAsLong());
+        }
+        preferred.probing.set(false);
+    }
+
+    private <T> T hedged(Endpoint primary, Function<AmazonSNS, T> call, long hedgeDelayNanos) {
+        CompletableFuture<T> first = CompletableFuture.supplyAsync(() -> invoke(primary, call), hedgeExecutor);
+        try {
+            return first.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            Endpoint secondary = select(primary);
+            if (secondary == null) {
+                return await(first);
+            }
+            log.trace("Hedging a slow SNS call after {}us", TimeUnit.NANOSECONDS.toMicros(hedgeDelayNanos));
+            CompletableFuture<T> second = CompletableFuture.supplyAsync(() -> invoke(secondary, call), hedgeExecutor);
+            return await(firstSuccessful(first, second));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortedException(e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private <T> T invoke(Endpoint endpoint, Function<AmazonSNS, T> call) {
+        endpoint.pending.incrementAndGet();
+        long start = clock.getAsLong();
+        try {
+            T result = call.apply(endpoint.client);
+            endpoint.succeeded(start, clock.getAsLong());
+            return result;
+        } catch (RuntimeException e) {
+            if (isEndpointFault(e)) {
+                log.debug("SNS endpoint call failed, taking it out of rotation.", e);
+                endpoint.failed(clock.getAsLong());
+            } else {
+                endpoint.succeeded(start, clock.getAsLong());
+            }
+            throw e;
+        } finally {
+            endpoint.pending.decrementAndGet();
+            endpoint.probing.set(false);
+        }
+    }
+
+    /**
+     * @param exclude an endpoint not to choose, null for none
+     * @return the best endpoint that is in rotation, or due a probe; when none is and nothing is excluded, the
+     * endpoint due back soonest; otherwise null
+     */
+    private Endpoint select(Endpoint exclude) {
+        long now = clock.getAsLong();
+        Endpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        Endpoint soonest = null;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint == exclude) {
+                continue;
+            }
+            if (endpoint.isDown()) {
+                if (endpoint.tryProbe(now)) {
+                    return endpoint;
+                }
+                if (soonest == null || endpoint.downUntil - soonest.downUntil < 0) {
+                    soonest = endpoint;
+                }
+                continue;
+            }
+            double score = endpoint.score(now);
+            if (score < bestScore) {
+                best = endpoint;
+                bestScore = score;
+            }
+        }
+        return best != null || exclude != null ? best : soonest;
+    }
+
+    private static boolean isEndpointFault(RuntimeException e) {
+        if (e instanceof AmazonServiceException) {
+            return ((AmazonServiceException) e).getStatusCode() >= 500;
+        }
+        return e instanceof SdkClientException;
+    }
+
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<T> attempt : Arrays.asList(first, second)) {
+            attempt.whenComplete((value, t) -> {
+                if (t == null) {
+                    result.complete(value);
+                } else if (failures.incrementAndGet() == 2) {
+                    result.completeExceptionally(t);
+                }
+            });
+        }
+        return result;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable t) {
+        Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new SdkClientException(cause);
+    }
+
+    private class Endpoint {
+        private final AmazonSNS client;
+        private final PeakEwma latency;
+        private final Histogram latencies = new Histogram(new ExponentiallyDecayingReservoir());
+        private final Backoff backoff = Backoff.defaults();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean probing = new AtomicBoolean();
+        private volatile boolean down;
+        private volatile long downUntil;
+        private volatile long hedgeDelayNanos;
+        private volatile long hedgeRefreshedAt;
+
+        Endpoint(AmazonSNS client, long now) {
+            this.client = client;
+            this.latency = new PeakEwma(TimeUnit.MILLISECONDS.toNanos(config.getDecayMillis()), now);
+            this.hedgeRefreshedAt = now - HEDGE_REFRESH_NANOS;
+        }
+
+        boolean isDown() {
+            return down;
+        }
+
+        boolean tryProbe(long now) {
+            return now - downUntil >= 0 && probing.compareAndSet(false, true);
+        }
+
+        double score(long now) {
+            double cost = latency.get(now);
+            int inFlight = pending.get();
+            if (cost == 0 && inFlight > 0) {
+                // No estimate yet, so spread concurrent calls rather than pile them onto a new endpoint.
+                return TimeUnit.MILLISECONDS.toNanos(config.getErrorPenaltyMillis()) + inFlight;
+            }
+            return cost * (inFlight + 1);
+        }
+
+        void succeeded(long start, long now) {
+            long elapsed = now - start;
+            latency.observe(elapsed, now);
+            latencies.update(elapsed);
+            if (down) {
+                log.info("SNS endpoint is back in rotation.");
+                down = false;
+                backoff.reset();
+            }
+        }
+
+        void failed(long now) {
+            latency.observe(TimeUnit.MILLISECONDS.toNanos(config.getErrorPenaltyMillis()), now);
+            downUntil = now + TimeUnit.MILLISECONDS.toNanos(backoff.nextDelayMillis());
+            down = true;
+        }
+
+        long hedgeDelayNanos(long now) {
+            if (now - hedgeRefreshedAt >= HEDGE_REFRESH_NANOS) {
+                hedgeRefreshedAt = now;
+                Snapshot snapshot = latencies.getSnapshot();
+                hedgeDelayNanos = snapshot.size() < MIN_HEDGE_SAMPLES ? 0 : Math.max(
+                    TimeUnit.MILLISECONDS.toNanos(config.getMinHedgeDelayMillis()),
+                    (long) snapshot.getValue(config.getHedgePercentile())
+                );
+            }
+            return hedgeDelayNanos;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package smartthings.dropwizard.sns.internal;
+
+/**
+ * A peak-sensitive moving average of latency.  A slower observation is taken as the new estimate straight away,
+ * while faster ones and idle time decay it with the configured time constant.  An endpoint that turns slow is
+ * therefore avoided at once, and earns its traffic back gradually once it recovers or has been left alone for a
+ * while.
+ */
+public class PeakEwma {
+
+    private final double decayNanos;
+    private double cost;
+    private long stamp;
+
+    /**
+     * @param decayNanos the time constant of the decay
+     * @param now the current {@link System#nanoTime()}
+     */
+    public PeakEwma(long decayNanos, long now) {
+        this.decayNanos = Math.max(1, decayNanos);
+        this.stamp = now;
+    }
+
+    /**
+     * @param latencyNanos the latency of a call
+     * @param now the current {@link System#nanoTime()}
+     */
+    public synchronized void observe(long latencyNanos, long now) {
+        if (latencyNanos > cost) {
+            cost = latencyNanos;
+        } else {
+            double weight = weight(now);
+            cost = cost * weight + latencyNanos * (1 - weight);
+        }
+        stamp = Math.max(stamp, now);
+    }
+
+    /**
+     * @param now the current {@link System#nanoTime()}
+     * @return the estimate in nanoseconds, decayed for the time since the last observation
+     */
+    public synchronized double get(long now) {
+        return cost * weight(now);
+    }
+
+    private double weight(long now) {
+        return Math.exp(-Math.max(0, now - stamp) / decayNanos);
+    }
+}
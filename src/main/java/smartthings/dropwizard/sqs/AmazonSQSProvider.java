@@ -1,7 +1,19 @@
 package smartthings.dropwizard.sqs;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.services.sqs.AmazonSQS;
 
 public interface AmazonSQSProvider {
     AmazonSQS get(SqsModule.EndpointConfig config);
+
+    /**
+     * Build a client using the given HTTP client settings.  Providers that do not talk HTTP may ignore them.
+     *
+     * @param config the endpoint to connect to
+     * @param clientConfiguration connection pool, timeout and compression settings for the endpoint
+     * @return the client
+     */
+    default AmazonSQS get(SqsModule.EndpointConfig config, ClientConfiguration clientConfiguration) {
+        return get(config);
+    }
 }
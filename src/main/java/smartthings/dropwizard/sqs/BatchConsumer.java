@@ -0,0 +1,38 @@
+package smartthings.dropwizard.sqs;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Interface for an SQS Consumer that processes received messages together, e.g. to write them downstream in a
+ * single call.  Batch consumers are configured like any other Consumer; each batch holds the messages of one
+ * receive or, when <code>batchLingerMillis</code> is configured, of several receives up to <code>batchSize</code>.
+ * Only the messages reported as successful are deleted from the queue.
+ */
+public interface BatchConsumer extends Consumer {
+
+    /**
+     * Invoked with a batch of messages received from SQS.
+     *
+     * @param messages the messages being consumed
+     * @return the messages that failed and should not be deleted, empty if all succeeded
+     * @throws Exception if an error occurs, in which case none of the messages are deleted
+     */
+    List<Message> consumeBatch(List<Message> messages) throws Exception;
+
+    /**
+     * Consumes a single message as a batch of one.
+     *
+     * @param message the message being consumed
+     * @throws Exception if an error occurs
+     */
+    @Override
+    default void consume(Message message) throws Exception {
+        List<Message> failed = consumeBatch(Collections.singletonList(message));
+        if (failed != null && !failed.isEmpty()) {
+            throw new IllegalStateException("Failed to consume message " + message.getMessageId());
+        }
+    }
+}
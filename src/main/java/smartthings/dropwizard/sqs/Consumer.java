@@ -18,7 +18,9 @@ public interface Consumer {
     void consume(Message message) throws Exception;
 
     /**
-     * Override to provide defaults to the sqs message request.
+     * Override to provide defaults to the sqs message request.  It is requested once per poller and reused for every
+     * receive; the wait time is the longest the poller will wait, and MaxNumberOfMessages defaults to the consumer's
+     * configured <code>receiveMaxMessages</code>.
      *
      * @return the <code>ReceiveMessageRequest</code>
      */
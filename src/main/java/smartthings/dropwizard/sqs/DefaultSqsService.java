@@ -1,22 +1,48 @@
 package smartthings.dropwizard.sqs;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
 import com.amazonaws.services.sqs.model.*;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import io.dropwizard.lifecycle.Managed;
+import smartthings.dropwizard.aws.internal.async.AsyncHandlerFuture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
- * Default implementation for communicating with AWS SQS.
+ * Default implementation for communicating with AWS SQS.  Asynchronous operations use the client's own async
+ * transport when given an <code>AmazonSQSAsync</code>, otherwise the blocking call is made on a separate pool of
+ * daemon threads, sized like the client's connection pool since extra threads would only wait for a connection.
  */
 @Singleton
 public class DefaultSqsService implements SqsService, Managed {
 
     private final AmazonSQS sqs;
+    private final AmazonSQSAsync sqsAsync;
+    private final ExecutorService fallbackExecutor;
 
     @Inject
     public DefaultSqsService(AmazonSQS sqs) {
+        this(sqs, ClientConfiguration.DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * @param sqs the client
+     * @param fallbackThreads the most blocking calls run at once for asynchronous operations, when the client is not
+     *                        an <code>AmazonSQSAsync</code>
+     */
+    public DefaultSqsService(AmazonSQS sqs, int fallbackThreads) {
         this.sqs = sqs;
+        this.sqsAsync = sqs instanceof AmazonSQSAsync ? (AmazonSQSAsync) sqs : null;
+        this.fallbackExecutor = sqsAsync == null ? fallbackExecutor(Math.max(1, fallbackThreads)) : null;
     }
 
     public void start() {
@@ -24,6 +50,9 @@ public class DefaultSqsService implements SqsService, Managed {
 
     public void stop() {
         sqs.shutdown();
+        if (fallbackExecutor != null) {
+            fallbackExecutor.shutdown();
+        }
     }
 
     @Override
@@ -31,18 +60,97 @@ public class DefaultSqsService implements SqsService, Managed {
         return sqs.deleteMessage(request);
     }
 
+    @Override
+    public DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest request) {
+        return sqs.deleteMessageBatch(request);
+    }
+
     @Override
     public SendMessageResult sendMessage(SendMessageRequest request) {
         return sqs.sendMessage(request);
     }
 
+    @Override
+    public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request) {
+        return sqs.sendMessageBatch(request);
+    }
+
     @Override
     public ReceiveMessageResult receiveMessage(ReceiveMessageRequest request) {
         return sqs.receiveMessage(request);
     }
 
+    @Override
+    public ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(
+        ChangeMessageVisibilityBatchRequest request
+    ) {
+        return sqs.changeMessageVisibilityBatch(request);
+    }
+
     @Override
     public GetQueueUrlResult getQueueUrl(String queueName) {
         return sqs.getQueueUrl(queueName);
     }
+
+    @Override
+    public GetQueueAttributesResult getQueueAttributes(GetQueueAttributesRequest request) {
+        return sqs.getQueueAttributes(request);
+    }
+
+    @Override
+    public CompletableFuture<DeleteMessageResult> deleteMessageAsync(DeleteMessageRequest request) {
+        if (sqsAsync == null) {
+            return fallback(() -> sqs.deleteMessage(request));
+        }
+        AsyncHandlerFuture<DeleteMessageRequest, DeleteMessageResult> future = new AsyncHandlerFuture<>();
+        sqsAsync.deleteMessageAsync(request, future);
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResult> sendMessageAsync(SendMessageRequest request) {
+        if (sqsAsync == null) {
+            return fallback(() -> sqs.sendMessage(request));
+        }
+        AsyncHandlerFuture<SendMessageRequest, SendMessageResult> future = new AsyncHandlerFuture<>();
+        sqsAsync.sendMessageAsync(request, future);
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<ReceiveMessageResult> receiveMessageAsync(ReceiveMessageRequest request) {
+        if (sqsAsync == null) {
+            return fallback(() -> sqs.receiveMessage(request));
+        }
+        AsyncHandlerFuture<ReceiveMessageRequest, ReceiveMessageResult> future = new AsyncHandlerFuture<>();
+        sqsAsync.receiveMessageAsync(request, future);
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<GetQueueUrlResult> getQueueUrlAsync(String queueName) {
+        if (sqsAsync == null) {
+            return fallback(() -> sqs.getQueueUrl(queueName));
+        }
+        AsyncHandlerFuture<GetQueueUrlRequest, GetQueueUrlResult> future = new AsyncHandlerFuture<>();
+        sqsAsync.getQueueUrlAsync(new GetQueueUrlRequest(queueName), future);
+        return future;
+    }
+
+    private static ExecutorService fallbackExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "sqs-async-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private <T> CompletableFuture<T> fallback(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, fallbackExecutor);
+    }
 }
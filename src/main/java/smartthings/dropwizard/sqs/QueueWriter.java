@@ -4,6 +4,7 @@ import com.amazonaws.services.sqs.model.MessageAttributeValue;
 import com.amazonaws.services.sqs.model.SendMessageResult;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface QueueWriter {
     SendMessageResult sendMessage(String messageBody);
@@ -11,4 +12,77 @@ public interface QueueWriter {
     SendMessageResult sendMessage(String messageBody, Integer delaySeconds);
 
     SendMessageResult sendMessage(String messageBody, Integer delaySeconds, Map<String, MessageAttributeValue> attributeValueMap);
+
+    default CompletableFuture<SendMessageResult> sendMessageAsync(String messageBody) {
+        return sendMessageAsync(messageBody, null, null);
+    }
+
+    default CompletableFuture<SendMessageResult> sendMessageAsync(String messageBody, Integer delaySeconds) {
+        return sendMessageAsync(messageBody, delaySeconds, null);
+    }
+
+    /**
+     * Send a message, completing the returned future once SQS has accepted it.  Unless overridden the message is
+     * sent synchronously on the calling thread.
+     */
+    default CompletableFuture<SendMessageResult> sendMessageAsync(
+        String messageBody,
+        Integer delaySeconds,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        CompletableFuture<SendMessageResult> future = new CompletableFuture<>();
+        try {
+            future.complete(sendMessage(messageBody, delaySeconds, attributeValueMap));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Send a message to a FIFO queue.  Messages with the same group ID are delivered in the order they were sent.
+     *
+     * @param messageBody the message body
+     * @param messageGroupId the group the message is ordered within
+     * @return the result
+     */
+    default SendMessageResult sendFifoMessage(String messageBody, String messageGroupId) {
+        return sendFifoMessage(messageBody, messageGroupId, null, null);
+    }
+
+    /**
+     * Send a message to a FIFO queue.  Messages with the same group ID are delivered in the order they were sent.
+     *
+     * @param messageBody the message body
+     * @param messageGroupId the group the message is ordered within
+     * @param deduplicationId sends with an ID seen in the last five minutes are dropped, or null to deduplicate by
+     *                        content
+     * @param attributeValueMap message attributes, may be null
+     * @return the result
+     */
+    SendMessageResult sendFifoMessage(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    );
+
+    /**
+     * Send a message to a FIFO queue, completing the returned future once SQS has accepted it.  Unless overridden
+     * the message is sent synchronously on the calling thread.
+     */
+    default CompletableFuture<SendMessageResult> sendFifoMessageAsync(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        CompletableFuture<SendMessageResult> future = new CompletableFuture<>();
+        try {
+            future.complete(sendFifoMessage(messageBody, messageGroupId, deduplicationId, attributeValueMap));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
 }
@@ -1,6 +1,9 @@
 package smartthings.dropwizard.sqs;
 
+import com.google.inject.multibindings.Multibinder;
 import com.google.inject.multibindings.OptionalBinder;
+import smartthings.dropwizard.aws.AwsModule;
+import smartthings.dropwizard.aws.PayloadCodec;
 import smartthings.dropwizard.sqs.internal.consumer.ConsumerManager;
 import smartthings.dropwizard.sqs.internal.consumer.SqsManager;
 import smartthings.dropwizard.sqs.internal.providers.DefaultAmazonSQSProvider;
@@ -20,6 +23,8 @@ public class SqsModule extends AbstractDwModule {
 
         OptionalBinder.newOptionalBinder(binder(), AmazonSQSProvider.class)
             .setDefault().to(DefaultAmazonSQSProvider.class);
+        // Codecs beyond the built-in ones are added to this set by the application.
+        Multibinder.newSetBinder(binder(), PayloadCodec.class);
 
         registerManaged(SqsManager.class, ConsumerManager.class);
     }
@@ -29,8 +34,11 @@ public class SqsModule extends AbstractDwModule {
      */
     public static class Config {
         private boolean enabled;
+        private ThreadType consumerThreads = ThreadType.PLATFORM;
         private List<ConsumerConfig> consumers = Collections.emptyList();
         private Map<String, EndpointConfig> queueWriters = Collections.emptyMap();
+        private ClientConfig client = new ClientConfig();
+        private long drainTimeoutMillis = 20000;
 
         public boolean isEnabled() {
             return enabled;
@@ -40,6 +48,18 @@ public class SqsModule extends AbstractDwModule {
             this.enabled = enabled;
         }
 
+        /**
+         * Type of thread used to run consumer pollers and workers.  Virtual threads fall back to platform threads
+         * on JVMs that do not support them.
+         */
+        public ThreadType getConsumerThreads() {
+            return consumerThreads;
+        }
+
+        public void setConsumerThreads(ThreadType consumerThreads) {
+            this.consumerThreads = consumerThreads;
+        }
+
         public List<ConsumerConfig> getConsumers() {
             return consumers;
         }
@@ -53,12 +73,56 @@ public class SqsModule extends AbstractDwModule {
         public EndpointConfig getQueueWriterEndpointConfig(String name) { return queueWriters.get(name); }
 
         public void setQueueWriters(Map<String, EndpointConfig> queueWriters) { this.queueWriters = queueWriters; }
+
+        /**
+         * HTTP client settings shared by every client, one of which is created per region and endpoint.
+         */
+        public ClientConfig getClient() {
+            return client;
+        }
+
+        public void setClient(ClientConfig client) {
+            this.client = client;
+        }
+
+        /**
+         * How long stopping the consumers may take.  Receives stop right away and prefetched messages are released,
+         * then in-flight work gets until this deadline to complete before its threads are interrupted.
+         */
+        public long getDrainTimeoutMillis() {
+            return drainTimeoutMillis;
+        }
+
+        public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+            this.drainTimeoutMillis = drainTimeoutMillis;
+        }
+    }
+
+    public enum ThreadType {
+        PLATFORM,
+        VIRTUAL
     }
 
     public static class ConsumerConfig {
         private Class<? extends Consumer> consumer;
         private boolean enabled = true;
         private int concurrency = 1;
+        private int minConcurrency = 1;
+        private int maxConcurrency = 0;
+        private long scaleIntervalSeconds = 30;
+        private int workers = 0;
+        private int prefetch = 0;
+        private int prefetchBufferSize = 0;
+        private long prefetchMaxHoldMillis = 300000;
+        private int ackBatchSize = 10;
+        private long ackFlushIntervalMillis = 100;
+        private boolean visibilityHeartbeat = false;
+        private int batchSize = 10;
+        private long batchLingerMillis = 0;
+        private int receiveMaxMessages = 10;
+        private int receiveMinWaitSeconds = 1;
+        private long receiveMaxIdleMillis = 0;
+        private RateLimitConfig rateLimit;
         private List<EndpointConfig> endpoints = Collections.emptyList();
 
         public boolean isEnabled() {
@@ -103,12 +167,278 @@ public class SqsModule extends AbstractDwModule {
         public void setConcurrency(int concurrency) {
             this.concurrency = concurrency;
         }
+
+        public int getMinConcurrency() {
+            return minConcurrency;
+        }
+
+        public void setMinConcurrency(int minConcurrency) {
+            this.minConcurrency = minConcurrency;
+        }
+
+        /**
+         * Upper bound for the number of pollers per endpoint.  When greater than zero the number of pollers is
+         * adjusted between minConcurrency and maxConcurrency, starting from concurrency, based on queue depth,
+         * empty receives and processing latency.
+         */
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public long getScaleIntervalSeconds() {
+            return scaleIntervalSeconds;
+        }
+
+        public void setScaleIntervalSeconds(long scaleIntervalSeconds) {
+            this.scaleIntervalSeconds = scaleIntervalSeconds;
+        }
+
+        /**
+         * Number of threads consuming messages in parallel, shared by all pollers of this consumer.  When zero,
+         * messages are consumed one after another on the polling thread.
+         */
+        public int getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        /**
+         * Number of receive calls kept in flight per endpoint to fill a local buffer that pollers drain.  When zero,
+         * pollers receive directly from SQS.
+         */
+        public int getPrefetch() {
+            return prefetch;
+        }
+
+        public void setPrefetch(int prefetch) {
+            this.prefetch = prefetch;
+        }
+
+        /**
+         * Maximum number of prefetched messages held per endpoint, defaulting to 10 per prefetching receive call.
+         */
+        public int getPrefetchBufferSize() {
+            return prefetchBufferSize > 0 ? prefetchBufferSize : prefetch * 10;
+        }
+
+        public void setPrefetchBufferSize(int prefetchBufferSize) {
+            this.prefetchBufferSize = prefetchBufferSize;
+        }
+
+        /**
+         * Longest the visibility heartbeat keeps a prefetched message visible while it waits in the buffer.  Messages
+         * still buffered after this are released back to the queue.
+         */
+        public long getPrefetchMaxHoldMillis() {
+            return prefetchMaxHoldMillis;
+        }
+
+        public void setPrefetchMaxHoldMillis(long prefetchMaxHoldMillis) {
+            this.prefetchMaxHoldMillis = prefetchMaxHoldMillis;
+        }
+
+        /**
+         * Maximum number of consumed messages deleted per DeleteMessageBatch call (1 - 10).
+         */
+        public int getAckBatchSize() {
+            return ackBatchSize;
+        }
+
+        public void setAckBatchSize(int ackBatchSize) {
+            this.ackBatchSize = ackBatchSize;
+        }
+
+        /**
+         * Maximum time a consumed message waits for its batch to fill before being deleted.
+         */
+        public long getAckFlushIntervalMillis() {
+            return ackFlushIntervalMillis;
+        }
+
+        public void setAckFlushIntervalMillis(long ackFlushIntervalMillis) {
+            this.ackFlushIntervalMillis = ackFlushIntervalMillis;
+        }
+
+        /**
+         * The most receive calls this consumer can have in flight per endpoint.
+         */
+        public int pollers() {
+            return Math.max(concurrency, maxConcurrency) + prefetch;
+        }
+
+        /**
+         * Keep extending the visibility timeout of messages until they are consumed.
+         */
+        public boolean isVisibilityHeartbeat() {
+            return visibilityHeartbeat;
+        }
+
+        public void setVisibilityHeartbeat(boolean visibilityHeartbeat) {
+            this.visibilityHeartbeat = visibilityHeartbeat;
+        }
+
+        /**
+         * Maximum number of messages handed to a {@link BatchConsumer} at once.
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Maximum time a {@link BatchConsumer} batch keeps receiving to fill up, 0 for one receive per batch.
+         */
+        public long getBatchLingerMillis() {
+            return batchLingerMillis;
+        }
+
+        public void setBatchLingerMillis(long batchLingerMillis) {
+            this.batchLingerMillis = batchLingerMillis;
+        }
+
+        /**
+         * Messages asked for per receive when the consumer's request does not set MaxNumberOfMessages.
+         */
+        public int getReceiveMaxMessages() {
+            return receiveMaxMessages;
+        }
+
+        public void setReceiveMaxMessages(int receiveMaxMessages) {
+            this.receiveMaxMessages = receiveMaxMessages;
+        }
+
+        /**
+         * Long poll wait time used while messages are flowing.  It doubles with each empty receive up to the wait time
+         * of the consumer's request.
+         */
+        public int getReceiveMinWaitSeconds() {
+            return receiveMinWaitSeconds;
+        }
+
+        public void setReceiveMinWaitSeconds(int receiveMinWaitSeconds) {
+            this.receiveMinWaitSeconds = receiveMinWaitSeconds;
+        }
+
+        /**
+         * Longest sleep between empty receives once the wait time is at its maximum.  0, the default, never sleeps.
+         */
+        public long getReceiveMaxIdleMillis() {
+            return receiveMaxIdleMillis;
+        }
+
+        public void setReceiveMaxIdleMillis(long receiveMaxIdleMillis) {
+            this.receiveMaxIdleMillis = receiveMaxIdleMillis;
+        }
+
+        /**
+         * Cap on the messages received per second across all of this consumer's endpoints.  A throttled consumer
+         * receives fewer messages rather than holding on to them.  Unlimited when not configured.
+         */
+        public RateLimitConfig getRateLimit() {
+            return rateLimit;
+        }
+
+        public void setRateLimit(RateLimitConfig rateLimit) {
+            this.rateLimit = rateLimit;
+        }
+
+        public Optional<RateLimitConfig> rateLimit() {
+            return Optional.ofNullable(rateLimit);
+        }
+    }
+
+    /**
+     * HTTP client settings.  Clients are shared by all consumers and queue writers of an endpoint, so unless set
+     * explicitly the connection pool is sized to the endpoint's consumer pollers plus the SDK's default of 50 for
+     * everything else.
+     */
+    public static class ClientConfig {
+        private int maxConnections = 0;
+        private long connectionTtlMillis = -1;
+        private int connectionTimeoutMillis = 10000;
+        private int socketTimeoutMillis = 50000;
+        private boolean tcpKeepAlive = true;
+        private boolean gzip = false;
+
+        /**
+         * Maximum number of open connections per client, 0 to size the pool automatically.
+         */
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        /**
+         * Maximum age of a pooled connection, -1 to keep connections until they fail.
+         */
+        public long getConnectionTtlMillis() {
+            return connectionTtlMillis;
+        }
+
+        public void setConnectionTtlMillis(long connectionTtlMillis) {
+            this.connectionTtlMillis = connectionTtlMillis;
+        }
+
+        public int getConnectionTimeoutMillis() {
+            return connectionTimeoutMillis;
+        }
+
+        public void setConnectionTimeoutMillis(int connectionTimeoutMillis) {
+            this.connectionTimeoutMillis = connectionTimeoutMillis;
+        }
+
+        /**
+         * Socket read timeout; must be longer than the 20 second long poll.
+         */
+        public int getSocketTimeoutMillis() {
+            return socketTimeoutMillis;
+        }
+
+        public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+            this.socketTimeoutMillis = socketTimeoutMillis;
+        }
+
+        public boolean isTcpKeepAlive() {
+            return tcpKeepAlive;
+        }
+
+        public void setTcpKeepAlive(boolean tcpKeepAlive) {
+            this.tcpKeepAlive = tcpKeepAlive;
+        }
+
+        public boolean isGzip() {
+            return gzip;
+        }
+
+        public void setGzip(boolean gzip) {
+            this.gzip = gzip;
+        }
     }
 
     public static class EndpointConfig {
         private String queueName;
         private String regionName;
         private String endpoint;
+        private BufferConfig buffer;
+        private RateLimitConfig rateLimit;
+        private int weight = 1;
+        private int priority = 0;
+        private boolean contentBasedDeduplication;
+        private ClaimCheckConfig claimCheck;
+        private AwsModule.CompressionConfig compression;
 
         public String getQueueName() {
             return queueName;
@@ -137,5 +467,241 @@ public class SqsModule extends AbstractDwModule {
         public Optional<String> endpoint() {
             return Optional.ofNullable(endpoint);
         }
+
+        /**
+         * Client-side buffering applied when this endpoint is used by a queue writer.  Writers send each message
+         * individually when not configured.
+         */
+        public BufferConfig getBuffer() {
+            return buffer;
+        }
+
+        public void setBuffer(BufferConfig buffer) {
+            this.buffer = buffer;
+        }
+
+        public Optional<BufferConfig> buffer() {
+            return Optional.ofNullable(buffer);
+        }
+
+        /**
+         * Cap on the messages sent per second when this endpoint is used by a queue writer.  Unlimited when not
+         * configured.
+         */
+        public RateLimitConfig getRateLimit() {
+            return rateLimit;
+        }
+
+        public void setRateLimit(RateLimitConfig rateLimit) {
+            this.rateLimit = rateLimit;
+        }
+
+        public Optional<RateLimitConfig> rateLimit() {
+            return Optional.ofNullable(rateLimit);
+        }
+
+        /**
+         * Share of a consumer's workers this endpoint gets relative to its other endpoints of the same priority.
+         */
+        public int getWeight() {
+            return weight;
+        }
+
+        public void setWeight(int weight) {
+            this.weight = weight;
+        }
+
+        /**
+         * When a consumer's endpoints compete for its workers, endpoints with a higher priority are always served first.
+         */
+        public int getPriority() {
+            return priority;
+        }
+
+        public void setPriority(int priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * When a queue writer sends to this FIFO endpoint without a deduplication ID, use a SHA-256 hash of the body
+         * as SQS does for queues with content-based deduplication enabled.
+         */
+        public boolean isContentBasedDeduplication() {
+            return contentBasedDeduplication;
+        }
+
+        public void setContentBasedDeduplication(boolean contentBasedDeduplication) {
+            this.contentBasedDeduplication = contentBasedDeduplication;
+        }
+
+        /**
+         * Whether this endpoint is a FIFO queue, which SQS requires to be named with a <code>.fifo</code> suffix.
+         */
+        public boolean fifo() {
+            return queueName != null && queueName.endsWith(".fifo");
+        }
+
+        /**
+         * Offloading of bodies too large for SQS to a blob store.  Queue writers for this endpoint send a pointer in
+         * place of such bodies and consumers of it resolve pointers before consuming.  Disabled when not configured.
+         */
+        public ClaimCheckConfig getClaimCheck() {
+            return claimCheck;
+        }
+
+        public void setClaimCheck(ClaimCheckConfig claimCheck) {
+            this.claimCheck = claimCheck;
+        }
+
+        public Optional<ClaimCheckConfig> claimCheck() {
+            return Optional.ofNullable(claimCheck);
+        }
+
+        /**
+         * Compression of large bodies sent by a queue writer.  Consumers only decode compressed messages when this is
+         * configured.
+         */
+        public AwsModule.CompressionConfig getCompression() {
+            return compression;
+        }
+
+        public void setCompression(AwsModule.CompressionConfig compression) {
+            this.compression = compression;
+        }
+
+        public Optional<AwsModule.CompressionConfig> compression() {
+            return Optional.ofNullable(compression);
+        }
+    }
+
+    /**
+     * Claim check configuration.  Bodies are stored in the application's bound
+     * {@link smartthings.dropwizard.aws.BlobStore}, or as files in <code>directory</code> when none is bound.
+     */
+    public static class ClaimCheckConfig {
+        private long thresholdBytes = 262144;
+        private String directory;
+        private boolean deleteOnConsume;
+
+        /**
+         * Messages whose body and attributes together are larger than this are offloaded.  SQS rejects messages
+         * over 256 KiB.
+         */
+        public long getThresholdBytes() {
+            return thresholdBytes;
+        }
+
+        public void setThresholdBytes(long thresholdBytes) {
+            this.thresholdBytes = thresholdBytes;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Delete a body from the store once its message has been consumed.  Leave disabled when more than one
+         * consumer reads the same pointer, e.g. through SNS fan-out, and expire bodies in the store instead.
+         */
+        public boolean isDeleteOnConsume() {
+            return deleteOnConsume;
+        }
+
+        public void setDeleteOnConsume(boolean deleteOnConsume) {
+            this.deleteOnConsume = deleteOnConsume;
+        }
+    }
+
+    /**
+     * Queue writer buffering configuration.  Buffered messages are sent using SendMessageBatch once the batch is
+     * full, the payload limit is reached or the linger time has elapsed, whichever happens first.
+     */
+    public static class BufferConfig {
+        private int maxBatchSize = 10;
+        private long maxBatchBytes = 262144;
+        private long maxLingerMillis = 20;
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        public long getMaxBatchBytes() {
+            return maxBatchBytes;
+        }
+
+        public void setMaxBatchBytes(long maxBatchBytes) {
+            this.maxBatchBytes = maxBatchBytes;
+        }
+
+        public long getMaxLingerMillis() {
+            return maxLingerMillis;
+        }
+
+        public void setMaxLingerMillis(long maxLingerMillis) {
+            this.maxLingerMillis = maxLingerMillis;
+        }
+    }
+
+    /**
+     * Token bucket rate limit.  The rate may be given for a whole cluster, in which case each node takes an equal
+     * share of it.
+     */
+    public static class RateLimitConfig {
+        private double messagesPerSecond;
+        private double burst = 0;
+        private int nodes = 1;
+
+        public double getMessagesPerSecond() {
+            return messagesPerSecond;
+        }
+
+        public void setMessagesPerSecond(double messagesPerSecond) {
+            this.messagesPerSecond = messagesPerSecond;
+        }
+
+        /**
+         * Most messages that can be handled at once after an idle period, 0 for one second's worth of this node's
+         * rate.
+         */
+        public double getBurst() {
+            return burst;
+        }
+
+        public void setBurst(double burst) {
+            this.burst = burst;
+        }
+
+        /**
+         * Number of nodes sharing <code>messagesPerSecond</code>.
+         */
+        public int getNodes() {
+            return nodes;
+        }
+
+        public void setNodes(int nodes) {
+            this.nodes = nodes;
+        }
+
+        /**
+         * This node's share of the rate.
+         */
+        public double permitsPerSecond() {
+            return messagesPerSecond / Math.max(1, nodes);
+        }
+
+        /**
+         * This node's burst size.
+         */
+        public double burst() {
+            return burst > 0 ? burst : Math.max(1, permitsPerSecond());
+        }
     }
 }
@@ -2,6 +2,8 @@ package smartthings.dropwizard.sqs;
 
 import com.amazonaws.services.sqs.model.*;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Supported AWS SQS operations.
  */
@@ -9,9 +11,25 @@ public interface SqsService {
 
     DeleteMessageResult deleteMessage(DeleteMessageRequest request);
 
+    DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest request);
+
     SendMessageResult sendMessage(SendMessageRequest request);
 
+    SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request);
+
     ReceiveMessageResult receiveMessage(ReceiveMessageRequest request);
 
+    ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest request);
+
     GetQueueUrlResult getQueueUrl(String queueName);
+
+    GetQueueAttributesResult getQueueAttributes(GetQueueAttributesRequest request);
+
+    CompletableFuture<DeleteMessageResult> deleteMessageAsync(DeleteMessageRequest request);
+
+    CompletableFuture<SendMessageResult> sendMessageAsync(SendMessageRequest request);
+
+    CompletableFuture<ReceiveMessageResult> receiveMessageAsync(ReceiveMessageRequest request);
+
+    CompletableFuture<GetQueueUrlResult> getQueueUrlAsync(String queueName);
 }
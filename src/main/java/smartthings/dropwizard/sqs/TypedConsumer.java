@@ -0,0 +1,77 @@
+package smartthings.dropwizard.sqs;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import smartthings.dropwizard.sqs.internal.consumer.MessageBodyReader;
+
+import java.lang.reflect.Type;
+
+/**
+ * A Consumer of JSON message bodies read as a Jackson type, so that implementations do not each parse
+ * <code>getBody()</code> themselves.  Bodies are read with the application's bound {@link ObjectMapper}, or with a
+ * default mapper that ignores unknown properties when none is bound.
+ *
+ * <p>Consumers of a queue subscribed to an SNS topic without raw message delivery pass <code>snsEnvelope</code> to
+ * have the notification unwrapped and its embedded message read as the type.
+ *
+ * @param <T> the type bodies are read as
+ */
+public abstract class TypedConsumer<T> implements Consumer {
+
+    private final Type type;
+    private final boolean snsEnvelope;
+    private volatile MessageBodyReader<T> reader;
+
+    protected TypedConsumer(Class<T> type) {
+        this(type, false);
+    }
+
+    protected TypedConsumer(Class<T> type, boolean snsEnvelope) {
+        this((Type) type, snsEnvelope);
+    }
+
+    protected TypedConsumer(TypeReference<T> type, boolean snsEnvelope) {
+        this(type.getType(), snsEnvelope);
+    }
+
+    private TypedConsumer(Type type, boolean snsEnvelope) {
+        this.type = type;
+        this.snsEnvelope = snsEnvelope;
+    }
+
+    /**
+     * Read bodies with the application's mapper when one is bound.
+     */
+    @Inject(optional = true)
+    public void setObjectMapper(ObjectMapper mapper) {
+        this.reader = new MessageBodyReader<>(mapper, type, snsEnvelope);
+    }
+
+    /**
+     * Invoked upon message receipt from SQS with the message's body read as the type.
+     *
+     * @param body the message body
+     * @param message the message being consumed, for its ID and attributes
+     * @throws Exception if an error occurs
+     */
+    public abstract void consume(T body, Message message) throws Exception;
+
+    /**
+     * Reads the body and passes it on.  A body that cannot be read fails the message like any other error.
+     */
+    @Override
+    public final void consume(Message message) throws Exception {
+        consume(reader().read(message.getBody()), message);
+    }
+
+    private MessageBodyReader<T> reader() {
+        MessageBodyReader<T> current = reader;
+        if (current == null) {
+            current = new MessageBodyReader<>(null, type, snsEnvelope);
+            reader = current;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,165 @@
+package smartthings.dropwizard.sqs.internal.claimcheck;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import smartthings.dropwizard.aws.BlobStore;
+import smartthings.dropwizard.aws.internal.blob.Utf8InputStream;
+import smartthings.dropwizard.sqs.internal.consumer.MessageDecoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Moves message bodies that are too large for SQS into a blob store.  The message sent in their place carries the
+ * blob's key as its body and the original body's size in bytes as a message attribute, which is how receivers tell
+ * a pointer from an ordinary body.
+ */
+public class ClaimCheck implements MessageDecoder {
+
+    public static final String SIZE_ATTRIBUTE = "smartthings.ClaimCheckSize";
+
+    private final BlobStore store;
+    private final long thresholdBytes;
+    private final boolean deleteOnConsume;
+
+    /**
+     * @param store where offloaded bodies are kept
+     * @param thresholdBytes messages whose body and attributes together are larger than this are offloaded
+     * @param deleteOnConsume whether a consumer deletes the blob once the message has been consumed
+     */
+    public ClaimCheck(BlobStore store, long thresholdBytes, boolean deleteOnConsume) {
+        this.store = store;
+        this.thresholdBytes = thresholdBytes;
+        this.deleteOnConsume = deleteOnConsume;
+    }
+
+    public boolean exceedsThreshold(long payloadBytes) {
+        return payloadBytes > thresholdBytes;
+    }
+
+    public boolean isDeleteOnConsume() {
+        return deleteOnConsume;
+    }
+
+    /**
+     * Stream a body into the blob store.
+     *
+     * @param body the body
+     * @return the key to send in place of the body
+     * @throws IOException if the body could not be stored
+     */
+    public String store(String body) throws IOException {
+        String key = UUID.randomUUID().toString();
+        try (InputStream content = new Utf8InputStream(body)) {
+            store.put(key, content);
+        }
+        return key;
+    }
+
+    /**
+     * The attributes to send along with a pointer.
+     *
+     * @param attributeValueMap the message's own attributes, may be null
+     * @param bodyBytes the size of the offloaded body
+     * @return a copy of the attributes with the pointer marker added
+     */
+    public Map<String, MessageAttributeValue> pointerAttributes(
+        Map<String, MessageAttributeValue> attributeValueMap,
+        long bodyBytes
+    ) {
+        Map<String, MessageAttributeValue> attributes =
+            attributeValueMap == null ? new HashMap<>() : new HashMap<>(attributeValueMap);
+        attributes.put(SIZE_ATTRIBUTE, new MessageAttributeValue()
+            .withDataType("Number")
+            .withStringValue(String.valueOf(bodyBytes)));
+        return attributes;
+    }
+
+    /**
+     * Ask SQS to return the pointer marker with each received message.
+     */
+    @Override
+    public ReceiveMessageRequest prepare(ReceiveMessageRequest request) {
+        return MessageDecoder.withMessageAttribute(request, SIZE_ATTRIBUTE);
+    }
+
+    /**
+     * Resolve a pointer, deleting its body once the message has been consumed if configured to.
+     */
+    @Override
+    public Runnable decode(Message message) throws IOException {
+        String key = resolve(message);
+        if (key == null || !deleteOnConsume) {
+            return null;
+        }
+        return () -> {
+            try {
+                consumed(key);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to delete a consumed message body.  key=" + key, e);
+            }
+        };
+    }
+
+    /**
+     * Replace a pointer's body with the stored body, leaving other messages untouched.  The pointer marker is
+     * removed so that consumers see the message as it was sent.
+     *
+     * @param message the received message, which is modified
+     * @return the key the body was stored under, null if the message was not a pointer
+     * @throws IOException if the body could not be read or the size marker is not a valid size
+     */
+    public String resolve(Message message) throws IOException {
+        MessageAttributeValue size = message.getMessageAttributes().get(SIZE_ATTRIBUTE);
+        if (size == null) {
+            return null;
+        }
+        String key = message.getBody();
+        long bytes = parseSize(size.getStringValue());
+        // The marker is only a hint from the sender, so never trust it with more than a modest initial allocation.
+        StringBuilder body = new StringBuilder((int) Math.min(bytes, 1 << 20));
+        try (Reader reader = new InputStreamReader(store.get(key), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                body.append(buffer, 0, read);
+            }
+        }
+        message.setBody(body.toString());
+        message.getMessageAttributes().remove(SIZE_ATTRIBUTE);
+        return key;
+    }
+
+    private static long parseSize(String value) throws IOException {
+        long bytes;
+        try {
+            bytes = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid claim check size.  size=" + value, e);
+        }
+        if (bytes < 0) {
+            throw new IOException("Invalid claim check size.  size=" + value);
+        }
+        return bytes;
+    }
+
+    /**
+     * Delete a resolved body once its message has been consumed, if configured to.
+     *
+     * @param key the key returned by {@link #resolve(Message)}
+     * @throws IOException if the body could not be deleted
+     */
+    public void consumed(String key) throws IOException {
+        if (deleteOnConsume && key != null) {
+            store.delete(key);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+import io.vavr.control.Try;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically resizes a consumer group between its configured bounds.  Pollers are added while the queue has a
+ * backlog that the group cannot drain within one interval at the observed processing latency, and removed one at
+ * a time while the queue is empty and most receives come back empty.  A consumer with a bounded worker pool never
+ * gets more pollers than workers, since the extra pollers would only wait for a free worker.
+ */
+public class ConcurrencyController implements Runnable {
+
+    static final double EMPTY_RECEIVE_RATIO = 0.5;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrencyController.class);
+
+    private final ConsumerGroup group;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final long intervalNanos;
+
+    /**
+     * @param group the group to resize
+     * @param minConcurrency the fewest pollers
+     * @param maxConcurrency the most pollers
+     * @param workers the consumer's workers, 0 if messages are consumed on the polling threads
+     * @param intervalSeconds how often the group is resized
+     */
+    public ConcurrencyController(
+        ConsumerGroup group,
+        int minConcurrency,
+        int maxConcurrency,
+        int workers,
+        long intervalSeconds
+    ) {
+        this.group = group;
+        this.minConcurrency = Math.max(1, minConcurrency);
+        int ceiling = workers > 0 ? Math.min(maxConcurrency, workers) : maxConcurrency;
+        this.maxConcurrency = Math.max(this.minConcurrency, ceiling);
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+    }
+
+    @Override
+    public void run() {
+        Try.run(this::adjust)
+            .onFailure(t -> LOG.warn(
+                "Unable to adjust SQS consumer concurrency queue={}", group.getEndpointConfig().getQueueName(), t
+            ));
+    }
+
+    private void adjust() {
+        ConsumerStats.Snapshot snapshot = group.getStats().snapshotAndReset();
+        long backlog = approximateBacklog();
+        int current = group.getConcurrency();
+        int target = targetConcurrency(current, backlog, snapshot);
+        if (target != current) {
+            LOG.info(
+                "Scaling SQS consumer queue={} from={} to={} backlog={} emptyRatio={} latencyNanos={}",
+                group.getEndpointConfig().getQueueName(), current, target, backlog,
+                snapshot.getEmptyRatio(), snapshot.getAverageLatencyNanos()
+            );
+            group.scaleTo(target);
+        }
+    }
+
+    int targetConcurrency(int current, long backlog, ConsumerStats.Snapshot snapshot) {
+        int target = current;
+        if (backlog > 0 && snapshot.getEmptyRatio() < EMPTY_RECEIVE_RATIO) {
+            // Pollers needed to work through the backlog within one interval, growing at most 2x per interval.
+            long needed = snapshot.getMessages() == 0 ?
+                current + 1 :
+                (long) Math.ceil((double) backlog * snapshot.getAverageLatencyNanos() / intervalNanos);
+            target = (int) Math.max(current, Math.min(needed, current * 2L));
+        } else if (backlog == 0 && snapshot.getEmptyRatio() >= EMPTY_RECEIVE_RATIO) {
+            target = current - 1;
+        }
+        return Math.max(minConcurrency, Math.min(maxConcurrency, target));
+    }
+
+    private long approximateBacklog() {
+        String value = group.getSqsService().getQueueAttributes(
+            new GetQueueAttributesRequest(group.getQueueUrl())
+                .withAttributeNames(QueueAttributeName.ApproximateNumberOfMessages)
+        ).getAttributes().get(QueueAttributeName.ApproximateNumberOfMessages.toString());
+        return value == null ? 0 : Long.parseLong(value);
+    }
+}
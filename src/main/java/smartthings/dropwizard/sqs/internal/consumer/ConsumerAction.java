@@ -5,136 +5,382 @@ import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.vavr.control.Try;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import smartthings.dropwizard.aws.internal.backoff.ExponentialBackoff;
+import smartthings.dropwizard.aws.internal.backoff.Backoff;
+import smartthings.dropwizard.aws.internal.backoff.BackoffScheduler;
+import smartthings.dropwizard.aws.internal.ratelimit.TokenBucket;
+import smartthings.dropwizard.sqs.BatchConsumer;
 import smartthings.dropwizard.sqs.Consumer;
 import smartthings.dropwizard.sqs.SqsModule;
 import smartthings.dropwizard.sqs.SqsService;
 
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static io.github.resilience4j.circuitbreaker.CircuitBreaker.decorateCheckedSupplier;
 
 /**
- * Action definition for continuous polling of SQS messages.
+ * Action definition for continuous polling of SQS messages.  While its circuit is open a started poller gives its
+ * thread back and is resubmitted after a jittered backoff.
  */
 public class ConsumerAction implements Runnable {
 
+    static final long MAX_THROTTLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     private static final Logger log = LoggerFactory.getLogger(ConsumerAction.class);
 
     private final SqsService sqs;
     private final Consumer consumer;
+    private final BatchConsumer batchConsumer;
+    private final MessageAcknowledger acknowledger;
+    private final MessageDispatcher dispatcher;
+    private final MessageSource source;
+    private final ConsumerStats stats;
+    private final VisibilityHeartbeat heartbeat;
+    private final SqsModule.ConsumerConfig consumerConfig;
     private final SqsModule.EndpointConfig config;
-    private String sqsQueueUrl;
+    private final QueueUrl queueUrl;
+    private final ReceivePolicy policy;
+    private final TokenBucket limiter;
+    private final MessageGroupExecutor groups;
+    private final InFlightReceive inFlight;
     private AtomicBoolean shutdown = new AtomicBoolean(false);
     private AtomicBoolean shutdownComplete = new AtomicBoolean(false);
     private final CircuitBreaker breaker;
-    private final ExponentialBackoff backoff = new ExponentialBackoff();
+    private final Backoff backoff = Backoff.defaults();
+    private volatile BackoffScheduler scheduler;
     private final Object mutex = new Object();
 
     public ConsumerAction(
         SqsService sqs,
         Consumer consumer,
+        MessageAcknowledger acknowledger,
+        MessageDispatcher dispatcher,
+        MessageSource source,
+        ConsumerStats stats,
+        VisibilityHeartbeat heartbeat,
         CircuitBreaker breaker,
-        SqsModule.EndpointConfig config
+        SqsModule.ConsumerConfig consumerConfig,
+        SqsModule.EndpointConfig config,
+        QueueUrl queueUrl,
+        TokenBucket limiter,
+        MessageGroupExecutor groups
     ) {
         this.sqs = sqs;
         this.consumer = consumer;
+        this.batchConsumer = consumer instanceof BatchConsumer ? (BatchConsumer) consumer : null;
+        this.acknowledger = acknowledger;
+        this.dispatcher = dispatcher;
+        this.source = source == null ? this::receiveMessages : source;
+        this.stats = stats;
+        this.heartbeat = heartbeat;
+        this.consumerConfig = consumerConfig;
         this.config = config;
+        this.queueUrl = queueUrl;
+        this.limiter = limiter;
+        this.groups = groups;
+        this.inFlight = new InFlightReceive(sqs);
+        // The policy adjusts its request on every poll, so it gets a copy rather than the consumer's own.
+        ReceiveMessageRequest template = consumer.getReceiveMessageRequest().clone();
+        this.policy = new ReceivePolicy(
+            config.fifo() ? MessageGroupExecutor.withGroupIds(template) : template, this::getQueueUrl, consumerConfig
+        );
         this.breaker = breaker;
-        this.breaker.getEventPublisher().onStateTransition(event -> {
-            if (!isCircuitOpen()) {
-                backoff.reset();
-            }
-        });
+    }
+
+    /**
+     * Run the poller on the executor, backing off through the timer while its circuit is open.
+     *
+     * @param executor the executor to poll on
+     * @param timer the timer used to resubmit the poller
+     */
+    public void start(Executor executor, ScheduledExecutorService timer) {
+        this.scheduler = new BackoffScheduler(backoff, timer);
+        executor.execute(() -> run(executor));
     }
 
     @Override
     public void run() {
+        run(null);
+    }
+
+    private void run(Executor executor) {
         while (!shutdown.get()) {
             Try.run(this::poll)
                 .onFailure(t -> {
                     log.error("Unexpected exception consumer={} terminated.", config.getQueueName(), t);
                     shutdown.set(true);
                 });
+            if (isCircuitOpen() && !shutdown.get() && suspend(executor)) {
+                return;
+            }
         }
         notifyShutdown();
     }
 
+    /**
+     * Stop polling.  A receive that is waiting on a long poll is abandoned rather than waited out.
+     */
     public void shutdown() {
         shutdown.set(true);
+        inFlight.abandon();
+        BackoffScheduler current = scheduler;
+        if (current != null && current.cancel()) {
+            notifyShutdown();
+        }
+    }
+
+    public boolean isShutdownComplete() {
+        return shutdownComplete.get();
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Called by the owner of the circuit breaker on each of its state transitions, so that a suspended poller
+     * resumes as soon as the circuit leaves the open state.
+     */
+    public void onCircuitTransition() {
+        if (breaker.getState() == CircuitBreaker.State.CLOSED) {
+            backoff.reset();
+        }
+        BackoffScheduler current = scheduler;
+        if (!isCircuitOpen() && current != null) {
+            current.resume();
+        }
     }
 
     public void awaitShutdown() {
+        awaitShutdown(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Wait for the poller to exit, including any work it is running inline.
+     *
+     * @param timeout the most time to wait
+     * @param unit the unit of the timeout
+     * @return true if the poller exited, false on timeout or interrupt
+     */
+    public boolean awaitShutdown(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
         synchronized (mutex) {
             while (!shutdownComplete.get()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    log.warn("SQS consumer={} did not shut down in time.", config.getQueueName());
+                    return false;
+                }
                 try {
-                    mutex.wait();
+                    TimeUnit.NANOSECONDS.timedWait(mutex, remaining);
                 } catch (InterruptedException e) {
-                    // Intentionally left blank
+                    Thread.currentThread().interrupt();
+                    return false;
                 }
             }
         }
         log.warn("SQS consumer={} shutdown complete.", config.getQueueName());
+        return true;
     }
 
     private void poll() {
         Try.run(() -> {
-                maybeBackoff();
-                consume(receiveMessage(getReceiveMessageRequest()));
+                // Throttle before reserving workers so that a rate limited consumer only ever receives less.
+                int permitted = throttle(
+                    batchConsumer == null ? policy.getMaxMessages() : Math.max(1, consumerConfig.getBatchSize())
+                );
+                if (permitted == 0) {
+                    return;
+                }
+                // A batch is processed as a single task and only needs a single slot.
+                int reserved = dispatcher.reserve(batchConsumer == null ? permitted : 1);
+                if (shutdown.get()) {
+                    dispatcher.release(reserved);
+                    refund(permitted);
+                    return;
+                }
+                if (batchConsumer != null) {
+                    pollBatch(reserved, permitted);
+                    return;
+                }
+                List<Message> messages = source.receive(policy.next(reserved));
+                dispatcher.release(reserved - messages.size());
+                refund(permitted - messages.size());
+                consume(messages);
+                idle(policy.record(messages.size()));
             }
         ).onFailure(t -> log.error("Unexpected exception polling SQS", t));
     }
 
-    private String getQueueUrl() {
-        if (sqsQueueUrl != null) {
-            return sqsQueueUrl;
+    private void pollBatch(int reserved, int batchSize) throws Exception {
+        ReceiveMessageRequest request = policy.next(batchSize);
+        List<Message> batch = new ArrayList<>(source.receive(request));
+        long idleMillis = policy.record(batch.size());
+
+        // Keep receiving until the batch is full, the queue runs dry or the linger time is up.
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(consumerConfig.getBatchLingerMillis());
+        long remaining;
+        while (!batch.isEmpty() && batch.size() < batchSize && !shutdown.get() &&
+            (remaining = deadline - System.nanoTime()) > 0) {
+            int wait = policy.getWaitSeconds() == null ? 0 : policy.getWaitSeconds();
+            request.setWaitTimeSeconds((int) Math.min(wait, TimeUnit.NANOSECONDS.toSeconds(remaining)));
+            request.setMaxNumberOfMessages(Math.min(batchSize - batch.size(), policy.getMaxMessages()));
+            List<Message> messages = source.receive(request);
+            if (messages.isEmpty()) {
+                break;
+            }
+            batch.addAll(messages);
         }
 
+        refund(batchSize - batch.size());
+        if (batch.isEmpty()) {
+            dispatcher.release(reserved);
+            idle(idleMillis);
+            return;
+        }
+        dispatcher.release(reserved - 1);
+        batch.forEach(message -> stats.recordDispatch());
+        dispatcher.dispatch(() -> consumeBatch(batch));
+    }
+
+    private String getQueueUrl() {
         String queueName = config.getQueueName();
         if (queueName == null || queueName.isEmpty()) {
             throw new IllegalArgumentException("An SQS Consumer must define a queue in which to poll.");
         }
-
-        sqsQueueUrl = sqs.getQueueUrl(queueName).getQueueUrl();
-        return sqsQueueUrl;
+        return queueUrl.get();
     }
 
-    private void consume(ReceiveMessageResult result) {
-        result.getMessages().forEach(this::consume);
+    private void consume(List<Message> messages) {
+        messages.forEach(message -> stats.recordDispatch());
+        if (groups != null) {
+            groups.execute(messages, this::consume, this::skip);
+        } else {
+            messages.forEach(message -> dispatcher.dispatch(() -> consume(message)));
+        }
     }
 
-    private void consume(Message message) {
-        Try.run(() -> consumer.consume(message))
-            .andThen(() -> deleteMessage(message))
+    private boolean consume(Message message) {
+        long start = System.nanoTime();
+        Try<Void> result = Try.run(() -> consumer.consume(message));
+        stats.recordConsume(System.nanoTime() - start, result.isSuccess());
+        heartbeat.complete(message);
+        result
+            .andThen(() -> acknowledger.acknowledge(message))
             .onFailure(t -> log.error("Failed to consume message.  message={}", message, t));
+        return result.isSuccess();
     }
 
-    private ReceiveMessageResult receiveMessage(ReceiveMessageRequest request) {
+    private void skip(Message message) {
+        stats.recordSkip();
+        heartbeat.complete(message);
+        log.warn("Skipping message after an earlier failure in its group.  message={}", message);
+    }
+
+    private void consumeBatch(List<Message> messages) {
+        long start = System.nanoTime();
+        Try<List<Message>> result = Try.of(() -> batchConsumer.consumeBatch(messages))
+            .onFailure(t -> log.error("Failed to consume message batch.  size={}", messages.size(), t));
+        long nanos = (System.nanoTime() - start) / messages.size();
+
+        Set<Message> failed = new HashSet<>(
+            result.map(list -> list == null ? Collections.<Message>emptyList() : list).getOrElse(messages)
+        );
+        // On a FIFO queue, messages after a failure in the same group must not be deleted ahead of it.
+        Set<String> failedGroups = config.fifo() ? new HashSet<>() : null;
+        messages.forEach(message -> {
+            boolean success = !failed.contains(message);
+            if (failedGroups != null && MessageGroupExecutor.groupId(message) != null) {
+                if (!success) {
+                    failedGroups.add(MessageGroupExecutor.groupId(message));
+                } else if (failedGroups.contains(MessageGroupExecutor.groupId(message))) {
+                    success = false;
+                }
+            }
+            stats.recordConsume(nanos, success);
+            heartbeat.complete(message);
+            if (success) {
+                acknowledger.acknowledge(message);
+            } else if (result.isSuccess()) {
+                log.error("Failed to consume message.  message={}", message);
+            }
+        });
+    }
+
+    private List<Message> receiveMessages(ReceiveMessageRequest request) {
         log.debug("Execute receiveMessage for SQS queue={}", config.getQueueName());
-        return Try.of(decorateCheckedSupplier(breaker, () -> sqs.receiveMessage(request)))
+        long start = System.nanoTime();
+        ReceiveMessageResult result = Try.of(decorateCheckedSupplier(breaker, () -> inFlight.receive(request)))
+            .onFailure(queueUrl::invalidateOn)
             .recover(t -> new ReceiveMessageResult())
             .get();
+        stats.recordReceive(result.getMessages().size(), System.nanoTime() - start);
+        if (heartbeat.isEnabled()) {
+            heartbeat.track(result.getMessages(), heartbeat.visibilityTimeout(request), start);
+        }
+        return result.getMessages();
     }
 
-    private DeleteMessageResult deleteMessage(Message message) {
-        DeleteMessageRequest request = new DeleteMessageRequest(getQueueUrl(), message.getReceiptHandle());
-        return Try.of(decorateCheckedSupplier(breaker, () -> sqs.deleteMessage(request)))
-            .recover(t -> new DeleteMessageResult())
-            .get();
+    /**
+     * Wait until the rate limit allows at least one message.
+     *
+     * @param max the most messages wanted
+     * @return the number of messages allowed, 0 on shutdown
+     */
+    private int throttle(int max) throws InterruptedException {
+        if (limiter == null) {
+            return max;
+        }
+        int permitted;
+        while ((permitted = limiter.tryAcquireUpTo(max)) == 0) {
+            if (shutdown.get()) {
+                return 0;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.min(MAX_THROTTLE_NANOS, limiter.nanosUntilAvailable(1)));
+        }
+        return permitted;
+    }
+
+    private void refund(int permits) {
+        if (limiter != null) {
+            limiter.refund(permits);
+        }
     }
 
-    private ReceiveMessageRequest getReceiveMessageRequest() {
-        ReceiveMessageRequest request = consumer.getReceiveMessageRequest();
-        if (request.getQueueUrl() == null || request.getQueueUrl().isEmpty()) {
-            request.withQueueUrl(getQueueUrl());
+    private void idle(long millis) throws InterruptedException {
+        if (millis > 0 && !shutdown.get()) {
+            Thread.sleep(millis);
         }
-        return request;
     }
 
-    private void maybeBackoff() {
-        if (isCircuitOpen()) {
-            backoff.backoff();
+    /**
+     * Back off while the circuit is open.
+     *
+     * @return true if the poller was handed to the timer and its thread should return
+     */
+    private boolean suspend(Executor executor) {
+        BackoffScheduler current = scheduler;
+        if (executor != null && current != null) {
+            try {
+                long delay = current.schedule(executor, () -> run(executor));
+                log.debug("Circuit is OPEN for consumer={}.  Resuming in {}ms...", config.getQueueName(), delay);
+                // A shutdown that raced with suspending would otherwise never complete.
+                if (shutdown.get() && current.cancel()) {
+                    notifyShutdown();
+                }
+                return true;
+            } catch (RejectedExecutionException e) {
+                log.debug("Backoff timer is shut down, consumer={} waiting in place.", config.getQueueName());
+            }
         }
+        long delay = backoff.nextDelayMillis();
+        log.debug("Circuit is OPEN for consumer={}.  Waiting {}ms...", config.getQueueName(), delay);
+        Try.run(() -> Thread.sleep(delay));
+        return false;
     }
 
     private boolean isCircuitOpen() {
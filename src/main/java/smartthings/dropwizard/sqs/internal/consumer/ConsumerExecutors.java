@@ -0,0 +1,56 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.sqs.SqsModule;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors used to run SQS pollers and workers.
+ */
+public final class ConsumerExecutors {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConsumerExecutors.class);
+    private static final Method VIRTUAL_THREAD_FACTORY = virtualThreadFactory();
+
+    private ConsumerExecutors() {
+    }
+
+    /**
+     * Create an executor able to run <code>threads</code> tasks concurrently.  Virtual threads are only used when
+     * requested and supported by the running JVM; otherwise a fixed pool of platform threads is returned.
+     *
+     * @param type the requested thread type
+     * @param threads the number of concurrently running tasks
+     * @return the executor
+     */
+    public static ExecutorService create(SqsModule.ThreadType type, int threads) {
+        if (type == SqsModule.ThreadType.VIRTUAL) {
+            if (VIRTUAL_THREAD_FACTORY != null) {
+                try {
+                    return (ExecutorService) VIRTUAL_THREAD_FACTORY.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    LOG.warn("Unable to create virtual thread executor, falling back to platform threads.", e);
+                }
+            } else {
+                LOG.warn("Virtual threads are not supported by this JVM, falling back to platform threads.");
+            }
+        }
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    private static Method virtualThreadFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.aws.internal.ratelimit.TokenBucket;
+import smartthings.dropwizard.sqs.BatchConsumer;
+import smartthings.dropwizard.sqs.Consumer;
+import smartthings.dropwizard.sqs.SqsModule;
+import smartthings.dropwizard.sqs.SqsService;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pollers running a single consumer against a single queue.  The number of pollers may be changed while the
+ * group is running.
+ */
+public class ConsumerGroup {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConsumerGroup.class);
+
+    private final SqsModule.ConsumerConfig consumerConfig;
+    private final SqsModule.EndpointConfig endpointConfig;
+    private final SqsService sqs;
+    private final Consumer consumer;
+    private final MessageAcknowledger acknowledger;
+    private final MessageDispatcher dispatcher;
+    private final TokenBucket limiter;
+    private final ConsumerStats stats;
+    private final VisibilityHeartbeat heartbeat;
+    private final PrefetchBuffer prefetchBuffer;
+    private final MessageGroupExecutor groups;
+    private final CircuitBreaker breaker;
+    private final List<ConsumerAction> actions = new CopyOnWriteArrayList<>();
+    private final List<ConsumerAction> retired = new CopyOnWriteArrayList<>();
+    private ExecutorService executor;
+    private ScheduledExecutorService timer;
+    private final QueueUrl queueUrl;
+
+    public ConsumerGroup(
+        SqsModule.ConsumerConfig consumerConfig,
+        SqsModule.EndpointConfig endpointConfig,
+        SqsService sqs,
+        QueueUrl queueUrl,
+        Consumer consumer,
+        MessageAcknowledger acknowledger,
+        MessageDispatcher dispatcher,
+        TokenBucket limiter,
+        ConsumerStats stats,
+        CircuitBreaker breaker,
+        VisibilityExtender extender
+    ) {
+        this.consumerConfig = consumerConfig;
+        this.endpointConfig = endpointConfig;
+        this.sqs = sqs;
+        this.queueUrl = queueUrl;
+        this.consumer = consumer;
+        this.acknowledger = acknowledger;
+        this.dispatcher = dispatcher;
+        this.limiter = limiter;
+        this.stats = stats;
+        this.heartbeat = new VisibilityHeartbeat(extender, sqs, queueUrl);
+        // One breaker for all pollers and deletes of the queue, with a single listener fanning transitions out to the
+        // current pollers, so that scaling does not pile listeners onto the breaker.
+        this.breaker = breaker;
+        this.breaker.getEventPublisher().onStateTransition(event ->
+            actions.forEach(ConsumerAction::onCircuitTransition)
+        );
+        // Batch consumers are handed each receive whole and in order, so only single messages need group ordering.
+        this.groups = endpointConfig.fifo() && !(consumer instanceof BatchConsumer) ?
+            new MessageGroupExecutor(dispatcher) : null;
+        this.prefetchBuffer = consumerConfig.getPrefetch() > 0 ?
+            new PrefetchBuffer(
+                sqs,
+                consumer,
+                queueUrl,
+                endpointConfig,
+                stats,
+                heartbeat,
+                groups,
+                consumerConfig.getPrefetch(),
+                consumerConfig.getPrefetchBufferSize(),
+                consumerConfig.getPrefetchMaxHoldMillis()
+            ) : null;
+    }
+
+    public synchronized void start(ExecutorService executor, ScheduledExecutorService timer) {
+        this.executor = executor;
+        this.timer = timer;
+        if (prefetchBuffer != null) {
+            prefetchBuffer.start(executor, timer);
+        }
+        scaleTo(consumerConfig.getConcurrency());
+    }
+
+    /**
+     * Start or stop pollers until the requested number are running.  Stopped pollers finish their current poll
+     * before exiting.
+     *
+     * @param concurrency the number of pollers
+     */
+    public synchronized void scaleTo(int concurrency) {
+        while (actions.size() < concurrency) {
+            ConsumerAction action = buildAction();
+            actions.add(action);
+            action.start(executor, timer);
+        }
+        while (actions.size() > concurrency) {
+            ConsumerAction action = actions.remove(actions.size() - 1);
+            action.shutdown();
+            retired.add(action);
+        }
+        retired.removeIf(ConsumerAction::isShutdownComplete);
+    }
+
+    public int getConcurrency() {
+        return actions.size();
+    }
+
+    /**
+     * Stop issuing receives.  Receives waiting on a long poll are abandoned and prefetched messages are released.
+     */
+    public void shutdown() {
+        if (prefetchBuffer != null) {
+            prefetchBuffer.shutdown();
+        }
+        actions.forEach(ConsumerAction::shutdown);
+    }
+
+    public void awaitShutdown() {
+        awaitShutdown(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Wait for every poller to exit.
+     *
+     * @param timeout the most time to wait
+     * @param unit the unit of the timeout
+     * @return true if every poller exited in time
+     */
+    public boolean awaitShutdown(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean complete = true;
+        for (ConsumerAction action : actions) {
+            complete &= action.awaitShutdown(remaining(deadline), TimeUnit.NANOSECONDS);
+        }
+        for (ConsumerAction action : retired) {
+            complete &= action.awaitShutdown(remaining(deadline), TimeUnit.NANOSECONDS);
+        }
+        if (prefetchBuffer != null) {
+            complete &= prefetchBuffer.awaitShutdown(remaining(deadline), TimeUnit.NANOSECONDS);
+        }
+        return complete;
+    }
+
+    public synchronized void pause() {
+        if (prefetchBuffer != null) {
+            prefetchBuffer.getCircuitBreaker().transitionToOpenState();
+        }
+        breaker.transitionToOpenState();
+    }
+
+    public synchronized void resume() {
+        if (prefetchBuffer != null) {
+            prefetchBuffer.getCircuitBreaker().transitionToClosedState();
+        }
+        breaker.transitionToClosedState();
+    }
+
+    public SqsModule.ConsumerConfig getConsumerConfig() {
+        return consumerConfig;
+    }
+
+    public SqsModule.EndpointConfig getEndpointConfig() {
+        return endpointConfig;
+    }
+
+    public SqsService getSqsService() {
+        return sqs;
+    }
+
+    public ConsumerStats getStats() {
+        return stats;
+    }
+
+    public String getQueueUrl() {
+        return queueUrl.get();
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    private ConsumerAction buildAction() {
+        LOG.debug(
+            "Creating an SQS Consumer for class={}, queue={}",
+            consumerConfig.getConsumer().getSimpleName(), breaker.getName()
+        );
+        return new ConsumerAction(
+            sqs, consumer, acknowledger, dispatcher, prefetchBuffer, stats, heartbeat, breaker,
+            consumerConfig, endpointConfig, queueUrl, limiter, groups
+        );
+    }
+}
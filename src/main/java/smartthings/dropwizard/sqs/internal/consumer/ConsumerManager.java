@@ -1,5 +1,6 @@
 package smartthings.dropwizard.sqs.internal.consumer;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import com.google.inject.Singleton;
@@ -7,6 +8,7 @@ import io.dropwizard.lifecycle.Managed;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.aws.internal.ratelimit.TokenBucket;
 import smartthings.dropwizard.sqs.Consumer;
 import smartthings.dropwizard.sqs.SqsModule;
 
@@ -14,8 +16,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -29,8 +33,15 @@ public class ConsumerManager implements Managed {
     private final Injector injector;
     private final SqsModule.Config config;
     private final SqsManager sqsManager;
-    private List<ConsumerAction> actions = new ArrayList<>();
-    private List<CircuitBreaker> breakers = new ArrayList<>();
+    private List<ConsumerGroup> groups = new ArrayList<>();
+    private List<MessageAcknowledger> acknowledgers = new ArrayList<>();
+    private List<MessageDispatcher> dispatchers = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+    private ScheduledExecutorService heartbeatScheduler;
+    private ScheduledExecutorService scalingScheduler;
+    private ScheduledExecutorService backoffTimer;
+    private VisibilityExtender extender;
+    private ExecutorService executor;
 
     @Inject
     public ConsumerManager(Injector injector, SqsModule.Config config, SqsManager sqsManager) {
@@ -49,55 +60,190 @@ public class ConsumerManager implements Managed {
         }
     }
 
+    /**
+     * Drain the consumers.  Receives stop right away, receives waiting on a long poll are abandoned and prefetched
+     * messages are released, then in-flight work is given until the drain timeout to complete.
+     */
     @Override
     public void stop() {
         LOG.debug("Shutting down SQS ConsumerManager...");
-        actions.forEach(ConsumerAction::shutdown);
-        actions.forEach(ConsumerAction::awaitShutdown);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getDrainTimeoutMillis());
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        if (scalingScheduler != null) {
+            scalingScheduler.shutdown();
+        }
+        groups.forEach(ConsumerGroup::shutdown);
+        boolean drained = true;
+        for (ConsumerGroup group : groups) {
+            drained &= group.awaitShutdown(remaining(deadline), TimeUnit.NANOSECONDS);
+        }
+        if (backoffTimer != null) {
+            backoffTimer.shutdown();
+        }
+        for (MessageDispatcher dispatcher : dispatchers) {
+            drained &= dispatcher.shutdown(remaining(deadline), TimeUnit.NANOSECONDS);
+        }
+        acknowledgers.forEach(MessageAcknowledger::flush);
+        groups.forEach(group -> group.getStats().close());
+        if (heartbeatScheduler != null) {
+            heartbeatScheduler.shutdown();
+        }
+        if (executor != null) {
+            // Pollers still running work inline past the deadline are interrupted.
+            if (drained) {
+                executor.shutdown();
+            } else {
+                executor.shutdownNow();
+            }
+        }
+        if (!drained) {
+            LOG.warn(
+                "SQS consumers did not drain within {}ms.  Unfinished messages will be redelivered.",
+                config.getDrainTimeoutMillis()
+            );
+        }
     }
 
     public void pause() {
-        this.breakers.forEach(CircuitBreaker::transitionToOpenState);
+        this.groups.forEach(ConsumerGroup::pause);
     }
 
     public void resume() {
-        this.breakers.forEach(CircuitBreaker::transitionToClosedState);
+        this.groups.forEach(ConsumerGroup::resume);
     }
 
     private void init() {
-        this.actions = config.getConsumers().stream()
-            .flatMap(this::buildConsumerActions)
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        if (config.getConsumers().stream().anyMatch(SqsModule.ConsumerConfig::isVisibilityHeartbeat)) {
+            // Extensions get their own thread so slow calls cannot hold up acknowledgements.
+            this.heartbeatScheduler = Executors.newSingleThreadScheduledExecutor();
+            this.extender = new VisibilityExtender();
+            this.extender.start(heartbeatScheduler);
+        }
+        this.groups = config.getConsumers().stream()
+            .flatMap(this::buildConsumerGroups)
             .collect(Collectors.toList());
 
-        // Kick off a new execution for each defined consumer.
-        if (!this.actions.isEmpty()) {
-            ExecutorService executor = Executors.newFixedThreadPool(actions.size());
-            this.actions.forEach(executor::submit);
+        // Kick off the configured number of pollers for each consumer endpoint.
+        int pollers = groups.stream().mapToInt(group -> group.getConsumerConfig().pollers()).sum();
+        if (pollers > 0) {
+            this.executor = ConsumerExecutors.create(config.getConsumerThreads(), pollers);
+            // Pollers hand their threads back while backing off and are resubmitted by this timer.
+            this.backoffTimer = Executors.newSingleThreadScheduledExecutor();
+            this.groups.forEach(group -> group.start(executor, backoffTimer));
+        }
+        List<ConsumerGroup> scaled = this.groups.stream()
+            .filter(group -> group.getConsumerConfig().getMaxConcurrency() > 0)
+            .collect(Collectors.toList());
+        if (!scaled.isEmpty()) {
+            // Scaling gets its own thread so that resizing pollers cannot hold up acknowledgements.
+            this.scalingScheduler = Executors.newSingleThreadScheduledExecutor();
+            scaled.forEach(this::scheduleConcurrencyController);
         }
     }
 
-    private Stream<ConsumerAction> buildConsumerActions(SqsModule.ConsumerConfig config) {
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    private Stream<ConsumerGroup> buildConsumerGroups(SqsModule.ConsumerConfig config) {
         Consumer consumer = injector.getProvider(config.getConsumer()).get();
-        return IntStream
-            .rangeClosed(1, config.getConcurrency())
-            .mapToObj(i -> config.getEndpoints())
-            .flatMap(endpoints ->
-                config.getEndpoints().stream()
-                    .map(endpointConfig -> {
-                        final String consumerKey = String.format("sqs-%s", endpointConfig.getQueueName());
-                        CircuitBreaker breaker = CircuitBreaker.ofDefaults(consumerKey);
-                        LOG.debug(
-                            "Creating an SQS Consumer for class={}, queue={}",
-                            config.getConsumer().getSimpleName(), consumerKey
-                        );
-                        breakers.add(breaker);
-                        return new ConsumerAction(
-                            sqsManager.get(endpointConfig),
-                            consumer,
-                            breaker,
-                            endpointConfig
-                        );
-                    })
-            );
+        Function<SqsModule.EndpointConfig, MessageDispatcher> dispatcherFor = buildDispatchers(config);
+        // One limit shared by all of the consumer's endpoints.
+        TokenBucket limiter = config.rateLimit()
+            .map(rateLimit -> new TokenBucket(rateLimit.permitsPerSecond(), rateLimit.burst()))
+            .orElse(null);
+        return config.getEndpoints().stream()
+            .map(endpointConfig -> {
+                ConsumerStats stats = new ConsumerStats(
+                    sqsManager.getMetricRegistry(),
+                    MetricRegistry.name(
+                        "sqs", "consumer", config.getConsumer().getSimpleName(), endpointConfig.getQueueName()
+                    )
+                );
+                CircuitBreaker breaker = CircuitBreaker.ofDefaults(
+                    String.format("sqs-%s", endpointConfig.getQueueName())
+                );
+                return new ConsumerGroup(
+                    config,
+                    endpointConfig,
+                    sqsManager.get(endpointConfig),
+                    sqsManager.getQueueUrl(endpointConfig),
+                    DecodingConsumer.wrap(consumer, sqsManager.getDecoders(endpointConfig)),
+                    buildAcknowledger(config, endpointConfig, stats, breaker),
+                    dispatcherFor.apply(endpointConfig),
+                    limiter,
+                    stats,
+                    breaker,
+                    config.isVisibilityHeartbeat() ? extender : null
+                );
+            });
+    }
+
+    private void scheduleConcurrencyController(ConsumerGroup group) {
+        SqsModule.ConsumerConfig config = group.getConsumerConfig();
+        LOG.debug(
+            "Autoscaling SQS Consumer for class={}, queue={} between min={} max={}",
+            config.getConsumer().getSimpleName(), group.getEndpointConfig().getQueueName(),
+            config.getMinConcurrency(), config.getMaxConcurrency()
+        );
+        ConcurrencyController controller = new ConcurrencyController(
+            group,
+            config.getMinConcurrency(),
+            config.getMaxConcurrency(),
+            config.getWorkers(),
+            config.getScaleIntervalSeconds()
+        );
+        long interval = config.getScaleIntervalSeconds();
+        scalingScheduler.scheduleWithFixedDelay(controller, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The dispatcher of each of a consumer's endpoints.  Endpoints share the consumer's worker pool, weighted by
+     * priority and weight when there is more than one.
+     */
+    private Function<SqsModule.EndpointConfig, MessageDispatcher> buildDispatchers(SqsModule.ConsumerConfig config) {
+        if (config.getWorkers() < 1) {
+            MessageDispatcher dispatcher = new InlineDispatcher();
+            return endpointConfig -> dispatcher;
+        }
+        LOG.debug(
+            "Creating an SQS worker pool for class={}, workers={}",
+            config.getConsumer().getSimpleName(), config.getWorkers()
+        );
+        ExecutorService workers = ConsumerExecutors.create(this.config.getConsumerThreads(), config.getWorkers());
+        if (config.getEndpoints().size() < 2) {
+            MessageDispatcher dispatcher = new WorkerPoolDispatcher(workers, config.getWorkers());
+            dispatchers.add(dispatcher);
+            return endpointConfig -> dispatcher;
+        }
+        WeightedDispatcher weighted = new WeightedDispatcher(workers, config.getWorkers());
+        return endpointConfig -> {
+            MessageDispatcher lane = weighted.lane(endpointConfig.getWeight(), endpointConfig.getPriority());
+            dispatchers.add(lane);
+            return lane;
+        };
+    }
+
+    private MessageAcknowledger buildAcknowledger(
+        SqsModule.ConsumerConfig config,
+        SqsModule.EndpointConfig endpointConfig,
+        ConsumerStats stats,
+        CircuitBreaker breaker
+    ) {
+        MessageAcknowledger acknowledger = new MessageAcknowledger(
+            sqsManager.get(endpointConfig),
+            endpointConfig,
+            sqsManager.getQueueUrl(endpointConfig),
+            config.getAckBatchSize(),
+            stats,
+            breaker
+        );
+        long interval = config.getAckFlushIntervalMillis();
+        scheduler.scheduleWithFixedDelay(acknowledger::flush, interval, interval, TimeUnit.MILLISECONDS);
+        acknowledgers.add(acknowledger);
+        return acknowledger;
     }
 }
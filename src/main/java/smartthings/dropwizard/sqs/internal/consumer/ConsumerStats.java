@@ -0,0 +1,169 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.codahale.metrics.*;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Receive, delete and processing measurements for the pollers of a consumer group.  Measurements are published to
+ * Dropwizard metrics and also accumulated in counters that the concurrency controller reads once per interval.
+ */
+public class ConsumerStats {
+
+    private final LongAdder receives = new LongAdder();
+    private final LongAdder emptyReceives = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder processingNanos = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Timer receiveTimer;
+    private final Timer deleteTimer;
+    private final Timer consumeTimer;
+    private final Histogram messagesPerReceive;
+    private final Counter emptyReceiveCounter;
+    private final Meter consumeFailures;
+    private final InFlightGauge inFlightGauge;
+
+    public ConsumerStats() {
+        this(new MetricRegistry(), "sqs");
+    }
+
+    /**
+     * @param registry the registry metrics are published to
+     * @param name the metric name prefix, e.g. <code>sqs.consumer.MyConsumer.my-queue</code>
+     */
+    public ConsumerStats(MetricRegistry registry, String name) {
+        this.receiveTimer = registry.timer(MetricRegistry.name(name, "receive"));
+        this.deleteTimer = registry.timer(MetricRegistry.name(name, "delete"));
+        this.consumeTimer = registry.timer(MetricRegistry.name(name, "consume"));
+        this.messagesPerReceive = registry.histogram(MetricRegistry.name(name, "messages-per-receive"));
+        this.emptyReceiveCounter = registry.counter(MetricRegistry.name(name, "empty-receives"));
+        this.consumeFailures = registry.meter(MetricRegistry.name(name, "consume-failures"));
+
+        this.inFlightGauge = InFlightGauge.of(registry, MetricRegistry.name(name, "in-flight"));
+        this.inFlightGauge.counts.add(inFlight);
+    }
+
+    /**
+     * Stop reporting this group's in-flight messages on the shared gauge.
+     */
+    public void close() {
+        inFlightGauge.counts.remove(inFlight);
+    }
+
+    public void recordReceive(int messageCount, long nanos) {
+        receives.increment();
+        receiveTimer.update(nanos, TimeUnit.NANOSECONDS);
+        messagesPerReceive.update(messageCount);
+        if (messageCount == 0) {
+            emptyReceives.increment();
+            emptyReceiveCounter.inc();
+        }
+    }
+
+    public void recordDelete(long nanos) {
+        deleteTimer.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDispatch() {
+        inFlight.incrementAndGet();
+    }
+
+    public void recordConsume(long nanos, boolean success) {
+        inFlight.decrementAndGet();
+        messages.increment();
+        processingNanos.add(nanos);
+        consumeTimer.update(nanos, TimeUnit.NANOSECONDS);
+        if (!success) {
+            consumeFailures.mark();
+        }
+    }
+
+    /**
+     * Record a dispatched message that was not processed because an earlier message of its group failed.
+     */
+    public void recordSkip() {
+        inFlight.decrementAndGet();
+        consumeFailures.mark();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Capture the counters recorded since the previous snapshot and start counting again.
+     *
+     * @return the counters for the elapsed period
+     */
+    public Snapshot snapshotAndReset() {
+        return new Snapshot(
+            receives.sumThenReset(),
+            emptyReceives.sumThenReset(),
+            messages.sumThenReset(),
+            processingNanos.sumThenReset()
+        );
+    }
+
+    /**
+     * Sums the in-flight messages of every group publishing under the same name, like the timers and meters that
+     * such groups share through the registry.
+     */
+    private static class InFlightGauge implements Gauge<Integer> {
+        private final Set<AtomicInteger> counts = new CopyOnWriteArraySet<>();
+
+        static InFlightGauge of(MetricRegistry registry, String name) {
+            synchronized (registry) {
+                Gauge<?> existing = registry.getGauges().get(name);
+                if (existing instanceof InFlightGauge) {
+                    return (InFlightGauge) existing;
+                }
+                registry.remove(name);
+                return registry.register(name, new InFlightGauge());
+            }
+        }
+
+        @Override
+        public Integer getValue() {
+            return counts.stream().mapToInt(AtomicInteger::get).sum();
+        }
+    }
+
+    public static class Snapshot {
+        private final long receives;
+        private final long emptyReceives;
+        private final long messages;
+        private final long processingNanos;
+
+        Snapshot(long receives, long emptyReceives, long messages, long processingNanos) {
+            this.receives = receives;
+            this.emptyReceives = emptyReceives;
+            this.messages = messages;
+            this.processingNanos = processingNanos;
+        }
+
+        public long getReceives() {
+            return receives;
+        }
+
+        public long getEmptyReceives() {
+            return emptyReceives;
+        }
+
+        public long getMessages() {
+            return messages;
+        }
+
+        public double getEmptyRatio() {
+            return receives == 0 ? 0 : (double) emptyReceives / receives;
+        }
+
+        public long getAverageLatencyNanos() {
+            return messages == 0 ? 0 : processingNanos / messages;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import smartthings.dropwizard.aws.PayloadCodec;
+import smartthings.dropwizard.aws.internal.codec.PayloadCompressor;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Decompresses the bodies of messages marked with a {@link PayloadCompressor#ENCODING_ATTRIBUTE}.  A message
+ * naming a codec that is not bound, or whose body decodes to more than the configured limit, fails so that it is
+ * retried and ends up on the dead letter queue rather than being consumed compressed or exhausting the heap.
+ */
+public class ContentDecoder implements MessageDecoder {
+
+    private final Map<String, PayloadCodec> codecs;
+    private final long maxDecodedBytes;
+
+    /**
+     * @param codecs the bound codecs by name
+     * @param maxDecodedBytes the most UTF-8 bytes a decoded body may have
+     */
+    public ContentDecoder(Map<String, PayloadCodec> codecs, long maxDecodedBytes) {
+        this.codecs = codecs;
+        this.maxDecodedBytes = maxDecodedBytes;
+    }
+
+    @Override
+    public ReceiveMessageRequest prepare(ReceiveMessageRequest request) {
+        return MessageDecoder.withMessageAttribute(request, PayloadCompressor.ENCODING_ATTRIBUTE);
+    }
+
+    @Override
+    public Runnable decode(Message message) throws IOException {
+        MessageAttributeValue encoding = message.getMessageAttributes().get(PayloadCompressor.ENCODING_ATTRIBUTE);
+        if (encoding == null) {
+            return null;
+        }
+        PayloadCodec codec = codecs.get(encoding.getStringValue());
+        if (codec == null) {
+            throw new IOException("No codec is bound for content encoding " + encoding.getStringValue());
+        }
+        message.setBody(PayloadCompressor.decompress(codec, message.getBody(), maxDecodedBytes));
+        message.getMessageAttributes().remove(PayloadCompressor.ENCODING_ATTRIBUTE);
+        return null;
+    }
+}
@@ -0,0 +1,126 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import io.vavr.control.Try;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.sqs.BatchConsumer;
+import smartthings.dropwizard.sqs.Consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decorates a Consumer so that it only ever sees messages as they were sent, running each received message through
+ * the endpoint's decoders in order.  A message that cannot be decoded fails like any other and is retried.
+ */
+public class DecodingConsumer implements Consumer {
+
+    private static final Logger log = LoggerFactory.getLogger(DecodingConsumer.class);
+
+    final Consumer delegate;
+    final List<MessageDecoder> decoders;
+
+    DecodingConsumer(Consumer delegate, List<MessageDecoder> decoders) {
+        this.delegate = delegate;
+        this.decoders = decoders;
+    }
+
+    /**
+     * Wrap a consumer, keeping it a BatchConsumer if it is one.
+     *
+     * @param consumer the consumer
+     * @param decoders the decoders, in the order messages are run through them
+     * @return the wrapped consumer, the consumer itself when there are no decoders
+     */
+    public static Consumer wrap(Consumer consumer, List<MessageDecoder> decoders) {
+        if (decoders.isEmpty()) {
+            return consumer;
+        }
+        return consumer instanceof BatchConsumer ?
+            new Batch((BatchConsumer) consumer, decoders) :
+            new DecodingConsumer(consumer, decoders);
+    }
+
+    @Override
+    public void consume(Message message) throws Exception {
+        List<Runnable> onConsumed = decode(message);
+        delegate.consume(message);
+        onConsumed.forEach(DecodingConsumer::consumed);
+    }
+
+    @Override
+    public ReceiveMessageRequest getReceiveMessageRequest() {
+        ReceiveMessageRequest request = delegate.getReceiveMessageRequest().clone();
+        for (MessageDecoder decoder : decoders) {
+            request = decoder.prepare(request);
+        }
+        return request;
+    }
+
+    List<Runnable> decode(Message message) throws Exception {
+        List<Runnable> onConsumed = new ArrayList<>(0);
+        for (MessageDecoder decoder : decoders) {
+            Runnable callback = decoder.decode(message);
+            if (callback != null) {
+                onConsumed.add(callback);
+            }
+        }
+        return onConsumed;
+    }
+
+    static void consumed(Runnable callback) {
+        Try.run(callback::run)
+            .onFailure(t -> log.warn("Failed to clean up after a consumed message.", t));
+    }
+
+    private static class Batch extends DecodingConsumer implements BatchConsumer {
+
+        Batch(BatchConsumer delegate, List<MessageDecoder> decoders) {
+            super(delegate, decoders);
+        }
+
+        @Override
+        public void consume(Message message) throws Exception {
+            BatchConsumer.super.consume(message);
+        }
+
+        @Override
+        public List<Message> consumeBatch(List<Message> messages) throws Exception {
+            List<Message> decoded = new ArrayList<>(messages.size());
+            List<Message> failed = new ArrayList<>(0);
+            Map<Message, List<Runnable>> callbacks = new IdentityHashMap<>();
+            for (Message message : messages) {
+                Try<List<Runnable>> onConsumed = Try.of(() -> decode(message));
+                if (onConsumed.isFailure()) {
+                    log.error("Failed to decode message.  message={}", message, onConsumed.getCause());
+                    failed.add(message);
+                } else {
+                    decoded.add(message);
+                    if (!onConsumed.get().isEmpty()) {
+                        callbacks.put(message, onConsumed.get());
+                    }
+                }
+            }
+            if (!decoded.isEmpty()) {
+                List<Message> batchFailed = ((BatchConsumer) delegate).consumeBatch(decoded);
+                if (batchFailed != null) {
+                    failed.addAll(batchFailed);
+                }
+            }
+            Set<Message> unconsumed = Collections.newSetFromMap(new IdentityHashMap<>());
+            unconsumed.addAll(failed);
+            callbacks.forEach((message, onConsumed) -> {
+                if (!unconsumed.contains(message)) {
+                    onConsumed.forEach(DecodingConsumer::consumed);
+                }
+            });
+            return failed;
+        }
+    }
+}
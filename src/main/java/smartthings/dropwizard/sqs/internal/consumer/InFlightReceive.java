@@ -0,0 +1,89 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.sqs.SqsService;
+
+/**
+ * The receive call of a single poller, which can be abandoned on shutdown instead of waiting out a long poll.  The
+ * receive blocks the poller's own thread, so a long poll never holds a second thread; abandoning it interrupts that
+ * thread.  Once abandoned no further receives are issued, and any messages SQS still delivers for the abandoned call,
+ * for example because the client did not notice the interrupt, are released back to the queue.
+ */
+public class InFlightReceive {
+
+    private static final Logger log = LoggerFactory.getLogger(InFlightReceive.class);
+
+    private final SqsService sqs;
+    private final Object lock = new Object();
+    private Thread receiving;
+    private boolean interrupted;
+    private volatile boolean abandoned;
+
+    public InFlightReceive(SqsService sqs) {
+        this.sqs = sqs;
+    }
+
+    /**
+     * Receive messages, blocking until SQS responds or the call is abandoned.
+     *
+     * @param request the request
+     * @return the result, empty if abandoned
+     * @throws Exception if the receive failed
+     */
+    public ReceiveMessageResult receive(ReceiveMessageRequest request) throws Exception {
+        synchronized (lock) {
+            if (abandoned) {
+                return new ReceiveMessageResult();
+            }
+            receiving = Thread.currentThread();
+        }
+        ReceiveMessageResult result;
+        try {
+            result = sqs.receiveMessage(request);
+        } catch (Exception e) {
+            // The client reports an interrupted call as a failure of its own.
+            if (abandoned) {
+                return new ReceiveMessageResult();
+            }
+            throw e;
+        } finally {
+            synchronized (lock) {
+                receiving = null;
+                // The interrupt was only meant for the receive and must not leak into the poller's next wait.
+                if (interrupted) {
+                    interrupted = false;
+                    Thread.interrupted();
+                }
+            }
+        }
+        if (abandoned) {
+            if (!result.getMessages().isEmpty()) {
+                log.debug("Releasing {} messages received after shutdown for queue={}",
+                    result.getMessages().size(), request.getQueueUrl());
+                MessageVisibility.release(sqs, request.getQueueUrl(), result.getMessages());
+            }
+            return new ReceiveMessageResult();
+        }
+        return result;
+    }
+
+    /**
+     * Interrupt the current receive and refuse any further ones.
+     */
+    public void abandon() {
+        synchronized (lock) {
+            abandoned = true;
+            if (receiving != null && !interrupted) {
+                interrupted = true;
+                receiving.interrupt();
+            }
+        }
+    }
+
+    public boolean isAbandoned() {
+        return abandoned;
+    }
+}
@@ -0,0 +1,28 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes messages one after another on the polling thread.
+ */
+public class InlineDispatcher implements MessageDispatcher {
+
+    @Override
+    public int reserve(int max) {
+        return max;
+    }
+
+    @Override
+    public void release(int slots) {
+    }
+
+    @Override
+    public void dispatch(Runnable task) {
+        task.run();
+    }
+
+    @Override
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        return true;
+    }
+}
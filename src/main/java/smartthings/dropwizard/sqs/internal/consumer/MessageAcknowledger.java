@@ -0,0 +1,129 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.*;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.vavr.control.Try;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.sqs.SqsModule;
+import smartthings.dropwizard.sqs.SqsService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.github.resilience4j.circuitbreaker.CircuitBreaker.decorateCheckedSupplier;
+
+/**
+ * Gathers the receipt handles of successfully consumed messages for a single queue and deletes them from SQS
+ * using DeleteMessageBatch.  A batch is sent as soon as the configured batch size is reached; anything left over
+ * is sent the next time {@link #flush()} is invoked.  Deletes go through the queue's circuit breaker, like receives.
+ */
+public class MessageAcknowledger {
+
+    static final int MAX_BATCH_SIZE = 10;
+
+    private static final Logger log = LoggerFactory.getLogger(MessageAcknowledger.class);
+
+    private final SqsService sqs;
+    private final SqsModule.EndpointConfig config;
+    private final int batchSize;
+    private final ConsumerStats stats;
+    private final QueueUrl queueUrl;
+    private final CircuitBreaker breaker;
+    private final List<Message> pending = new ArrayList<>();
+
+    /**
+     * @param breaker the queue's circuit breaker, shared with its receives
+     */
+    public MessageAcknowledger(
+        SqsService sqs,
+        SqsModule.EndpointConfig config,
+        QueueUrl queueUrl,
+        int batchSize,
+        ConsumerStats stats,
+        CircuitBreaker breaker
+    ) {
+        this.sqs = sqs;
+        this.config = config;
+        this.queueUrl = queueUrl;
+        this.batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, batchSize));
+        this.stats = stats;
+        this.breaker = breaker;
+    }
+
+    /**
+     * Queue a message for deletion.
+     *
+     * @param message the successfully consumed message
+     */
+    public void acknowledge(Message message) {
+        List<Message> batch = null;
+        synchronized (pending) {
+            pending.add(message);
+            if (pending.size() >= batchSize) {
+                batch = drain();
+            }
+        }
+        if (batch != null) {
+            deleteMessages(batch);
+        }
+    }
+
+    /**
+     * Delete all pending messages regardless of the batch size.
+     */
+    public void flush() {
+        List<Message> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = drain();
+        }
+        deleteMessages(batch);
+    }
+
+    private List<Message> drain() {
+        List<Message> batch = new ArrayList<>(pending);
+        pending.clear();
+        return batch;
+    }
+
+    private void deleteMessages(List<Message> batch) {
+        List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            entries.add(new DeleteMessageBatchRequestEntry(String.valueOf(i), batch.get(i).getReceiptHandle()));
+        }
+
+        log.debug("Execute deleteMessageBatch for SQS queue={} size={}", config.getQueueName(), entries.size());
+        long start = System.nanoTime();
+        Try.of(decorateCheckedSupplier(breaker, () ->
+            queueUrl.call(url -> sqs.deleteMessageBatch(new DeleteMessageBatchRequest(url, entries)))
+        ))
+            .andFinally(() -> stats.recordDelete(System.nanoTime() - start))
+            .onSuccess(result -> result.getFailed().forEach(entry ->
+                onDeleteFailure(batch.get(Integer.parseInt(entry.getId())), entry)
+            ))
+            .onFailure(t -> log.error(
+                "Failed to delete message batch.  queue={} size={}", config.getQueueName(), batch.size(), t
+            ));
+    }
+
+    private void onDeleteFailure(Message message, BatchResultErrorEntry entry) {
+        if (Boolean.TRUE.equals(entry.getSenderFault())) {
+            log.error(
+                "Failed to delete message.  queue={} code={} reason={} message={}",
+                config.getQueueName(), entry.getCode(), entry.getMessage(), message
+            );
+            return;
+        }
+
+        // Server side failures are worth a single retry before the message is left to become visible again.
+        Try.of(decorateCheckedSupplier(breaker, () ->
+            queueUrl.call(url -> sqs.deleteMessage(new DeleteMessageRequest(url, message.getReceiptHandle())))
+        ))
+            .onFailure(t -> log.error(
+                "Failed to delete message.  queue={} message={}", config.getQueueName(), message, t
+            ));
+    }
+}
@@ -0,0 +1,78 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Reads message bodies as a Jackson type with a single {@link ObjectReader} built up front.  Bodies of SNS
+ * notifications delivered without raw message delivery are unwrapped in one streaming pass: the envelope is never
+ * bound to an object, and the embedded message is parsed straight out of the envelope parser's buffer rather than
+ * copied out as a String first.
+ *
+ * @param <T> the type bodies are read as
+ */
+public class MessageBodyReader<T> {
+
+    private static final String SNS_MESSAGE = "Message";
+
+    // Producers add fields before consumers know about them, so the default tolerates unknown properties.
+    private static final ObjectMapper DEFAULT_MAPPER = new ObjectMapper()
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final ObjectReader reader;
+    private final JsonFactory factory;
+    private final boolean snsEnvelope;
+
+    /**
+     * @param mapper the mapper to read with, null for a default one
+     * @param type the type bodies are read as
+     * @param snsEnvelope whether bodies are SNS notifications wrapping the message to read
+     */
+    public MessageBodyReader(ObjectMapper mapper, Type type, boolean snsEnvelope) {
+        ObjectMapper configured = mapper == null ? DEFAULT_MAPPER : mapper;
+        this.reader = configured.readerFor(configured.getTypeFactory().constructType(type));
+        this.factory = configured.getFactory();
+        this.snsEnvelope = snsEnvelope;
+    }
+
+    /**
+     * @param body the message body
+     * @return the body read as the type
+     * @throws IOException if the body is not valid JSON for the type, or is not an SNS notification when one is
+     * expected
+     */
+    public T read(String body) throws IOException {
+        if (!snsEnvelope) {
+            return reader.readValue(body);
+        }
+        try (JsonParser envelope = factory.createParser(body)) {
+            if (envelope.nextToken() == JsonToken.START_OBJECT) {
+                while (envelope.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = envelope.getCurrentName();
+                    JsonToken value = envelope.nextToken();
+                    if (SNS_MESSAGE.equals(field) && value == JsonToken.VALUE_STRING) {
+                        return readEmbedded(envelope);
+                    }
+                    envelope.skipChildren();
+                }
+            }
+        }
+        throw new IOException("Message body is not an SNS notification.");
+    }
+
+    private T readEmbedded(JsonParser envelope) throws IOException {
+        // The characters are only valid until the envelope parser moves on, which it does not do until this returns.
+        try (JsonParser message = factory.createParser(
+            envelope.getTextCharacters(), envelope.getTextOffset(), envelope.getTextLength()
+        )) {
+            return reader.readValue(message);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Restores a received message to the form it was sent in, undoing a transformation applied by a queue writer.
+ */
+public interface MessageDecoder {
+
+    /**
+     * Ask SQS for whatever the decoder needs with each message.
+     *
+     * @param request the request, which is modified
+     * @return the request
+     */
+    ReceiveMessageRequest prepare(ReceiveMessageRequest request);
+
+    /**
+     * Decode a message in place, leaving messages the decoder does not apply to untouched.
+     *
+     * @param message the received message
+     * @return run once the message has been consumed, null if there is nothing to do then
+     * @throws IOException if the message could not be decoded
+     */
+    Runnable decode(Message message) throws IOException;
+
+    /**
+     * Add a message attribute to those a request asks for.
+     *
+     * @param request the request, which is modified
+     * @param name the attribute's name
+     * @return the request
+     */
+    static ReceiveMessageRequest withMessageAttribute(ReceiveMessageRequest request, String name) {
+        List<String> names = request.getMessageAttributeNames();
+        if (!names.contains(name) && !names.contains("All") && !names.contains(".*")) {
+            List<String> requested = new ArrayList<>(names);
+            requested.add(name);
+            request.setMessageAttributeNames(requested);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,50 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Strategy for handing received messages off for processing.  Pollers reserve capacity before receiving so that a
+ * dispatcher can apply backpressure by withholding it.
+ */
+public interface MessageDispatcher {
+
+    /**
+     * Reserve capacity for up to <code>max</code> messages, blocking until at least one slot is available.
+     *
+     * @param max the maximum number of slots wanted
+     * @return the number of slots reserved
+     * @throws InterruptedException if interrupted while waiting for capacity
+     */
+    int reserve(int max) throws InterruptedException;
+
+    /**
+     * Return previously reserved slots that will not be used.
+     *
+     * @param slots the number of slots to return
+     */
+    void release(int slots);
+
+    /**
+     * Process a message using one previously reserved slot.
+     *
+     * @param task the processing task
+     */
+    void dispatch(Runnable task);
+
+    /**
+     * Stop accepting work and wait for dispatched tasks to complete.
+     */
+    default void shutdown() {
+        shutdown(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop accepting work and wait for dispatched tasks to complete, interrupting any still running after the
+     * timeout.
+     *
+     * @param timeout the most time to wait
+     * @param unit the unit of the timeout
+     * @return true if every dispatched task completed
+     */
+    boolean shutdown(long timeout, TimeUnit unit);
+}
@@ -0,0 +1,259 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageSystemAttributeName;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Processes the messages of a FIFO queue so that different message groups run in parallel on the dispatcher while
+ * the messages of each group run one at a time, in the order they were received.  Every poller of the queue must
+ * share one executor for the order to hold across pollers and the prefetch buffer.  When a message fails, the
+ * messages of its group behind it are skipped rather than processed out of order; they are left in flight and
+ * redelivered, in order, once their visibility timeout expires.
+ *
+ * <p>A group stays poisoned after a failure until every message of it that was received alongside the failure has
+ * been handed over and skipped.  SQS returns no further messages of a group while any are in flight, so the group is
+ * only forgotten once nothing from the failed receive can still arrive.  Receives are handed over whole by
+ * {@link #execute(List, Predicate, Consumer)}; a prefetch buffer, which hands a receive over in pieces, registers
+ * it up front with {@link #expect(List)} so that its place in each group is held from the moment it is received.
+ */
+public class MessageGroupExecutor {
+
+    static final String MESSAGE_GROUP_ID = MessageSystemAttributeName.MessageGroupId.toString();
+
+    private final MessageDispatcher dispatcher;
+    private final Map<String, Group> groups = new HashMap<>();
+
+    public MessageGroupExecutor(MessageDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Ask SQS to return the group of each received message.
+     *
+     * @param request the request, which is modified
+     * @return the request
+     */
+    public static ReceiveMessageRequest withGroupIds(ReceiveMessageRequest request) {
+        List<String> names = request.getAttributeNames();
+        if (!names.contains(MESSAGE_GROUP_ID) && !names.contains("All")) {
+            List<String> requested = new ArrayList<>(names);
+            requested.add(MESSAGE_GROUP_ID);
+            request.setAttributeNames(requested);
+        }
+        return request;
+    }
+
+    /**
+     * Hold the place of received messages in their groups until they are handed over with
+     * {@link #execute(List, Predicate, Consumer)} or given up with {@link #forget(List)}.
+     *
+     * @param messages the messages of one receive, in the order they were received
+     */
+    public synchronized void expect(List<Message> messages) {
+        for (Message message : messages) {
+            String groupId = groupId(message);
+            if (groupId != null) {
+                groups.computeIfAbsent(groupId, id -> new Group()).slots.add(new Slot(message));
+            }
+        }
+    }
+
+    /**
+     * Give up on expected messages that will not be handed over, for example because they were released back to
+     * the queue.  Their groups are poisoned from that point on, since later messages would otherwise be processed
+     * ahead of them.
+     *
+     * @param messages the messages
+     */
+    public void forget(List<Message> messages) {
+        List<Task> skipped = new ArrayList<>();
+        synchronized (this) {
+            for (Message message : messages) {
+                String groupId = groupId(message);
+                Group group = groupId == null ? null : groups.get(groupId);
+                Slot slot = group == null ? null : group.find(message);
+                if (slot != null) {
+                    slot.forgotten = true;
+                    if (!group.running) {
+                        settle(groupId, group, skipped);
+                    }
+                }
+            }
+        }
+        skipped.forEach(Task::skip);
+    }
+
+    /**
+     * Process a message after every earlier message of its group, using one slot previously reserved from the
+     * dispatcher.
+     *
+     * @param message the message
+     * @param process processes the message, returning whether it succeeded
+     * @param skip called instead of process for a message skipped after an earlier failure in its group
+     */
+    public void execute(Message message, Predicate<Message> process, Consumer<Message> skip) {
+        execute(Collections.singletonList(message), process, skip);
+    }
+
+    /**
+     * Process the messages of one receive, each after every earlier message of its group, using one slot per
+     * message previously reserved from the dispatcher.  Every message is queued in its group before any is
+     * dispatched, so a failure cannot release a group while later messages of it are still being handed over.
+     *
+     * @param messages the messages, in the order they were received
+     * @param process processes a message, returning whether it succeeded
+     * @param skip called instead of process for a message skipped after an earlier failure in its group
+     */
+    public void execute(List<Message> messages, Predicate<Message> process, Consumer<Message> skip) {
+        List<Runnable> dispatched = new ArrayList<>(messages.size());
+        List<Task> skipped = new ArrayList<>();
+        synchronized (this) {
+            for (Message message : messages) {
+                Task task = new Task(message, process, skip);
+                String groupId = groupId(message);
+                if (groupId == null) {
+                    dispatched.add(() -> task.process());
+                    continue;
+                }
+                Group group = groups.computeIfAbsent(groupId, id -> new Group());
+                Slot slot = group.find(message);
+                if (slot == null) {
+                    slot = new Slot(message);
+                    group.slots.add(slot);
+                }
+                slot.task = task;
+            }
+            for (Message message : messages) {
+                String groupId = groupId(message);
+                Group group = groupId == null ? null : groups.get(groupId);
+                if (group == null || group.running) {
+                    continue;
+                }
+                if (settle(groupId, group, skipped)) {
+                    Task first = group.slots.peek().task;
+                    group.running = true;
+                    dispatched.add(() -> run(groupId, group, first));
+                }
+            }
+        }
+        // Slots are only needed for the groups that were started; the others are picked up by a running task.
+        dispatcher.release(messages.size() - dispatched.size());
+        dispatched.forEach(dispatcher::dispatch);
+        skipped.forEach(Task::skip);
+    }
+
+    /**
+     * @return the message's group, null if it was not received from a FIFO queue with group IDs requested
+     */
+    public static String groupId(Message message) {
+        return message.getAttributes().get(MESSAGE_GROUP_ID);
+    }
+
+    synchronized int activeGroups() {
+        return groups.size();
+    }
+
+    private void run(String groupId, Group group, Task first) {
+        Task task = first;
+        while (task != null) {
+            boolean success = task.process();
+            List<Task> skipped = new ArrayList<>();
+            synchronized (this) {
+                group.failed |= !success;
+                group.slots.poll();
+                if (settle(groupId, group, skipped)) {
+                    task = group.slots.peek().task;
+                } else {
+                    task = null;
+                    group.running = false;
+                }
+            }
+            skipped.forEach(Task::skip);
+        }
+    }
+
+    /**
+     * Move a group that is not being processed up to its next message to process, collecting the messages skipped
+     * on the way, and forget the group once nothing more of it is expected.
+     *
+     * @return true if the group's first message has been handed over and should be processed
+     */
+    private boolean settle(String groupId, Group group, List<Task> skipped) {
+        Slot head;
+        while ((head = group.slots.peek()) != null) {
+            if (head.forgotten) {
+                group.failed = true;
+                group.slots.poll();
+            } else if (head.task == null) {
+                return false;
+            } else if (!group.failed) {
+                return true;
+            } else {
+                skipped.add(group.slots.poll().task);
+            }
+        }
+        groups.remove(groupId);
+        return false;
+    }
+
+    private static class Group {
+        private final Queue<Slot> slots = new ArrayDeque<>();
+        private boolean running;
+        private boolean failed;
+
+        Slot find(Message message) {
+            for (Slot slot : slots) {
+                if (slot.message == message) {
+                    return slot;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Slot {
+        private final Message message;
+        private Task task;
+        private boolean forgotten;
+
+        Slot(Message message) {
+            this.message = message;
+        }
+    }
+
+    private static class Task {
+        private final Message message;
+        private final Predicate<Message> process;
+        private final Consumer<Message> skip;
+
+        Task(Message message, Predicate<Message> process, Consumer<Message> skip) {
+            this.message = message;
+            this.process = process;
+            this.skip = skip;
+        }
+
+        boolean process() {
+            try {
+                return process.test(message);
+            } catch (RuntimeException e) {
+                // The group must still be released for later messages.
+                return false;
+            }
+        }
+
+        void skip() {
+            skip.accept(message);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+
+import java.util.List;
+
+/**
+ * Supplies messages to a polling {@link ConsumerAction}.
+ */
+@FunctionalInterface
+public interface MessageSource {
+
+    /**
+     * Receive up to <code>request.getMaxNumberOfMessages()</code> messages, waiting at most
+     * <code>request.getWaitTimeSeconds()</code> for the first one.
+     *
+     * @param request the receive request
+     * @return the received messages, possibly empty
+     * @throws Exception if messages could not be received
+     */
+    List<Message> receive(ReceiveMessageRequest request) throws Exception;
+}
@@ -0,0 +1,75 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.Message;
+import io.vavr.control.Try;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.sqs.SqsService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers for changing the visibility of received messages.
+ */
+public final class MessageVisibility {
+
+    static final int MAX_BATCH_SIZE = 10;
+
+    private static final Logger log = LoggerFactory.getLogger(MessageVisibility.class);
+
+    private MessageVisibility() {
+    }
+
+    /**
+     * Make messages immediately visible to other consumers.
+     *
+     * @param sqs the SQS service the messages were received from
+     * @param queueUrl the queue the messages were received from
+     * @param messages the messages to release
+     */
+    public static void release(SqsService sqs, String queueUrl, List<Message> messages) {
+        change(sqs, queueUrl, messages, 0);
+    }
+
+    /**
+     * Change the visibility timeout of messages using as few ChangeMessageVisibilityBatch calls as possible.
+     * Failures are logged; affected messages keep their current timeout.
+     *
+     * @param sqs the SQS service the messages were received from
+     * @param queueUrl the queue the messages were received from
+     * @param messages the messages to change
+     * @param visibilityTimeout the new timeout in seconds, counted from now
+     * @return the messages whose visibility could not be changed
+     */
+    public static List<Message> change(SqsService sqs, String queueUrl, List<Message> messages, int visibilityTimeout) {
+        List<Message> failed = new ArrayList<>(0);
+        for (int from = 0; from < messages.size(); from += MAX_BATCH_SIZE) {
+            List<Message> batch = messages.subList(from, Math.min(messages.size(), from + MAX_BATCH_SIZE));
+            List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                entries.add(new ChangeMessageVisibilityBatchRequestEntry(
+                    String.valueOf(i), batch.get(i).getReceiptHandle()
+                ).withVisibilityTimeout(visibilityTimeout));
+            }
+            Try.of(() -> sqs.changeMessageVisibilityBatch(new ChangeMessageVisibilityBatchRequest(queueUrl, entries)))
+                .map(ChangeMessageVisibilityBatchResult::getFailed)
+                .onSuccess(errors -> errors.forEach(entry -> {
+                    Message message = batch.get(Integer.parseInt(entry.getId()));
+                    log.warn(
+                        "Failed to change message visibility.  queue={} code={} message={}",
+                        queueUrl, entry.getCode(), message
+                    );
+                    failed.add(message);
+                }))
+                .onFailure(t -> {
+                    log.warn("Failed to change message visibility.  queue={} size={}", queueUrl, batch.size(), t);
+                    failed.addAll(batch);
+                });
+        }
+        return failed;
+    }
+}
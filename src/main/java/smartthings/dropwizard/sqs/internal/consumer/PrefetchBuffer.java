@@ -0,0 +1,324 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.*;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.vavr.control.Try;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.aws.internal.backoff.Backoff;
+import smartthings.dropwizard.aws.internal.backoff.BackoffScheduler;
+import smartthings.dropwizard.sqs.Consumer;
+import smartthings.dropwizard.sqs.SqsModule;
+import smartthings.dropwizard.sqs.SqsService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static io.github.resilience4j.circuitbreaker.CircuitBreaker.decorateCheckedSupplier;
+
+/**
+ * Keeps a number of receive calls in flight for a queue and holds the results in a bounded local buffer that
+ * consumer pollers drain.  Fetchers only ask SQS for as many messages as the buffer has room for, and messages
+ * that sit in the buffer until their visibility timeout is about to expire are released back to the queue instead
+ * of being processed late.  With a visibility heartbeat the buffered messages are kept visible instead, but only for
+ * up to the maximum hold time, after which they are released as well.
+ */
+public class PrefetchBuffer implements MessageSource {
+
+    static final long MIN_EXPIRY_MARGIN_MILLIS = 1000;
+    static final long MAX_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final Logger log = LoggerFactory.getLogger(PrefetchBuffer.class);
+
+    private final SqsService sqs;
+    private final Consumer consumer;
+    private final QueueUrl queueUrl;
+    private final SqsModule.EndpointConfig config;
+    private final ConsumerStats stats;
+    private final VisibilityHeartbeat heartbeat;
+    private final MessageGroupExecutor groups;
+    private final int fetchers;
+    private final long maxHoldNanos;
+    private final BlockingQueue<BufferedMessage> buffer;
+    private final Semaphore capacity;
+    private final CircuitBreaker breaker;
+    private final CountDownLatch fetchersComplete;
+    private final List<Fetcher> started = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+
+    public PrefetchBuffer(
+        SqsService sqs,
+        Consumer consumer,
+        QueueUrl queueUrl,
+        SqsModule.EndpointConfig config,
+        ConsumerStats stats,
+        VisibilityHeartbeat heartbeat,
+        MessageGroupExecutor groups,
+        int fetchers,
+        int bufferSize,
+        long maxHoldMillis
+    ) {
+        this.sqs = sqs;
+        this.consumer = consumer;
+        this.queueUrl = queueUrl;
+        this.config = config;
+        this.stats = stats;
+        this.heartbeat = heartbeat;
+        this.groups = groups;
+        this.fetchers = fetchers;
+        this.maxHoldNanos = TimeUnit.MILLISECONDS.toNanos(maxHoldMillis);
+        this.buffer = new LinkedBlockingQueue<>(bufferSize);
+        this.capacity = new Semaphore(bufferSize);
+        this.breaker = CircuitBreaker.ofDefaults(String.format("sqs-%s-prefetch", config.getQueueName()));
+        this.fetchersComplete = new CountDownLatch(fetchers);
+        // A breaker keeps only one listener per event type, so one listener serves every fetcher.
+        this.breaker.getEventPublisher().onStateTransition(event -> started.forEach(Fetcher::onCircuitTransition));
+    }
+
+    /**
+     * Start the fetchers on the executor.  Fetchers back off through the timer while the circuit is open.
+     *
+     * @param executor the executor to fetch on
+     * @param timer the timer used to resubmit fetchers
+     */
+    public void start(ExecutorService executor, ScheduledExecutorService timer) {
+        for (int i = 0; i < fetchers; i++) {
+            Fetcher fetcher = new Fetcher(executor, timer);
+            started.add(fetcher);
+            executor.execute(fetcher);
+        }
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    public int size() {
+        return buffer.size();
+    }
+
+    public void shutdown() {
+        running = false;
+        started.forEach(Fetcher::cancel);
+    }
+
+    public void awaitShutdown() {
+        awaitShutdown(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Wait for all fetchers to exit and release anything left in the buffer back to the queue.  The buffer is
+     * released even if the fetchers do not exit in time.
+     *
+     * @param timeout the most time to wait for the fetchers
+     * @param unit the unit of the timeout
+     * @return true if every fetcher exited
+     */
+    public boolean awaitShutdown(long timeout, TimeUnit unit) {
+        boolean complete = false;
+        try {
+            complete = fetchersComplete.await(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!complete) {
+            log.warn("SQS prefetch for queue={} did not shut down in time.", config.getQueueName());
+        }
+        List<BufferedMessage> remaining = new ArrayList<>();
+        buffer.drainTo(remaining);
+        capacity.release(remaining.size());
+        if (!remaining.isEmpty()) {
+            log.debug("Releasing {} prefetched messages for queue={}", remaining.size(), config.getQueueName());
+            release(remaining);
+        }
+        return complete;
+    }
+
+    @Override
+    public List<Message> receive(ReceiveMessageRequest request) throws InterruptedException {
+        int max = request.getMaxNumberOfMessages() == null ? 1 : request.getMaxNumberOfMessages();
+        int wait = request.getWaitTimeSeconds() == null ? 0 : request.getWaitTimeSeconds();
+        BufferedMessage first = poll(TimeUnit.SECONDS.toNanos(wait));
+        if (first == null) {
+            return Collections.emptyList();
+        }
+
+        List<BufferedMessage> taken = new ArrayList<>(max);
+        taken.add(first);
+        buffer.drainTo(taken, max - 1);
+        capacity.release(taken.size());
+
+        // Claim before checking the deadline so the heartbeat cannot give up on a message handed to a consumer.
+        taken.forEach(message -> heartbeat.claim(message.message));
+        long now = System.nanoTime();
+        List<Message> messages = new ArrayList<>(taken.size());
+        List<BufferedMessage> expired = new ArrayList<>(0);
+        for (BufferedMessage message : taken) {
+            if (now - message.deadline >= 0) {
+                expired.add(message);
+            } else {
+                messages.add(message.message);
+            }
+        }
+        if (!expired.isEmpty()) {
+            log.warn("Releasing {} prefetched messages near visibility timeout or held too long queue={}",
+                expired.size(), config.getQueueName());
+            release(expired);
+        }
+        return messages;
+    }
+
+    /**
+     * Wait for a buffered message, giving up early on shutdown so that what is left can be released.
+     */
+    private BufferedMessage poll(long waitNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + waitNanos;
+        long remaining = waitNanos;
+        do {
+            if (!running) {
+                return null;
+            }
+            BufferedMessage message = buffer.poll(Math.min(MAX_POLL_NANOS, remaining), TimeUnit.NANOSECONDS);
+            if (message != null) {
+                return message;
+            }
+        } while ((remaining = deadline - System.nanoTime()) > 0);
+        return null;
+    }
+
+    private void release(List<BufferedMessage> messages) {
+        List<Message> released = new ArrayList<>(messages.size());
+        messages.forEach(message -> {
+            heartbeat.complete(message.message);
+            released.add(message.message);
+        });
+        if (groups != null) {
+            groups.forget(released);
+        }
+        MessageVisibility.release(sqs, queueUrl.get(), released);
+    }
+
+    private static class BufferedMessage {
+        private final Message message;
+        private final long deadline;
+
+        BufferedMessage(Message message, long deadline) {
+            this.message = message;
+            this.deadline = deadline;
+        }
+    }
+
+    private class Fetcher implements Runnable {
+
+        private final Executor executor;
+        private final BackoffScheduler scheduler;
+        private final InFlightReceive inFlight = new InFlightReceive(sqs);
+
+        Fetcher(Executor executor, ScheduledExecutorService timer) {
+            this.executor = executor;
+            this.scheduler = new BackoffScheduler(Backoff.defaults(), timer);
+        }
+
+        void onCircuitTransition() {
+            if (CircuitBreaker.State.CLOSED == breaker.getState()) {
+                scheduler.getBackoff().reset();
+            }
+            if (CircuitBreaker.State.OPEN != breaker.getState()) {
+                scheduler.resume();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Try.run(this::fetch)
+                    .onFailure(t -> log.error("Unexpected exception prefetching SQS queue={}", config.getQueueName(), t));
+                if (CircuitBreaker.State.OPEN == breaker.getState() && running && suspend()) {
+                    return;
+                }
+            }
+            fetchersComplete.countDown();
+        }
+
+        private boolean suspend() {
+            try {
+                scheduler.schedule(executor, this);
+            } catch (RejectedExecutionException e) {
+                Try.run(() -> Thread.sleep(scheduler.getBackoff().nextDelayMillis()));
+                return false;
+            }
+            // A shutdown that raced with suspending would otherwise never count this fetcher down.
+            if (!running) {
+                cancel();
+            }
+            return true;
+        }
+
+        void cancel() {
+            inFlight.abandon();
+            if (scheduler.cancel()) {
+                fetchersComplete.countDown();
+            }
+        }
+
+        private void fetch() throws InterruptedException {
+
+            ReceiveMessageRequest request = consumer.getReceiveMessageRequest().clone();
+            if (config.fifo()) {
+                MessageGroupExecutor.withGroupIds(request);
+            }
+            if (request.getQueueUrl() == null || request.getQueueUrl().isEmpty()) {
+                request.withQueueUrl(queueUrl.get());
+            }
+            int requested = request.getMaxNumberOfMessages() == null ?
+                MessageVisibility.MAX_BATCH_SIZE : request.getMaxNumberOfMessages();
+
+            // Only ask for as many messages as the buffer has room for.
+            if (!capacity.tryAcquire(1, TimeUnit.SECONDS)) {
+                return;
+            }
+            int reserved = 1;
+            while (reserved < requested && capacity.tryAcquire()) {
+                reserved++;
+            }
+            if (!running) {
+                capacity.release(reserved);
+                return;
+            }
+            request.setMaxNumberOfMessages(reserved);
+
+            long start = System.nanoTime();
+            int visibilityTimeout = heartbeat.visibilityTimeout(request);
+            long visibilityNanos = TimeUnit.SECONDS.toNanos(visibilityTimeout);
+            long deadline = start + visibilityNanos -
+                Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_EXPIRY_MARGIN_MILLIS), visibilityNanos / 10);
+            if (heartbeat.isEnabled()) {
+                deadline = Math.max(deadline, start + maxHoldNanos);
+            }
+            List<Message> messages = Try.of(decorateCheckedSupplier(breaker, () -> inFlight.receive(request)))
+                .onFailure(queueUrl::invalidateOn)
+                .map(ReceiveMessageResult::getMessages)
+                .getOrElse(Collections.emptyList());
+            stats.recordReceive(messages.size(), System.nanoTime() - start);
+            capacity.release(reserved - messages.size());
+            heartbeat.track(messages, visibilityTimeout, start, maxHoldNanos);
+            List<BufferedMessage> fetched = new ArrayList<>(messages.size());
+            for (Message message : messages) {
+                fetched.add(new BufferedMessage(message, deadline));
+            }
+            if (running) {
+                if (groups != null) {
+                    // Hold each message's place in its group before another poller can take a later one.
+                    groups.expect(messages);
+                }
+                buffer.addAll(fetched);
+            } else if (!fetched.isEmpty()) {
+                // Nothing will take these once the buffer has been drained for shutdown.
+                capacity.release(fetched.size());
+                release(fetched);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The URL of a single queue, either fixed or resolved through a {@link QueueUrlCache}.  {@link #toString()} describes
+ * the queue without resolving it, so it is safe to log when resolution fails.
+ */
+public abstract class QueueUrl implements Supplier<String> {
+
+    /**
+     * A URL that is known up front and never resolved again.
+     *
+     * @param url the queue URL
+     * @return the queue URL
+     */
+    public static QueueUrl of(String url) {
+        return new QueueUrl() {
+            @Override
+            public String get() {
+                return url;
+            }
+
+            @Override
+            public void invalidate() {
+            }
+
+            @Override
+            public String toString() {
+                return url;
+            }
+        };
+    }
+
+    @Override
+    public abstract String get();
+
+    /**
+     * Resolve the URL without blocking the caller.
+     *
+     * @return completed with the URL, or exceptionally if it cannot be resolved
+     */
+    public CompletableFuture<String> getAsync() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            future.complete(get());
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Forget a cached URL so that it is resolved again on next use.
+     */
+    public abstract void invalidate();
+
+    /**
+     * Invalidate the URL if the given failure reports that the queue does not exist.
+     *
+     * @param t the failure
+     * @return true if the URL was invalidated
+     */
+    public boolean invalidateOn(Throwable t) {
+        Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+        if (cause instanceof QueueDoesNotExistException) {
+            invalidate();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Make a call with the URL, resolving the URL again and retrying once if the queue does not exist.
+     *
+     * @param call the call to make
+     * @param <T> the result type
+     * @return the call's result
+     */
+    public <T> T call(Function<String, T> call) {
+        try {
+            return call.apply(get());
+        } catch (QueueDoesNotExistException e) {
+            invalidate();
+            return call.apply(get());
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.sqs.SqsService;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe cache of queue URLs shared by all consumers and queue writers.  URLs are resolved once per client
+ * and queue name, either in parallel during startup or on first use, and are resolved again after SQS reports that
+ * a queue no longer exists.
+ */
+public class QueueUrlCache {
+
+    private static final Logger log = LoggerFactory.getLogger(QueueUrlCache.class);
+
+    private final Map<Key, String> urls = new ConcurrentHashMap<>();
+
+    /**
+     * A handle on the URL of one queue.
+     *
+     * @param sqs the client used to resolve the URL
+     * @param queueName the queue name
+     * @return the handle
+     */
+    public QueueUrl forQueue(SqsService sqs, String queueName) {
+        return new CachedQueueUrl(new Key(sqs, queueName));
+    }
+
+    /**
+     * Resolve the URLs of the given queues in parallel.  Failures are logged and left to be retried on first use.
+     *
+     * @param queues the queues to resolve
+     * @return a future completed once every queue has been attempted
+     */
+    public CompletableFuture<Void> warmup(Iterable<QueueUrl> queues) {
+        CompletableFuture<Void> all = CompletableFuture.completedFuture(null);
+        Set<Key> pending = new HashSet<>();
+        for (QueueUrl queue : queues) {
+            if (!(queue instanceof CachedQueueUrl)) {
+                continue;
+            }
+            Key key = ((CachedQueueUrl) queue).key;
+            if (urls.containsKey(key) || !pending.add(key)) {
+                continue;
+            }
+            CompletableFuture<Void> resolved = key.sqs.getQueueUrlAsync(key.queueName)
+                .thenAccept(result -> urls.put(key, result.getQueueUrl()))
+                .exceptionally(t -> {
+                    log.warn("Failed to resolve SQS queue={}", key.queueName, t);
+                    return null;
+                });
+            all = all.thenCombine(resolved, (a, b) -> null);
+        }
+        return all;
+    }
+
+    public int size() {
+        return urls.size();
+    }
+
+    private String get(Key key) {
+        return urls.computeIfAbsent(key, k -> k.sqs.getQueueUrl(k.queueName).getQueueUrl());
+    }
+
+    private class CachedQueueUrl extends QueueUrl {
+
+        private final Key key;
+
+        CachedQueueUrl(Key key) {
+            this.key = key;
+        }
+
+        @Override
+        public String get() {
+            return QueueUrlCache.this.get(key);
+        }
+
+        @Override
+        public CompletableFuture<String> getAsync() {
+            String url = urls.get(key);
+            if (url != null) {
+                return CompletableFuture.completedFuture(url);
+            }
+            try {
+                return key.sqs.getQueueUrlAsync(key.queueName).thenApply(result -> {
+                    urls.put(key, result.getQueueUrl());
+                    return result.getQueueUrl();
+                });
+            } catch (RuntimeException e) {
+                CompletableFuture<String> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return future;
+            }
+        }
+
+        @Override
+        public void invalidate() {
+            log.warn("Invalidating cached URL for SQS queue={}", key.queueName);
+            urls.remove(key);
+        }
+
+        @Override
+        public String toString() {
+            String url = urls.get(key);
+            return url != null ? url : key.queueName;
+        }
+    }
+
+    private static class Key {
+        private final SqsService sqs;
+        private final String queueName;
+
+        Key(SqsService sqs, String queueName) {
+            this.sqs = sqs;
+            this.queueName = queueName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return sqs == key.sqs && Objects.equals(queueName, key.queueName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(sqs), queueName);
+        }
+    }
+}
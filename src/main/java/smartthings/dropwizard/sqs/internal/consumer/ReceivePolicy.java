@@ -0,0 +1,98 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import smartthings.dropwizard.sqs.SqsModule;
+
+import java.util.function.Supplier;
+
+/**
+ * Builds the receive requests of a single poller and adapts them to recent traffic.  While messages are flowing the
+ * poller asks for a full batch with a short wait.  Each consecutive empty receive doubles the wait up to the
+ * consumer's configured wait time and, once that is reached, adds a growing idle sleep between polls.  One request
+ * object is reused for every poll, so a policy must not be shared between pollers.
+ */
+public class ReceivePolicy {
+
+    static final long MIN_IDLE_MILLIS = 50;
+
+    private final ReceiveMessageRequest request;
+    private final Supplier<String> queueUrl;
+    private final int maxMessages;
+    private final Integer maxWaitSeconds;
+    private final int minWaitSeconds;
+    private final long maxIdleMillis;
+    private int waitSeconds;
+    private int idleReceives;
+
+    /**
+     * @param template the consumer's request; explicit message count, wait time and queue URL are honored
+     * @param queueUrl the queue URL used when the template does not name one
+     * @param config the consumer configuration
+     */
+    public ReceivePolicy(ReceiveMessageRequest template, Supplier<String> queueUrl, SqsModule.ConsumerConfig config) {
+        this.request = template;
+        this.queueUrl = template.getQueueUrl() == null || template.getQueueUrl().isEmpty() ? queueUrl : null;
+        this.maxMessages = Math.max(1, Math.min(MessageVisibility.MAX_BATCH_SIZE,
+            template.getMaxNumberOfMessages() == null ?
+                config.getReceiveMaxMessages() : template.getMaxNumberOfMessages()
+        ));
+        this.maxWaitSeconds = template.getWaitTimeSeconds();
+        this.minWaitSeconds = maxWaitSeconds == null ?
+            0 : Math.max(0, Math.min(maxWaitSeconds, config.getReceiveMinWaitSeconds()));
+        this.maxIdleMillis = Math.max(0, config.getReceiveMaxIdleMillis());
+        this.waitSeconds = minWaitSeconds;
+    }
+
+    /**
+     * The most messages a single receive will ask for.
+     */
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    /**
+     * The wait time the next receive will use, or null if the queue's default applies.
+     */
+    public Integer getWaitSeconds() {
+        return maxWaitSeconds == null ? null : waitSeconds;
+    }
+
+    /**
+     * Prepare the request for the next receive.
+     *
+     * @param max the most messages the poller has room for
+     * @return the reused request
+     */
+    public ReceiveMessageRequest next(int max) {
+        if (queueUrl != null) {
+            request.setQueueUrl(queueUrl.get());
+        }
+        request.setMaxNumberOfMessages(Math.max(1, Math.min(max, maxMessages)));
+        request.setWaitTimeSeconds(getWaitSeconds());
+        return request;
+    }
+
+    /**
+     * Record the outcome of a receive.
+     *
+     * @param received the number of messages received
+     * @return how long the poller should sleep before receiving again, in milliseconds
+     */
+    public long record(int received) {
+        if (received > 0) {
+            idleReceives = 0;
+            waitSeconds = minWaitSeconds;
+            return 0;
+        }
+        if (maxWaitSeconds != null && waitSeconds < maxWaitSeconds) {
+            waitSeconds = Math.min(maxWaitSeconds, Math.max(1, waitSeconds * 2));
+            return 0;
+        }
+        if (maxIdleMillis == 0) {
+            return 0;
+        }
+        // The wait time is already at its maximum, so back off between polls instead.
+        idleReceives = Math.min(idleReceives + 1, 20);
+        return Math.min(maxIdleMillis, MIN_IDLE_MILLIS << (idleReceives - 1));
+    }
+}
@@ -1,27 +1,51 @@
 package smartthings.dropwizard.sqs.internal.consumer;
 
-import com.amazonaws.services.sqs.model.GetQueueUrlResult;
+import com.amazonaws.ClientConfiguration;
+import com.codahale.metrics.MetricRegistry;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.aws.BlobStore;
+import smartthings.dropwizard.aws.PayloadCodec;
+import smartthings.dropwizard.aws.internal.blob.FileSystemBlobStore;
+import smartthings.dropwizard.aws.internal.codec.PayloadCodecs;
+import smartthings.dropwizard.aws.internal.codec.PayloadCompressor;
+import smartthings.dropwizard.aws.internal.ratelimit.TokenBucket;
 import smartthings.dropwizard.sqs.*;
+import smartthings.dropwizard.sqs.internal.claimcheck.ClaimCheck;
+import smartthings.dropwizard.sqs.internal.producer.BufferedQueueWriter;
+import smartthings.dropwizard.sqs.internal.producer.ClaimCheckQueueWriter;
+import smartthings.dropwizard.sqs.internal.producer.CompressingQueueWriter;
 import smartthings.dropwizard.sqs.internal.producer.DefaultQueueWriter;
+import smartthings.dropwizard.sqs.internal.producer.InstrumentedQueueWriter;
+import smartthings.dropwizard.sqs.internal.producer.RateLimitedQueueWriter;
 
-import java.util.Collection;
-import java.util.Map;
+import java.nio.file.Paths;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 @Singleton
 public class SqsManager implements Managed {
 
+    static final int DEFAULT_MAX_CONNECTIONS = ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+
     private static final Logger LOG = LoggerFactory.getLogger(SqsManager.class);
 
     private final Map<String, SqsService> sqsConsumerMap = new ConcurrentHashMap<>();
     private final Map<String, QueueWriter> sqsQueueWriterMap = new ConcurrentHashMap<>();
+    private final List<BufferedQueueWriter> bufferedQueueWriters = new ArrayList<>();
+    private final Map<String, Integer> pollers = new HashMap<>();
+    private final QueueUrlCache queueUrlCache = new QueueUrlCache();
     private final SqsModule.Config config;
     private final AmazonSQSProvider sqsProvider;
+    private ScheduledExecutorService writerScheduler;
+    private MetricRegistry metricRegistry = new MetricRegistry();
+    private BlobStore blobStore;
+    private Map<String, PayloadCodec> codecs = PayloadCodecs.byName(Collections.emptySet());
 
     @Inject
     public SqsManager(SqsModule.Config config, AmazonSQSProvider sqsProvider) {
@@ -29,29 +53,98 @@ public class SqsManager implements Managed {
         this.sqsProvider = sqsProvider;
     }
 
+    /**
+     * Publish consumer and queue writer metrics to the application's registry when one is bound.
+     */
+    @Inject(optional = true)
+    public void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    public MetricRegistry getMetricRegistry() {
+        return metricRegistry;
+    }
+
+    /**
+     * Store offloaded message bodies in the application's blob store when one is bound.
+     */
+    @Inject(optional = true)
+    public void setBlobStore(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Make the application's codecs available for compression, alongside the built-in ones.
+     */
+    @Inject(optional = true)
+    public void setPayloadCodecs(Set<PayloadCodec> codecs) {
+        this.codecs = PayloadCodecs.byName(codecs);
+    }
+
     @Override
     public void start() {
         if (config.isEnabled()) {
             LOG.debug("Starting up SqsManager...");
+            config.getConsumers().stream()
+                    .filter(SqsModule.ConsumerConfig::isEnabled)
+                    .forEach(consumer -> consumer.getEndpoints().forEach(endpoint ->
+                            pollers.merge(getCacheKey(endpoint), consumer.pollers(), Integer::sum)
+                    ));
+
+            config.getConsumers().stream()
+                    .filter(SqsModule.ConsumerConfig::isEnabled)
+                    .map(SqsModule.ConsumerConfig::getEndpoints)
+                    .flatMap(Collection::stream)
+                    .forEach(this::getOrCreateService);
+            config.getQueueWriters().values().forEach(this::getOrCreateService);
+
+            // Resolve every configured queue in parallel rather than one round trip at a time on first use.
+            List<QueueUrl> queueUrls = new ArrayList<>();
             config.getConsumers().stream()
                     .filter(SqsModule.ConsumerConfig::isEnabled)
                     .map(SqsModule.ConsumerConfig::getEndpoints)
                     .flatMap(Collection::stream)
-                    .forEach(this::createConsumer);
+                    .filter(endpoint -> endpoint.getQueueName() != null && !endpoint.getQueueName().isEmpty())
+                    .forEach(endpoint -> queueUrls.add(getQueueUrl(endpoint)));
+            config.getQueueWriters().values().forEach(endpoint -> queueUrls.add(getQueueUrl(endpoint)));
+            queueUrlCache.warmup(queueUrls).join();
 
             config.getQueueWriters().entrySet().stream()
                     .forEach(entry -> {
                         // reuse service if it already exists
                         String queueWriterName = entry.getKey();
                         SqsModule.EndpointConfig endpointConfig = entry.getValue();
-                        String consumerKey = getCacheKey(endpointConfig);
-                        SqsService service = sqsConsumerMap.containsKey(consumerKey) ?
-                                sqsConsumerMap.get(consumerKey):
-                                createService(entry.getValue());
+                        SqsService service = getOrCreateService(endpointConfig);
                         if (service != null) {
-                            GetQueueUrlResult result = service.getQueueUrl(endpointConfig.getQueueName());
-                            sqsQueueWriterMap.put(queueWriterName,
-                                    new DefaultQueueWriter(result.getQueueUrl(), sqsProvider.get(endpointConfig)));
+                            QueueUrl queueUrl = getQueueUrl(endpointConfig);
+                            QueueWriter queueWriter = endpointConfig.buffer().isPresent() ?
+                                    createBufferedQueueWriter(queueUrl, service, endpointConfig) :
+                                    new DefaultQueueWriter(
+                                            queueUrl, service, endpointConfig.isContentBasedDeduplication()
+                                    );
+                            Optional<ClaimCheck> claimCheck = getClaimCheck(endpointConfig);
+                            if (claimCheck.isPresent()) {
+                                queueWriter = new ClaimCheckQueueWriter(queueWriter, claimCheck.get());
+                            }
+                            // Compress first so that fewer bodies need offloading.
+                            Optional<PayloadCompressor> compressor = getCompressor(endpointConfig);
+                            if (compressor.isPresent()) {
+                                queueWriter = new CompressingQueueWriter(queueWriter, compressor.get());
+                            }
+                            queueWriter = new InstrumentedQueueWriter(
+                                    queueWriter,
+                                    metricRegistry,
+                                    MetricRegistry.name("sqs", "writer", queueWriterName)
+                            );
+                            if (endpointConfig.rateLimit().isPresent()) {
+                                SqsModule.RateLimitConfig rateLimit = endpointConfig.getRateLimit();
+                                queueWriter = new RateLimitedQueueWriter(
+                                        queueWriter,
+                                        new TokenBucket(rateLimit.permitsPerSecond(), rateLimit.burst()),
+                                        getWriterScheduler()
+                                );
+                            }
+                            sqsQueueWriterMap.put(queueWriterName, queueWriter);
                         }
                     });
         } else {
@@ -62,6 +155,19 @@ public class SqsManager implements Managed {
     @Override
     public void stop() {
         LOG.debug("Shutting down SqsManager...");
+        bufferedQueueWriters.forEach(BufferedQueueWriter::flush);
+        if (writerScheduler != null) {
+            writerScheduler.shutdown();
+        }
+        sqsConsumerMap.values().forEach(service -> {
+            if (service instanceof Managed) {
+                try {
+                    ((Managed) service).stop();
+                } catch (Exception e) {
+                    LOG.warn("Failed to stop SqsService", e);
+                }
+            }
+        });
     }
 
     public QueueWriter getQueueWriter(String queueWriterEndpointName) {
@@ -85,7 +191,58 @@ public class SqsManager implements Managed {
         return sqs;
     }
 
-    private SqsService createConsumer(SqsModule.EndpointConfig config) {
+    /**
+     * The shared URL of the endpoint's queue, resolved once and resolved again if the queue stops existing.
+     */
+    public QueueUrl getQueueUrl(SqsModule.EndpointConfig config) {
+        return queueUrlCache.forQueue(get(config), config.getQueueName());
+    }
+
+    /**
+     * The claim check of the endpoint, if it offloads large bodies.
+     */
+    public Optional<ClaimCheck> getClaimCheck(SqsModule.EndpointConfig config) {
+        return config.claimCheck().map(claimCheck -> {
+            BlobStore store = blobStore;
+            if (store == null) {
+                if (claimCheck.getDirectory() == null) {
+                    throw new IllegalArgumentException(
+                        "An SQS claim check requires a bound BlobStore or a configured directory."
+                    );
+                }
+                store = new FileSystemBlobStore(Paths.get(claimCheck.getDirectory()));
+            }
+            return new ClaimCheck(store, claimCheck.getThresholdBytes(), claimCheck.isDeleteOnConsume());
+        });
+    }
+
+    /**
+     * The compressor of the endpoint, if it compresses large bodies.
+     */
+    public Optional<PayloadCompressor> getCompressor(SqsModule.EndpointConfig config) {
+        return config.compression().map(compression -> {
+            PayloadCodec codec = codecs.get(compression.getCodec());
+            if (codec == null) {
+                throw new IllegalArgumentException("No SQS payload codec is bound for " + compression.getCodec());
+            }
+            return new PayloadCompressor(codec, compression.getThresholdBytes(), compression.getMaxDecodedBytes());
+        });
+    }
+
+    /**
+     * The decoders received messages of the endpoint are run through before they are consumed: claim checks are
+     * resolved first, then compressed bodies decoded if the endpoint configures compression.
+     */
+    public List<MessageDecoder> getDecoders(SqsModule.EndpointConfig config) {
+        List<MessageDecoder> decoders = new ArrayList<>(2);
+        getClaimCheck(config).ifPresent(decoders::add);
+        config.compression().ifPresent(compression ->
+            decoders.add(new ContentDecoder(codecs, compression.getMaxDecodedBytes()))
+        );
+        return decoders;
+    }
+
+    private SqsService getOrCreateService(SqsModule.EndpointConfig config) {
         String cacheKey = getCacheKey(config);
         if (sqsConsumerMap.containsKey(cacheKey)) {
             return sqsConsumerMap.get(cacheKey);
@@ -96,14 +253,48 @@ public class SqsManager implements Managed {
         return sqsService;
     }
 
+    private QueueWriter createBufferedQueueWriter(
+        QueueUrl queueUrl,
+        SqsService service,
+        SqsModule.EndpointConfig config
+    ) {
+        BufferedQueueWriter queueWriter = new BufferedQueueWriter(queueUrl, service, config, getWriterScheduler());
+        bufferedQueueWriters.add(queueWriter);
+        return queueWriter;
+    }
+
+    private ScheduledExecutorService getWriterScheduler() {
+        if (writerScheduler == null) {
+            writerScheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+        return writerScheduler;
+    }
+
     private SqsService createService(SqsModule.EndpointConfig config) {
         if (config.getRegionName() == null) {
             throw new IllegalArgumentException("Consumer endpoint config requires a valid configured AWS Region.");
         }
-        SqsService sqsService = new DefaultSqsService(sqsProvider.get(config));
+        ClientConfiguration clientConfiguration = clientConfiguration(config);
+        SqsService sqsService = new DefaultSqsService(
+            sqsProvider.get(config, clientConfiguration), clientConfiguration.getMaxConnections()
+        );
         return sqsService;
     }
 
+    ClientConfiguration clientConfiguration(SqsModule.EndpointConfig endpointConfig) {
+        SqsModule.ClientConfig client = config.getClient();
+        int maxConnections = client.getMaxConnections() > 0 ?
+            client.getMaxConnections() :
+            pollers.getOrDefault(getCacheKey(endpointConfig), 0) + DEFAULT_MAX_CONNECTIONS;
+        return new ClientConfiguration()
+            .withMaxConnections(maxConnections)
+            .withConnectionTTL(client.getConnectionTtlMillis())
+            .withConnectionTimeout(client.getConnectionTimeoutMillis())
+            .withSocketTimeout(client.getSocketTimeoutMillis())
+            .withTcpKeepAlive(client.isTcpKeepAlive())
+            .withGzip(client.isGzip());
+    }
+
     private String getCacheKey(SqsModule.EndpointConfig config) {
         return config.getRegionName() + ":" + config.endpoint().orElse("none");
     }
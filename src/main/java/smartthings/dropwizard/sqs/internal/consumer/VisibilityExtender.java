@@ -0,0 +1,242 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.Message;
+import io.vavr.control.Try;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.sqs.SqsService;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extends the visibility timeout of in-flight messages before it expires so that long running consumers do not
+ * see their messages redelivered.  All tracked messages share a single hashed timer wheel that advances once per
+ * tick; due messages are extended with ChangeMessageVisibilityBatch grouped by queue.  Tracking stops once a
+ * message is completed, an extension fails or, for messages tracked with a hold limit that have not been
+ * claimed, the limit has passed.  Extension calls are made on the ticking thread but outside the wheel's lock.
+ */
+public class VisibilityExtender {
+
+    static final long TICK_MILLIS = 1000;
+    static final int WHEEL_SIZE = 64;
+
+    private static final Logger log = LoggerFactory.getLogger(VisibilityExtender.class);
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final Queue<Lease> pending = new ConcurrentLinkedQueue<>();
+    private final List<List<Lease>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private long tick;
+
+    public VisibilityExtender() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new LinkedList<>());
+        }
+    }
+
+    public void start(ScheduledExecutorService scheduler) {
+        scheduler.scheduleAtFixedRate(this::advance, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start extending a message's visibility.
+     *
+     * @param sqs the SQS service the message was received from
+     * @param queueUrl the queue the message was received from
+     * @param message the received message
+     * @param visibilityTimeout the visibility timeout in seconds the message was received with
+     * @param receivedNanos when the message was received, per <code>System.nanoTime()</code>
+     */
+    public void track(SqsService sqs, String queueUrl, Message message, int visibilityTimeout, long receivedNanos) {
+        track(sqs, queueUrl, message, visibilityTimeout, receivedNanos, Long.MAX_VALUE);
+    }
+
+    /**
+     * Start extending a message's visibility until it is claimed, giving up once the hold limit has passed.
+     *
+     * @param sqs the SQS service the message was received from
+     * @param queueUrl the queue the message was received from
+     * @param message the received message
+     * @param visibilityTimeout the visibility timeout in seconds the message was received with
+     * @param receivedNanos when the message was received, per <code>System.nanoTime()</code>
+     * @param maxHoldNanos how long after receipt to stop extending the message unless it has been claimed
+     */
+    public void track(
+        SqsService sqs,
+        String queueUrl,
+        Message message,
+        int visibilityTimeout,
+        long receivedNanos,
+        long maxHoldNanos
+    ) {
+        Lease lease = new Lease(sqs, queueUrl, message, visibilityTimeout);
+        lease.nextExtensionNanos = receivedNanos + lease.extensionDelayNanos();
+        lease.holdUntilNanos = receivedNanos + maxHoldNanos;
+        lease.bounded = maxHoldNanos != Long.MAX_VALUE;
+        leases.put(message.getReceiptHandle(), lease);
+        pending.add(lease);
+    }
+
+    /**
+     * Keep extending a message's visibility past its hold limit, typically because a consumer has taken it.
+     *
+     * @param message the tracked message
+     */
+    public void claim(Message message) {
+        Lease lease = leases.get(message.getReceiptHandle());
+        if (lease != null) {
+            lease.bounded = false;
+        }
+    }
+
+    /**
+     * Stop extending a message's visibility, typically because it was deleted or failed.
+     *
+     * @param message the tracked message
+     */
+    public void complete(Message message) {
+        Lease lease = leases.remove(message.getReceiptHandle());
+        if (lease != null) {
+            lease.completed = true;
+        }
+    }
+
+    public int size() {
+        return leases.size();
+    }
+
+    void advance() {
+        Try.run(() -> {
+            List<Lease> due = advanceTick();
+            if (!due.isEmpty()) {
+                extend(due);
+            }
+        }).onFailure(t -> log.error("Unexpected exception extending SQS message visibility", t));
+    }
+
+    /**
+     * Move the wheel forward a tick and take the leases that are due.  SQS is only called once the lock is released
+     * so that tracking is never held up by a slow extension.
+     */
+    private synchronized List<Lease> advanceTick() {
+        Lease lease;
+        while ((lease = pending.poll()) != null) {
+            schedule(lease);
+        }
+
+        List<Lease> due = new ArrayList<>();
+        Iterator<Lease> bucket = wheel.get((int) (tick % WHEEL_SIZE)).iterator();
+        while (bucket.hasNext()) {
+            lease = bucket.next();
+            if (lease.completed) {
+                bucket.remove();
+            } else if (lease.dueTick <= tick) {
+                bucket.remove();
+                due.add(lease);
+            }
+        }
+        tick++;
+        return due;
+    }
+
+    private void schedule(Lease lease) {
+        long ticks = Math.max(0, (lease.nextExtensionNanos - System.nanoTime()) / TICK_NANOS);
+        lease.dueTick = tick + ticks;
+        wheel.get((int) (lease.dueTick % WHEEL_SIZE)).add(lease);
+    }
+
+    private void extend(List<Lease> due) {
+        long start = System.nanoTime();
+        Map<LeaseGroup, List<Lease>> groups = new HashMap<>();
+        for (Lease lease : due) {
+            if (lease.bounded && start - lease.holdUntilNanos >= 0) {
+                log.debug("Stopped extending visibility of message held too long queue={}", lease.queueUrl);
+                complete(lease.message);
+            } else {
+                groups.computeIfAbsent(new LeaseGroup(lease), key -> new ArrayList<>()).add(lease);
+            }
+        }
+
+        groups.forEach((group, leasesToExtend) -> {
+            List<Message> messages = new ArrayList<>(leasesToExtend.size());
+            leasesToExtend.forEach(lease -> messages.add(lease.message));
+            log.debug("Extending visibility of {} messages for queue={}", messages.size(), group.queueUrl);
+
+            long now = System.nanoTime();
+            Set<Message> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+            failed.addAll(MessageVisibility.change(group.sqs, group.queueUrl, messages, group.visibilityTimeout));
+            leasesToExtend.forEach(lease -> {
+                if (failed.contains(lease.message)) {
+                    complete(lease.message);
+                } else if (!lease.completed) {
+                    lease.nextExtensionNanos = now + lease.extensionDelayNanos();
+                    // Rescheduled on the next tick, under the lock.
+                    pending.add(lease);
+                }
+            });
+        });
+    }
+
+    private static class Lease {
+        private final SqsService sqs;
+        private final String queueUrl;
+        private final Message message;
+        private final int visibilityTimeout;
+        private volatile boolean completed;
+        private volatile boolean bounded;
+        private long holdUntilNanos;
+        private long nextExtensionNanos;
+        private long dueTick;
+
+        Lease(SqsService sqs, String queueUrl, Message message, int visibilityTimeout) {
+            this.sqs = sqs;
+            this.queueUrl = queueUrl;
+            this.message = message;
+            this.visibilityTimeout = visibilityTimeout;
+        }
+
+        /**
+         * Extend once three quarters of the timeout has elapsed, leaving at least two ticks to spare.
+         */
+        long extensionDelayNanos() {
+            long timeout = TimeUnit.SECONDS.toNanos(visibilityTimeout);
+            long margin = Math.max(2 * TICK_NANOS, timeout / 4);
+            return Math.max(0, timeout - margin);
+        }
+    }
+
+    private static class LeaseGroup {
+        private final SqsService sqs;
+        private final String queueUrl;
+        private final int visibilityTimeout;
+
+        LeaseGroup(Lease lease) {
+            this.sqs = lease.sqs;
+            this.queueUrl = lease.queueUrl;
+            this.visibilityTimeout = lease.visibilityTimeout;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            LeaseGroup that = (LeaseGroup) o;
+            return visibilityTimeout == that.visibilityTimeout &&
+                sqs == that.sqs &&
+                queueUrl.equals(that.queueUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(sqs), queueUrl, visibilityTimeout);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import io.vavr.control.Try;
+import smartthings.dropwizard.sqs.SqsService;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Registers the messages received for a single queue with the shared {@link VisibilityExtender}.  When no extender
+ * is given the heartbeat is disabled and tracking is a no-op.
+ */
+public class VisibilityHeartbeat {
+
+    static final int DEFAULT_VISIBILITY_TIMEOUT = 30;
+
+    private final VisibilityExtender extender;
+    private final SqsService sqs;
+    private final Supplier<String> queueUrl;
+    private volatile int queueVisibilityTimeout = -1;
+
+    public VisibilityHeartbeat(VisibilityExtender extender, SqsService sqs, Supplier<String> queueUrl) {
+        this.extender = extender;
+        this.sqs = sqs;
+        this.queueUrl = queueUrl;
+    }
+
+    public boolean isEnabled() {
+        return extender != null;
+    }
+
+    /**
+     * The visibility timeout messages received with the given request are subject to, either the one on the
+     * request or the queue's default.
+     *
+     * @param request the receive request
+     * @return the visibility timeout in seconds
+     */
+    public int visibilityTimeout(ReceiveMessageRequest request) {
+        if (request.getVisibilityTimeout() != null) {
+            return request.getVisibilityTimeout();
+        }
+        if (queueVisibilityTimeout < 0) {
+            String value = Try.of(() -> sqs.getQueueAttributes(
+                new GetQueueAttributesRequest(queueUrl.get())
+                    .withAttributeNames(QueueAttributeName.VisibilityTimeout)
+            ).getAttributes().get(QueueAttributeName.VisibilityTimeout.toString())).getOrElse((String) null);
+            queueVisibilityTimeout = value == null ? DEFAULT_VISIBILITY_TIMEOUT : Integer.parseInt(value);
+        }
+        return queueVisibilityTimeout;
+    }
+
+    public void track(List<Message> messages, int visibilityTimeout, long receivedNanos) {
+        track(messages, visibilityTimeout, receivedNanos, Long.MAX_VALUE);
+    }
+
+    /**
+     * Track messages that are only kept visible for up to <code>maxHoldNanos</code> unless claimed in the meantime.
+     */
+    public void track(List<Message> messages, int visibilityTimeout, long receivedNanos, long maxHoldNanos) {
+        if (extender == null || messages.isEmpty()) {
+            return;
+        }
+        String url = queueUrl.get();
+        messages.forEach(message ->
+            extender.track(sqs, url, message, visibilityTimeout, receivedNanos, maxHoldNanos)
+        );
+    }
+
+    public void claim(Message message) {
+        if (extender != null) {
+            extender.claim(message);
+        }
+    }
+
+    public void complete(Message message) {
+        if (extender != null) {
+            extender.complete(message);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares one pool of workers between the endpoints of a consumer.  Each endpoint polls through its own
+ * {@link Lane}, and whenever more lanes are waiting than there are idle workers the free slots go to the waiting
+ * lane with the highest priority, then to the one using the fewest workers relative to its weight.  A backed up
+ * high priority queue therefore takes every worker that frees up, while queues of equal priority share the pool in
+ * proportion to their weights.  Work that is already running is never interrupted.
+ *
+ * <p>Pollers reserve slots before a receive that may long poll an empty queue, so while other lanes are waiting a
+ * poller whose lane already holds its weighted share of the pool gets a single slot.  Otherwise the pollers of an
+ * idle high priority queue could hold most of the pool for a whole long poll.
+ */
+public class WeightedDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(WeightedDispatcher.class);
+
+    private final ExecutorService executor;
+    private final List<Lane> lanes = new CopyOnWriteArrayList<>();
+    private final int workers;
+    private int available;
+
+    public WeightedDispatcher(ExecutorService executor, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("A worker pool requires at least 1 worker.");
+        }
+        this.executor = executor;
+        this.workers = workers;
+        this.available = workers;
+    }
+
+    /**
+     * Add a lane for one endpoint.
+     *
+     * @param weight the lane's share relative to other lanes of the same priority
+     * @param priority lanes with a higher priority are always served first
+     * @return the lane
+     */
+    public Lane lane(int weight, int priority) {
+        Lane lane = new Lane(Math.max(1, weight), priority);
+        lanes.add(lane);
+        return lane;
+    }
+
+    public void shutdown() {
+        shutdown(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop the shared workers, interrupting any still running after the timeout.
+     *
+     * @return true if every dispatched task completed
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeout, unit)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int unstarted = executor.shutdownNow().size();
+        log.warn("SQS consumer workers did not complete in time, interrupting them.  unstarted={}", unstarted);
+        return false;
+    }
+
+    synchronized int available() {
+        return available;
+    }
+
+    /**
+     * Whether no other waiting lane should be served before the given one.
+     */
+    private boolean isNext(Lane lane) {
+        for (Lane other : lanes) {
+            if (other != lane && other.waiting > 0 && other.isPreferredOver(lane)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean othersWaiting(Lane lane) {
+        for (Lane other : lanes) {
+            if (other != lane && other.waiting > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long totalWeight() {
+        long total = 0;
+        for (Lane lane : lanes) {
+            total += lane.weight;
+        }
+        return total;
+    }
+
+    private synchronized void release(Lane lane, int slots) {
+        available += slots;
+        lane.inUse -= slots;
+        notifyAll();
+    }
+
+    /**
+     * The dispatcher used by the pollers of a single endpoint.
+     */
+    public class Lane implements MessageDispatcher {
+
+        private final int weight;
+        private final int priority;
+        private int inUse;
+        private int waiting;
+
+        Lane(int weight, int priority) {
+            this.weight = weight;
+            this.priority = priority;
+        }
+
+        @Override
+        public int reserve(int max) throws InterruptedException {
+            synchronized (WeightedDispatcher.this) {
+                waiting++;
+                try {
+                    while (available == 0 || !isNext(this)) {
+                        WeightedDispatcher.this.wait();
+                    }
+                } finally {
+                    waiting--;
+                }
+                int reserved = 1;
+                available--;
+                inUse++;
+                // Only take more than one slot if no other waiting lane deserves it more, and never past this lane's
+                // share while another lane waits.
+                while (reserved < max && available > 0 && isNext(this) && (inUse < share() || !othersWaiting(this))) {
+                    reserved++;
+                    available--;
+                    inUse++;
+                }
+                if (available > 0) {
+                    WeightedDispatcher.this.notifyAll();
+                }
+                return reserved;
+            }
+        }
+
+        @Override
+        public void release(int slots) {
+            if (slots > 0) {
+                WeightedDispatcher.this.release(this, slots);
+            }
+        }
+
+        @Override
+        public void dispatch(Runnable task) {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    WeightedDispatcher.this.release(this, 1);
+                }
+            });
+        }
+
+        @Override
+        public boolean shutdown(long timeout, TimeUnit unit) {
+            return WeightedDispatcher.this.shutdown(timeout, unit);
+        }
+
+        int inUse() {
+            synchronized (WeightedDispatcher.this) {
+                return inUse;
+            }
+        }
+
+        /**
+         * The lane's slots of the pool by weight, ignoring priority.
+         */
+        private long share() {
+            return Math.max(1, (long) workers * weight / totalWeight());
+        }
+
+        private boolean isPreferredOver(Lane lane) {
+            if (priority != lane.priority) {
+                return priority > lane.priority;
+            }
+            // Compare inUse / weight without dividing.
+            return (long) inUse * lane.weight < (long) lane.inUse * weight;
+        }
+    }
+}
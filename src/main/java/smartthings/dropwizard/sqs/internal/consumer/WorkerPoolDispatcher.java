@@ -0,0 +1,71 @@
+package smartthings.dropwizard.sqs.internal.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes messages in parallel on a bounded number of workers.  Capacity is tracked with one permit per worker,
+ * so pollers stop receiving while every worker is busy.
+ */
+public class WorkerPoolDispatcher implements MessageDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(WorkerPoolDispatcher.class);
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    public WorkerPoolDispatcher(ExecutorService executor, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("A worker pool requires at least 1 worker.");
+        }
+        this.executor = executor;
+        this.permits = new Semaphore(workers);
+    }
+
+    @Override
+    public int reserve(int max) throws InterruptedException {
+        permits.acquire();
+        int reserved = 1;
+        while (reserved < max && permits.tryAcquire()) {
+            reserved++;
+        }
+        return reserved;
+    }
+
+    @Override
+    public void release(int slots) {
+        if (slots > 0) {
+            permits.release(slots);
+        }
+    }
+
+    @Override
+    public void dispatch(Runnable task) {
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    @Override
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(timeout, unit)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int unstarted = executor.shutdownNow().size();
+        log.warn("SQS consumer workers did not complete in time, interrupting them.  unstarted={}", unstarted);
+        return false;
+    }
+}
@@ -0,0 +1,137 @@
+package smartthings.dropwizard.sqs.internal.memory;
+
+import com.amazonaws.services.sqs.model.QueueAttributeName;
+import com.amazonaws.util.BinaryUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A FIFO queue.  Messages of a group are received in the order they were sent and a group is held back while any
+ * of its messages are in flight.  Sends with a deduplication id seen within the last five minutes are accepted
+ * without storing the message again.  Group bookkeeping is guarded by the queue's monitor.
+ */
+class FifoQueue extends InMemoryQueue {
+
+    static final long DEDUPLICATION_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int CLEANUP_INTERVAL = 1024;
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> digest("SHA-256"));
+
+    private final Map<String, Group> groups = new LinkedHashMap<>();
+    private final Map<String, Sent> deduplication = new ConcurrentHashMap<>();
+    private final AtomicInteger sends = new AtomicInteger();
+
+    FifoQueue(String name, String url) {
+        super(name, url);
+    }
+
+    @Override
+    boolean isFifo() {
+        return true;
+    }
+
+    @Override
+    StoredMessage duplicateOf(String groupId, String deduplicationId, String body) {
+        if (groupId == null) {
+            throw error("MissingParameter", "The request must contain the parameter MessageGroupId.");
+        }
+        String id = deduplicationId(deduplicationId, body);
+        long now = System.currentTimeMillis();
+        if (sends.incrementAndGet() % CLEANUP_INTERVAL == 0) {
+            deduplication.values().removeIf(sent -> sent.expiresMillis < now);
+        }
+        Sent sent = deduplication.get(id);
+        return sent != null && sent.expiresMillis >= now ? sent.message : null;
+    }
+
+    @Override
+    void sent(StoredMessage message, String deduplicationId, String body) {
+        deduplication.put(
+            deduplicationId(deduplicationId, body),
+            new Sent(message, System.currentTimeMillis() + DEDUPLICATION_WINDOW_MILLIS)
+        );
+    }
+
+    @Override
+    synchronized void enqueue(StoredMessage message) {
+        Group group = groups.computeIfAbsent(message.groupId, key -> new Group());
+        if (message.receiveCount == 0) {
+            group.messages.addLast(message);
+        } else {
+            // A redelivered message never left its place at the head of the group.
+            group.inFlight--;
+        }
+    }
+
+    @Override
+    synchronized List<StoredMessage> take(int max) {
+        List<StoredMessage> taken = new ArrayList<>(max);
+        for (Group group : groups.values()) {
+            if (group.inFlight > 0) {
+                continue;
+            }
+            for (StoredMessage message : group.messages) {
+                if (taken.size() >= max || !claim(message)) {
+                    break;
+                }
+                group.inFlight++;
+                taken.add(message);
+            }
+            if (taken.size() >= max) {
+                break;
+            }
+        }
+        return taken;
+    }
+
+    @Override
+    synchronized void deleted(StoredMessage message) {
+        Group group = groups.get(message.groupId);
+        if (group != null) {
+            group.messages.remove(message);
+            group.inFlight--;
+            if (group.messages.isEmpty()) {
+                groups.remove(message.groupId);
+            }
+        }
+    }
+
+    @Override
+    synchronized void purged() {
+        groups.clear();
+        deduplication.clear();
+    }
+
+    private String deduplicationId(String deduplicationId, String body) {
+        if (deduplicationId != null) {
+            return deduplicationId;
+        }
+        if (!Boolean.parseBoolean(attribute(QueueAttributeName.ContentBasedDeduplication))) {
+            throw error(
+                "InvalidParameterValue",
+                "The queue should either have ContentBasedDeduplication enabled or MessageDeduplicationId provided."
+            );
+        }
+        return BinaryUtils.toHex(SHA_256.get().digest(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static class Group {
+        private final Deque<StoredMessage> messages = new ArrayDeque<>();
+        private int inFlight;
+    }
+
+    private static class Sent {
+        private final StoredMessage message;
+        private final long expiresMillis;
+
+        Sent(StoredMessage message, long expiresMillis) {
+            this.message = message;
+            this.expiresMillis = expiresMillis;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package smartthings.dropwizard.sqs.internal.memory;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.amazonaws.services.sqs.model.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * An in-process SQS engine for local load testing.  Supports standard and FIFO queues (names ending in
+ * <code>.fifo</code>), visibility timeouts, receipt handles, delays, long polling and the batch APIs.  Operations
+ * that are not supported throw <code>UnsupportedOperationException</code>.
+ */
+public class InMemoryAmazonSQS extends AbstractAmazonSQS {
+
+    static final String URL_PREFIX = "http://localhost/queue/";
+
+    private final Map<String, InMemoryQueue> queues = new ConcurrentHashMap<>();
+    private final boolean createOnLookup;
+
+    public InMemoryAmazonSQS() {
+        this(false);
+    }
+
+    /**
+     * @param createOnLookup create a missing queue with default attributes when its URL is looked up, instead of
+     *                       failing with <code>QueueDoesNotExistException</code>
+     */
+    public InMemoryAmazonSQS(boolean createOnLookup) {
+        this.createOnLookup = createOnLookup;
+    }
+
+    @Override
+    public CreateQueueResult createQueue(CreateQueueRequest request) {
+        String name = request.getQueueName();
+        if (name == null || name.isEmpty()) {
+            throw InMemoryQueue.error("MissingParameter", "The request must contain the parameter QueueName.");
+        }
+        InMemoryQueue queue = queues.computeIfAbsent(URL_PREFIX + name, url -> {
+            InMemoryQueue created = name.endsWith(".fifo") ? new FifoQueue(name, url) : new StandardQueue(name, url);
+            if (request.getAttributes() != null) {
+                created.setAttributes(request.getAttributes());
+            }
+            return created;
+        });
+        return new CreateQueueResult().withQueueUrl(queue.url);
+    }
+
+    @Override
+    public CreateQueueResult createQueue(String queueName) {
+        return createQueue(new CreateQueueRequest(queueName));
+    }
+
+    @Override
+    public GetQueueUrlResult getQueueUrl(GetQueueUrlRequest request) {
+        if (createOnLookup) {
+            return new GetQueueUrlResult().withQueueUrl(createQueue(request.getQueueName()).getQueueUrl());
+        }
+        return new GetQueueUrlResult().withQueueUrl(queue(URL_PREFIX + request.getQueueName()).url);
+    }
+
+    @Override
+    public GetQueueUrlResult getQueueUrl(String queueName) {
+        return getQueueUrl(new GetQueueUrlRequest(queueName));
+    }
+
+    @Override
+    public ListQueuesResult listQueues(ListQueuesRequest request) {
+        String prefix = request.getQueueNamePrefix() == null ? "" : request.getQueueNamePrefix();
+        return new ListQueuesResult().withQueueUrls(queues.values().stream()
+            .filter(queue -> queue.name.startsWith(prefix))
+            .map(queue -> queue.url)
+            .sorted()
+            .collect(Collectors.toList()));
+    }
+
+    @Override
+    public ListQueuesResult listQueues() {
+        return listQueues(new ListQueuesRequest());
+    }
+
+    @Override
+    public DeleteQueueResult deleteQueue(DeleteQueueRequest request) {
+        queue(request.getQueueUrl()).purge();
+        queues.remove(request.getQueueUrl());
+        return new DeleteQueueResult();
+    }
+
+    @Override
+    public PurgeQueueResult purgeQueue(PurgeQueueRequest request) {
+        queue(request.getQueueUrl()).purge();
+        return new PurgeQueueResult();
+    }
+
+    @Override
+    public GetQueueAttributesResult getQueueAttributes(GetQueueAttributesRequest request) {
+        return new GetQueueAttributesResult()
+            .withAttributes(queue(request.getQueueUrl()).getAttributes(request.getAttributeNames()));
+    }
+
+    @Override
+    public SetQueueAttributesResult setQueueAttributes(SetQueueAttributesRequest request) {
+        queue(request.getQueueUrl()).setAttributes(request.getAttributes());
+        return new SetQueueAttributesResult();
+    }
+
+    @Override
+    public SendMessageResult sendMessage(SendMessageRequest request) {
+        return queue(request.getQueueUrl()).send(
+            request.getMessageBody(),
+            request.getMessageAttributes(),
+            request.getDelaySeconds(),
+            request.getMessageGroupId(),
+            request.getMessageDeduplicationId()
+        );
+    }
+
+    @Override
+    public SendMessageResult sendMessage(String queueUrl, String messageBody) {
+        return sendMessage(new SendMessageRequest(queueUrl, messageBody));
+    }
+
+    @Override
+    public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request) {
+        InMemoryQueue queue = queue(request.getQueueUrl());
+        SendMessageBatchResult result = new SendMessageBatchResult();
+        batch(request.getEntries(), SendMessageBatchRequestEntry::getId, entry -> {
+            try {
+                SendMessageResult sent = queue.send(
+                    entry.getMessageBody(),
+                    entry.getMessageAttributes(),
+                    entry.getDelaySeconds(),
+                    entry.getMessageGroupId(),
+                    entry.getMessageDeduplicationId()
+                );
+                result.withSuccessful(new SendMessageBatchResultEntry()
+                    .withId(entry.getId())
+                    .withMessageId(sent.getMessageId())
+                    .withMD5OfMessageBody(sent.getMD5OfMessageBody())
+                    .withSequenceNumber(sent.getSequenceNumber()));
+            } catch (AmazonServiceException e) {
+                result.withFailed(failure(entry.getId(), e));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public ReceiveMessageResult receiveMessage(ReceiveMessageRequest request) {
+        InMemoryQueue queue = queue(request.getQueueUrl());
+        try {
+            return new ReceiveMessageResult().withMessages(queue.receive(request));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ReceiveMessageResult();
+        }
+    }
+
+    @Override
+    public ReceiveMessageResult receiveMessage(String queueUrl) {
+        return receiveMessage(new ReceiveMessageRequest(queueUrl));
+    }
+
+    @Override
+    public DeleteMessageResult deleteMessage(DeleteMessageRequest request) {
+        queue(request.getQueueUrl()).delete(request.getReceiptHandle());
+        return new DeleteMessageResult();
+    }
+
+    @Override
+    public DeleteMessageResult deleteMessage(String queueUrl, String receiptHandle) {
+        return deleteMessage(new DeleteMessageRequest(queueUrl, receiptHandle));
+    }
+
+    @Override
+    public DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest request) {
+        InMemoryQueue queue = queue(request.getQueueUrl());
+        DeleteMessageBatchResult result = new DeleteMessageBatchResult();
+        batch(request.getEntries(), DeleteMessageBatchRequestEntry::getId, entry -> {
+            try {
+                queue.delete(entry.getReceiptHandle());
+                result.withSuccessful(new DeleteMessageBatchResultEntry().withId(entry.getId()));
+            } catch (AmazonServiceException e) {
+                result.withFailed(failure(entry.getId(), e));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public ChangeMessageVisibilityResult changeMessageVisibility(ChangeMessageVisibilityRequest request) {
+        queue(request.getQueueUrl()).changeVisibility(request.getReceiptHandle(), request.getVisibilityTimeout());
+        return new ChangeMessageVisibilityResult();
+    }
+
+    @Override
+    public ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(
+        ChangeMessageVisibilityBatchRequest request
+    ) {
+        InMemoryQueue queue = queue(request.getQueueUrl());
+        ChangeMessageVisibilityBatchResult result = new ChangeMessageVisibilityBatchResult();
+        batch(request.getEntries(), ChangeMessageVisibilityBatchRequestEntry::getId, entry -> {
+            try {
+                queue.changeVisibility(entry.getReceiptHandle(), entry.getVisibilityTimeout());
+                result.withSuccessful(new ChangeMessageVisibilityBatchResultEntry().withId(entry.getId()));
+            } catch (AmazonServiceException e) {
+                result.withFailed(failure(entry.getId(), e));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    private InMemoryQueue queue(String url) {
+        InMemoryQueue queue = url == null ? null : queues.get(url);
+        if (queue == null) {
+            QueueDoesNotExistException e = new QueueDoesNotExistException(
+                "The specified queue does not exist for this wsdl version."
+            );
+            e.setErrorCode("AWS.SimpleQueueService.NonExistentQueue");
+            e.setErrorType(AmazonServiceException.ErrorType.Client);
+            e.setStatusCode(400);
+            throw e;
+        }
+        return queue;
+    }
+
+    private static <ENTRY> void batch(
+        List<ENTRY> entries,
+        Function<ENTRY, String> id,
+        Consumer<ENTRY> handler
+    ) {
+        if (entries == null || entries.isEmpty()) {
+            EmptyBatchRequestException e = new EmptyBatchRequestException("There should be at least one entry.");
+            e.setErrorCode("AWS.SimpleQueueService.EmptyBatchRequest");
+            e.setStatusCode(400);
+            throw e;
+        }
+        if (entries.size() > InMemoryQueue.MAX_BATCH_SIZE) {
+            TooManyEntriesInBatchRequestException e = new TooManyEntriesInBatchRequestException(
+                "Maximum number of entries per request are " + InMemoryQueue.MAX_BATCH_SIZE + "."
+            );
+            e.setErrorCode("AWS.SimpleQueueService.TooManyEntriesInBatchRequest");
+            e.setStatusCode(400);
+            throw e;
+        }
+        Set<String> ids = new HashSet<>();
+        for (ENTRY entry : entries) {
+            if (!ids.add(id.apply(entry))) {
+                BatchEntryIdsNotDistinctException e = new BatchEntryIdsNotDistinctException(
+                    "Id " + id.apply(entry) + " repeated."
+                );
+                e.setErrorCode("AWS.SimpleQueueService.BatchEntryIdsNotDistinct");
+                e.setStatusCode(400);
+                throw e;
+            }
+        }
+        entries.forEach(handler);
+    }
+
+    private static BatchResultErrorEntry failure(String id, AmazonServiceException e) {
+        return new BatchResultErrorEntry()
+            .withId(id)
+            .withCode(e.getErrorCode())
+            .withMessage(e.getErrorMessage())
+            .withSenderFault(e.getErrorType() == AmazonServiceException.ErrorType.Client);
+    }
+}
@@ -0,0 +1,430 @@
+package smartthings.dropwizard.sqs.internal.memory;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sqs.model.*;
+import com.amazonaws.util.BinaryUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A single queue of the in-memory SQS engine.  Messages move between the delayed, ready and in-flight states with
+ * compare-and-set; delays and visibility timeouts are kept in a skip list ordered by deadline and applied lazily
+ * whenever the queue is received from.  How ready messages are ordered is left to subclasses.
+ */
+abstract class InMemoryQueue {
+
+    static final int MAX_BATCH_SIZE = 10;
+    static final int MAX_MESSAGE_BYTES = 262144;
+    static final int MAX_WAIT_SECONDS = 20;
+    static final int MAX_VISIBILITY_TIMEOUT = 43200;
+
+    private static final long MAX_WAIT_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> digest("MD5"));
+
+    final String name;
+    final String url;
+    private final long createdMillis = System.currentTimeMillis();
+    private volatile long modifiedMillis = createdMillis;
+    private final long idPrefix = ThreadLocalRandom.current().nextLong();
+    private final Map<String, String> attributes = new ConcurrentHashMap<>();
+    private final Map<String, StoredMessage> messages = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Timeout> timeouts = new ConcurrentSkipListSet<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong timeoutOrder = new AtomicLong();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final Object signal = new Object();
+    private final LongAdder readyCount = new LongAdder();
+    private final LongAdder inFlightCount = new LongAdder();
+    private final LongAdder delayedCount = new LongAdder();
+    private volatile int visibilityTimeout = 30;
+    private volatile int delaySeconds = 0;
+    private volatile int waitTimeSeconds = 0;
+
+    InMemoryQueue(String name, String url) {
+        this.name = name;
+        this.url = url;
+    }
+
+    /**
+     * Make a message available to receivers.
+     */
+    abstract void enqueue(StoredMessage message);
+
+    /**
+     * Move up to <code>max</code> ready messages to the in-flight state by calling {@link #claim}.
+     */
+    abstract List<StoredMessage> take(int max);
+
+    /**
+     * Called once a message has been deleted.
+     */
+    abstract void deleted(StoredMessage message);
+
+    abstract void purged();
+
+    /**
+     * Deduplicate a send, returning the message previously sent with the same id if any.
+     */
+    StoredMessage duplicateOf(String groupId, String deduplicationId, String body) {
+        return null;
+    }
+
+    void sent(StoredMessage message, String deduplicationId, String body) {
+    }
+
+    boolean isFifo() {
+        return false;
+    }
+
+    SendMessageResult send(
+        String body,
+        Map<String, MessageAttributeValue> messageAttributes,
+        Integer delay,
+        String groupId,
+        String deduplicationId
+    ) {
+        if (body == null || body.isEmpty()) {
+            throw error("MissingParameter", "The request must contain the parameter MessageBody.");
+        }
+        if (body.length() > MAX_MESSAGE_BYTES && body.getBytes(StandardCharsets.UTF_8).length > MAX_MESSAGE_BYTES) {
+            throw error("InvalidParameterValue", "Message must be shorter than " + MAX_MESSAGE_BYTES + " bytes.");
+        }
+
+        StoredMessage duplicate = duplicateOf(groupId, deduplicationId, body);
+        if (duplicate != null) {
+            return result(duplicate);
+        }
+
+        long seq = sequence.incrementAndGet();
+        int delaySeconds = delay == null ? this.delaySeconds : delay;
+        StoredMessage message = new StoredMessage(
+            new UUID(idPrefix, seq).toString(),
+            seq,
+            body,
+            BinaryUtils.toHex(MD5.get().digest(body.getBytes(StandardCharsets.UTF_8))),
+            messageAttributes == null || messageAttributes.isEmpty() ? null : new HashMap<>(messageAttributes),
+            groupId,
+            delaySeconds > 0
+        );
+        messages.put(message.id, message);
+        sent(message, deduplicationId, body);
+        if (delaySeconds > 0) {
+            delayedCount.increment();
+            schedule(message, System.nanoTime() + TimeUnit.SECONDS.toNanos(delaySeconds), -1);
+        } else {
+            ready(message);
+        }
+        return result(message);
+    }
+
+    List<Message> receive(ReceiveMessageRequest request) throws InterruptedException {
+        int max = request.getMaxNumberOfMessages() == null ? 1 : request.getMaxNumberOfMessages();
+        if (max < 1 || max > MAX_BATCH_SIZE) {
+            throw error("InvalidParameterValue", "MaxNumberOfMessages must be between 1 and " + MAX_BATCH_SIZE + ".");
+        }
+        int visibility = request.getVisibilityTimeout() == null ? visibilityTimeout : request.getVisibilityTimeout();
+        int wait = request.getWaitTimeSeconds() == null ? waitTimeSeconds : request.getWaitTimeSeconds();
+        if (wait < 0 || wait > MAX_WAIT_SECONDS) {
+            throw error("InvalidParameterValue", "WaitTimeSeconds must be between 0 and " + MAX_WAIT_SECONDS + ".");
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(wait);
+        while (true) {
+            long now = System.nanoTime();
+            expire(now);
+            List<StoredMessage> taken = take(max);
+            if (!taken.isEmpty()) {
+                List<Message> result = new ArrayList<>(taken.size());
+                long visibleAt = now + TimeUnit.SECONDS.toNanos(visibility);
+                for (StoredMessage message : taken) {
+                    result.add(inFlight(message, visibleAt, request));
+                }
+                return result;
+            }
+            long remaining = deadline - now;
+            if (remaining <= 0) {
+                return Collections.emptyList();
+            }
+            await(Math.min(remaining, MAX_WAIT_SLICE_NANOS));
+        }
+    }
+
+    /**
+     * Claim a ready message for a receive.
+     *
+     * @return false if the message is no longer ready
+     */
+    boolean claim(StoredMessage message) {
+        if (message.state.compareAndSet(StoredMessage.READY, StoredMessage.IN_FLIGHT)) {
+            readyCount.decrement();
+            inFlightCount.increment();
+            return true;
+        }
+        return false;
+    }
+
+    void delete(String receiptHandle) {
+        StoredMessage message = lookup(receiptHandle);
+        if (message != null && message.receipt == receipt(receiptHandle) &&
+            message.state.compareAndSet(StoredMessage.IN_FLIGHT, StoredMessage.DELETED)) {
+            inFlightCount.decrement();
+            messages.remove(message.id);
+            timeouts.remove(message.timeout);
+            deleted(message);
+        }
+    }
+
+    void changeVisibility(String receiptHandle, int timeout) {
+        if (timeout < 0 || timeout > MAX_VISIBILITY_TIMEOUT) {
+            throw error("InvalidParameterValue", "VisibilityTimeout must be between 0 and " + MAX_VISIBILITY_TIMEOUT + ".");
+        }
+        StoredMessage message = lookup(receiptHandle);
+        long receipt = receipt(receiptHandle);
+        if (message == null || message.receipt != receipt || message.state.get() != StoredMessage.IN_FLIGHT) {
+            MessageNotInflightException e = new MessageNotInflightException("Message is not in flight.");
+            e.setErrorCode("AWS.SimpleQueueService.MessageNotInflight");
+            e.setErrorType(AmazonServiceException.ErrorType.Client);
+            e.setStatusCode(400);
+            throw e;
+        }
+        long visibleAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+        message.visibleAtNanos = visibleAt;
+        Timeout previous = message.timeout;
+        schedule(message, visibleAt, receipt);
+        timeouts.remove(previous);
+        if (timeout == 0) {
+            signal();
+        }
+    }
+
+    void purge() {
+        messages.values().forEach(message -> message.state.set(StoredMessage.DELETED));
+        messages.clear();
+        timeouts.clear();
+        purged();
+        readyCount.reset();
+        inFlightCount.reset();
+        delayedCount.reset();
+    }
+
+    Map<String, String> getAttributes(List<String> names) {
+        expire(System.nanoTime());
+        boolean all = names == null || names.contains(QueueAttributeName.All.toString());
+        Map<String, String> result = new HashMap<>();
+        put(result, names, all, QueueAttributeName.VisibilityTimeout, visibilityTimeout);
+        put(result, names, all, QueueAttributeName.DelaySeconds, delaySeconds);
+        put(result, names, all, QueueAttributeName.ReceiveMessageWaitTimeSeconds, waitTimeSeconds);
+        put(result, names, all, QueueAttributeName.ApproximateNumberOfMessages, Math.max(0, readyCount.sum()));
+        put(result, names, all, QueueAttributeName.ApproximateNumberOfMessagesNotVisible,
+            Math.max(0, inFlightCount.sum()));
+        put(result, names, all, QueueAttributeName.ApproximateNumberOfMessagesDelayed,
+            Math.max(0, delayedCount.sum()));
+        put(result, names, all, QueueAttributeName.CreatedTimestamp, TimeUnit.MILLISECONDS.toSeconds(createdMillis));
+        put(result, names, all, QueueAttributeName.LastModifiedTimestamp,
+            TimeUnit.MILLISECONDS.toSeconds(modifiedMillis));
+        put(result, names, all, QueueAttributeName.QueueArn, "arn:aws:sqs:local:000000000000:" + name);
+        if (isFifo()) {
+            put(result, names, all, QueueAttributeName.FifoQueue, true);
+        }
+        attributes.forEach((key, value) -> {
+            if (all || names.contains(key)) {
+                result.putIfAbsent(key, value);
+            }
+        });
+        return result;
+    }
+
+    void setAttributes(Map<String, String> values) {
+        values.forEach((key, value) -> {
+            QueueAttributeName attribute;
+            try {
+                attribute = QueueAttributeName.fromValue(key);
+            } catch (IllegalArgumentException e) {
+                throw error("InvalidAttributeName", "Unknown Attribute " + key + ".");
+            }
+            switch (attribute) {
+                case VisibilityTimeout:
+                    visibilityTimeout = Integer.parseInt(value);
+                    break;
+                case DelaySeconds:
+                    delaySeconds = Integer.parseInt(value);
+                    break;
+                case ReceiveMessageWaitTimeSeconds:
+                    waitTimeSeconds = Integer.parseInt(value);
+                    break;
+                case FifoQueue:
+                    break;
+                default:
+                    attributes.put(key, value);
+            }
+        });
+        modifiedMillis = System.currentTimeMillis();
+    }
+
+    String attribute(QueueAttributeName name) {
+        return attributes.get(name.toString());
+    }
+
+    private Message inFlight(StoredMessage message, long visibleAt, ReceiveMessageRequest request) {
+        long receipt = message.receipt + 1;
+        message.receipt = receipt;
+        message.receiveCount++;
+        if (message.firstReceiveMillis == 0) {
+            message.firstReceiveMillis = System.currentTimeMillis();
+        }
+        message.visibleAtNanos = visibleAt;
+        schedule(message, visibleAt, receipt);
+        return message.toMessage(request.getAttributeNames(), request.getMessageAttributeNames());
+    }
+
+    /**
+     * Apply every delay and visibility timeout that has passed.
+     */
+    private void expire(long now) {
+        Iterator<Timeout> iterator = timeouts.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.deadline - now > 0) {
+                return;
+            }
+            if (!timeouts.remove(timeout)) {
+                continue;
+            }
+            StoredMessage message = timeout.message;
+            if (timeout.receipt < 0) {
+                if (message.state.compareAndSet(StoredMessage.DELAYED, StoredMessage.READY)) {
+                    delayedCount.decrement();
+                    ready(message);
+                }
+            } else if (message.receipt == timeout.receipt && message.visibleAtNanos - now <= 0 &&
+                message.state.compareAndSet(StoredMessage.IN_FLIGHT, StoredMessage.READY)) {
+                inFlightCount.decrement();
+                ready(message);
+            }
+        }
+    }
+
+    private void schedule(StoredMessage message, long deadline, long receipt) {
+        Timeout timeout = new Timeout(deadline, timeoutOrder.incrementAndGet(), message, receipt);
+        message.timeout = timeout;
+        timeouts.add(timeout);
+    }
+
+    private void ready(StoredMessage message) {
+        readyCount.increment();
+        enqueue(message);
+        signal();
+    }
+
+    private void signal() {
+        if (waiters.get() > 0) {
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+        }
+    }
+
+    private void await(long nanos) throws InterruptedException {
+        waiters.incrementAndGet();
+        try {
+            synchronized (signal) {
+                TimeUnit.NANOSECONDS.timedWait(signal, nanos);
+            }
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    private StoredMessage lookup(String receiptHandle) {
+        int separator = receiptHandle == null ? -1 : receiptHandle.lastIndexOf('#');
+        if (separator < 0) {
+            ReceiptHandleIsInvalidException e = new ReceiptHandleIsInvalidException(
+                "The receipt handle \"" + receiptHandle + "\" is not valid."
+            );
+            e.setErrorCode("ReceiptHandleIsInvalid");
+            e.setErrorType(AmazonServiceException.ErrorType.Client);
+            e.setStatusCode(400);
+            throw e;
+        }
+        return messages.get(receiptHandle.substring(0, separator));
+    }
+
+    private static long receipt(String receiptHandle) {
+        try {
+            return Long.parseLong(receiptHandle.substring(receiptHandle.lastIndexOf('#') + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static SendMessageResult result(StoredMessage message) {
+        SendMessageResult result = new SendMessageResult()
+            .withMessageId(message.id)
+            .withMD5OfMessageBody(message.md5OfBody);
+        if (message.groupId != null) {
+            result.setSequenceNumber(String.valueOf(message.sequence));
+        }
+        return result;
+    }
+
+    private static void put(
+        Map<String, String> result,
+        List<String> names,
+        boolean all,
+        QueueAttributeName name,
+        Object value
+    ) {
+        if (all || names.contains(name.toString())) {
+            result.put(name.toString(), String.valueOf(value));
+        }
+    }
+
+    static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static AmazonSQSException error(String code, String message) {
+        AmazonSQSException e = new AmazonSQSException(message);
+        e.setErrorCode(code);
+        e.setErrorType(AmazonServiceException.ErrorType.Client);
+        e.setStatusCode(400);
+        return e;
+    }
+
+    /**
+     * A pending delay (receipt -1) or visibility timeout.
+     */
+    static class Timeout implements Comparable<Timeout> {
+        private final long deadline;
+        private final long order;
+        private final StoredMessage message;
+        private final long receipt;
+
+        Timeout(long deadline, long order, StoredMessage message, long receipt) {
+            this.deadline = deadline;
+            this.order = order;
+            this.message = message;
+            this.receipt = receipt;
+        }
+
+        @Override
+        public int compareTo(Timeout o) {
+            int result = Long.compare(deadline - o.deadline, 0);
+            return result != 0 ? result : Long.compare(order, o.order);
+        }
+    }
+}
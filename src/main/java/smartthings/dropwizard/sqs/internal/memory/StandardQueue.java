@@ -0,0 +1,44 @@
+package smartthings.dropwizard.sqs.internal.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A standard queue; ready messages are handed out roughly in the order they became ready.
+ */
+class StandardQueue extends InMemoryQueue {
+
+    private final Queue<StoredMessage> ready = new ConcurrentLinkedQueue<>();
+
+    StandardQueue(String name, String url) {
+        super(name, url);
+    }
+
+    @Override
+    void enqueue(StoredMessage message) {
+        ready.add(message);
+    }
+
+    @Override
+    List<StoredMessage> take(int max) {
+        List<StoredMessage> taken = new ArrayList<>(max);
+        StoredMessage message;
+        while (taken.size() < max && (message = ready.poll()) != null) {
+            if (claim(message)) {
+                taken.add(message);
+            }
+        }
+        return taken;
+    }
+
+    @Override
+    void deleted(StoredMessage message) {
+    }
+
+    @Override
+    void purged() {
+        ready.clear();
+    }
+}
@@ -0,0 +1,113 @@
+package smartthings.dropwizard.sqs.internal.memory;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.MessageSystemAttributeName;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A message held by an {@link InMemoryQueue}.  State changes are made with compare-and-set so that receives,
+ * deletes and visibility changes never need a lock.
+ */
+class StoredMessage {
+
+    static final int DELAYED = 0;
+    static final int READY = 1;
+    static final int IN_FLIGHT = 2;
+    static final int DELETED = 3;
+
+    final String id;
+    final long sequence;
+    final String body;
+    final String md5OfBody;
+    final Map<String, MessageAttributeValue> attributes;
+    final String groupId;
+    final long sentMillis;
+    final AtomicInteger state;
+    volatile long receipt;
+    volatile long visibleAtNanos;
+    volatile int receiveCount;
+    volatile long firstReceiveMillis;
+    volatile InMemoryQueue.Timeout timeout;
+
+    StoredMessage(
+        String id,
+        long sequence,
+        String body,
+        String md5OfBody,
+        Map<String, MessageAttributeValue> attributes,
+        String groupId,
+        boolean delayed
+    ) {
+        this.id = id;
+        this.sequence = sequence;
+        this.body = body;
+        this.md5OfBody = md5OfBody;
+        this.attributes = attributes;
+        this.groupId = groupId;
+        this.sentMillis = System.currentTimeMillis();
+        this.state = new AtomicInteger(delayed ? DELAYED : READY);
+    }
+
+    String receiptHandle() {
+        return id + "#" + receipt;
+    }
+
+    /**
+     * Build the received message, including only the attributes the receive asked for.
+     */
+    Message toMessage(List<String> attributeNames, List<String> messageAttributeNames) {
+        Message message = new Message()
+            .withMessageId(id)
+            .withReceiptHandle(receiptHandle())
+            .withBody(body)
+            .withMD5OfBody(md5OfBody);
+        if (attributeNames != null && !attributeNames.isEmpty()) {
+            Map<String, String> systemAttributes = new HashMap<>(8);
+            put(systemAttributes, attributeNames, MessageSystemAttributeName.SentTimestamp, sentMillis);
+            put(systemAttributes, attributeNames, MessageSystemAttributeName.ApproximateReceiveCount, receiveCount);
+            put(systemAttributes, attributeNames, MessageSystemAttributeName.ApproximateFirstReceiveTimestamp,
+                firstReceiveMillis);
+            if (groupId != null) {
+                put(systemAttributes, attributeNames, MessageSystemAttributeName.MessageGroupId, groupId);
+                put(systemAttributes, attributeNames, MessageSystemAttributeName.SequenceNumber, sequence);
+            }
+            message.setAttributes(systemAttributes);
+        }
+        if (attributes != null && messageAttributeNames != null && !messageAttributeNames.isEmpty()) {
+            Map<String, MessageAttributeValue> selected = new HashMap<>(attributes.size());
+            attributes.forEach((key, value) -> {
+                if (matches(messageAttributeNames, key)) {
+                    selected.put(key, value);
+                }
+            });
+            message.setMessageAttributes(selected);
+        }
+        return message;
+    }
+
+    private static void put(
+        Map<String, String> result,
+        List<String> names,
+        MessageSystemAttributeName name,
+        Object value
+    ) {
+        if (names.contains("All") || names.contains(name.toString())) {
+            result.put(name.toString(), String.valueOf(value));
+        }
+    }
+
+    private static boolean matches(List<String> names, String key) {
+        for (String name : names) {
+            if (name.equals("All") || name.equals(".*") || name.equals(key) ||
+                (name.endsWith(".*") && key.startsWith(name.substring(0, name.length() - 1)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,303 @@
+package smartthings.dropwizard.sqs.internal.producer;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sqs.model.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import smartthings.dropwizard.aws.internal.codec.Utf8;
+import smartthings.dropwizard.sqs.QueueWriter;
+import smartthings.dropwizard.sqs.SqsModule;
+import smartthings.dropwizard.sqs.SqsService;
+import smartthings.dropwizard.sqs.internal.consumer.QueueUrl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A QueueWriter that buffers messages and sends them to one queue using SendMessageBatch.  Callers enqueue without
+ * locking; a batch is flushed once it is full, once its payload reaches the configured size or once the first
+ * buffered message has waited for the configured linger time.
+ */
+public class BufferedQueueWriter implements QueueWriter {
+
+    static final int MAX_BATCH_SIZE = 10;
+    static final long MAX_BATCH_BYTES = 262144;
+
+    private static final Logger log = LoggerFactory.getLogger(BufferedQueueWriter.class);
+
+    private final QueueUrl queueUrl;
+    private final SqsService sqs;
+    private final ScheduledExecutorService scheduler;
+    private final int maxBatchSize;
+    private final long maxBatchBytes;
+    private final long maxLingerMillis;
+    private final boolean contentBasedDeduplication;
+    private final Queue<PendingMessage> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger bufferedCount = new AtomicInteger();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final ReentrantLock sendLock;
+
+    public BufferedQueueWriter(
+        QueueUrl queueUrl,
+        SqsService sqs,
+        SqsModule.BufferConfig config,
+        ScheduledExecutorService scheduler
+    ) {
+        this(queueUrl, sqs, config, scheduler, false, false);
+    }
+
+    /**
+     * A writer for the endpoint's queue.  Batches for a FIFO endpoint are sent one at a time so that messages keep
+     * their order across batches.
+     */
+    public BufferedQueueWriter(
+        QueueUrl queueUrl,
+        SqsService sqs,
+        SqsModule.EndpointConfig endpoint,
+        ScheduledExecutorService scheduler
+    ) {
+        this(
+            queueUrl, sqs, endpoint.buffer().orElseGet(SqsModule.BufferConfig::new), scheduler,
+            endpoint.fifo(), endpoint.isContentBasedDeduplication()
+        );
+    }
+
+    private BufferedQueueWriter(
+        QueueUrl queueUrl,
+        SqsService sqs,
+        SqsModule.BufferConfig config,
+        ScheduledExecutorService scheduler,
+        boolean ordered,
+        boolean contentBasedDeduplication
+    ) {
+        this.queueUrl = queueUrl;
+        this.sqs = sqs;
+        this.scheduler = scheduler;
+        this.maxBatchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, config.getMaxBatchSize()));
+        this.maxBatchBytes = Math.max(1, Math.min(MAX_BATCH_BYTES, config.getMaxBatchBytes()));
+        this.maxLingerMillis = Math.max(0, config.getMaxLingerMillis());
+        this.sendLock = ordered ? new ReentrantLock() : null;
+        this.contentBasedDeduplication = contentBasedDeduplication;
+    }
+
+    @Override
+    public SendMessageResult sendMessage(String messageBody) {
+        return sendMessage(messageBody, null, null);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(String messageBody, Integer delaySeconds) {
+        return sendMessage(messageBody, delaySeconds, null);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(
+        String messageBody,
+        Integer delaySeconds,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        return join(sendMessageAsync(messageBody, delaySeconds, attributeValueMap));
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResult> sendMessageAsync(
+        String messageBody,
+        Integer delaySeconds,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        SendMessageBatchRequestEntry entry = new SendMessageBatchRequestEntry().withMessageBody(messageBody);
+        if (delaySeconds != null) {
+            entry.setDelaySeconds(delaySeconds);
+        }
+        if (attributeValueMap != null && attributeValueMap.size() > 0) {
+            entry.setMessageAttributes(attributeValueMap);
+        }
+        return enqueue(entry, payloadSize(messageBody, attributeValueMap));
+    }
+
+    @Override
+    public SendMessageResult sendFifoMessage(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        return join(sendFifoMessageAsync(messageBody, messageGroupId, deduplicationId, attributeValueMap));
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResult> sendFifoMessageAsync(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        SendMessageBatchRequestEntry entry = new SendMessageBatchRequestEntry()
+            .withMessageBody(messageBody)
+            .withMessageGroupId(messageGroupId)
+            .withMessageDeduplicationId(
+                ContentDeduplication.resolve(deduplicationId, messageBody, contentBasedDeduplication)
+            );
+        if (attributeValueMap != null && attributeValueMap.size() > 0) {
+            entry.setMessageAttributes(attributeValueMap);
+        }
+        return enqueue(entry, payloadSize(messageBody, attributeValueMap));
+    }
+
+    private CompletableFuture<SendMessageResult> enqueue(SendMessageBatchRequestEntry entry, long size) {
+        PendingMessage message = new PendingMessage(entry, size);
+        buffer.add(message);
+        int count = bufferedCount.incrementAndGet();
+        long bytes = bufferedBytes.addAndGet(message.size);
+
+        if (count >= maxBatchSize || bytes >= maxBatchBytes) {
+            scheduler.execute(this::flushFullBatches);
+        } else if (count == 1) {
+            scheduler.schedule(this::flush, maxLingerMillis, TimeUnit.MILLISECONDS);
+        }
+        return message.future;
+    }
+
+    /**
+     * Send every buffered message regardless of batch size or linger time.
+     */
+    public void flush() {
+        sendBatches(false);
+    }
+
+    private void flushFullBatches() {
+        sendBatches(true);
+        // Whatever is left over no longer has a linger flush pending.
+        if (bufferedCount.get() > 0) {
+            scheduler.schedule(this::flush, maxLingerMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void sendBatches(boolean fullOnly) {
+        if (sendLock != null) {
+            sendLock.lock();
+        }
+        try {
+            List<PendingMessage> batch;
+            while (!(batch = drainBatch(fullOnly)).isEmpty()) {
+                send(batch);
+            }
+        } finally {
+            if (sendLock != null) {
+                sendLock.unlock();
+            }
+        }
+    }
+
+    private List<PendingMessage> drainBatch(boolean fullOnly) {
+        drainLock.lock();
+        try {
+            if (fullOnly && bufferedCount.get() < maxBatchSize && bufferedBytes.get() < maxBatchBytes) {
+                return new ArrayList<>(0);
+            }
+            List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+            long bytes = 0;
+            PendingMessage next;
+            while (batch.size() < maxBatchSize && (next = buffer.peek()) != null) {
+                if (!batch.isEmpty() && bytes + next.size > maxBatchBytes) {
+                    break;
+                }
+                buffer.poll();
+                bytes += next.size;
+                batch.add(next);
+            }
+            bufferedCount.addAndGet(-batch.size());
+            bufferedBytes.addAndGet(-bytes);
+            return batch;
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private void send(List<PendingMessage> batch) {
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            entries.add(batch.get(i).entry.withId(String.valueOf(i)));
+        }
+
+        try {
+            SendMessageBatchResult result = queueUrl.call(url -> {
+                log.debug("Execute sendMessageBatch for SQS queue={} size={}", url, entries.size());
+                return sqs.sendMessageBatch(new SendMessageBatchRequest(url, entries));
+            });
+            complete(batch, result);
+        } catch (RuntimeException e) {
+            log.error("Failed to send message batch.  queue={} size={}", queueUrl, entries.size(), e);
+            batch.forEach(message -> message.future.completeExceptionally(e));
+        } finally {
+            for (PendingMessage message : batch) {
+                if (!message.future.isDone()) {
+                    message.future.completeExceptionally(
+                        new IllegalStateException("No result for message in batch sent to SQS queue=" + queueUrl));
+                }
+            }
+        }
+    }
+
+    private static void complete(List<PendingMessage> batch, SendMessageBatchResult result) {
+        result.getSuccessful().forEach(entry -> batch.get(Integer.parseInt(entry.getId())).future.complete(
+            new SendMessageResult()
+                .withMessageId(entry.getMessageId())
+                .withMD5OfMessageBody(entry.getMD5OfMessageBody())
+                .withMD5OfMessageAttributes(entry.getMD5OfMessageAttributes())
+                .withSequenceNumber(entry.getSequenceNumber())
+        ));
+        result.getFailed().forEach(entry -> {
+            AmazonSQSException e = new AmazonSQSException(entry.getMessage());
+            e.setErrorCode(entry.getCode());
+            e.setErrorType(Boolean.TRUE.equals(entry.getSenderFault()) ?
+                AmazonServiceException.ErrorType.Client :
+                AmazonServiceException.ErrorType.Service);
+            batch.get(Integer.parseInt(entry.getId())).future.completeExceptionally(e);
+        });
+    }
+
+    private static SendMessageResult join(CompletableFuture<SendMessageResult> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    static long payloadSize(String messageBody, Map<String, MessageAttributeValue> attributeValueMap) {
+        long size = Utf8.length(messageBody);
+        if (attributeValueMap != null) {
+            for (Map.Entry<String, MessageAttributeValue> attribute : attributeValueMap.entrySet()) {
+                MessageAttributeValue value = attribute.getValue();
+                size += Utf8.length(attribute.getKey()) + Utf8.length(value.getDataType());
+                size += Utf8.length(value.getStringValue());
+                if (value.getBinaryValue() != null) {
+                    size += value.getBinaryValue().remaining();
+                }
+            }
+        }
+        return size;
+    }
+
+    private static class PendingMessage {
+        private final SendMessageBatchRequestEntry entry;
+        private final long size;
+        private final CompletableFuture<SendMessageResult> future = new CompletableFuture<>();
+
+        PendingMessage(SendMessageBatchRequestEntry entry, long size) {
+            this.entry = entry;
+            this.size = size;
+        }
+    }
+}
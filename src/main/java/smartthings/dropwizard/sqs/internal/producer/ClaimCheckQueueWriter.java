@@ -0,0 +1,137 @@
+package smartthings.dropwizard.sqs.internal.producer;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import smartthings.dropwizard.sqs.QueueWriter;
+import smartthings.dropwizard.sqs.internal.claimcheck.ClaimCheck;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decorates a QueueWriter so that bodies too large for SQS are stored through a {@link ClaimCheck} and a pointer
+ * is sent in their place.  Smaller messages pass through untouched.
+ */
+public class ClaimCheckQueueWriter implements QueueWriter {
+
+    private final QueueWriter delegate;
+    private final ClaimCheck claimCheck;
+
+    public ClaimCheckQueueWriter(QueueWriter delegate, ClaimCheck claimCheck) {
+        this.delegate = delegate;
+        this.claimCheck = claimCheck;
+    }
+
+    public QueueWriter getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public SendMessageResult sendMessage(String messageBody) {
+        return sendMessage(messageBody, null, null);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(String messageBody, Integer delaySeconds) {
+        return sendMessage(messageBody, delaySeconds, null);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(
+        String messageBody,
+        Integer delaySeconds,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        long bodyBytes = BufferedQueueWriter.payloadSize(messageBody, null);
+        if (fits(bodyBytes, attributeValueMap)) {
+            return delegate.sendMessage(messageBody, delaySeconds, attributeValueMap);
+        }
+        return delegate.sendMessage(
+            store(messageBody), delaySeconds, claimCheck.pointerAttributes(attributeValueMap, bodyBytes)
+        );
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResult> sendMessageAsync(
+        String messageBody,
+        Integer delaySeconds,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        long bodyBytes = BufferedQueueWriter.payloadSize(messageBody, null);
+        if (fits(bodyBytes, attributeValueMap)) {
+            return delegate.sendMessageAsync(messageBody, delaySeconds, attributeValueMap);
+        }
+        String key;
+        try {
+            key = store(messageBody);
+        } catch (RuntimeException e) {
+            CompletableFuture<SendMessageResult> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return delegate.sendMessageAsync(key, delaySeconds, claimCheck.pointerAttributes(attributeValueMap, bodyBytes));
+    }
+
+    /**
+     * Offloaded FIFO messages are deduplicated on their original body rather than on the pointer, which is unique.
+     */
+    @Override
+    public SendMessageResult sendFifoMessage(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        long bodyBytes = BufferedQueueWriter.payloadSize(messageBody, null);
+        if (fits(bodyBytes, attributeValueMap)) {
+            return delegate.sendFifoMessage(messageBody, messageGroupId, deduplicationId, attributeValueMap);
+        }
+        return delegate.sendFifoMessage(
+            store(messageBody),
+            messageGroupId,
+            ContentDeduplication.resolve(deduplicationId, messageBody, true),
+            claimCheck.pointerAttributes(attributeValueMap, bodyBytes)
+        );
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResult> sendFifoMessageAsync(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        long bodyBytes = BufferedQueueWriter.payloadSize(messageBody, null);
+        if (fits(bodyBytes, attributeValueMap)) {
+            return delegate.sendFifoMessageAsync(messageBody, messageGroupId, deduplicationId, attributeValueMap);
+        }
+        String key;
+        try {
+            key = store(messageBody);
+        } catch (RuntimeException e) {
+            CompletableFuture<SendMessageResult> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return delegate.sendFifoMessageAsync(
+            key,
+            messageGroupId,
+            ContentDeduplication.resolve(deduplicationId, messageBody, true),
+            claimCheck.pointerAttributes(attributeValueMap, bodyBytes)
+        );
+    }
+
+    private boolean fits(long bodyBytes, Map<String, MessageAttributeValue> attributeValueMap) {
+        return !claimCheck.exceedsThreshold(bodyBytes + BufferedQueueWriter.payloadSize(null, attributeValueMap));
+    }
+
+    private String store(String messageBody) {
+        try {
+            return claimCheck.store(messageBody);
+        } catch (IOException e) {
+            throw new SdkClientException("Failed to store an oversized message body.", e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package smartthings.dropwizard.sqs.internal.producer;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import smartthings.dropwizard.aws.internal.codec.PayloadCompressor;
+import smartthings.dropwizard.sqs.QueueWriter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decorates a QueueWriter so that bodies over the compression threshold are compressed and marked with a
+ * {@link PayloadCompressor#ENCODING_ATTRIBUTE} for consumers to decode.  Compression is deterministic, so FIFO
+ * deduplication on the compressed body behaves as it would on the original.  Bodies larger than consumers of the
+ * endpoint decode are refused rather than sent.
+ */
+public class CompressingQueueWriter implements QueueWriter {
+
+    private final QueueWriter delegate;
+    private final PayloadCompressor compressor;
+
+    public CompressingQueueWriter(QueueWriter delegate, PayloadCompressor compressor) {
+        this.delegate = delegate;
+        this.compressor = compressor;
+    }
+
+    public QueueWriter getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public SendMessageResult sendMessage(String messageBody) {
+        return sendMessage(messageBody, null, null);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(String messageBody, Integer delaySeconds) {
+        return sendMessage(messageBody, delaySeconds, null);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(
+        String messageBody,
+        Integer delaySeconds,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        String compressed = compressor.compress(messageBody);
+        if (compressed == null) {
+            return delegate.sendMessage(messageBody, delaySeconds, attributeValueMap);
+        }
+        return delegate.sendMessage(compressed, delaySeconds, encodingAttributes(attributeValueMap));
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResult> sendMessageAsync(
+        String messageBody,
+        Integer delaySeconds,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        String compressed;
+        try {
+            compressed = compressor.compress(messageBody);
+        } catch (IllegalArgumentException e) {
+            return failed(e);
+        }
+        if (compressed == null) {
+            return delegate.sendMessageAsync(messageBody, delaySeconds, attributeValueMap);
+        }
+        return delegate.sendMessageAsync(compressed, delaySeconds, encodingAttributes(attributeValueMap));
+    }
+
+    @Override
+    public SendMessageResult sendFifoMessage(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        String compressed = compressor.compress(messageBody);
+        if (compressed == null) {
+            return delegate.sendFifoMessage(messageBody, messageGroupId, deduplicationId, attributeValueMap);
+        }
+        return delegate.sendFifoMessage(
+            compressed, messageGroupId, deduplicationId, encodingAttributes(attributeValueMap)
+        );
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResult> sendFifoMessageAsync(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        String compressed;
+        try {
+            compressed = compressor.compress(messageBody);
+        } catch (IllegalArgumentException e) {
+            return failed(e);
+        }
+        if (compressed == null) {
+            return delegate.sendFifoMessageAsync(messageBody, messageGroupId, deduplicationId, attributeValueMap);
+        }
+        return delegate.sendFifoMessageAsync(
+            compressed, messageGroupId, deduplicationId, encodingAttributes(attributeValueMap)
+        );
+    }
+
+    private static CompletableFuture<SendMessageResult> failed(Throwable t) {
+        CompletableFuture<SendMessageResult> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    private Map<String, MessageAttributeValue> encodingAttributes(Map<String, MessageAttributeValue> attributeValueMap) {
+        Map<String, MessageAttributeValue> attributes =
+            attributeValueMap == null ? new HashMap<>() : new HashMap<>(attributeValueMap);
+        attributes.put(PayloadCompressor.ENCODING_ATTRIBUTE, new MessageAttributeValue()
+            .withDataType("String")
+            .withStringValue(compressor.getCodecName()));
+        return attributes;
+    }
+}
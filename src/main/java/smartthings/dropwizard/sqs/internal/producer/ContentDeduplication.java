@@ -0,0 +1,38 @@
+package smartthings.dropwizard.sqs.internal.producer;
+
+import com.amazonaws.util.BinaryUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes FIFO deduplication IDs from message bodies the same way SQS does for queues with content-based
+ * deduplication enabled.
+ */
+public final class ContentDeduplication {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private ContentDeduplication() {
+    }
+
+    /**
+     * @param deduplicationId the ID given by the caller, may be null
+     * @param messageBody the message body
+     * @param contentBased whether to derive an ID from the body when none is given
+     * @return the ID to send, null to leave it to the queue
+     */
+    public static String resolve(String deduplicationId, String messageBody, boolean contentBased) {
+        if (deduplicationId != null || !contentBased) {
+            return deduplicationId;
+        }
+        return BinaryUtils.toHex(SHA_256.get().digest(messageBody.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -5,21 +5,44 @@ import com.amazonaws.services.sqs.model.MessageAttributeValue;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.amazonaws.services.sqs.model.SendMessageResult;
 import com.google.inject.Inject;
+import smartthings.dropwizard.sqs.DefaultSqsService;
 import smartthings.dropwizard.sqs.QueueWriter;
+import smartthings.dropwizard.sqs.SqsService;
+import smartthings.dropwizard.sqs.internal.consumer.QueueUrl;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
- * A QueueWriter that can write a message to one queue, with an optional delay.
+ * A QueueWriter that can write a message to one queue, with an optional delay, or to one FIFO queue within a
+ * message group.
  */
 public class DefaultQueueWriter implements QueueWriter {
-    private final String queueUrl;
-    private final AmazonSQS sqs;
+    private final QueueUrl queueUrl;
+    private final SqsService sqs;
+    private final boolean contentBasedDeduplication;
 
     @Inject
     public DefaultQueueWriter(String queueUrl, AmazonSQS sqs) {
+        this(queueUrl, new DefaultSqsService(sqs));
+    }
+
+    public DefaultQueueWriter(String queueUrl, SqsService sqs) {
+        this(QueueUrl.of(queueUrl), sqs);
+    }
+
+    public DefaultQueueWriter(QueueUrl queueUrl, SqsService sqs) {
+        this(queueUrl, sqs, false);
+    }
+
+    /**
+     * @param contentBasedDeduplication derive FIFO deduplication IDs from message bodies when none is given
+     */
+    public DefaultQueueWriter(QueueUrl queueUrl, SqsService sqs, boolean contentBasedDeduplication) {
         this.queueUrl = queueUrl;
         this.sqs = sqs;
+        this.contentBasedDeduplication = contentBasedDeduplication;
     }
 
     @Override
@@ -34,6 +57,60 @@ public class DefaultQueueWriter implements QueueWriter {
 
     @Override
     public SendMessageResult sendMessage(String messageBody, Integer delaySeconds, Map<String, MessageAttributeValue> attributeValueMap) {
+        return queueUrl.call(url -> sqs.sendMessage(buildRequest(url, messageBody, delaySeconds, attributeValueMap)));
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResult> sendMessageAsync(
+        String messageBody,
+        Integer delaySeconds,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        return send(url -> buildRequest(url, messageBody, delaySeconds, attributeValueMap));
+    }
+
+    @Override
+    public SendMessageResult sendFifoMessage(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        return queueUrl.call(url -> sqs.sendMessage(
+            buildFifoRequest(url, messageBody, messageGroupId, deduplicationId, attributeValueMap)
+        ));
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResult> sendFifoMessageAsync(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        return send(url -> buildFifoRequest(url, messageBody, messageGroupId, deduplicationId, attributeValueMap));
+    }
+
+    /**
+     * Resolve the URL and send without blocking the caller.  A failure at any step completes the future.
+     */
+    private CompletableFuture<SendMessageResult> send(Function<String, SendMessageRequest> request) {
+        CompletableFuture<SendMessageResult> future = queueUrl.getAsync()
+            .thenCompose(url -> sqs.sendMessageAsync(request.apply(url)));
+        future.whenComplete((result, t) -> {
+            if (t != null) {
+                queueUrl.invalidateOn(t);
+            }
+        });
+        return future;
+    }
+
+    private SendMessageRequest buildRequest(
+        String queueUrl,
+        String messageBody,
+        Integer delaySeconds,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
         SendMessageRequest request = new SendMessageRequest(queueUrl, messageBody);
         if (delaySeconds != null) {
             request.setDelaySeconds(delaySeconds);
@@ -41,6 +118,20 @@ public class DefaultQueueWriter implements QueueWriter {
         if (attributeValueMap != null && attributeValueMap.size() > 0) {
             request.setMessageAttributes(attributeValueMap);
         }
-        return sqs.sendMessage(request);
+        return request;
+    }
+
+    private SendMessageRequest buildFifoRequest(
+        String queueUrl,
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        return buildRequest(queueUrl, messageBody, null, attributeValueMap)
+            .withMessageGroupId(messageGroupId)
+            .withMessageDeduplicationId(
+                ContentDeduplication.resolve(deduplicationId, messageBody, contentBasedDeduplication)
+            );
     }
 }
@@ -0,0 +1,114 @@
+package smartthings.dropwizard.sqs.internal.producer;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import smartthings.dropwizard.sqs.QueueWriter;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decorates a QueueWriter with send latency and failure metrics.
+ */
+public class InstrumentedQueueWriter implements QueueWriter {
+
+    private final QueueWriter delegate;
+    private final Timer sendTimer;
+    private final Meter sendFailures;
+
+    /**
+     * @param delegate the writer being measured
+     * @param registry the registry metrics are published to
+     * @param name the metric name prefix, e.g. <code>sqs.writer.my-writer</code>
+     */
+    public InstrumentedQueueWriter(QueueWriter delegate, MetricRegistry registry, String name) {
+        this.delegate = delegate;
+        this.sendTimer = registry.timer(MetricRegistry.name(name, "send"));
+        this.sendFailures = registry.meter(MetricRegistry.name(name, "send-failures"));
+    }
+
+    public QueueWriter getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public SendMessageResult sendMessage(String messageBody) {
+        return sendMessage(messageBody, null, null);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(String messageBody, Integer delaySeconds) {
+        return sendMessage(messageBody, delaySeconds, null);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(
+        String messageBody,
+        Integer delaySeconds,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        Timer.Context context = sendTimer.time();
+        try {
+            return delegate.sendMessage(messageBody, delaySeconds, attributeValueMap);
+        } catch (RuntimeException e) {
+            sendFailures.mark();
+            throw e;
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResult> sendMessageAsync(
+        String messageBody,
+        Integer delaySeconds,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        Timer.Context context = sendTimer.time();
+        return delegate.sendMessageAsync(messageBody, delaySeconds, attributeValueMap)
+            .whenComplete((result, t) -> {
+                context.stop();
+                if (t != null) {
+                    sendFailures.mark();
+                }
+            });
+    }
+
+    @Override
+    public SendMessageResult sendFifoMessage(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        Timer.Context context = sendTimer.time();
+        try {
+            return delegate.sendFifoMessage(messageBody, messageGroupId, deduplicationId, attributeValueMap);
+        } catch (RuntimeException e) {
+            sendFailures.mark();
+            throw e;
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResult> sendFifoMessageAsync(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        Timer.Context context = sendTimer.time();
+        return delegate.sendFifoMessageAsync(messageBody, messageGroupId, deduplicationId, attributeValueMap)
+            .whenComplete((result, t) -> {
+                context.stop();
+                if (t != null) {
+                    sendFailures.mark();
+                }
+            });
+    }
+}
@@ -0,0 +1,164 @@
+package smartthings.dropwizard.sqs.internal.producer;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import smartthings.dropwizard.aws.internal.ratelimit.TokenBucket;
+import smartthings.dropwizard.sqs.QueueWriter;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Decorates a QueueWriter with a rate limit.  Synchronous sends wait for their turn on the calling thread while
+ * asynchronous sends are delayed through the scheduler.  FIFO sends are handed to the delegate one at a time in the
+ * order they were made, so the order within a message group is kept; other sends may reach the delegate in any order.
+ */
+public class RateLimitedQueueWriter implements QueueWriter {
+
+    private final QueueWriter delegate;
+    private final TokenBucket limiter;
+    private final ScheduledExecutorService scheduler;
+    // Completed once the latest FIFO send has been handed to the delegate.
+    private CompletableFuture<Void> fifoTail = CompletableFuture.completedFuture(null);
+
+    public RateLimitedQueueWriter(QueueWriter delegate, TokenBucket limiter, ScheduledExecutorService scheduler) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.scheduler = scheduler;
+    }
+
+    public QueueWriter getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public SendMessageResult sendMessage(String messageBody) {
+        return sendMessage(messageBody, null, null);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(String messageBody, Integer delaySeconds) {
+        return sendMessage(messageBody, delaySeconds, null);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(
+        String messageBody,
+        Integer delaySeconds,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        acquire();
+        return delegate.sendMessage(messageBody, delaySeconds, attributeValueMap);
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResult> sendMessageAsync(
+        String messageBody,
+        Integer delaySeconds,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        return throttled(() -> delegate.sendMessageAsync(messageBody, delaySeconds, attributeValueMap));
+    }
+
+    @Override
+    public SendMessageResult sendFifoMessage(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        CompletableFuture<Void> handedOff = new CompletableFuture<>();
+        CompletableFuture<Void> previous = append(handedOff);
+        try {
+            acquire();
+            previous.join();
+            return delegate.sendFifoMessage(messageBody, messageGroupId, deduplicationId, attributeValueMap);
+        } finally {
+            handedOff.complete(null);
+        }
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResult> sendFifoMessageAsync(
+        String messageBody,
+        String messageGroupId,
+        String deduplicationId,
+        Map<String, MessageAttributeValue> attributeValueMap
+    ) {
+        CompletableFuture<Void> handedOff = new CompletableFuture<>();
+        CompletableFuture<Void> previous = append(handedOff);
+        return throttled(() -> {
+            CompletableFuture<SendMessageResult> sent = new CompletableFuture<>();
+            // Runs inline once the previous FIFO send has been handed off, otherwise on the thread that hands it off.
+            previous.whenComplete((ignored, t) -> {
+                try {
+                    forward(delegate.sendFifoMessageAsync(
+                        messageBody, messageGroupId, deduplicationId, attributeValueMap), sent);
+                } catch (RuntimeException e) {
+                    sent.completeExceptionally(e);
+                } finally {
+                    handedOff.complete(null);
+                }
+            });
+            return sent;
+        }).whenComplete((result, t) -> handedOff.complete(null));
+    }
+
+    private synchronized CompletableFuture<Void> append(CompletableFuture<Void> handedOff) {
+        CompletableFuture<Void> previous = fifoTail;
+        fifoTail = handedOff;
+        return previous;
+    }
+
+    private void acquire() {
+        try {
+            limiter.acquire(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortedException("Interrupted while waiting on the queue writer rate limit.", e);
+        }
+    }
+
+    /**
+     * Reserve a permit and run the send once it may be used.
+     */
+    private CompletableFuture<SendMessageResult> throttled(Supplier<CompletableFuture<SendMessageResult>> send) {
+        long nanos = limiter.reserve(1);
+        if (nanos == 0) {
+            return send.get();
+        }
+        CompletableFuture<SendMessageResult> future = new CompletableFuture<>();
+        try {
+            scheduler.schedule(() -> send(future, send), nanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void send(
+        CompletableFuture<SendMessageResult> future,
+        Supplier<CompletableFuture<SendMessageResult>> send
+    ) {
+        try {
+            forward(send.get(), future);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static void forward(CompletableFuture<SendMessageResult> from, CompletableFuture<SendMessageResult> to) {
+        from.whenComplete((result, t) -> {
+            if (t != null) {
+                to.completeExceptionally(t);
+            } else {
+                to.complete(result);
+            }
+        });
+    }
+}
@@ -1,10 +1,11 @@
 package smartthings.dropwizard.sqs.internal.providers;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import com.amazonaws.services.sqs.AmazonSQSAsyncClientBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import smartthings.dropwizard.sqs.AmazonSQSProvider;
@@ -22,8 +23,14 @@ public class DefaultAmazonSQSProvider implements AmazonSQSProvider {
 
     @Override
     public AmazonSQS get(SqsModule.EndpointConfig config) {
-        AmazonSQSClientBuilder builder = AmazonSQSClientBuilder.standard();
+        return get(config, new ClientConfiguration());
+    }
+
+    @Override
+    public AmazonSQS get(SqsModule.EndpointConfig config, ClientConfiguration clientConfiguration) {
+        AmazonSQSAsyncClientBuilder builder = AmazonSQSAsyncClientBuilder.standard();
         builder.withCredentials(credentialsProvider);
+        builder.withClientConfiguration(clientConfiguration);
         if (config.endpoint().isPresent()) {
             builder.withEndpointConfiguration(
                 new AwsClientBuilder.EndpointConfiguration(config.getEndpoint(), config.getRegionName())
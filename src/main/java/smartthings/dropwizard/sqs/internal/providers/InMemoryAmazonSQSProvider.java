@@ -0,0 +1,27 @@
+package smartthings.dropwizard.sqs.internal.providers;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.google.inject.Singleton;
+import smartthings.dropwizard.sqs.AmazonSQSProvider;
+import smartthings.dropwizard.sqs.SqsModule;
+import smartthings.dropwizard.sqs.internal.memory.InMemoryAmazonSQS;
+
+/**
+ * Serves every endpoint from a single in-process SQS engine, creating each queue the first time its URL is looked
+ * up.  Bind it in place of the default provider for local load testing:
+ *
+ * <pre>
+ * OptionalBinder.newOptionalBinder(binder(), AmazonSQSProvider.class)
+ *     .setBinding().to(InMemoryAmazonSQSProvider.class);
+ * </pre>
+ */
+@Singleton
+public class InMemoryAmazonSQSProvider implements AmazonSQSProvider {
+
+    private final InMemoryAmazonSQS sqs = new InMemoryAmazonSQS(true);
+
+    @Override
+    public AmazonSQS get(SqsModule.EndpointConfig config) {
+        return sqs;
+    }
+}
@@ -0,0 +1,107 @@
+package smartthings.dropwizard.aws.internal.backoff
+
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+class BackoffSpec extends Specification {
+
+    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor()
+
+    void cleanup() {
+        timer.shutdownNow()
+    }
+
+    void 'it should grow exponentially up to the maximum without jitter'() {
+        given:
+        Backoff backoff = new Backoff(100, 1000, Jitter.NONE)
+
+        expect:
+        (1..6).collect { backoff.nextDelayMillis() } == [100L, 200L, 400L, 800L, 1000L, 1000L]
+        backoff.attempts == 6
+
+        when:
+        backoff.reset()
+
+        then:
+        backoff.nextDelayMillis() == 100
+    }
+
+    void 'it should keep full jitter between zero and the exponential delay'() {
+        given:
+        Backoff backoff = new Backoff(100, 1000, Jitter.FULL)
+
+        expect:
+        (0..<20).every { attempt ->
+            long delay = backoff.nextDelayMillis()
+            delay >= 0 && delay <= Math.min(1000, 100L << Math.min(attempt, 4))
+        }
+    }
+
+    void 'it should keep decorrelated jitter between the base and three times the previous delay'() {
+        given:
+        Backoff backoff = new Backoff(100, 1000, Jitter.DECORRELATED)
+        long previous = 100
+
+        expect:
+        (0..<50).every {
+            long delay = backoff.nextDelayMillis()
+            boolean valid = delay >= 100 && delay <= Math.min(1000, previous * 3)
+            previous = delay
+            valid
+        }
+    }
+
+    void 'it should spread the delays of instances that failed together'() {
+        given:
+        List<Backoff> instances = (1..20).collect { new Backoff(1000, 60000, Jitter.DECORRELATED) }
+
+        when:
+        Set<Long> delays = instances.collect { it.nextDelayMillis(); it.nextDelayMillis() } as Set
+
+        then:
+        delays.size() > 1
+    }
+
+    void 'it should resubmit a task after the delay without holding a thread'() {
+        given:
+        BackoffScheduler scheduler = new BackoffScheduler(new Backoff(50, 50, Jitter.NONE), timer)
+        CountDownLatch ran = new CountDownLatch(1)
+
+        when:
+        long delay = scheduler.schedule({ it.run() }, { ran.countDown() })
+
+        then:
+        delay == 50
+        scheduler.suspended
+        ran.await(1, TimeUnit.SECONDS)
+        !scheduler.suspended
+    }
+
+    void 'it should run a suspended task early on resume and drop it on cancel'() {
+        given:
+        BackoffScheduler scheduler = new BackoffScheduler(new Backoff(60000, 60000, Jitter.NONE), timer)
+        List<String> runs = []
+
+        when:
+        scheduler.schedule({ it.run() }, { runs << 'first' })
+        boolean resumed = scheduler.resume()
+
+        then:
+        resumed
+        runs == ['first']
+        !scheduler.resume()
+
+        when:
+        scheduler.schedule({ it.run() }, { runs << 'second' })
+        boolean cancelled = scheduler.cancel()
+
+        then:
+        cancelled
+        !scheduler.cancel()
+        runs == ['first']
+    }
+}
@@ -0,0 +1,47 @@
+package smartthings.dropwizard.aws.internal.blob
+
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+
+class FileSystemBlobStoreSpec extends Specification {
+
+    Path directory = Files.createTempDirectory('blobs')
+    FileSystemBlobStore store = new FileSystemBlobStore(directory)
+
+    void cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    void 'it should stream a payload in and out'() {
+        given: 'multi-byte characters that straddle the encoder chunks'
+        String payload = ('é€😀' * 10000) + 'end'
+
+        when:
+        store.put('key-1', new Utf8InputStream(payload))
+
+        then:
+        store.get('key-1').withCloseable { new String(it.bytes, StandardCharsets.UTF_8) } == payload
+        Files.list(directory).count() == 1
+
+        when:
+        store.delete('key-1')
+        store.get('key-1')
+
+        then:
+        thrown(IOException)
+    }
+
+    void 'it should refuse keys that could name a file outside its directory'() {
+        when:
+        store.get(key)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        key << ['../secret', '/etc/passwd', '.hidden', '', null]
+    }
+}
@@ -0,0 +1,110 @@
+package smartthings.dropwizard.aws.internal.codec
+
+import smartthings.dropwizard.aws.PayloadCodec
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class PayloadCompressorSpec extends Specification {
+
+    static final String EVENT = '{"deviceId":"b4c2","capability":"switch","value":"on","unit":"é"}'
+
+    @Unroll
+    void 'it should compress and decompress with #codec.name'() {
+        given:
+        String body = EVENT * 50
+        PayloadCompressor compressor = new PayloadCompressor(codec, 100, 1 << 20)
+
+        when:
+        String compressed = compressor.compress(body)
+
+        then:
+        compressed.length() < body.length() / 5
+        compressed ==~ /[A-Za-z0-9+\/=]+/
+        PayloadCompressor.decompress(codec, compressed, 1 << 20) == body
+        // The reused buffers leave nothing behind for the next message.
+        PayloadCompressor.decompress(codec, compressor.compress(EVENT * 3), 1 << 20) == EVENT * 3
+
+        where:
+        codec << [PayloadCodecs.GZIP, PayloadCodecs.DEFLATE]
+    }
+
+    void 'it should keep the state of streams open at once on one thread apart'() {
+        given:
+        ByteArrayOutputStream first = new ByteArrayOutputStream()
+        ByteArrayOutputStream second = new ByteArrayOutputStream()
+        OutputStream a = PayloadCodecs.DEFLATE.compress(first)
+        OutputStream b = PayloadCodecs.DEFLATE.compress(second)
+
+        when:
+        100.times {
+            a.write("first ${it} ".bytes)
+            b.write("second ${it} ".bytes)
+        }
+        [a, b]*.close()
+
+        then:
+        inflate(first.toByteArray()) == (0..99).collect { "first ${it} " }.join()
+        inflate(second.toByteArray()) == (0..99).collect { "second ${it} " }.join()
+    }
+
+    void 'it should leave bodies under the threshold as they are'() {
+        given:
+        PayloadCompressor compressor =
+            new PayloadCompressor(PayloadCodecs.GZIP, EVENT.getBytes('UTF-8').length, 1 << 20)
+
+        expect:
+        compressor.compress(EVENT) == null
+        compressor.compress(null) == null
+    }
+
+    void 'it should leave bodies that do not get smaller as they are'() {
+        given:
+        byte[] random = new byte[2048]
+        new Random(42).nextBytes(random)
+        String body = random.encodeBase64().toString()
+
+        expect:
+        new PayloadCompressor(PayloadCodecs.GZIP, 100, 1 << 20).compress(body) == null
+    }
+
+    void 'it should fail to decompress a body that is not valid for the codec'() {
+        when:
+        PayloadCompressor.decompress(PayloadCodecs.GZIP, 'bm90IGd6aXA=', 1 << 20)
+
+        then:
+        thrown(IOException)
+    }
+
+    void 'it should fail to decompress a body past the limit'() {
+        given:
+        String compressed = new PayloadCompressor(PayloadCodecs.GZIP, 0, 1 << 20).compress('a' * 100000)
+
+        when:
+        PayloadCompressor.decompress(PayloadCodecs.GZIP, compressed, 99999)
+
+        then:
+        IOException e = thrown()
+        e.message.contains('99999')
+        compressed.length() < 1000
+    }
+
+    void 'it should let bound codecs replace the built-in ones'() {
+        given:
+        PayloadCodec custom = Stub(PayloadCodec) {
+            getName() >> 'gzip'
+        }
+
+        expect:
+        PayloadCodecs.byName([custom]).gzip.is(custom)
+        PayloadCodecs.byName([]).keySet() == ['gzip', 'deflate'] as Set
+    }
+
+    private static String inflate(byte[] bytes) {
+        InputStream stream = PayloadCodecs.DEFLATE.decompress(new ByteArrayInputStream(bytes))
+        try {
+            return new String(stream.bytes, 'UTF-8')
+        } finally {
+            stream.close()
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package smartthings.dropwizard.aws.internal.ratelimit
+
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class TokenBucketSpec extends Specification {
+
+    long now = 0
+    TokenBucket bucket = new TokenBucket(10, 5, { now })
+
+    void 'it should allow a burst and then refill at the configured rate'() {
+        expect:
+        bucket.tryAcquireUpTo(10) == 5
+        bucket.tryAcquireUpTo(10) == 0
+        bucket.nanosUntilAvailable(1) == TimeUnit.MILLISECONDS.toNanos(100)
+
+        when:
+        now += TimeUnit.MILLISECONDS.toNanos(250)
+
+        then:
+        bucket.tryAcquireUpTo(10) == 2
+
+        when:
+        now += TimeUnit.SECONDS.toNanos(10)
+
+        then: 'no more than the burst accrues while idle'
+        bucket.tryAcquireUpTo(10) == 5
+    }
+
+    void 'it should take back unused permits up to the burst size'() {
+        given:
+        bucket.tryAcquireUpTo(3)
+
+        when:
+        bucket.refund(10)
+
+        then:
+        bucket.tryAcquireUpTo(10) == 5
+    }
+
+    void 'it should let callers borrow against the future and tell them how long to wait'() {
+        given:
+        bucket.tryAcquireUpTo(5)
+
+        expect:
+        bucket.reserve(1) == TimeUnit.MILLISECONDS.toNanos(100)
+        bucket.reserve(1) == TimeUnit.MILLISECONDS.toNanos(200)
+
+        when:
+        now += TimeUnit.MILLISECONDS.toNanos(200)
+
+        then:
+        bucket.reserve(1) == TimeUnit.MILLISECONDS.toNanos(100)
+    }
+
+    void 'it should require a positive rate'() {
+        when:
+        new TokenBucket(0, 1)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
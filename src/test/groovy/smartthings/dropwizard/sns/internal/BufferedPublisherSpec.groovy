@@ -0,0 +1,178 @@
+package smartthings.dropwizard.sns.internal
+
+import com.amazonaws.services.sns.model.AmazonSNSException
+import com.amazonaws.services.sns.model.BatchResultErrorEntry
+import com.amazonaws.services.sns.model.PublishBatchRequest
+import com.amazonaws.services.sns.model.PublishBatchResult
+import com.amazonaws.services.sns.model.PublishBatchResultEntry
+import com.amazonaws.services.sns.model.PublishRequest
+import com.amazonaws.services.sns.model.PublishResult
+import smartthings.dropwizard.sns.SnsModule
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.function.Function
+
+class BufferedPublisherSpec extends Specification {
+
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor()
+    ExecutorService senders = Executors.newFixedThreadPool(10)
+    Queue<PublishBatchRequest> batches = new ConcurrentLinkedQueue<>()
+    Function<PublishBatchRequest, PublishBatchResult> publisher = { PublishBatchRequest request ->
+        batches << request
+        return succeeded(request)
+    } as Function
+
+    void cleanup() {
+        scheduler.shutdownNow()
+        senders.shutdownNow()
+    }
+
+    void 'it should publish a full batch in one call'() {
+        given:
+        BufferedPublisher buffered =
+            new BufferedPublisher(publisher, new SnsModule.BufferConfig(maxLingerMillis: 60000), scheduler, senders)
+
+        when:
+        List<CompletableFuture<PublishResult>> futures = (0..9).collect { buffered.publish(request('topic', "${it}")) }
+
+        then:
+        futures*.get(5, TimeUnit.SECONDS)*.messageId == (0..9).collect { "id-${it}".toString() }
+        batches.size() == 1
+        batches.peek().topicArn == 'topic'
+        batches.peek().publishBatchRequestEntries*.message == (0..9).collect { "${it}".toString() }
+    }
+
+    void 'it should buffer each topic separately until the linger time elapses'() {
+        given:
+        BufferedPublisher buffered = new BufferedPublisher(
+            publisher, new SnsModule.BufferConfig(maxBatchSize: 2, maxLingerMillis: 60000), scheduler, senders
+        )
+
+        when:
+        CompletableFuture<PublishResult> first = buffered.publish(request('a', '1'))
+        CompletableFuture<PublishResult> other = buffered.publish(request('b', '2'))
+        CompletableFuture<PublishResult> second = buffered.publish(request('a', '3'))
+        [first, second]*.get(5, TimeUnit.SECONDS)
+
+        then:
+        batches*.topicArn == ['a']
+        !other.isDone()
+
+        when:
+        buffered.flush()
+
+        then:
+        other.get(5, TimeUnit.SECONDS).messageId == 'id-2'
+        batches*.topicArn == ['a', 'b']
+    }
+
+    void 'it should send a partial batch once the linger time elapses'() {
+        given:
+        BufferedPublisher buffered =
+            new BufferedPublisher(publisher, new SnsModule.BufferConfig(maxLingerMillis: 10), scheduler, senders)
+
+        expect:
+        buffered.publish(request('topic', 'body')).get(5, TimeUnit.SECONDS).messageId == 'id-body'
+    }
+
+    void 'it should fail only the entries that failed in the batch'() {
+        given:
+        BufferedPublisher buffered = new BufferedPublisher({ PublishBatchRequest request ->
+            return new PublishBatchResult()
+                .withSuccessful(new PublishBatchResultEntry().withId('0').withMessageId('ok'))
+                .withFailed(new BatchResultErrorEntry().withId('1').withCode('InvalidParameter').withSenderFault(true))
+        } as Function, new SnsModule.BufferConfig(maxBatchSize: 2, maxLingerMillis: 60000), scheduler, senders)
+
+        when:
+        CompletableFuture<PublishResult> good = buffered.publish(request('topic', 'good'))
+        CompletableFuture<PublishResult> bad = buffered.publish(request('topic', 'bad'))
+
+        then:
+        good.get(5, TimeUnit.SECONDS).messageId == 'ok'
+
+        when:
+        bad.get(5, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown()
+        e.cause instanceof AmazonSNSException
+        e.cause.errorCode == 'InvalidParameter'
+        e.cause.statusCode == 400
+    }
+
+    void 'it should fail every entry when the batch call fails'() {
+        given:
+        AmazonSNSException failure = new AmazonSNSException('unavailable')
+        BufferedPublisher buffered = new BufferedPublisher({ PublishBatchRequest request ->
+            throw failure
+        } as Function, new SnsModule.BufferConfig(maxBatchSize: 2, maxLingerMillis: 60000), scheduler, senders)
+
+        when:
+        List<CompletableFuture<PublishResult>> futures = ['1', '2'].collect { buffered.publish(request('topic', it)) }
+        CompletableFuture.allOf(futures as CompletableFuture[]).handle { result, e -> null }.get(5, TimeUnit.SECONDS)
+
+        then:
+        futures.every { it.isCompletedExceptionally() }
+        futures.collect { f -> f.handle { result, e -> e.cause ?: e }.get() }.every { it.is(failure) }
+    }
+
+    void 'it should send the batches of a FIFO topic one at a time'() {
+        given:
+        CountDownLatch release = new CountDownLatch(1)
+        List<String> order = [].asSynchronized()
+        BufferedPublisher buffered = new BufferedPublisher({ PublishBatchRequest request ->
+            if (request.publishBatchRequestEntries[0].message == '1') {
+                release.await(5, TimeUnit.SECONDS)
+            }
+            order.addAll(request.publishBatchRequestEntries*.message)
+            return succeeded(request)
+        } as Function, new SnsModule.BufferConfig(maxBatchSize: 1, maxLingerMillis: 60000), scheduler, senders)
+
+        when:
+        CompletableFuture<PublishResult> first = buffered.publish(request('topic.fifo', '1'))
+        CompletableFuture<PublishResult> second = buffered.publish(request('topic.fifo', '2'))
+        Thread.sleep(100)
+
+        then:
+        !second.isDone()
+
+        when:
+        release.countDown()
+        [first, second]*.get(5, TimeUnit.SECONDS)
+
+        then:
+        order == ['1', '2']
+    }
+
+    void 'it should publish what is buffered on shutdown'() {
+        given:
+        BufferedPublisher buffered =
+            new BufferedPublisher(publisher, new SnsModule.BufferConfig(maxLingerMillis: 60000), scheduler, senders)
+        CompletableFuture<PublishResult> future = buffered.publish(request('topic', 'last'))
+
+        when:
+        boolean drained = buffered.shutdown(5, TimeUnit.SECONDS)
+
+        then:
+        drained
+        future.getNow(null).messageId == 'id-last'
+    }
+
+    private static PublishRequest request(String topic, String message) {
+        return new PublishRequest(topic, message)
+    }
+
+    private static PublishBatchResult succeeded(PublishBatchRequest request) {
+        return new PublishBatchResult().withSuccessful(request.publishBatchRequestEntries.collect {
+            new PublishBatchResultEntry().withId(it.id).withMessageId("id-${it.message}")
+        })
+    }
+}
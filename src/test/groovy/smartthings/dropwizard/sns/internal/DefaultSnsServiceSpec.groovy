@@ -3,14 +3,21 @@ package smartthings.dropwizard.sns.internal
 import com.amazonaws.AmazonServiceException
 import com.amazonaws.AmazonWebServiceRequest
 import com.amazonaws.ResponseMetadata
+import com.amazonaws.services.sns.AbstractAmazonSNS
 import com.amazonaws.services.sns.AmazonSNS
 import com.amazonaws.services.sns.model.*
+import smartthings.dropwizard.aws.AwsModule
+import smartthings.dropwizard.aws.internal.codec.PayloadCodecs
+import smartthings.dropwizard.aws.internal.codec.PayloadCompressor
 import smartthings.dropwizard.sns.AmazonSNSProvider
 import smartthings.dropwizard.sns.SnsModule
 import smartthings.dropwizard.sns.SnsService
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
 @SuppressWarnings(['MethodCount'])
 class DefaultSnsServiceSpec extends Specification {
 
@@ -88,6 +95,105 @@ class DefaultSnsServiceSpec extends Specification {
         assert response == result
     }
 
+    void 'it should compress large messages when configured'() {
+        given:
+        config.compression = new AwsModule.CompressionConfig(thresholdBytes: 100)
+        service.setPayloadCodecs([] as Set)
+        String message = 'event ' * 100
+        PublishRequest published
+
+        when:
+        service.publish('arn', 'small')
+        service.publish('arn', message)
+
+        then:
+        1 * client1.publish({ it.message == 'small' && it.messageAttributes.isEmpty() }) >> new PublishResult()
+        1 * client1.publish(_ as PublishRequest) >> { PublishRequest request ->
+            published = request
+            return new PublishResult()
+        }
+        PayloadCompressor.decompress(PayloadCodecs.GZIP, published.message, 1 << 20) == message
+        published.messageAttributes[PayloadCompressor.ENCODING_ATTRIBUTE].stringValue == 'gzip'
+    }
+
+    void 'it should publish buffered messages for a topic in one batch call'() {
+        given:
+        List<PublishBatchRequest> batches = [].asSynchronized()
+        AmazonSNS client = new AbstractAmazonSNS() {
+            @Override
+            PublishBatchResult publishBatch(PublishBatchRequest request) {
+                batches << request
+                return new PublishBatchResult().withSuccessful(request.publishBatchRequestEntries.collect {
+                    new PublishBatchResultEntry().withId(it.id).withMessageId("id-${it.message}")
+                })
+            }
+
+            @Override
+            PublishResult publish(PublishRequest request) {
+                return new PublishResult().withMessageId('direct')
+            }
+
+            @Override
+            void shutdown() {
+            }
+        }
+        SnsModule.Config buffering = new SnsModule.Config(
+            enabled: true,
+            endpoints: [new SnsModule.EndpointConfig(regionName: 'us-east-1')],
+            buffer: new SnsModule.BufferConfig(maxBatchSize: 2, maxLingerMillis: 60000)
+        )
+        DefaultSnsService bufferedService = new DefaultSnsService(buffering, Stub(AmazonSNSProvider) {
+            get(_) >> client
+        })
+
+        when:
+        CompletableFuture<PublishResult> first = bufferedService.publishAsync(new PublishRequest('arn', 'first'))
+        CompletableFuture<PublishResult> second = bufferedService.publishAsync(new PublishRequest('arn', 'second'))
+
+        then:
+        [first, second]*.get(5, TimeUnit.SECONDS)*.messageId == ['id-first', 'id-second']
+        batches.size() == 1
+        batches[0].topicArn == 'arn'
+        batches[0].publishBatchRequestEntries*.message == ['first', 'second']
+
+        when: 'the message is not for a topic'
+        PublishResult direct = bufferedService.publish(new PublishRequest().withTargetArn('endpoint').withMessage('m'))
+
+        then:
+        direct.messageId == 'direct'
+
+        cleanup:
+        bufferedService.shutdown()
+    }
+
+    void 'it should move calls off the preferred endpoint on failover with latency-aware selection'() {
+        given:
+        AmazonSNS first = Mock(AmazonSNS)
+        AmazonSNS second = Mock(AmazonSNS)
+        SnsModule.Config latencyAware = new SnsModule.Config(
+            enabled: true,
+            endpoints: [
+                new SnsModule.EndpointConfig(regionName: 'us-east-1'),
+                new SnsModule.EndpointConfig(regionName: 'us-west-2')
+            ],
+            latency: new SnsModule.LatencyConfig()
+        )
+        DefaultSnsService routed = new DefaultSnsService(latencyAware, Stub(AmazonSNSProvider) {
+            get(latencyAware.endpoints[0]) >> first
+            get(latencyAware.endpoints[1]) >> second
+        })
+
+        when:
+        routed.triggerFailover()
+        routed.publish('arn', 'one')
+        routed.publish('arn', 'two')
+
+        then:
+        0 * first.publish(_, _)
+        1 * second.publish('arn', 'one') >> new PublishResult()
+        1 * second.publish('arn', 'two') >> new PublishResult()
+    }
+
     void 'it should delete a topic'() {
         given:
         def request = new DeleteTopicRequest()
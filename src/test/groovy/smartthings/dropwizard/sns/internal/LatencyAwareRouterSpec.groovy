@@ -0,0 +1,153 @@
+package smartthings.dropwizard.sns.internal
+
+import com.amazonaws.AmazonServiceException
+import com.amazonaws.services.sns.AbstractAmazonSNS
+import com.amazonaws.services.sns.AmazonSNS
+import com.amazonaws.services.sns.model.PublishRequest
+import com.amazonaws.services.sns.model.PublishResult
+import smartthings.dropwizard.sns.SnsModule
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.function.Function
+import java.util.function.LongSupplier
+
+class LatencyAwareRouterSpec extends Specification {
+
+    static final long MS = TimeUnit.MILLISECONDS.toNanos(1)
+
+    long now = 0
+    LongSupplier clock = { now } as LongSupplier
+    AmazonSNS client1 = Mock(AmazonSNS)
+    AmazonSNS client2 = Mock(AmazonSNS)
+    SnsModule.LatencyConfig config = new SnsModule.LatencyConfig()
+    Function<AmazonSNS, PublishResult> publish =
+        { AmazonSNS client -> client.publish(new PublishRequest()) } as Function
+
+    void 'it should send calls to the endpoint with the lowest latency'() {
+        given:
+        LatencyAwareRouter router = new LatencyAwareRouter([client1, client2], config, null, clock)
+
+        when:
+        10.times { router.call(publish) }
+
+        then:
+        1 * client1.publish(_) >> { now += 50 * MS; new PublishResult() }
+        9 * client2.publish(_) >> { now += 10 * MS; new PublishResult() }
+    }
+
+    void 'it should take a failing endpoint out of rotation until a probe succeeds'() {
+        given:
+        LatencyAwareRouter router = new LatencyAwareRouter([client1, client2], config, null, clock)
+
+        when:
+        router.call(publish)
+
+        then:
+        1 * client1.publish(_) >> { throw new AmazonServiceException('unavailable').with { statusCode = 503; it } }
+        thrown(AmazonServiceException)
+
+        when:
+        3.times { router.call(publish) }
+
+        then:
+        3 * client2.publish(_) >> { now += 20 * MS; new PublishResult() }
+        0 * client1.publish(_)
+
+        when: 'the backoff has passed'
+        now += TimeUnit.MINUTES.toNanos(5)
+        router.call(publish)
+
+        then: 'a probe goes to the failed endpoint'
+        1 * client1.publish(_) >> { now += MS; new PublishResult() }
+
+        when:
+        6.times { router.call(publish) }
+
+        then: 'it is back in rotation and, being faster, takes the traffic'
+        5 * client1.publish(_) >> { now += MS; new PublishResult() }
+        1 * client2.publish(_) >> { now += 20 * MS; new PublishResult() }
+    }
+
+    void 'it should not count client errors against an endpoint'() {
+        given:
+        LatencyAwareRouter router = new LatencyAwareRouter([client1, client2], config, null, clock)
+
+        when:
+        router.call(publish)
+
+        then:
+        1 * client1.publish(_) >> { throw new AmazonServiceException('invalid').with { statusCode = 400; it } }
+        thrown(AmazonServiceException)
+
+        when:
+        router.call(publish)
+
+        then: 'the endpoint is still in rotation'
+        1 * client1.publish(_) >> new PublishResult()
+        0 * client2.publish(_)
+    }
+
+    void 'it should hedge calls slower than the percentile to the next endpoint'() {
+        given:
+        ExecutorService executor = Executors.newCachedThreadPool()
+        CountDownLatch stalled = new CountDownLatch(1)
+        config.hedgePercentile = 0.95
+        config.minHedgeDelayMillis = 20
+        // Plain clients rather than stubs, whose invocations Spock handles one at a time.
+        AmazonSNS slow = new AbstractAmazonSNS() {
+            @Override
+            PublishResult publish(PublishRequest request) {
+                stalled.await(5, TimeUnit.SECONDS)
+                return new PublishResult().withMessageId('slow')
+            }
+        }
+        AmazonSNS fast = new AbstractAmazonSNS() {
+            @Override
+            PublishResult publish(PublishRequest request) {
+                return new PublishResult().withMessageId('fast')
+            }
+        }
+        LatencyAwareRouter router = new LatencyAwareRouter([slow, fast], config, executor, clock)
+
+        and: 'the first endpoint has enough samples for a percentile'
+        LatencyAwareRouter.MIN_HEDGE_SAMPLES.times { router.call({ new PublishResult() } as Function) }
+        now += TimeUnit.SECONDS.toNanos(2)
+
+        when:
+        long start = System.nanoTime()
+        PublishResult result = router.call(publish)
+        long elapsed = System.nanoTime() - start
+
+        then:
+        result.messageId == 'fast'
+        elapsed < TimeUnit.SECONDS.toNanos(2)
+
+        cleanup:
+        stalled.countDown()
+        executor.shutdownNow()
+    }
+
+    void 'it should jump to a slower latency and decay back'() {
+        given:
+        PeakEwma ewma = new PeakEwma(1000 * MS, 0)
+
+        when:
+        ewma.observe(10 * MS, 0)
+        ewma.observe(100 * MS, 0)
+
+        then:
+        ewma.get(0) == 100 * MS
+
+        when:
+        ewma.observe(10 * MS, 1000 * MS)
+
+        then:
+        ewma.get(1000 * MS) > 10 * MS
+        ewma.get(1000 * MS) < 50 * MS
+        ewma.get(10000 * MS) < MS
+    }
+}
@@ -0,0 +1,92 @@
+package smartthings.dropwizard.sqs
+
+import com.amazonaws.services.sqs.model.Message
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException
+import spock.lang.Specification
+
+class TypedConsumerSpec extends Specification {
+
+    static final String EVENT = '{"deviceId":"b4c2","value":"on – ☃","extra":1}'
+
+    void 'it should read bodies as the configured type'() {
+        given:
+        RecordingConsumer<Event> consumer = new RecordingConsumer<>(Event)
+
+        when:
+        consumer.consume(new Message().withMessageId('1').withBody(EVENT))
+
+        then:
+        consumer.bodies*.deviceId == ['b4c2']
+        consumer.bodies*.value == ['on – ☃']
+        consumer.messages*.messageId == ['1']
+    }
+
+    void 'it should unwrap SNS notifications in a single pass'() {
+        given:
+        RecordingConsumer<List<Event>> consumer = new RecordingConsumer<>(new TypeReference<List<Event>>() { }, true)
+        String notification = new ObjectMapper().writeValueAsString([
+            Type: 'Notification',
+            MessageId: 'abc',
+            MessageAttributes: [source: [Type: 'String', Value: 'hub']],
+            Message: "[${EVENT},${EVENT}]".toString(),
+            Timestamp: '2017-10-17T00:00:00.000Z'
+        ])
+
+        when:
+        consumer.consume(new Message().withBody(notification))
+
+        then:
+        consumer.bodies.size() == 1
+        consumer.bodies[0]*.value == ['on – ☃', 'on – ☃']
+    }
+
+    void 'it should fail bodies that are not SNS notifications when one is expected'() {
+        given:
+        RecordingConsumer<Event> consumer = new RecordingConsumer<>(Event, true)
+
+        when:
+        consumer.consume(new Message().withBody(EVENT))
+
+        then:
+        thrown(IOException)
+        consumer.bodies.isEmpty()
+    }
+
+    void 'it should read with the bound mapper'() {
+        given:
+        RecordingConsumer<Event> consumer = new RecordingConsumer<>(Event)
+        consumer.objectMapper = new ObjectMapper()
+
+        when:
+        consumer.consume(new Message().withBody(EVENT))
+
+        then:
+        thrown(UnrecognizedPropertyException)
+    }
+
+    static class Event {
+        String deviceId
+        String value
+    }
+
+    static class RecordingConsumer<T> extends TypedConsumer<T> {
+        List<T> bodies = []
+        List<Message> messages = []
+
+        RecordingConsumer(Class<T> type, boolean snsEnvelope = false) {
+            super(type, snsEnvelope)
+        }
+
+        RecordingConsumer(TypeReference<T> type, boolean snsEnvelope) {
+            super(type, snsEnvelope)
+        }
+
+        @Override
+        void consume(T body, Message message) {
+            bodies << body
+            messages << message
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package smartthings.dropwizard.sqs.internal.consumer
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.TimeUnit
+
+class ConcurrencyControllerSpec extends Specification {
+
+    ConcurrencyController controller = new ConcurrencyController(Mock(ConsumerGroup), 1, 8, 0, 10)
+
+    @Unroll
+    void 'it should scale from #current to #expected when backlog=#backlog'() {
+        given:
+        ConsumerStats.Snapshot snapshot = new ConsumerStats.Snapshot(
+            receives, empty, messages, messages * TimeUnit.MILLISECONDS.toNanos(latencyMillis)
+        )
+
+        expect:
+        controller.targetConcurrency(current, backlog, snapshot) == expected
+
+        where:
+        current | backlog | receives | empty | messages | latencyMillis || expected
+        2       | 1000    | 100      | 0     | 1000     | 50            || 4  // needs 5, capped at 2x growth
+        2       | 1000    | 100      | 0     | 1000     | 10            || 2  // 1 poller is enough, never shrink with a backlog
+        4       | 10000   | 100      | 0     | 1000     | 50            || 8  // needs 50, capped at max
+        2       | 1000    | 0        | 0     | 0        | 0             || 3  // nothing processed yet
+        2       | 1000    | 100      | 90    | 10       | 50            || 2  // mostly empty receives
+        3       | 0       | 100      | 90    | 10       | 50            || 2
+        1       | 0       | 100      | 100   | 0        | 0             || 1  // never below min
+        3       | 0       | 100      | 10    | 900      | 50            || 3
+    }
+
+    void 'it should never scale past the workers of the consumer'() {
+        given:
+        ConcurrencyController bounded = new ConcurrencyController(Mock(ConsumerGroup), 1, 8, 3, 10)
+        ConsumerStats.Snapshot busy = new ConsumerStats.Snapshot(100, 0, 1000, 1000 * TimeUnit.MILLISECONDS.toNanos(50))
+
+        expect:
+        bounded.targetConcurrency(2, 10000, busy) == 3
+        bounded.targetConcurrency(6, 10000, busy) == 3
+    }
+}
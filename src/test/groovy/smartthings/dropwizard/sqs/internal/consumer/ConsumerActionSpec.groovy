@@ -0,0 +1,303 @@
+package smartthings.dropwizard.sqs.internal.consumer
+
+import com.amazonaws.services.sqs.model.*
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import smartthings.dropwizard.aws.internal.ratelimit.TokenBucket
+import smartthings.dropwizard.sqs.BatchConsumer
+import smartthings.dropwizard.sqs.Consumer
+import smartthings.dropwizard.sqs.SqsModule
+import smartthings.dropwizard.sqs.SqsService
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+class ConsumerActionSpec extends Specification {
+
+    SqsService sqs = Mock(SqsService)
+    SqsModule.ConsumerConfig consumerConfig = new SqsModule.ConsumerConfig(batchSize: 5)
+    SqsModule.EndpointConfig config = new SqsModule.EndpointConfig(queueName: 'queue1', regionName: 'us-east-1')
+    ConsumerStats stats = new ConsumerStats()
+    MessageAcknowledger acknowledger = new MessageAcknowledger(
+        sqs, config, QueueUrl.of('http://queue-url'), 10, stats, CircuitBreaker.ofDefaults('sqs-queue1')
+    )
+    List<List<Message>> batches = []
+    List<List<Message>> received = []
+    List<Integer> requested = []
+    TokenBucket limiter
+    ConsumerAction action
+
+    BatchConsumer consumer = new BatchConsumer() {
+        @Override
+        List<Message> consumeBatch(List<Message> messages) {
+            batches << messages
+            return messages.findAll { it.body == 'bad' }
+        }
+
+        @Override
+        ReceiveMessageRequest getReceiveMessageRequest() {
+            return new ReceiveMessageRequest('http://queue-url').withWaitTimeSeconds(1)
+        }
+    }
+
+    void setup() {
+        sqs.getQueueUrl('queue1') >> new GetQueueUrlResult().withQueueUrl('http://queue-url')
+    }
+
+    void 'it should hand a whole receive to a batch consumer and only delete the successful messages'() {
+        given:
+        received << [message('1', 'good'), message('2', 'bad'), message('3', 'good')]
+        action = action()
+
+        when:
+        action.run()
+        acknowledger.flush()
+
+        then:
+        batches*.size() == [3]
+        1 * sqs.deleteMessageBatch({ it.entries*.receiptHandle == ['1', '3'] }) >> new DeleteMessageBatchResult()
+    }
+
+    void 'it should fill a batch from several receives while lingering'() {
+        given:
+        consumerConfig.batchLingerMillis = 5000
+        received << [message('1', 'good'), message('2', 'good')]
+        received << [message('3', 'good'), message('4', 'good'), message('5', 'good')]
+        action = action()
+
+        when:
+        action.run()
+        acknowledger.flush()
+
+        then:
+        batches*.size() == [5]
+        1 * sqs.deleteMessageBatch({ it.entries.size() == 5 }) >> new DeleteMessageBatchResult()
+    }
+
+    void 'it should not delete any messages when the batch consumer throws'() {
+        given:
+        BatchConsumer failing = Stub(BatchConsumer) {
+            consumeBatch(_) >> { throw new RuntimeException('boom') }
+            getReceiveMessageRequest() >> new ReceiveMessageRequest('http://queue-url')
+        }
+        consumer = failing
+        received << [message('1', 'good')]
+        action = action()
+
+        when:
+        action.run()
+        acknowledger.flush()
+
+        then:
+        0 * sqs.deleteMessageBatch(_)
+    }
+
+    void 'it should only receive as many messages as the rate limit allows'() {
+        given:
+        limiter = new TokenBucket(1, 2)
+        received << [message('1', 'good'), message('2', 'good')]
+        action = action()
+
+        when:
+        action.run()
+
+        then:
+        requested == [2]
+        batches*.size() == [2]
+        limiter.tryAcquireUpTo(5) == 0
+    }
+
+    void 'it should give its thread back while the circuit is open and still shut down'() {
+        given:
+        ExecutorService executor = Executors.newCachedThreadPool()
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor()
+        10.times { received << [] }
+        action = action()
+        action.circuitBreaker.transitionToOpenState()
+
+        when:
+        action.start(executor, timer)
+        Thread.sleep(200)
+
+        then:
+        executor.activeCount == 0
+        !action.shutdownComplete
+
+        when:
+        action.shutdown()
+        action.awaitShutdown()
+
+        then:
+        action.shutdownComplete
+
+        cleanup:
+        executor.shutdownNow()
+        timer.shutdownNow()
+    }
+
+    void 'it should interrupt a long poll on shutdown'() {
+        given:
+        ExecutorService executor = Executors.newCachedThreadPool()
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor()
+        action = new ConsumerAction(
+            sqs, consumer, acknowledger, new InlineDispatcher(), null, stats,
+            new VisibilityHeartbeat(null, sqs, { 'http://queue-url' }),
+            CircuitBreaker.ofDefaults('test'), consumerConfig, config, QueueUrl.of('http://queue-url'), null, null
+        )
+        sqs.receiveMessage(_) >> { Thread.sleep(20000); new ReceiveMessageResult() }
+
+        when:
+        action.start(executor, timer)
+        Thread.sleep(100)
+        action.shutdown()
+
+        then:
+        action.awaitShutdown(1, TimeUnit.SECONDS)
+        batches.isEmpty()
+
+        cleanup:
+        executor.shutdownNow()
+        timer.shutdownNow()
+    }
+
+    void 'it should release what a receive returns after it was abandoned'() {
+        given:
+        CountDownLatch receiving = new CountDownLatch(1)
+        CountDownLatch respond = new CountDownLatch(1)
+        List<ChangeMessageVisibilityBatchRequest> released = [].asSynchronized()
+        // A client that does not notice the interrupt; a mock would serialize the blocked receive.
+        sqs = [
+            receiveMessage: { ReceiveMessageRequest request ->
+                receiving.countDown()
+                while (true) {
+                    try {
+                        respond.await()
+                        break
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                new ReceiveMessageResult().withMessages(message('1', 'late'))
+            },
+            changeMessageVisibilityBatch: { ChangeMessageVisibilityBatchRequest request ->
+                released << request
+                new ChangeMessageVisibilityBatchResult()
+            }
+        ] as SqsService
+        ExecutorService executor = Executors.newCachedThreadPool()
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor()
+        action = new ConsumerAction(
+            sqs, consumer, acknowledger, new InlineDispatcher(), null, stats,
+            new VisibilityHeartbeat(null, sqs, { 'http://queue-url' }),
+            CircuitBreaker.ofDefaults('test'), consumerConfig, config, QueueUrl.of('http://queue-url'), null, null
+        )
+
+        when:
+        action.start(executor, timer)
+        receiving.await(1, TimeUnit.SECONDS)
+        action.shutdown()
+        respond.countDown()
+
+        then:
+        action.awaitShutdown(1, TimeUnit.SECONDS)
+        batches.isEmpty()
+        released*.entries*.visibilityTimeout == [[0]]
+
+        cleanup:
+        executor.shutdownNow()
+        timer.shutdownNow()
+    }
+
+    void 'it should stop waiting for shutdown once the timeout passes'() {
+        given:
+        action = action()
+
+        expect:
+        !action.awaitShutdown(50, TimeUnit.MILLISECONDS)
+    }
+
+    void 'it should count messages skipped after a failure in their group as no longer in flight'() {
+        given:
+        config.queueName = 'queue1.fifo'
+        List<String> consumed = []
+        Consumer single = new Consumer() {
+            @Override
+            void consume(Message message) {
+                consumed << message.messageId
+                if (message.body == 'bad') {
+                    throw new RuntimeException('boom')
+                }
+            }
+
+            @Override
+            ReceiveMessageRequest getReceiveMessageRequest() {
+                return new ReceiveMessageRequest('http://queue-url')
+            }
+        }
+        received << [grouped('1', 'bad', 'a'), grouped('2', 'good', 'a'), grouped('3', 'good', 'b')]
+        MessageDispatcher dispatcher = new InlineDispatcher()
+        action = action(single, dispatcher, new MessageGroupExecutor(dispatcher))
+
+        when:
+        action.run()
+
+        then:
+        consumed == ['1', '3']
+        stats.inFlight == 0
+    }
+
+    void 'it should leave the consumer request untouched'() {
+        given:
+        config.queueName = 'queue1.fifo'
+        ReceiveMessageRequest shared = new ReceiveMessageRequest().withWaitTimeSeconds(20)
+        BatchConsumer sharing = Stub(BatchConsumer) {
+            consumeBatch(_) >> []
+            getReceiveMessageRequest() >> shared
+        }
+        received << [message('1', 'good')]
+        action = action(sharing, new InlineDispatcher(), null)
+
+        when:
+        action.run()
+
+        then:
+        shared.queueUrl == null
+        shared.maxNumberOfMessages == null
+        shared.waitTimeSeconds == 20
+        shared.attributeNames.isEmpty()
+    }
+
+    private ConsumerAction action() {
+        return action(consumer, new InlineDispatcher(), null)
+    }
+
+    private ConsumerAction action(
+        Consumer consumer,
+        MessageDispatcher dispatcher,
+        MessageGroupExecutor groups
+    ) {
+        MessageSource source = { ReceiveMessageRequest request ->
+            requested << request.maxNumberOfMessages
+            List<Message> messages = received.isEmpty() ? [] : received.remove(0)
+            if (received.isEmpty()) {
+                action.shutdown()
+            }
+            return messages
+        }
+        return new ConsumerAction(
+            sqs, consumer, acknowledger, dispatcher, source, stats,
+            new VisibilityHeartbeat(null, sqs, { 'http://queue-url' }),
+            CircuitBreaker.ofDefaults('test'), consumerConfig, config, QueueUrl.of('http://queue-url'), limiter, groups
+        )
+    }
+
+    private static Message message(String id, String body) {
+        return new Message().withMessageId(id).withReceiptHandle(id).withBody(body)
+    }
+
+    private static Message grouped(String id, String body, String groupId) {
+        return message(id, body).addAttributesEntry(MessageGroupExecutor.MESSAGE_GROUP_ID, groupId)
+    }
+}
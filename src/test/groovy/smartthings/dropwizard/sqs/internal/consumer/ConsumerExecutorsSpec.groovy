@@ -0,0 +1,78 @@
+package smartthings.dropwizard.sqs.internal.consumer
+
+import smartthings.dropwizard.sqs.SqsModule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class ConsumerExecutorsSpec extends Specification {
+
+    @Unroll
+    void 'it should create a working executor for #type threads'() {
+        given:
+        ExecutorService executor = ConsumerExecutors.create(type, 2)
+
+        expect:
+        executor.submit({ 'done' } as java.util.concurrent.Callable).get(5, TimeUnit.SECONDS) == 'done'
+
+        cleanup:
+        executor.shutdown()
+
+        where:
+        type << SqsModule.ThreadType.values()
+    }
+
+    void 'it should use a fixed pool of platform threads by default'() {
+        given:
+        ExecutorService executor = ConsumerExecutors.create(SqsModule.ThreadType.PLATFORM, 3)
+
+        expect:
+        executor instanceof ThreadPoolExecutor
+        ((ThreadPoolExecutor) executor).maximumPoolSize == 3
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    @Unroll
+    void 'it should run #expected of 4 blocked tasks at once for #type threads'() {
+        given:
+        ExecutorService executor = ConsumerExecutors.create(type, 2)
+        CountDownLatch release = new CountDownLatch(1)
+        AtomicInteger running = new AtomicInteger()
+
+        when:
+        List<Future> futures = (1..4).collect {
+            executor.submit({
+                running.incrementAndGet()
+                release.await()
+            } as Runnable)
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (running.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10)
+        }
+        Thread.sleep(100)
+        int concurrent = running.get()
+        release.countDown()
+        futures*.get(5, TimeUnit.SECONDS)
+
+        then:
+        concurrent == expected
+
+        cleanup:
+        executor.shutdown()
+
+        where:
+        type                           | expected
+        SqsModule.ThreadType.PLATFORM  | 2
+        // Without virtual thread support the request falls back to a pool of the requested size.
+        SqsModule.ThreadType.VIRTUAL   | (ConsumerExecutors.isVirtualThreadSupported() ? 4 : 2)
+    }
+}
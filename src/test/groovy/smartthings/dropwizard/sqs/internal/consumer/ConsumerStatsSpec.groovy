@@ -0,0 +1,72 @@
+package smartthings.dropwizard.sqs.internal.consumer
+
+import com.codahale.metrics.MetricRegistry
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class ConsumerStatsSpec extends Specification {
+
+    MetricRegistry registry = new MetricRegistry()
+    ConsumerStats stats = new ConsumerStats(registry, 'sqs.consumer.TestConsumer.queue1')
+
+    void 'it should publish receive metrics'() {
+        when:
+        stats.recordReceive(10, TimeUnit.MILLISECONDS.toNanos(5))
+        stats.recordReceive(0, TimeUnit.SECONDS.toNanos(20))
+
+        then:
+        registry.timer('sqs.consumer.TestConsumer.queue1.receive').count == 2
+        registry.histogram('sqs.consumer.TestConsumer.queue1.messages-per-receive').snapshot.max == 10
+        registry.counter('sqs.consumer.TestConsumer.queue1.empty-receives').count == 1
+    }
+
+    void 'it should track in-flight messages and failures'() {
+        when:
+        3.times { stats.recordDispatch() }
+        stats.recordConsume(1000, true)
+        stats.recordConsume(1000, false)
+
+        then:
+        registry.gauges['sqs.consumer.TestConsumer.queue1.in-flight'].value == 1
+        registry.timer('sqs.consumer.TestConsumer.queue1.consume').count == 2
+        registry.meter('sqs.consumer.TestConsumer.queue1.consume-failures').count == 1
+    }
+
+    void 'it should reset windowed counters on snapshot'() {
+        given:
+        stats.recordReceive(0, 1)
+        stats.recordReceive(2, 1)
+        stats.recordDispatch()
+        stats.recordConsume(300, true)
+
+        when:
+        ConsumerStats.Snapshot snapshot = stats.snapshotAndReset()
+
+        then:
+        snapshot.receives == 2
+        snapshot.emptyRatio == 0.5d
+        snapshot.averageLatencyNanos == 300
+
+        and:
+        stats.snapshotAndReset().receives == 0
+    }
+
+    void 'it should sum the in-flight messages of groups sharing a name'() {
+        given:
+        ConsumerStats other = new ConsumerStats(registry, 'sqs.consumer.TestConsumer.queue1')
+
+        when:
+        stats.recordDispatch()
+        2.times { other.recordDispatch() }
+
+        then:
+        registry.gauges['sqs.consumer.TestConsumer.queue1.in-flight'].value == 3
+
+        when:
+        other.close()
+
+        then:
+        registry.gauges['sqs.consumer.TestConsumer.queue1.in-flight'].value == 1
+    }
+}
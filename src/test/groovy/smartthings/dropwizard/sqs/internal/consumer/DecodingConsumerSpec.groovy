@@ -0,0 +1,139 @@
+package smartthings.dropwizard.sqs.internal.consumer
+
+import com.amazonaws.services.sqs.model.Message
+import com.amazonaws.services.sqs.model.MessageAttributeValue
+import smartthings.dropwizard.aws.internal.blob.InMemoryBlobStore
+import smartthings.dropwizard.aws.internal.blob.Utf8InputStream
+import smartthings.dropwizard.aws.internal.codec.PayloadCodecs
+import smartthings.dropwizard.aws.internal.codec.PayloadCompressor
+import smartthings.dropwizard.sqs.BatchConsumer
+import smartthings.dropwizard.sqs.Consumer
+import smartthings.dropwizard.sqs.internal.claimcheck.ClaimCheck
+import spock.lang.Specification
+
+class DecodingConsumerSpec extends Specification {
+
+    InMemoryBlobStore store = new InMemoryBlobStore()
+    ClaimCheck claimCheck = new ClaimCheck(store, 100, true)
+    ContentDecoder contentDecoder = new ContentDecoder(PayloadCodecs.byName([]), 1 << 20)
+
+    void 'it should hand the consumer the stored body and delete it once consumed'() {
+        given:
+        List<Message> consumed = []
+        Consumer consumer = DecodingConsumer.wrap({ Message message -> consumed << message } as Consumer, [claimCheck])
+        String key = claimCheck.store('large body')
+
+        when:
+        consumer.consume(pointer(key, 'large body'))
+        consumer.consume(new Message().withBody('small'))
+
+        then:
+        consumed*.body == ['large body', 'small']
+        !consumed[0].messageAttributes.containsKey(ClaimCheck.SIZE_ATTRIBUTE)
+        store.size() == 0
+    }
+
+    void 'it should decompress a stored compressed body'() {
+        given:
+        List<Message> consumed = []
+        Consumer consumer = DecodingConsumer.wrap(
+            { Message message -> consumed << message } as Consumer, [claimCheck, contentDecoder]
+        )
+        String body = 'event ' * 100
+        String compressed = new PayloadCompressor(PayloadCodecs.GZIP, 0, 1 << 20).compress(body)
+        Message message = pointer(claimCheck.store(compressed), compressed)
+        message.messageAttributes[PayloadCompressor.ENCODING_ATTRIBUTE] = encoding('gzip')
+
+        when:
+        consumer.consume(message)
+
+        then:
+        consumed*.body == [body]
+        consumed[0].messageAttributes.isEmpty()
+    }
+
+    void 'it should fail a message compressed with a codec that is not bound'() {
+        given:
+        Consumer delegate = Mock(Consumer)
+        Consumer consumer = DecodingConsumer.wrap(delegate, [contentDecoder])
+        Message message = new Message().withBody('AAAA')
+        message.messageAttributes[PayloadCompressor.ENCODING_ATTRIBUTE] = encoding('zstd')
+
+        when:
+        consumer.consume(message)
+
+        then:
+        thrown(IOException)
+        0 * delegate.consume(_)
+    }
+
+    void 'it should fail a pointer with an invalid size without trusting it'() {
+        given:
+        Consumer delegate = Mock(Consumer)
+        Consumer consumer = DecodingConsumer.wrap(delegate, [claimCheck])
+        store.put('key', new Utf8InputStream('body'))
+        Message message = new Message().withBody('key')
+        message.messageAttributes[ClaimCheck.SIZE_ATTRIBUTE] =
+            new MessageAttributeValue().withDataType('Number').withStringValue(size)
+
+        when:
+        consumer.consume(message)
+
+        then:
+        thrown(IOException)
+        0 * delegate.consume(_)
+
+        where:
+        size << ['-1', 'large']
+    }
+
+    void 'it should only size the body buffer after what it reads'() {
+        given:
+        List<Message> consumed = []
+        Consumer consumer = DecodingConsumer.wrap({ Message message -> consumed << message } as Consumer, [claimCheck])
+        store.put('key', new Utf8InputStream('body'))
+        Message message = new Message().withBody('key')
+        message.messageAttributes[ClaimCheck.SIZE_ATTRIBUTE] =
+            new MessageAttributeValue().withDataType('Number').withStringValue(String.valueOf(Integer.MAX_VALUE))
+
+        when:
+        consumer.consume(message)
+
+        then:
+        consumed*.body == ['body']
+    }
+
+    void 'it should ask SQS for the attributes of each decoder'() {
+        expect:
+        DecodingConsumer.wrap({ } as Consumer, [claimCheck, contentDecoder]).receiveMessageRequest
+            .messageAttributeNames == [ClaimCheck.SIZE_ATTRIBUTE, PayloadCompressor.ENCODING_ATTRIBUTE]
+    }
+
+    void 'it should fail only the messages of a batch that cannot be decoded'() {
+        given:
+        BatchConsumer delegate = Mock(BatchConsumer)
+        Consumer consumer = DecodingConsumer.wrap(delegate, [claimCheck])
+        store.put('present', new Utf8InputStream('body'))
+        Message present = pointer('present', 'body')
+        Message missing = pointer('missing', 'body')
+
+        when:
+        List<Message> failed = ((BatchConsumer) consumer).consumeBatch([present, missing])
+
+        then:
+        1 * delegate.consumeBatch({ it*.body == ['body'] }) >> []
+        failed.size() == 1
+        failed[0].is(missing)
+        store.size() == 0
+    }
+
+    private static Message pointer(String key, String body) {
+        return new Message().withBody(key).withMessageAttributes(
+            new ClaimCheck(null, 0, false).pointerAttributes(null, body.getBytes('UTF-8').length)
+        )
+    }
+
+    private static MessageAttributeValue encoding(String name) {
+        return new MessageAttributeValue().withDataType('String').withStringValue(name)
+    }
+}
@@ -0,0 +1,125 @@
+package smartthings.dropwizard.sqs.internal.consumer
+
+import com.amazonaws.services.sqs.model.*
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import smartthings.dropwizard.sqs.SqsModule
+import smartthings.dropwizard.sqs.SqsService
+import spock.lang.Specification
+
+import java.util.function.Function
+
+class MessageAcknowledgerSpec extends Specification {
+
+    SqsService sqs = Mock(SqsService)
+    SqsModule.EndpointConfig config = new SqsModule.EndpointConfig(queueName: 'queue1', regionName: 'us-east-1')
+    QueueUrl queueUrl = QueueUrl.of('http://queue-url')
+    ConsumerStats stats = new ConsumerStats()
+    CircuitBreaker breaker = CircuitBreaker.ofDefaults('sqs-queue1')
+
+    void 'it should delete messages once the batch size is reached'() {
+        given:
+        MessageAcknowledger acknowledger = new MessageAcknowledger(sqs, config, queueUrl, 3, stats, breaker)
+
+        when:
+        2.times { acknowledger.acknowledge(message(it)) }
+
+        then:
+        0 * sqs.deleteMessageBatch(_)
+
+        when:
+        acknowledger.acknowledge(message(2))
+
+        then:
+        1 * sqs.deleteMessageBatch({ DeleteMessageBatchRequest request ->
+            request.queueUrl == 'http://queue-url' &&
+                request.entries*.receiptHandle == ['handle-0', 'handle-1', 'handle-2']
+        }) >> new DeleteMessageBatchResult()
+    }
+
+    void 'it should delete pending messages on flush'() {
+        given:
+        MessageAcknowledger acknowledger = new MessageAcknowledger(sqs, config, queueUrl, 10, stats, breaker)
+        acknowledger.acknowledge(message(0))
+
+        when:
+        acknowledger.flush()
+
+        then:
+        1 * sqs.deleteMessageBatch({ it.entries.size() == 1 }) >> new DeleteMessageBatchResult()
+
+        when:
+        acknowledger.flush()
+
+        then:
+        0 * sqs.deleteMessageBatch(_)
+    }
+
+    void 'it should retry server side failures individually'() {
+        given:
+        MessageAcknowledger acknowledger = new MessageAcknowledger(sqs, config, queueUrl, 2, stats, breaker)
+        DeleteMessageBatchResult result = new DeleteMessageBatchResult()
+            .withSuccessful(new DeleteMessageBatchResultEntry().withId('0'))
+            .withFailed(new BatchResultErrorEntry().withId('1').withSenderFault(false).withCode('InternalError'))
+
+        when:
+        2.times { acknowledger.acknowledge(message(it)) }
+
+        then:
+        1 * sqs.deleteMessageBatch(_) >> result
+        1 * sqs.deleteMessage({ it.receiptHandle == 'handle-1' }) >> new DeleteMessageResult()
+    }
+
+    void 'it should not retry sender failures'() {
+        given:
+        MessageAcknowledger acknowledger = new MessageAcknowledger(sqs, config, queueUrl, 1, stats, breaker)
+        DeleteMessageBatchResult result = new DeleteMessageBatchResult()
+            .withFailed(new BatchResultErrorEntry().withId('0').withSenderFault(true).withCode('ReceiptHandleIsInvalid'))
+
+        when:
+        acknowledger.acknowledge(message(0))
+
+        then:
+        1 * sqs.deleteMessageBatch(_) >> result
+        0 * sqs.deleteMessage(_)
+    }
+
+    void 'it should delete through the circuit breaker'() {
+        given:
+        MessageAcknowledger acknowledger = new MessageAcknowledger(sqs, config, queueUrl, 1, stats, breaker)
+
+        when:
+        acknowledger.acknowledge(message(0))
+
+        then:
+        1 * sqs.deleteMessageBatch(_) >> { throw new AmazonSQSException('unavailable') }
+        breaker.metrics.numberOfFailedCalls == 1
+
+        when:
+        breaker.transitionToOpenState()
+        acknowledger.acknowledge(message(1))
+
+        then:
+        0 * sqs.deleteMessageBatch(_)
+    }
+
+    void 'it should resolve the url again when retrying a delete on a queue that was recreated'() {
+        given:
+        QueueUrl resolved = Mock(QueueUrl)
+        MessageAcknowledger acknowledger = new MessageAcknowledger(sqs, config, resolved, 1, stats, breaker)
+        DeleteMessageBatchResult result = new DeleteMessageBatchResult()
+            .withFailed(new BatchResultErrorEntry().withId('0').withSenderFault(false).withCode('InternalError'))
+
+        when:
+        acknowledger.acknowledge(message(0))
+
+        then:
+        2 * resolved.call(_) >> { Function call -> call.apply('http://queue-url') }
+        1 * sqs.deleteMessageBatch(_) >> result
+        1 * sqs.deleteMessage({ it.queueUrl == 'http://queue-url' }) >> new DeleteMessageResult()
+        0 * resolved.get()
+    }
+
+    private static Message message(int i) {
+        return new Message().withMessageId("message-${i}").withReceiptHandle("handle-${i}")
+    }
+}
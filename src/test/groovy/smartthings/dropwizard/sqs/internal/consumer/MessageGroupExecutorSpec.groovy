@@ -0,0 +1,163 @@
+package smartthings.dropwizard.sqs.internal.consumer
+
+import com.amazonaws.services.sqs.model.Message
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class MessageGroupExecutorSpec extends Specification {
+
+    WorkerPoolDispatcher dispatcher = new WorkerPoolDispatcher(Executors.newFixedThreadPool(4), 4)
+    MessageGroupExecutor executor = new MessageGroupExecutor(dispatcher)
+    List<String> processed = [].asSynchronized()
+    List<String> skipped = [].asSynchronized()
+
+    void cleanup() {
+        dispatcher.shutdown()
+    }
+
+    void 'it should keep the order within a group while running groups in parallel'() {
+        given:
+        CountDownLatch blocked = new CountDownLatch(1)
+        List<Message> messages = ['a1', 'b1', 'a2', 'b2', 'a3'].collect { message(it) }
+
+        when: 'the first message of group a holds up its group'
+        messages.each { Message message ->
+            dispatcher.reserve(1)
+            executor.execute(message, {
+                if (it.body == 'a1') {
+                    blocked.await(5, TimeUnit.SECONDS)
+                }
+                processed << it.body
+                true
+            }, { skipped << it.body })
+        }
+
+        then: 'group b still completes'
+        waitUntil { processed.containsAll(['b1', 'b2']) }
+        !processed.any { it.startsWith('a') }
+
+        when:
+        blocked.countDown()
+
+        then:
+        waitUntil { processed.size() == 5 && executor.activeGroups() == 0 }
+        processed.findAll { it.startsWith('a') } == ['a1', 'a2', 'a3']
+        processed.findAll { it.startsWith('b') } == ['b1', 'b2']
+        dispatcher.reserve(4) == 4
+    }
+
+    void 'it should skip the rest of a group after a failure'() {
+        given:
+        CountDownLatch blocked = new CountDownLatch(1)
+
+        when:
+        ['a1', 'a2', 'a3'].each { String body ->
+            dispatcher.reserve(1)
+            executor.execute(message(body), {
+                blocked.await(5, TimeUnit.SECONDS)
+                processed << it.body
+                it.body != 'a1'
+            }, { skipped << it.body })
+        }
+        blocked.countDown()
+
+        then:
+        waitUntil { skipped.size() == 2 && executor.activeGroups() == 0 }
+        processed == ['a1']
+        skipped == ['a2', 'a3']
+    }
+
+    void 'it should skip later messages of a receive that fail fast'() {
+        given:
+        List<Message> messages = ['a1', 'b1', 'a2', 'b2'].collect { message(it) }
+        dispatcher.reserve(messages.size())
+
+        when:
+        executor.execute(messages, {
+            processed << it.body
+            it.body != 'a1'
+        }, { skipped << it.body })
+
+        then:
+        waitUntil { processed.size() + skipped.size() == 4 && executor.activeGroups() == 0 }
+        processed.sort() == ['a1', 'b1', 'b2']
+        skipped == ['a2']
+        dispatcher.reserve(4) == 4
+    }
+
+    void 'it should keep a group poisoned until an expected receive has been handed over'() {
+        given:
+        List<Message> messages = ['a1', 'a2', 'a3'].collect { message(it) }
+        executor.expect(messages)
+
+        when: 'the first piece of the receive fails'
+        dispatcher.reserve(1)
+        executor.execute([messages[0]], { processed << it.body; false }, { skipped << it.body })
+
+        then:
+        waitUntil { processed == ['a1'] && executor.activeGroups() == 1 }
+
+        when: 'the rest arrives later'
+        dispatcher.reserve(2)
+        executor.execute(messages[1..2], { processed << it.body; true }, { skipped << it.body })
+
+        then:
+        waitUntil { skipped.size() == 2 && executor.activeGroups() == 0 }
+        skipped == ['a2', 'a3']
+        processed == ['a1']
+        dispatcher.reserve(4) == 4
+    }
+
+    void 'it should hold expected places when pieces of a receive are handed over out of order'() {
+        given:
+        List<Message> messages = ['a1', 'a2', 'a3'].collect { message(it) }
+        executor.expect(messages)
+
+        when:
+        dispatcher.reserve(1)
+        executor.execute([messages[2]], { processed << it.body; true }, { skipped << it.body })
+        Thread.sleep(50)
+
+        then:
+        processed.isEmpty()
+
+        when: 'an expected message is released back to the queue'
+        executor.forget([messages[1]])
+        dispatcher.reserve(1)
+        executor.execute([messages[0]], { processed << it.body; true }, { skipped << it.body })
+
+        then:
+        waitUntil { processed.size() + skipped.size() == 2 && executor.activeGroups() == 0 }
+        processed == ['a1']
+        skipped == ['a3']
+        dispatcher.reserve(4) == 4
+    }
+
+    void 'it should request group ids once'() {
+        given:
+        ReceiveMessageRequest request = new ReceiveMessageRequest().withAttributeNames('SentTimestamp')
+
+        when:
+        MessageGroupExecutor.withGroupIds(request)
+        MessageGroupExecutor.withGroupIds(request)
+
+        then:
+        request.attributeNames == ['SentTimestamp', 'MessageGroupId']
+    }
+
+    private static Message message(String body) {
+        return new Message().withBody(body).withAttributes([MessageGroupId: body.substring(0, 1)])
+    }
+
+    private static boolean waitUntil(Closure<Boolean> condition) {
+        long deadline = System.currentTimeMillis() + 5000
+        while (!condition() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        return condition()
+    }
+}
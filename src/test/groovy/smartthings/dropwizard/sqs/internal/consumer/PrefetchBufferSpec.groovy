@@ -0,0 +1,267 @@
+package smartthings.dropwizard.sqs.internal.consumer
+
+import com.amazonaws.services.sqs.model.*
+import smartthings.dropwizard.sqs.Consumer
+import smartthings.dropwizard.sqs.SqsModule
+import smartthings.dropwizard.sqs.SqsService
+import spock.lang.Specification
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class PrefetchBufferSpec extends Specification {
+
+    SqsService sqs = Mock(SqsService)
+    SqsModule.EndpointConfig config = new SqsModule.EndpointConfig(queueName: 'queue1', regionName: 'us-east-1')
+    ExecutorService executor = Executors.newCachedThreadPool()
+    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor()
+    AtomicInteger sequence = new AtomicInteger()
+    Integer visibilityTimeout = 30
+
+    Consumer consumer = Stub(Consumer) {
+        getReceiveMessageRequest() >> {
+            new ReceiveMessageRequest().withWaitTimeSeconds(1).withVisibilityTimeout(visibilityTimeout)
+        }
+    }
+
+    void cleanup() {
+        executor.shutdownNow()
+        timer.shutdownNow()
+    }
+
+    void 'it should only request as many messages as the buffer has room for'() {
+        given:
+        List<Integer> requested = [].asSynchronized()
+        sqs.receiveMessage(_) >> { ReceiveMessageRequest request ->
+            requested << request.maxNumberOfMessages
+            new ReceiveMessageResult().withMessages(messages(request.maxNumberOfMessages))
+        }
+        sqs.changeMessageVisibilityBatch(_) >> new ChangeMessageVisibilityBatchResult()
+        PrefetchBuffer buffer = buffer(1, 4)
+
+        when:
+        buffer.start(executor, timer)
+        List<Message> received = buffer.receive(new ReceiveMessageRequest().withMaxNumberOfMessages(10).withWaitTimeSeconds(5))
+        buffer.shutdown()
+        buffer.awaitShutdown()
+
+        then:
+        received.size() <= 4
+        requested.every { it <= 4 }
+    }
+
+    void 'it should release messages whose visibility timeout is about to expire'() {
+        given:
+        visibilityTimeout = 1
+        sqs.receiveMessage(_) >>> [
+            new ReceiveMessageResult().withMessages(messages(2))
+        ] >> { Thread.sleep(100); new ReceiveMessageResult() }
+        PrefetchBuffer buffer = buffer(1, 10)
+
+        when:
+        buffer.start(executor, timer)
+        while (buffer.size() < 2) {
+            Thread.sleep(10)
+        }
+        List<Message> received = buffer.receive(new ReceiveMessageRequest().withMaxNumberOfMessages(10).withWaitTimeSeconds(5))
+
+        then:
+        received.isEmpty()
+        1 * sqs.changeMessageVisibilityBatch({ ChangeMessageVisibilityBatchRequest request ->
+            request.entries*.visibilityTimeout == [0, 0]
+        }) >> new ChangeMessageVisibilityBatchResult()
+
+        cleanup:
+        buffer.shutdown()
+        buffer.awaitShutdown()
+    }
+
+    void 'it should release buffered messages on shutdown'() {
+        given:
+        sqs.receiveMessage(_) >>> [
+            new ReceiveMessageResult().withMessages(messages(3))
+        ] >> { Thread.sleep(100); new ReceiveMessageResult() }
+        PrefetchBuffer buffer = buffer(1, 10)
+        buffer.start(executor, timer)
+
+        when:
+        while (buffer.size() < 3) {
+            Thread.sleep(10)
+        }
+        buffer.shutdown()
+        buffer.awaitShutdown()
+
+        then:
+        1 * sqs.changeMessageVisibilityBatch({ it.entries.size() == 3 }) >> new ChangeMessageVisibilityBatchResult()
+        buffer.size() == 0
+    }
+
+    void 'it should hand fetcher threads back while the circuit is open'() {
+        given:
+        PrefetchBuffer buffer = buffer(2, 10)
+        buffer.circuitBreaker.transitionToOpenState()
+        buffer.start(executor, timer)
+
+        when:
+        Thread.sleep(200)
+
+        then:
+        0 * sqs.receiveMessage(_)
+        executor.activeCount == 0
+
+        when:
+        buffer.circuitBreaker.transitionToClosedState()
+        while (buffer.size() < 1) {
+            Thread.sleep(10)
+        }
+
+        then:
+        (1.._) * sqs.receiveMessage(_) >> new ReceiveMessageResult().withMessages(messages(1)) >>
+            { Thread.sleep(100); new ReceiveMessageResult() }
+
+        when:
+        buffer.circuitBreaker.transitionToOpenState()
+        Thread.sleep(300)
+        buffer.shutdown()
+        buffer.awaitShutdown()
+
+        then:
+        _ * sqs.changeMessageVisibilityBatch(_) >> new ChangeMessageVisibilityBatchResult()
+        buffer.size() == 0
+    }
+
+    void 'it should resume every fetcher when the circuit closes'() {
+        given:
+        AtomicInteger polling = new AtomicInteger()
+        // A mock would serialize the blocked receives.
+        sqs = [
+            receiveMessage: { ReceiveMessageRequest request ->
+                polling.incrementAndGet()
+                Thread.sleep(Long.MAX_VALUE)
+            }
+        ] as SqsService
+        PrefetchBuffer buffer = buffer(2, 20)
+        buffer.circuitBreaker.transitionToOpenState()
+        buffer.start(executor, timer)
+        Thread.sleep(100)
+
+        when:
+        buffer.circuitBreaker.transitionToClosedState()
+        long deadline = System.currentTimeMillis() + 500
+        while (polling.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+
+        then:
+        polling.get() == 2
+
+        cleanup:
+        buffer.shutdown()
+        buffer.awaitShutdown()
+    }
+
+    void 'it should interrupt a long poll on shutdown'() {
+        given:
+        sqs.receiveMessage(_) >> { Thread.sleep(20000); new ReceiveMessageResult().withMessages(messages(2)) }
+        PrefetchBuffer buffer = buffer(1, 10)
+        buffer.start(executor, timer)
+        Thread.sleep(100)
+
+        when:
+        buffer.shutdown()
+
+        then:
+        buffer.awaitShutdown(1, TimeUnit.SECONDS)
+        buffer.size() == 0
+        0 * sqs.changeMessageVisibilityBatch(_)
+    }
+
+    void 'it should stop handing out messages once shut down'() {
+        given:
+        PrefetchBuffer buffer = buffer(1, 10)
+        buffer.shutdown()
+
+        when:
+        long start = System.nanoTime()
+        List<Message> received = buffer.receive(new ReceiveMessageRequest().withWaitTimeSeconds(20))
+
+        then:
+        received.isEmpty()
+        System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1)
+    }
+
+    void 'it should release messages the heartbeat has held past the maximum hold time'() {
+        given:
+        visibilityTimeout = 2
+        VisibilityExtender extender = new VisibilityExtender()
+        sqs.receiveMessage(_) >>> [
+            new ReceiveMessageResult().withMessages(messages(2))
+        ] >> { Thread.sleep(100); new ReceiveMessageResult() }
+        PrefetchBuffer buffer = buffer(1, 10, extender, 1500)
+
+        when:
+        buffer.start(executor, timer)
+        while (buffer.size() < 2) {
+            Thread.sleep(10)
+        }
+        Thread.sleep(1600)
+        List<Message> received = buffer.receive(new ReceiveMessageRequest().withMaxNumberOfMessages(10).withWaitTimeSeconds(5))
+
+        then:
+        received.isEmpty()
+        extender.size() == 0
+        1 * sqs.changeMessageVisibilityBatch({ ChangeMessageVisibilityBatchRequest request ->
+            request.entries*.visibilityTimeout == [0, 0]
+        }) >> new ChangeMessageVisibilityBatchResult()
+
+        cleanup:
+        buffer.shutdown()
+        buffer.awaitShutdown()
+    }
+
+    void 'it should leave the consumer request untouched'() {
+        given:
+        config.queueName = 'queue1.fifo'
+        ReceiveMessageRequest shared = new ReceiveMessageRequest().withWaitTimeSeconds(1)
+        consumer = Stub(Consumer) {
+            getReceiveMessageRequest() >> shared
+        }
+        sqs.receiveMessage(_) >> { ReceiveMessageRequest request ->
+            new ReceiveMessageResult().withMessages(messages(request.maxNumberOfMessages))
+        }
+        sqs.changeMessageVisibilityBatch(_) >> new ChangeMessageVisibilityBatchResult()
+        PrefetchBuffer buffer = buffer(2, 4)
+
+        when:
+        buffer.start(executor, timer)
+        buffer.receive(new ReceiveMessageRequest().withMaxNumberOfMessages(1).withWaitTimeSeconds(5))
+        buffer.shutdown()
+        buffer.awaitShutdown()
+
+        then:
+        shared.queueUrl == null
+        shared.maxNumberOfMessages == null
+        shared.attributeNames.isEmpty()
+    }
+
+    private PrefetchBuffer buffer(int fetchers, int size) {
+        return buffer(fetchers, size, null, 300000)
+    }
+
+    private PrefetchBuffer buffer(int fetchers, int size, VisibilityExtender extender, long maxHoldMillis) {
+        return new PrefetchBuffer(
+            sqs, consumer, QueueUrl.of('http://queue-url'), config, new ConsumerStats(),
+            new VisibilityHeartbeat(extender, sqs, { 'http://queue-url' }), null, fetchers, size, maxHoldMillis
+        )
+    }
+
+    private List<Message> messages(int count) {
+        return (1..count).collect {
+            int id = sequence.incrementAndGet()
+            new Message().withMessageId("message-${id}").withReceiptHandle("handle-${id}")
+        }
+    }
+}
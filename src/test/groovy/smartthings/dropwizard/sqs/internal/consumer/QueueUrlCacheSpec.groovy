@@ -0,0 +1,139 @@
+package smartthings.dropwizard.sqs.internal.consumer
+
+import com.amazonaws.services.sqs.model.GetQueueUrlResult
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException
+import smartthings.dropwizard.sqs.SqsService
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+
+class QueueUrlCacheSpec extends Specification {
+
+    SqsService sqs = Mock(SqsService)
+    QueueUrlCache cache = new QueueUrlCache()
+
+    void 'it should resolve queues in parallel during warmup'() {
+        given:
+        CompletableFuture<GetQueueUrlResult> first = new CompletableFuture<>()
+        CompletableFuture<GetQueueUrlResult> second = new CompletableFuture<>()
+        QueueUrl queue1 = cache.forQueue(sqs, 'queue1')
+        QueueUrl queue2 = cache.forQueue(sqs, 'queue2')
+
+        when:
+        CompletableFuture<Void> warmup = cache.warmup([queue1, queue2, cache.forQueue(sqs, 'queue1')])
+
+        then:
+        1 * sqs.getQueueUrlAsync('queue1') >> first
+        1 * sqs.getQueueUrlAsync('queue2') >> second
+        !warmup.isDone()
+
+        when:
+        second.complete(new GetQueueUrlResult().withQueueUrl('http://queue2'))
+        first.complete(new GetQueueUrlResult().withQueueUrl('http://queue1'))
+
+        then:
+        warmup.isDone()
+        cache.size() == 2
+
+        when:
+        String url = queue1.get()
+
+        then:
+        url == 'http://queue1'
+        0 * sqs.getQueueUrl(_)
+    }
+
+    void 'it should log rather than fail when a queue cannot be resolved during warmup'() {
+        given:
+        QueueUrl queue = cache.forQueue(sqs, 'queue1')
+        sqs.getQueueUrlAsync('queue1') >> {
+            CompletableFuture<GetQueueUrlResult> future = new CompletableFuture<>()
+            future.completeExceptionally(new QueueDoesNotExistException('missing'))
+            future
+        }
+
+        when:
+        cache.warmup([queue]).join()
+
+        then:
+        cache.size() == 0
+
+        when:
+        String url = queue.get()
+
+        then:
+        1 * sqs.getQueueUrl('queue1') >> new GetQueueUrlResult().withQueueUrl('http://queue1')
+        url == 'http://queue1'
+    }
+
+    void 'it should resolve a queue once on first use'() {
+        given:
+        QueueUrl queue = cache.forQueue(sqs, 'queue1')
+
+        when:
+        3.times { queue.get() }
+        cache.forQueue(sqs, 'queue1').get()
+
+        then:
+        1 * sqs.getQueueUrl('queue1') >> new GetQueueUrlResult().withQueueUrl('http://queue1')
+    }
+
+    void 'it should resolve a queue without blocking on first asynchronous use'() {
+        given:
+        CompletableFuture<GetQueueUrlResult> resolved = new CompletableFuture<>()
+        QueueUrl queue = cache.forQueue(sqs, 'queue1')
+
+        when:
+        CompletableFuture<String> url = queue.getAsync()
+
+        then:
+        1 * sqs.getQueueUrlAsync('queue1') >> resolved
+        0 * sqs.getQueueUrl(_)
+        !url.isDone()
+
+        when:
+        resolved.complete(new GetQueueUrlResult().withQueueUrl('http://queue1'))
+
+        then:
+        url.getNow(null) == 'http://queue1'
+        queue.getAsync().getNow(null) == 'http://queue1'
+        cache.size() == 1
+    }
+
+    void 'it should resolve the url again and retry when the queue does not exist'() {
+        given:
+        QueueUrl queue = cache.forQueue(sqs, 'queue1')
+        List<String> calls = []
+
+        when:
+        String result = queue.call { url ->
+            calls << url
+            if (url == 'http://old') {
+                throw new QueueDoesNotExistException('gone')
+            }
+            'sent'
+        }
+
+        then:
+        2 * sqs.getQueueUrl('queue1') >>> [
+            new GetQueueUrlResult().withQueueUrl('http://old'),
+            new GetQueueUrlResult().withQueueUrl('http://new')
+        ]
+        result == 'sent'
+        calls == ['http://old', 'http://new']
+    }
+
+    void 'it should only invalidate on queue does not exist failures'() {
+        given:
+        QueueUrl queue = cache.forQueue(sqs, 'queue1')
+        sqs.getQueueUrl('queue1') >> new GetQueueUrlResult().withQueueUrl('http://queue1')
+        queue.get()
+
+        expect:
+        !queue.invalidateOn(new IllegalStateException())
+        cache.size() == 1
+        queue.invalidateOn(new CompletionException(new QueueDoesNotExistException('gone')))
+        cache.size() == 0
+    }
+}
@@ -0,0 +1,103 @@
+package smartthings.dropwizard.sqs.internal.consumer
+
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest
+import smartthings.dropwizard.sqs.SqsModule
+import spock.lang.Specification
+
+class ReceivePolicySpec extends Specification {
+
+    SqsModule.ConsumerConfig config = new SqsModule.ConsumerConfig()
+
+    void 'it should ask for ten messages by default and reuse the request'() {
+        given:
+        ReceivePolicy policy = policy(20)
+
+        when:
+        ReceiveMessageRequest first = policy.next(100)
+        ReceiveMessageRequest second = policy.next(3)
+
+        then:
+        first.is(second)
+        policy.maxMessages == 10
+        second.queueUrl == 'http://queue-url'
+        second.maxNumberOfMessages == 3
+    }
+
+    void 'it should honor the consumer request'() {
+        given:
+        ReceiveMessageRequest template = new ReceiveMessageRequest('http://other').withMaxNumberOfMessages(4)
+
+        when:
+        ReceivePolicy policy = new ReceivePolicy(template, { 'http://queue-url' }, config)
+        ReceiveMessageRequest request = policy.next(10)
+
+        then:
+        request.queueUrl == 'http://other'
+        request.maxNumberOfMessages == 4
+        request.waitTimeSeconds == null
+    }
+
+    void 'it should lengthen the wait but never sleep by default'() {
+        given:
+        ReceivePolicy policy = policy(20)
+
+        when:
+        List<Integer> waits = []
+        List<Long> sleeps = []
+        10.times {
+            waits << policy.next(10).waitTimeSeconds
+            sleeps << policy.record(0)
+        }
+
+        then:
+        waits == [1, 2, 4, 8, 16, 20, 20, 20, 20, 20]
+        sleeps.every { it == 0L }
+    }
+
+    void 'it should lengthen the wait and then sleep while receives come back empty'() {
+        given:
+        config.receiveMaxIdleMillis = 1000
+        ReceivePolicy policy = policy(20)
+
+        when:
+        List<Integer> waits = []
+        List<Long> sleeps = []
+        10.times {
+            waits << policy.next(10).waitTimeSeconds
+            sleeps << policy.record(0)
+        }
+
+        then:
+        waits == [1, 2, 4, 8, 16, 20, 20, 20, 20, 20]
+        sleeps == [0L, 0L, 0L, 0L, 0L, 50L, 100L, 200L, 400L, 800L]
+
+        when:
+        long sleep = policy.record(0)
+
+        then:
+        sleep == 1000
+
+        when:
+        sleep = policy.record(5)
+
+        then:
+        sleep == 0
+        policy.next(10).waitTimeSeconds == 1
+    }
+
+    void 'it should sleep between short polls'() {
+        given:
+        config.receiveMaxIdleMillis = 150
+        ReceivePolicy policy = policy(0)
+
+        expect:
+        (1..4).collect { policy.record(0) } == [50L, 100L, 150L, 150L]
+        policy.next(10).waitTimeSeconds == 0
+    }
+
+    private ReceivePolicy policy(int waitTimeSeconds) {
+        return new ReceivePolicy(
+            new ReceiveMessageRequest().withWaitTimeSeconds(waitTimeSeconds), { 'http://queue-url' }, config
+        )
+    }
+}
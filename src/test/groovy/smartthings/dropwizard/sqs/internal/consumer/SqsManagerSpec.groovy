@@ -1,13 +1,16 @@
 package smartthings.dropwizard.sqs.internal.consumer
 
+import com.amazonaws.ClientConfiguration
 import com.amazonaws.services.sqs.AmazonSQS
 import com.amazonaws.services.sqs.model.GetQueueUrlResult
 import com.amazonaws.services.sqs.model.Message
+import smartthings.dropwizard.aws.AwsModule
 import smartthings.dropwizard.sqs.AmazonSQSProvider
 import smartthings.dropwizard.sqs.Consumer
 import smartthings.dropwizard.sqs.QueueWriter
 import smartthings.dropwizard.sqs.SqsModule
 import smartthings.dropwizard.sqs.SqsService
+import smartthings.dropwizard.sqs.internal.producer.RateLimitedQueueWriter
 import spock.lang.Specification
 
 class SqsManagerSpec extends Specification {
@@ -21,7 +24,7 @@ class SqsManagerSpec extends Specification {
     void setup() {
         GetQueueUrlResult result = new GetQueueUrlResult().withQueueUrl("http://queue-url")
         amazonSQS.getQueueUrl(_) >> result
-        sqsProvider.get(_) >> amazonSQS
+        sqsProvider.get(*_) >> amazonSQS
     }
 
     void 'start method executes'() {
@@ -169,6 +172,88 @@ class SqsManagerSpec extends Specification {
         queueWriter != null
     }
 
+    void 'rate limits queue writers with a share of the cluster rate'() {
+        given:
+        SqsModule.Config config = getConfig(true)
+        config.queueWriters['writer1'].rateLimit = new SqsModule.RateLimitConfig(messagesPerSecond: 100, nodes: 4)
+        sqsManager = new SqsManager(config, sqsProvider)
+
+        when:
+        sqsManager.start()
+        QueueWriter queueWriter = sqsManager.getQueueWriter('writer1')
+
+        then:
+        queueWriter instanceof RateLimitedQueueWriter
+        queueWriter.limiter.tryAcquireUpTo(100) == 25
+
+        cleanup:
+        sqsManager.stop()
+    }
+
+    void 'shares one client per endpoint between consumers and queue writers'() {
+        given:
+        SqsModule.Config config = getConfig(true)
+        config.queueWriters.put('writer2', new SqsModule.EndpointConfig(
+                queueName: 'queue2',
+                endpoint: 'http://localhost:4100/',
+                regionName: 'us-east-1'
+        ))
+        sqsManager = new SqsManager(config, sqsProvider)
+
+        when:
+        sqsManager.start()
+
+        then:
+        1 * sqsProvider.get(_, _) >> amazonSQS
+        sqsManager.sqsConsumerMap.size() == 1
+    }
+
+    void 'sizes the connection pool from consumer concurrency'() {
+        given:
+        SqsModule.Config config = getConfig(true)
+        config.consumers[0].concurrency = 40
+        config.consumers[0].prefetch = 2
+        sqsManager = new SqsManager(config, sqsProvider)
+
+        when:
+        sqsManager.start()
+
+        then:
+        1 * sqsProvider.get(_, { ClientConfiguration client ->
+            client.maxConnections == 42 + SqsManager.DEFAULT_MAX_CONNECTIONS && client.useTcpKeepAlive()
+        }) >> amazonSQS
+
+        when:
+        config.client.maxConnections = 10
+
+        then:
+        sqsManager.clientConfiguration(config.consumers[0].endpoints[0]).maxConnections == 10
+    }
+
+    void 'stops the clients it created on stop'() {
+        given:
+        sqsManager = new SqsManager(getConfig(true), sqsProvider)
+        sqsManager.start()
+
+        when:
+        sqsManager.stop()
+
+        then:
+        1 * amazonSQS.shutdown()
+    }
+
+    void 'only decodes compressed bodies on endpoints that configure compression'() {
+        given:
+        sqsManager = new SqsManager(getConfig(true), sqsProvider)
+
+        expect:
+        sqsManager.getDecoders(new SqsModule.EndpointConfig(queueName: 'plain')).isEmpty()
+        sqsManager.getDecoders(new SqsModule.EndpointConfig(
+                queueName: 'compressed',
+                compression: new AwsModule.CompressionConfig()
+        ))*.class == [ContentDecoder]
+    }
+
     private SqsModule.Config getConfig(boolean enabled) {
         return new SqsModule.Config(
                 enabled: enabled,
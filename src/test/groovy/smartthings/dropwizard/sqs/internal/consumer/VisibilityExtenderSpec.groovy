@@ -0,0 +1,100 @@
+package smartthings.dropwizard.sqs.internal.consumer
+
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult
+import com.amazonaws.services.sqs.model.Message
+import smartthings.dropwizard.sqs.SqsService
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class VisibilityExtenderSpec extends Specification {
+
+    SqsService sqs = Mock(SqsService)
+    VisibilityExtender extender = new VisibilityExtender()
+
+    void 'it should extend due messages in a single batch per queue'() {
+        given:
+        extender.track(sqs, 'queue1', message('1'), 2, System.nanoTime())
+        extender.track(sqs, 'queue1', message('2'), 2, System.nanoTime())
+        extender.track(sqs, 'queue2', message('3'), 2, System.nanoTime())
+
+        when:
+        extender.advance()
+
+        then:
+        1 * sqs.changeMessageVisibilityBatch({
+            it.queueUrl == 'queue1' && it.entries*.receiptHandle == ['1', '2'] && it.entries.every { it.visibilityTimeout == 2 }
+        }) >> new ChangeMessageVisibilityBatchResult()
+        1 * sqs.changeMessageVisibilityBatch({
+            it.queueUrl == 'queue2' && it.entries*.receiptHandle == ['3']
+        }) >> new ChangeMessageVisibilityBatchResult()
+        extender.size() == 3
+    }
+
+    void 'it should not extend messages before they are due'() {
+        given:
+        extender.track(sqs, 'queue1', message('1'), 60, System.nanoTime())
+
+        when:
+        extender.advance()
+
+        then:
+        0 * sqs.changeMessageVisibilityBatch(_)
+        extender.size() == 1
+    }
+
+    void 'it should stop extending completed messages'() {
+        given:
+        Message message = message('1')
+        extender.track(sqs, 'queue1', message, 2, System.nanoTime())
+        extender.advance()
+
+        when:
+        extender.complete(message)
+        extender.advance()
+
+        then:
+        0 * sqs.changeMessageVisibilityBatch(_)
+        extender.size() == 0
+    }
+
+    void 'it should stop extending messages that failed to extend'() {
+        when:
+        extender.track(sqs, 'queue1', message('1'), 2, System.nanoTime())
+        extender.track(sqs, 'queue1', message('2'), 2, System.nanoTime())
+        extender.advance()
+
+        then:
+        1 * sqs.changeMessageVisibilityBatch(_) >> new ChangeMessageVisibilityBatchResult()
+            .withFailed(new BatchResultErrorEntry().withId('1').withCode('ReceiptHandleIsInvalid'))
+        extender.size() == 1
+
+        when:
+        extender.advance()
+
+        then:
+        1 * sqs.changeMessageVisibilityBatch({ it.entries*.receiptHandle == ['1'] }) >>
+            new ChangeMessageVisibilityBatchResult()
+    }
+
+    void 'it should stop extending unclaimed messages held past their limit'() {
+        given:
+        long received = System.nanoTime() - TimeUnit.SECONDS.toNanos(10)
+        extender.track(sqs, 'queue1', message('1'), 2, received, TimeUnit.SECONDS.toNanos(5))
+        extender.track(sqs, 'queue1', message('2'), 2, received, TimeUnit.SECONDS.toNanos(5))
+        extender.claim(message('2'))
+
+        when:
+        extender.advance()
+
+        then:
+        1 * sqs.changeMessageVisibilityBatch({ it.entries*.receiptHandle == ['2'] }) >>
+            new ChangeMessageVisibilityBatchResult()
+        extender.size() == 1
+    }
+
+    private static Message message(String receiptHandle) {
+        return new Message().withMessageId(receiptHandle).withReceiptHandle(receiptHandle)
+    }
+}
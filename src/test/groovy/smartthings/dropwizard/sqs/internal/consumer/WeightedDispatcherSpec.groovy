@@ -0,0 +1,128 @@
+package smartthings.dropwizard.sqs.internal.consumer
+
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class WeightedDispatcherSpec extends Specification {
+
+    WeightedDispatcher dispatcher = new WeightedDispatcher(Executors.newFixedThreadPool(4), 4)
+
+    void cleanup() {
+        dispatcher.shutdown()
+    }
+
+    void 'it should reserve no more slots than there are idle workers'() {
+        given:
+        WeightedDispatcher.Lane lane = dispatcher.lane(1, 0)
+
+        expect:
+        lane.reserve(10) == 4
+
+        when:
+        lane.release(3)
+
+        then:
+        lane.reserve(10) == 3
+        dispatcher.available() == 0
+    }
+
+    void 'it should give freed workers to the higher priority lane'() {
+        given:
+        WeightedDispatcher.Lane bulk = dispatcher.lane(10, 0)
+        WeightedDispatcher.Lane alerts = dispatcher.lane(1, 1)
+        bulk.reserve(4)
+        CompletableFuture<Integer> bulkWaiting = waitFor(bulk)
+        CompletableFuture<Integer> alertsWaiting = waitFor(alerts)
+
+        when:
+        bulk.release(1)
+
+        then:
+        alertsWaiting.get(5, TimeUnit.SECONDS) == 1
+        !bulkWaiting.isDone()
+
+        when:
+        bulk.release(1)
+
+        then:
+        bulkWaiting.get(5, TimeUnit.SECONDS) == 1
+    }
+
+    void 'it should share freed workers between lanes of equal priority by weight'() {
+        given:
+        WeightedDispatcher.Lane heavy = dispatcher.lane(3, 0)
+        WeightedDispatcher.Lane light = dispatcher.lane(1, 0)
+        heavy.reserve(4)
+        CompletableFuture<Integer> heavyWaiting = waitFor(heavy)
+        CompletableFuture<Integer> lightWaiting = waitFor(light)
+
+        when: 'heavy uses 3 of its 3 shares and light 0 of its 1'
+        heavy.release(1)
+
+        then:
+        lightWaiting.get(5, TimeUnit.SECONDS) == 1
+        !heavyWaiting.isDone()
+
+        when: 'heavy uses 2 of its 3 shares and light 1 of its 1'
+        heavy.release(1)
+
+        then:
+        heavyWaiting.get(5, TimeUnit.SECONDS) == 1
+    }
+
+    void 'it should cap a lane at its weighted share while another lane waits'() {
+        given:
+        WeightedDispatcher.Lane alerts = dispatcher.lane(1, 1)
+        WeightedDispatcher.Lane bulk = dispatcher.lane(1, 0)
+        bulk.reserve(4)
+        CompletableFuture<Integer> bulkWaiting = waitFor(bulk)
+        CompletableFuture<Integer> alertsWaiting = CompletableFuture.supplyAsync { alerts.reserve(10) }
+        waitUntil { waiting(alerts) == 1 }
+
+        when:
+        bulk.release(4)
+
+        then:
+        alertsWaiting.get(5, TimeUnit.SECONDS) == 2
+        bulkWaiting.get(5, TimeUnit.SECONDS) == 1
+    }
+
+    void 'it should return a slot once a dispatched task completes'() {
+        given:
+        WeightedDispatcher.Lane lane = dispatcher.lane(1, 0)
+        CompletableFuture<Void> ran = new CompletableFuture<>()
+
+        when:
+        lane.reserve(1)
+        lane.dispatch { ran.complete(null) }
+        ran.get(5, TimeUnit.SECONDS)
+
+        then:
+        waitUntil { lane.inUse() == 0 }
+        dispatcher.available() == 4
+    }
+
+    private CompletableFuture<Integer> waitFor(WeightedDispatcher.Lane lane) {
+        int before = waiting(lane)
+        CompletableFuture<Integer> reserved = CompletableFuture.supplyAsync { lane.reserve(1) }
+        waitUntil { waiting(lane) > before }
+        return reserved
+    }
+
+    private int waiting(WeightedDispatcher.Lane lane) {
+        synchronized (dispatcher) {
+            return lane.waiting
+        }
+    }
+
+    private static boolean waitUntil(Closure<Boolean> condition) {
+        long deadline = System.currentTimeMillis() + 5000
+        while (!condition() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        return condition()
+    }
+}
@@ -0,0 +1,75 @@
+package smartthings.dropwizard.sqs.internal.consumer
+
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class WorkerPoolDispatcherSpec extends Specification {
+
+    void 'it should reserve no more slots than there are idle workers'() {
+        given:
+        WorkerPoolDispatcher dispatcher = new WorkerPoolDispatcher(Executors.newFixedThreadPool(4), 4)
+
+        expect:
+        dispatcher.reserve(10) == 4
+
+        when:
+        dispatcher.release(2)
+
+        then:
+        dispatcher.reserve(10) == 2
+
+        cleanup:
+        dispatcher.shutdown()
+    }
+
+    void 'it should return a slot once a dispatched task completes'() {
+        given:
+        WorkerPoolDispatcher dispatcher = new WorkerPoolDispatcher(Executors.newFixedThreadPool(2), 2)
+        CountDownLatch started = new CountDownLatch(2)
+        CountDownLatch finish = new CountDownLatch(1)
+
+        when:
+        int reserved = dispatcher.reserve(2)
+        reserved.times {
+            dispatcher.dispatch {
+                started.countDown()
+                finish.await()
+            }
+        }
+
+        then:
+        started.await(5, TimeUnit.SECONDS)
+        dispatcher.permits.availablePermits() == 0
+
+        when:
+        finish.countDown()
+        dispatcher.shutdown()
+
+        then:
+        dispatcher.permits.availablePermits() == 2
+    }
+
+    void 'it should interrupt workers still running after the shutdown timeout'() {
+        given:
+        WorkerPoolDispatcher dispatcher = new WorkerPoolDispatcher(Executors.newFixedThreadPool(1), 1)
+        CountDownLatch started = new CountDownLatch(1)
+        CountDownLatch interrupted = new CountDownLatch(1)
+        dispatcher.reserve(1)
+        dispatcher.dispatch {
+            started.countDown()
+            try {
+                Thread.sleep(60000)
+            } catch (InterruptedException e) {
+                interrupted.countDown()
+            }
+        }
+        started.await(5, TimeUnit.SECONDS)
+
+        expect:
+        !dispatcher.shutdown(100, TimeUnit.MILLISECONDS)
+        interrupted.await(5, TimeUnit.SECONDS)
+    }
+}
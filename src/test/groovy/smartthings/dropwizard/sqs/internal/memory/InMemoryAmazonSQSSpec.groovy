@@ -0,0 +1,184 @@
+package smartthings.dropwizard.sqs.internal.memory
+
+import com.amazonaws.services.sqs.model.*
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+class InMemoryAmazonSQSSpec extends Specification {
+
+    InMemoryAmazonSQS sqs = new InMemoryAmazonSQS()
+    String queueUrl = sqs.createQueue('queue1').queueUrl
+
+    void 'it should send, receive and delete messages'() {
+        when:
+        SendMessageResult sent = sqs.sendMessage(queueUrl, 'hello')
+        List<Message> received = sqs.receiveMessage(new ReceiveMessageRequest(queueUrl).withMaxNumberOfMessages(10)).messages
+
+        then:
+        received*.messageId == [sent.messageId]
+        received[0].body == 'hello'
+        received[0].getMD5OfBody() == sent.getMD5OfMessageBody()
+        attribute(QueueAttributeName.ApproximateNumberOfMessagesNotVisible) == '1'
+
+        when:
+        sqs.deleteMessage(queueUrl, received[0].receiptHandle)
+
+        then:
+        attribute(QueueAttributeName.ApproximateNumberOfMessagesNotVisible) == '0'
+        sqs.receiveMessage(queueUrl).messages.isEmpty()
+    }
+
+    void 'it should redeliver messages once their visibility timeout expires'() {
+        given:
+        sqs.sendMessage(queueUrl, 'hello')
+        ReceiveMessageRequest request = new ReceiveMessageRequest(queueUrl)
+            .withVisibilityTimeout(1)
+            .withWaitTimeSeconds(3)
+            .withAttributeNames('All')
+
+        when:
+        Message first = sqs.receiveMessage(request).messages[0]
+        Message second = sqs.receiveMessage(request).messages[0]
+
+        then:
+        first.attributes.ApproximateReceiveCount == '1'
+        second.attributes.ApproximateReceiveCount == '2'
+        second.receiptHandle != first.receiptHandle
+
+        when: 'the stale receipt handle is used'
+        sqs.changeMessageVisibility(new ChangeMessageVisibilityRequest(queueUrl, first.receiptHandle, 0))
+
+        then:
+        thrown(MessageNotInflightException)
+    }
+
+    void 'it should make a message visible again when its visibility is changed to zero'() {
+        given:
+        sqs.sendMessage(queueUrl, 'hello')
+        Message message = sqs.receiveMessage(queueUrl).messages[0]
+
+        when:
+        sqs.changeMessageVisibility(new ChangeMessageVisibilityRequest(queueUrl, message.receiptHandle, 0))
+
+        then:
+        sqs.receiveMessage(queueUrl).messages*.messageId == [message.messageId]
+    }
+
+    void 'it should hold back delayed messages'() {
+        given:
+        sqs.sendMessage(new SendMessageRequest(queueUrl, 'hello').withDelaySeconds(1))
+
+        expect:
+        sqs.receiveMessage(queueUrl).messages.isEmpty()
+        attribute(QueueAttributeName.ApproximateNumberOfMessagesDelayed) == '1'
+        sqs.receiveMessage(new ReceiveMessageRequest(queueUrl).withWaitTimeSeconds(3)).messages.size() == 1
+    }
+
+    void 'it should wake long polls as soon as a message arrives'() {
+        given:
+        CompletableFuture<ReceiveMessageResult> receive = CompletableFuture.supplyAsync {
+            sqs.receiveMessage(new ReceiveMessageRequest(queueUrl).withWaitTimeSeconds(20))
+        }
+        Thread.sleep(100)
+
+        when:
+        long start = System.currentTimeMillis()
+        sqs.sendMessage(queueUrl, 'hello')
+        List<Message> received = receive.get().messages
+
+        then:
+        received*.body == ['hello']
+        System.currentTimeMillis() - start < 1000
+    }
+
+    void 'it should deliver FIFO groups in order, one batch of a group at a time'() {
+        given:
+        String fifoUrl = sqs.createQueue('queue1.fifo').queueUrl
+        ['a1', 'a2'].each { send(fifoUrl, it, 'a') }
+        send(fifoUrl, 'b1', 'b')
+        ReceiveMessageRequest request = new ReceiveMessageRequest(fifoUrl)
+
+        when:
+        Message a1 = sqs.receiveMessage(request).messages[0]
+        Message b1 = sqs.receiveMessage(request).messages[0]
+
+        then:
+        a1.body == 'a1'
+        b1.body == 'b1'
+        sqs.receiveMessage(request).messages.isEmpty()
+
+        when:
+        sqs.deleteMessage(fifoUrl, a1.receiptHandle)
+
+        then:
+        sqs.receiveMessage(request).messages*.body == ['a2']
+    }
+
+    void 'it should deduplicate FIFO sends'() {
+        given:
+        String fifoUrl = sqs.createQueue('queue1.fifo').queueUrl
+
+        when:
+        SendMessageResult first = send(fifoUrl, 'hello', 'a')
+        SendMessageResult second = send(fifoUrl, 'hello', 'a')
+
+        then:
+        first.messageId == second.messageId
+        sqs.receiveMessage(new ReceiveMessageRequest(fifoUrl).withMaxNumberOfMessages(10)).messages.size() == 1
+    }
+
+    void 'it should report failures per batch entry'() {
+        when:
+        SendMessageBatchResult result = sqs.sendMessageBatch(new SendMessageBatchRequest(queueUrl, [
+            new SendMessageBatchRequestEntry('1', 'hello'),
+            new SendMessageBatchRequestEntry('2', '')
+        ]))
+
+        then:
+        result.successful*.id == ['1']
+        result.failed*.id == ['2']
+        result.failed[0].senderFault
+
+        when:
+        sqs.deleteMessageBatch(new DeleteMessageBatchRequest(queueUrl, [
+            new DeleteMessageBatchRequestEntry('1', 'a#1'),
+            new DeleteMessageBatchRequestEntry('1', 'b#1')
+        ]))
+
+        then:
+        thrown(BatchEntryIdsNotDistinctException)
+    }
+
+    void 'it should reject unknown queues'() {
+        when:
+        sqs.getQueueUrl('missing')
+
+        then:
+        thrown(QueueDoesNotExistException)
+    }
+
+    void 'it should create queues on lookup when configured to'() {
+        given:
+        InMemoryAmazonSQS lenient = new InMemoryAmazonSQS(true)
+
+        when:
+        String first = lenient.getQueueUrl('first').queueUrl
+        String second = lenient.getQueueUrl('second.fifo').queueUrl
+
+        then:
+        lenient.listQueues(new ListQueuesRequest()).queueUrls.sort() == [first, second].sort()
+        lenient.getQueueUrl('first').queueUrl == first
+    }
+
+    private SendMessageResult send(String url, String body, String group) {
+        return sqs.sendMessage(new SendMessageRequest(url, body)
+            .withMessageGroupId(group)
+            .withMessageDeduplicationId(body))
+    }
+
+    private String attribute(QueueAttributeName name) {
+        return sqs.getQueueAttributes(new GetQueueAttributesRequest(queueUrl).withAttributeNames(name))
+            .attributes[name.toString()]
+    }
+}
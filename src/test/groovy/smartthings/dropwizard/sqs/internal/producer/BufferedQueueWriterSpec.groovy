@@ -0,0 +1,165 @@
+package smartthings.dropwizard.sqs.internal.producer
+
+import com.amazonaws.services.sqs.model.*
+import smartthings.dropwizard.sqs.SqsModule
+import smartthings.dropwizard.sqs.SqsService
+import smartthings.dropwizard.sqs.internal.consumer.QueueUrl
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+class BufferedQueueWriterSpec extends Specification {
+
+    SqsService sqs = Mock(SqsService)
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor()
+
+    void cleanup() {
+        scheduler.shutdownNow()
+    }
+
+    void 'it should send a full batch in a single request'() {
+        given:
+        BufferedQueueWriter writer = writer(new SqsModule.BufferConfig(maxLingerMillis: 60000))
+
+        when:
+        List<CompletableFuture<SendMessageResult>> futures = (0..9).collect { writer.sendMessageAsync("body-${it}") }
+        futures*.get(5, TimeUnit.SECONDS)
+
+        then:
+        1 * sqs.sendMessageBatch({ SendMessageBatchRequest request ->
+            request.queueUrl == 'http://queue-url' && request.entries.size() == 10
+        }) >> { SendMessageBatchRequest request -> success(request) }
+
+        and:
+        futures.collect { it.get().messageId } == (0..9).collect { "message-${it}".toString() }
+    }
+
+    void 'it should send a partial batch once the linger time elapses'() {
+        given:
+        BufferedQueueWriter writer = writer(new SqsModule.BufferConfig(maxLingerMillis: 10))
+
+        when:
+        SendMessageResult result = writer.sendMessage('body', 5)
+
+        then:
+        1 * sqs.sendMessageBatch({ SendMessageBatchRequest request ->
+            request.entries.size() == 1 && request.entries[0].delaySeconds == 5
+        }) >> { SendMessageBatchRequest request -> success(request) }
+
+        and:
+        result.messageId == 'message-0'
+    }
+
+    void 'it should split batches that exceed the payload limit'() {
+        given:
+        BufferedQueueWriter writer = writer(new SqsModule.BufferConfig(maxBatchBytes: 10, maxLingerMillis: 10))
+
+        when:
+        List<CompletableFuture<SendMessageResult>> futures = [
+            writer.sendMessageAsync('123456'),
+            writer.sendMessageAsync('123456')
+        ]
+        futures*.get(5, TimeUnit.SECONDS)
+
+        then:
+        2 * sqs.sendMessageBatch({ it.entries.size() == 1 }) >> { SendMessageBatchRequest request -> success(request) }
+    }
+
+    void 'it should fail only the entries rejected by SQS'() {
+        given:
+        BufferedQueueWriter writer = writer(new SqsModule.BufferConfig(maxBatchSize: 2, maxLingerMillis: 60000))
+        SendMessageBatchResult result = new SendMessageBatchResult()
+            .withSuccessful(new SendMessageBatchResultEntry().withId('0').withMessageId('message-0'))
+            .withFailed(new BatchResultErrorEntry().withId('1').withSenderFault(true).withCode('InvalidMessageContents'))
+        sqs.sendMessageBatch(_) >> result
+
+        when:
+        CompletableFuture<SendMessageResult> first = writer.sendMessageAsync('first')
+        CompletableFuture<SendMessageResult> second = writer.sendMessageAsync('second')
+
+        then:
+        first.get(5, TimeUnit.SECONDS).messageId == 'message-0'
+
+        when:
+        second.get(5, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown()
+        ((AmazonSQSException) e.cause).errorCode == 'InvalidMessageContents'
+    }
+
+    void 'it should fail every message when the queue cannot be resolved'() {
+        given:
+        QueueUrl missing = new QueueUrl() {
+            @Override
+            String get() {
+                throw new QueueDoesNotExistException('missing')
+            }
+
+            @Override
+            void invalidate() {
+            }
+        }
+        BufferedQueueWriter writer = new BufferedQueueWriter(
+            missing, sqs, new SqsModule.BufferConfig(maxLingerMillis: 10), scheduler)
+
+        when:
+        writer.sendMessage('body')
+
+        then:
+        thrown(QueueDoesNotExistException)
+        0 * sqs.sendMessageBatch(_)
+    }
+
+    void 'it should send FIFO messages in order with content based deduplication'() {
+        given:
+        SqsModule.EndpointConfig endpoint = new SqsModule.EndpointConfig(
+            queueName: 'events.fifo',
+            buffer: new SqsModule.BufferConfig(maxLingerMillis: 60000),
+            contentBasedDeduplication: true
+        )
+        BufferedQueueWriter writer = new BufferedQueueWriter(QueueUrl.of('http://queue-url'), sqs, endpoint, scheduler)
+
+        when:
+        List<CompletableFuture<SendMessageResult>> futures = (0..9).collect {
+            writer.sendFifoMessageAsync("body-${it}", "device-${it % 2}", it == 0 ? 'explicit' : null, null)
+        }
+        futures*.get(5, TimeUnit.SECONDS)
+
+        then:
+        1 * sqs.sendMessageBatch({ SendMessageBatchRequest request ->
+            request.entries*.messageBody == (0..9).collect { "body-${it}".toString() } &&
+                request.entries*.messageGroupId == (0..9).collect { "device-${it % 2}".toString() } &&
+                request.entries[0].messageDeduplicationId == 'explicit' &&
+                request.entries[1].messageDeduplicationId ==
+                    ContentDeduplication.resolve(null, 'body-1', true) &&
+                request.entries[1].messageDeduplicationId.length() == 64
+        }) >> { SendMessageBatchRequest request -> success(request) }
+    }
+
+    void 'it should count multi-byte characters when measuring payloads'() {
+        expect:
+        BufferedQueueWriter.payloadSize(body, null) == expected
+
+        where:
+        body     | expected
+        'abc'    | 3
+        'é'      | 2
+        '€'      | 3
+        '😀'     | 4
+    }
+
+    private BufferedQueueWriter writer(SqsModule.BufferConfig config) {
+        return new BufferedQueueWriter(QueueUrl.of('http://queue-url'), sqs, config, scheduler)
+    }
+
+    private static SendMessageBatchResult success(SendMessageBatchRequest request) {
+        return new SendMessageBatchResult().withSuccessful(request.entries.collect {
+            new SendMessageBatchResultEntry().withId(it.id).withMessageId("message-${it.id}")
+        })
+    }
+}
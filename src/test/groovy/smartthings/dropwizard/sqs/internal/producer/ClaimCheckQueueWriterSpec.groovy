@@ -0,0 +1,60 @@
+package smartthings.dropwizard.sqs.internal.producer
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue
+import com.amazonaws.services.sqs.model.SendMessageResult
+import smartthings.dropwizard.aws.internal.blob.InMemoryBlobStore
+import smartthings.dropwizard.sqs.QueueWriter
+import smartthings.dropwizard.sqs.internal.claimcheck.ClaimCheck
+import spock.lang.Specification
+
+class ClaimCheckQueueWriterSpec extends Specification {
+
+    QueueWriter delegate = Mock(QueueWriter)
+    InMemoryBlobStore store = new InMemoryBlobStore()
+    ClaimCheckQueueWriter writer = new ClaimCheckQueueWriter(delegate, new ClaimCheck(store, 100, false))
+
+    void 'it should send small messages as they are'() {
+        when:
+        writer.sendMessage('small', 5)
+
+        then:
+        1 * delegate.sendMessage('small', 5, null) >> new SendMessageResult()
+        store.size() == 0
+    }
+
+    void 'it should store large bodies and send a pointer in their place'() {
+        given:
+        String body = 'é' * 60
+        Map<String, MessageAttributeValue> attributes = [
+            type: new MessageAttributeValue().withDataType('String').withStringValue('event')
+        ]
+        String sent
+        Map<String, MessageAttributeValue> sentAttributes
+
+        when:
+        writer.sendMessage(body, null, attributes)
+
+        then:
+        1 * delegate.sendMessage(_, null, _) >> { String key, Integer delay, Map<String, MessageAttributeValue> map ->
+            sent = key
+            sentAttributes = map
+            new SendMessageResult()
+        }
+        store.get(sent).getText('UTF-8') == body
+        sentAttributes.type.stringValue == 'event'
+        sentAttributes[ClaimCheck.SIZE_ATTRIBUTE].stringValue == '120'
+        attributes.size() == 1
+    }
+
+    void 'it should deduplicate offloaded FIFO messages on their original body'() {
+        given:
+        String body = 'x' * 200
+
+        when:
+        writer.sendFifoMessage(body, 'group-1')
+
+        then:
+        1 * delegate.sendFifoMessage({ it != body }, 'group-1', ContentDeduplication.resolve(null, body, true), _) >>
+            new SendMessageResult()
+    }
+}
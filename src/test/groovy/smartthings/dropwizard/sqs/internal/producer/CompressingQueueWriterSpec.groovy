@@ -0,0 +1,70 @@
+package smartthings.dropwizard.sqs.internal.producer
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue
+import com.amazonaws.services.sqs.model.SendMessageResult
+import smartthings.dropwizard.aws.internal.codec.PayloadCodecs
+import smartthings.dropwizard.aws.internal.codec.PayloadCompressor
+import smartthings.dropwizard.sqs.QueueWriter
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+class CompressingQueueWriterSpec extends Specification {
+
+    QueueWriter delegate = Mock(QueueWriter)
+    CompressingQueueWriter writer =
+        new CompressingQueueWriter(delegate, new PayloadCompressor(PayloadCodecs.DEFLATE, 100, 1 << 20))
+
+    void 'it should send small messages as they are'() {
+        when:
+        writer.sendMessage('small', 5)
+
+        then:
+        1 * delegate.sendMessage('small', 5, null) >> new SendMessageResult()
+    }
+
+    void 'it should compress large bodies and mark them with their encoding'() {
+        given:
+        String body = '{"value":"on"}' * 50
+        Map<String, MessageAttributeValue> attributes = [
+            type: new MessageAttributeValue().withDataType('String').withStringValue('event')
+        ]
+        String sent
+        Map<String, MessageAttributeValue> sentAttributes
+
+        when:
+        writer.sendFifoMessage(body, 'group', null, attributes)
+
+        then:
+        1 * delegate.sendFifoMessage(_, 'group', null, _) >> { String compressed, String group, String id, Map map ->
+            sent = compressed
+            sentAttributes = map
+            return new SendMessageResult()
+        }
+        PayloadCompressor.decompress(PayloadCodecs.DEFLATE, sent, 1 << 20) == body
+        sentAttributes.keySet() == ['type', PayloadCompressor.ENCODING_ATTRIBUTE] as Set
+        sentAttributes[PayloadCompressor.ENCODING_ATTRIBUTE].stringValue == 'deflate'
+        attributes.size() == 1
+    }
+
+    void 'it should refuse bodies larger than consumers decode'() {
+        given:
+        CompressingQueueWriter limited =
+            new CompressingQueueWriter(delegate, new PayloadCompressor(PayloadCodecs.DEFLATE, 100, 1000))
+        String body = '{"value":"on"}' * 100
+
+        when:
+        limited.sendMessage(body)
+
+        then:
+        thrown(IllegalArgumentException)
+        0 * delegate._
+
+        when:
+        CompletableFuture<SendMessageResult> future = limited.sendMessageAsync(body)
+
+        then:
+        future.completedExceptionally
+        0 * delegate._
+    }
+}
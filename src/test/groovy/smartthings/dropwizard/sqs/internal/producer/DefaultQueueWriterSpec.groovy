@@ -0,0 +1,49 @@
+package smartthings.dropwizard.sqs.internal.producer
+
+import com.amazonaws.services.sqs.model.GetQueueUrlResult
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException
+import com.amazonaws.services.sqs.model.SendMessageRequest
+import com.amazonaws.services.sqs.model.SendMessageResult
+import smartthings.dropwizard.sqs.SqsService
+import smartthings.dropwizard.sqs.internal.consumer.QueueUrlCache
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+class DefaultQueueWriterSpec extends Specification {
+
+    SqsService sqs = Mock(SqsService)
+    DefaultQueueWriter writer = new DefaultQueueWriter(new QueueUrlCache().forQueue(sqs, 'queue1.fifo'), sqs)
+
+    void 'it should resolve the queue url before sending asynchronously'() {
+        given:
+        CompletableFuture<GetQueueUrlResult> resolved = new CompletableFuture<>()
+
+        when:
+        CompletableFuture<SendMessageResult> future = writer.sendFifoMessageAsync('body', 'group', 'dedup', null)
+
+        then:
+        1 * sqs.getQueueUrlAsync('queue1.fifo') >> resolved
+        0 * sqs.sendMessageAsync(_)
+        !future.isDone()
+
+        when:
+        resolved.complete(new GetQueueUrlResult().withQueueUrl('http://queue1.fifo'))
+
+        then:
+        1 * sqs.sendMessageAsync({ SendMessageRequest it ->
+            it.queueUrl == 'http://queue1.fifo' && it.messageGroupId == 'group'
+        }) >> CompletableFuture.completedFuture(new SendMessageResult().withMessageId('id'))
+        future.getNow(null).messageId == 'id'
+    }
+
+    void 'it should fail the future rather than throw when the queue url cannot be resolved'() {
+        when:
+        CompletableFuture<SendMessageResult> future = writer.sendMessageAsync('body', null, null)
+
+        then:
+        1 * sqs.getQueueUrlAsync('queue1.fifo') >> { throw new QueueDoesNotExistException('missing') }
+        0 * sqs.sendMessageAsync(_)
+        future.isCompletedExceptionally()
+    }
+}
@@ -0,0 +1,59 @@
+package smartthings.dropwizard.sqs.internal.producer
+
+import com.amazonaws.services.sqs.model.SendMessageResult
+import smartthings.dropwizard.aws.internal.ratelimit.TokenBucket
+import smartthings.dropwizard.sqs.QueueWriter
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+class RateLimitedQueueWriterSpec extends Specification {
+
+    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4)
+    QueueWriter delegate = Mock(QueueWriter)
+    List<String> sent = [].asSynchronized()
+
+    void setup() {
+        delegate.sendFifoMessageAsync(*_) >> { args ->
+            sent << args[0]
+            CompletableFuture.completedFuture(new SendMessageResult().withMessageId(args[0]))
+        }
+        delegate.sendFifoMessage(*_) >> { args ->
+            sent << args[0]
+            new SendMessageResult().withMessageId(args[0])
+        }
+    }
+
+    void cleanup() {
+        scheduler.shutdownNow()
+    }
+
+    void 'it should hand FIFO sends to the delegate in the order they were made'() {
+        given: 'a later send that may go right away while an earlier one waits'
+        RateLimitedQueueWriter writer = new RateLimitedQueueWriter(delegate, delays(100, 0, 50), scheduler)
+
+        when:
+        List<CompletableFuture<SendMessageResult>> futures = ['one', 'two', 'three'].collect {
+            writer.sendFifoMessageAsync(it, 'group', null, null)
+        }
+        String last = writer.sendFifoMessage('four', 'group', null, null).messageId
+
+        then:
+        futures*.get(5, TimeUnit.SECONDS)*.messageId == ['one', 'two', 'three']
+        last == 'four'
+        sent == ['one', 'two', 'three', 'four']
+    }
+
+    private static TokenBucket delays(long... millis) {
+        Queue<Long> remaining = new ArrayDeque<>(millis.collect { TimeUnit.MILLISECONDS.toNanos(it) })
+        return new TokenBucket(1000, 1000) {
+            @Override
+            synchronized long reserve(int permits) {
+                return remaining.isEmpty() ? 0 : remaining.poll()
+            }
+        }
+    }
+}
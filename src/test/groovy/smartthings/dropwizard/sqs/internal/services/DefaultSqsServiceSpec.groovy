@@ -1,10 +1,18 @@
 package smartthings.dropwizard.sqs.internal.services
 
+import com.amazonaws.handlers.AsyncHandler
+import com.amazonaws.services.sqs.AbstractAmazonSQS
 import com.amazonaws.services.sqs.AmazonSQS
+import com.amazonaws.services.sqs.AmazonSQSAsync
 import com.amazonaws.services.sqs.model.*
 import smartthings.dropwizard.sqs.DefaultSqsService
 import spock.lang.Specification
 
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
 class DefaultSqsServiceSpec extends Specification {
 
     AmazonSQS sqs = Mock(AmazonSQS)
@@ -29,6 +37,22 @@ class DefaultSqsServiceSpec extends Specification {
         assert result == response
     }
 
+    void 'it should delete a message batch'() {
+        given:
+        DefaultSqsService service = new DefaultSqsService(sqs)
+        DeleteMessageBatchRequest request = new DeleteMessageBatchRequest()
+        DeleteMessageBatchResult response = new DeleteMessageBatchResult()
+
+        when:
+        def result = service.deleteMessageBatch(request)
+
+        then:
+        1 * sqs.deleteMessageBatch(request) >> response
+
+        and:
+        assert result == response
+    }
+
     void 'it should send a message'() {
         given:
         DefaultSqsService service = new DefaultSqsService(sqs)
@@ -76,4 +100,98 @@ class DefaultSqsServiceSpec extends Specification {
         and:
         assert result == response
     }
+
+    void 'it should send a message asynchronously with an async client'() {
+        given:
+        AmazonSQSAsync sqsAsync = Mock(AmazonSQSAsync)
+        DefaultSqsService service = new DefaultSqsService(sqsAsync)
+        SendMessageRequest request = new SendMessageRequest()
+        SendMessageResult response = new SendMessageResult()
+
+        when:
+        def result = service.sendMessageAsync(request)
+
+        then:
+        1 * sqsAsync.sendMessageAsync(request, _) >> { SendMessageRequest req, AsyncHandler handler ->
+            handler.onSuccess(req, response)
+            null
+        }
+        0 * sqsAsync.sendMessage(_)
+
+        and:
+        assert result.get() == response
+    }
+
+    void 'it should fail an async request when the async client reports an error'() {
+        given:
+        AmazonSQSAsync sqsAsync = Mock(AmazonSQSAsync)
+        DefaultSqsService service = new DefaultSqsService(sqsAsync)
+        AmazonSQSException error = new AmazonSQSException('boom')
+
+        when:
+        service.getQueueUrlAsync('mars-10').get()
+
+        then:
+        1 * sqsAsync.getQueueUrlAsync({ it.queueName == 'mars-10' }, _) >> { GetQueueUrlRequest req, AsyncHandler handler ->
+            handler.onError(error)
+            null
+        }
+
+        and:
+        ExecutionException e = thrown()
+        e.cause == error
+    }
+
+    void 'it should receive a message asynchronously with a blocking client'() {
+        given:
+        DefaultSqsService service = new DefaultSqsService(sqs)
+        ReceiveMessageRequest request = new ReceiveMessageRequest()
+        ReceiveMessageResult response = new ReceiveMessageResult()
+
+        when:
+        def result = service.receiveMessageAsync(request).get()
+
+        then:
+        1 * sqs.receiveMessage(request) >> response
+
+        and:
+        assert result == response
+    }
+
+    void 'it should make blocking calls on a bounded pool of daemon threads'() {
+        given:
+        CountDownLatch blocked = new CountDownLatch(1)
+        List<Thread> threads = [].asSynchronized()
+        AmazonSQS blocking = new AbstractAmazonSQS() {
+            @Override
+            ReceiveMessageResult receiveMessage(ReceiveMessageRequest request) {
+                threads << Thread.currentThread()
+                blocked.await(5, TimeUnit.SECONDS)
+                return new ReceiveMessageResult()
+            }
+
+            @Override
+            void shutdown() {
+            }
+        }
+        DefaultSqsService service = new DefaultSqsService(blocking, 2)
+
+        when:
+        List<CompletableFuture<ReceiveMessageResult>> results = (1..4).collect {
+            service.receiveMessageAsync(new ReceiveMessageRequest())
+        }
+        Thread.sleep(200)
+
+        then:
+        threads.size() == 2
+        threads.every { it.daemon && it.name.startsWith('sqs-async-') }
+
+        when:
+        blocked.countDown()
+        results*.get(5, TimeUnit.SECONDS)
+        service.stop()
+
+        then:
+        threads.size() == 4
+    }
 }